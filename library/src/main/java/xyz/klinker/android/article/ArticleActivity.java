@@ -33,9 +33,11 @@ import android.widget.Toast;
 
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.jsoup.select.Elements;
+
+import java.util.List;
 
 import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
 import xyz.klinker.android.article.data.DataSource;
 import xyz.klinker.android.drag_dismiss.activity.DragDismissRecyclerViewActivity;
 
@@ -64,6 +66,7 @@ public final class ArticleActivity extends DragDismissRecyclerViewActivity
     private Article article;
     private String url;
     private ArticleUtils utils;
+    private DataSource source;
     private RecyclerView recyclerView;
     private ArticleAdapter adapter;
     private int accentColor;
@@ -79,10 +82,6 @@ public final class ArticleActivity extends DragDismissRecyclerViewActivity
             Log.v(TAG, "loading article: " + url);
         }
 
-        DataSource source = DataSource.get(this);
-        this.utils = new ArticleUtils(getIntent().getStringExtra(ArticleIntent.EXTRA_API_TOKEN));
-        this.utils.loadArticle(url, source, this);
-
         this.accentColor = getIntent().getIntExtra(ArticleIntent.EXTRA_ACCENT_COLOR,
                 getResources().getColor(R.color.article_colorAccent));
         this.textSize = getIntent().getIntExtra(ArticleIntent.EXTRA_TEXT_SIZE, 15);
@@ -93,6 +92,14 @@ public final class ArticleActivity extends DragDismissRecyclerViewActivity
                 new ArticleScrollListener(delegate.getToolbar(), delegate.getStatusBar(), delegate.getPrimaryColor()));
 
         showProgressBar();
+
+        // articles that are already in memory will be provided back immediately, so everything
+        // needs to be set up before we start loading.
+        ArticleCache.get().registerMemoryCallbacks(this);
+        this.source = DataSource.get(this);
+        this.utils = new ArticleUtils(this,
+                getIntent().getStringExtra(ArticleIntent.EXTRA_API_TOKEN));
+        this.utils.loadArticle(url, source, this);
     }
 
     @Override
@@ -119,7 +126,7 @@ public final class ArticleActivity extends DragDismissRecyclerViewActivity
                     getIntent().getIntExtra(ArticleIntent.EXTRA_THEME, ArticleIntent.THEME_AUTO));
             recyclerView.setAdapter(adapter);
 
-            utils.parseArticleContent(article, this);
+            utils.parseArticleContent(article, source, this);
             delegate.getProgressBar().setVisibility(View.GONE);
 
             invalidateOptionsMenu();
@@ -127,9 +134,18 @@ public final class ArticleActivity extends DragDismissRecyclerViewActivity
     }
 
     @Override
-    public void onArticleParsed(Elements elements) {
-        if (elements != null && elements.size() >= MIN_NUM_ELEMENTS) {
-            adapter.addElements(elements);
+    public void onBlocksParsed(List<ArticleBlock> blocks) {
+        adapter.addBlocks(blocks);
+    }
+
+    @Override
+    public void onArticleParsed(List<ArticleBlock> blocks) {
+        if (blocks != null && blocks.size() >= MIN_NUM_ELEMENTS) {
+            // some of the blocks may have already been shown as they were parsed
+            int shownCount = adapter.getBlockCount();
+            if (blocks.size() > shownCount) {
+                adapter.addBlocks(blocks.subList(shownCount, blocks.size()));
+            }
         } else {
             openChromeCustomTab();
         }
@@ -176,6 +192,16 @@ public final class ArticleActivity extends DragDismissRecyclerViewActivity
         return true;
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // stop waiting on the network for an article that nobody is going to see
+        if (utils != null) {
+            utils.cancel();
+        }
+    }
+
     @Override
     public void onProvideAssistContent(AssistContent outContent) {
         super.onProvideAssistContent(outContent);
@@ -232,15 +258,14 @@ public final class ArticleActivity extends DragDismissRecyclerViewActivity
         article.saved = !article.saved;
         invalidateOptionsMenu();
 
-        new Thread(new Runnable() {
+        ArticleExecutors.executeIo(new Runnable() {
             @Override
             public void run() {
-                DataSource source = DataSource.get(ArticleActivity.this);
                 source.open();
                 source.updateSavedArticleState(article);
                 source.close();
             }
-        }).start();
+        }, ArticleExecutors.PRIORITY_IMMEDIATE);
 
         Intent intent = new Intent(ACTION_SAVED_ARTICLE);
         intent.setClassName(this, getIntent().getStringExtra(ArticleIntent.EXTRA_FAVORITE_SERVICE));
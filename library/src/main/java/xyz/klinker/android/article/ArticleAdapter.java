@@ -16,20 +16,17 @@
 
 package xyz.klinker.android.article;
 
-import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
-import android.graphics.Point;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.recyclerview.widget.RecyclerView;
 import android.util.Log;
-import android.view.Display;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -37,22 +34,18 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.load.Options;
-import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.DecodeFormat;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
-import com.bumptech.glide.load.engine.Resource;
-import com.bumptech.glide.load.resource.SimpleResource;
 import com.bumptech.glide.request.RequestOptions;
-import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.target.Target;
 import com.bumptech.glide.request.transition.Transition;
 
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-
-import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
 import xyz.klinker.android.drag_dismiss.DragDismissIntentBuilder;
 
 /**
@@ -84,16 +77,18 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
     @VisibleForTesting static final int TYPE_UNORDERED_LIST_ITEM = 13;
     @VisibleForTesting static final int TYPE_ORDERED_LIST_ITEM = 14;
     @VisibleForTesting static final int TYPE_OTHER = 15;
-    private static final int MIN_IMAGE_WIDTH = 200; // px
-    private static final int MIN_IMAGE_HEIGHT = 100; // px
+    @VisibleForTesting static final int MIN_IMAGE_WIDTH = 200; // px
+    @VisibleForTesting static final int MIN_IMAGE_HEIGHT = 100; // px
 
     private Article article;
-    private Elements elements;
+    private final List<ArticleBlock> blocks = new ArrayList<>();
     private int accentColor;
     private int textSize;
     private int theme;
     private int imageWidth;
     private int imageHeight;
+    private int inlineImageHeight;
+    private int blockCount;
 
     ArticleAdapter(Article article, int accentColor, int textSize, int theme) {
         this.article = article;
@@ -106,24 +101,62 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         Resources resources = context.getResources();
         imageWidth = resources.getDimensionPixelSize(R.dimen.article_articleWidth);
         if (imageWidth <= 0) {
-            Display display = ((Activity) context).getWindowManager().getDefaultDisplay();
-            Point size = new Point();
-            display.getSize(size);
-            imageWidth = size.x;
+            // the article fills the screen on phones
+            imageWidth = resources.getDisplayMetrics().widthPixels;
         }
 
         imageHeight = resources.getDimensionPixelSize(R.dimen.article_imageParallax) +
                 resources.getDimensionPixelSize(R.dimen.article_imageHeight);
+        inlineImageHeight = resources.getDimensionPixelSize(R.dimen.article_imageHeight);
+    }
+
+    /**
+     * Appends blocks to the end of the article. This can be called multiple times as the article
+     * is parsed. Images that are already known to be too small to show are left out.
+     *
+     * @param blocks the blocks to append.
+     */
+    void addBlocks(List<ArticleBlock> blocks) {
+        blockCount += blocks.size();
+
+        List<ArticleBlock> shown = new ArrayList<>(blocks.size());
+        for (ArticleBlock block : blocks) {
+            if (!"img".equals(block.tag) || !isTooSmall(block.width, block.height)) {
+                shown.add(block);
+            }
+        }
+
+        if (shown.isEmpty()) {
+            return;
+        }
+
+        int start = getTopItemCount() + this.blocks.size();
+        boolean hadBlocks = !this.blocks.isEmpty();
+        this.blocks.addAll(shown);
+
+        if (hadBlocks) {
+            // the previous last item is padded as the end of the article, it needs to be rebound
+            notifyItemChanged(start - 1);
+        }
+
+        notifyItemRangeInserted(start, shown.size());
     }
 
-    void addElements(Elements elements) {
-        this.elements = elements;
-        notifyItemRangeInserted(getTopItemCount(), elements.size());
+    /**
+     * Gets the number of blocks that have been added to the adapter, including any images that
+     * were left out.
+     */
+    int getBlockCount() {
+        return blockCount;
     }
 
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         Context context = parent.getContext();
+        if (imageWidth == 0) {
+            initSizeRequest(context);
+        }
+
         View view = LayoutInflater.from(context)
                 .inflate(getItemResourceFromType(viewType),
                         parent, false);
@@ -173,8 +206,8 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         int topItemCount = getTopItemCount();
         if (position >= topItemCount) {
             if (holder instanceof ImageViewHolder) {
-                String src = ArticleUtils
-                        .decodeImageUrl(elements.get(position - topItemCount).attr("src"));
+                ArticleBlock block = blocks.get(position - topItemCount);
+                String src = ArticleUtils.decodeImageUrl(block.src);
                 final ImageView image = ((ImageViewHolder) holder).image;
 
                 if (src.startsWith("data:")) {
@@ -189,7 +222,7 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
                         image.getLayoutParams();
 
                 if (position - topItemCount - 1 >= 0 &&
-                        !elements.get(position - topItemCount - 1).tagName().equals("img")) {
+                        !blocks.get(position - topItemCount - 1).tag.equals("img")) {
                     params.topMargin = image.getContext().getResources()
                             .getDimensionPixelSize(R.dimen.article_extraImagePadding);
                 } else {
@@ -197,38 +230,24 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
                 }
 
                 if (position != getItemCount() - 1 &&
-                        !elements.get(position - topItemCount + 1).tagName().equals("img")) {
+                        !blocks.get(position - topItemCount + 1).tag.equals("img")) {
                     params.bottomMargin = image.getContext().getResources()
                             .getDimensionPixelSize(R.dimen.article_extraImagePadding);
                 } else {
                     params.bottomMargin = 0;
                 }
 
+                // reserve the space for the image up front, so nothing moves once it loads
+                params.height = getDisplayHeight(block.width, block.height, imageWidth,
+                        inlineImageHeight);
+
                 Log.v("ArticleAdapter", "loading url at " + src);
 
                 ((ImageViewHolder) holder).url = src;
-                Glide.with(image.getContext()).clear(image);
-                Glide.with(image.getContext())
-                        .asBitmap()
-                        .load(src)
-                        .apply(new RequestOptions()
-                                .override(imageWidth, imageHeight)
-                                .placeholder(R.color.article_imageBackground)
-                                .diskCacheStrategy(DiskCacheStrategy.ALL))
-                        .into(new SimpleTarget<Bitmap>() {
-                            @Override
-                            public void onResourceReady(Bitmap resource, Transition<? super Bitmap> transition) {
-                                if (resource.getWidth() < MIN_IMAGE_WIDTH ||
-                                        resource.getHeight() < MIN_IMAGE_HEIGHT) {
-                                    image.setVisibility(View.GONE);
-                                } else {
-                                    image.setImageBitmap(resource);
-                                }
-                            }
-                        });
+                loadInlineImage((ImageViewHolder) holder, block, src);
 
             } else if (holder instanceof TextViewHolder) {
-                String text = elements.get(position - topItemCount).text().trim();
+                String text = blocks.get(position - topItemCount).text.trim();
                 TextView textView = ((TextViewHolder) holder).text;
 
                 ViewGroup.MarginLayoutParams params = (ViewGroup.MarginLayoutParams)
@@ -274,14 +293,138 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
         }
     }
 
+    /**
+     * Loads an inline image in two steps. First, only the dimensions of the image are read from
+     * the disk cache (downloading it there if it isn't cached yet), so images that are too small
+     * to be worth showing are hidden without ever being decoded. The dimensions are saved with
+     * the block, so this step is skipped the next time the image is shown.
+     */
+    private void loadInlineImage(final ImageViewHolder holder, final ArticleBlock block,
+                                 final String src) {
+        final ImageView image = holder.image;
+        final Context context = image.getContext();
+
+        Glide.with(context).clear(holder.bounds);
+        Glide.with(context).clear(image);
+        holder.bounds = null;
+
+        if (block.width > 0 && block.height > 0) {
+            loadBitmap(image, src, block.width, block.height);
+            return;
+        }
+
+        image.setImageResource(R.color.article_imageBackground);
+
+        BitmapSizeDecoder.register(context);
+        holder.bounds = Glide.with(context)
+                .as(BitmapFactory.Options.class)
+                .load(src)
+                .apply(RequestOptions.diskCacheStrategyOf(DiskCacheStrategy.DATA))
+                .into(new CustomTarget<BitmapFactory.Options>() {
+                    @Override
+                    public void onResourceReady(BitmapFactory.Options bounds,
+                            Transition<? super BitmapFactory.Options> transition) {
+                        ImageSizeRecorder.get(context)
+                                .record(article, block, bounds.outWidth, bounds.outHeight);
+
+                        if (!src.equals(holder.url)) {
+                            return;
+                        }
+
+                        if (isTooSmall(bounds.outWidth, bounds.outHeight)) {
+                            image.setVisibility(View.GONE);
+                        } else {
+                            // the space reserved before the size was known is only a guess
+                            image.getLayoutParams().height = getDisplayHeight(bounds.outWidth,
+                                    bounds.outHeight, imageWidth, inlineImageHeight);
+                            image.requestLayout();
+                            loadBitmap(image, src, bounds.outWidth, bounds.outHeight);
+                        }
+                    }
+
+                    @Override
+                    public void onLoadCleared(@Nullable Drawable placeholder) {
+
+                    }
+                });
+    }
+
+    /**
+     * Decodes an inline image at the width of the article column, keeping its aspect ratio,
+     * instead of at its full size. Glide only decodes to RGB_565 for images that don't have any
+     * transparency.
+     */
+    private void loadBitmap(ImageView image, String src, int width, int height) {
+        int[] size = getDecodeSize(width, height, imageWidth, imageHeight);
+        Glide.with(image.getContext())
+                .asBitmap()
+                .load(src)
+                .apply(new RequestOptions()
+                        .override(size[0], size[1])
+                        .format(DecodeFormat.PREFER_RGB_565)
+                        .placeholder(R.color.article_imageBackground)
+                        .diskCacheStrategy(DiskCacheStrategy.ALL))
+                .into(image);
+    }
+
+    /**
+     * Checks whether an image is too small to be shown in the article, such as a tracking pixel
+     * or an icon. Images whose dimensions couldn't be read are never too small.
+     */
+    @VisibleForTesting
+    static boolean isTooSmall(int width, int height) {
+        return width > 0 && height > 0 &&
+                (width < MIN_IMAGE_WIDTH || height < MIN_IMAGE_HEIGHT);
+    }
+
+    /**
+     * Gets the height to reserve for an inline image, so that it fills the width of the article
+     * column without being cropped.
+     *
+     * @param width the width of the image, or 0 if it isn't known.
+     * @param height the height of the image, or 0 if it isn't known.
+     * @param columnWidth the width of the article column.
+     * @param defaultHeight the height to use when the size of the image isn't known.
+     * @return the height of the image view.
+     */
+    @VisibleForTesting
+    static int getDisplayHeight(int width, int height, int columnWidth, int defaultHeight) {
+        if (width <= 0 || height <= 0) {
+            return defaultHeight;
+        }
+
+        return Math.max(1, Math.round(columnWidth * (height / (float) width)));
+    }
+
+    /**
+     * Gets the size to decode an inline image at. The image is scaled down to the width of the
+     * article column and keeps its aspect ratio, but is never scaled up.
+     *
+     * @param width the width of the image, or -1 if it isn't known.
+     * @param height the height of the image, or -1 if it isn't known.
+     * @param columnWidth the width of the article column.
+     * @param defaultHeight the height to use when the size of the image isn't known.
+     * @return the width and height to decode the image at.
+     */
+    @VisibleForTesting
+    static int[] getDecodeSize(int width, int height, int columnWidth, int defaultHeight) {
+        if (width <= 0 || height <= 0) {
+            return new int[] { columnWidth, defaultHeight };
+        }
+
+        int decodeWidth = Math.min(width, columnWidth);
+        int decodeHeight = Math.max(1, Math.round(decodeWidth * (height / (float) width)));
+        return new int[] { decodeWidth, decodeHeight };
+    }
+
     @Override
     public int getItemViewType(int position) {
         int topItemCount = getTopItemCount();
         if (position >= topItemCount) {
-            Element element = elements.get(position - topItemCount);
-            String tag = element.tagName();
+            ArticleBlock block = blocks.get(position - topItemCount);
+            String tag = block.tag;
             if (tag.equals("li")) {
-                tag = element.parent().tagName() + "." + tag;
+                tag = block.parentTag + "." + tag;
             }
 
             return getItemTypeForTag(tag);
@@ -300,9 +443,7 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 
         count += getTopItemCount();
 
-        if (elements != null) {
-            count += elements.size();
-        }
+        count += blocks.size();
 
         return count;
     }
@@ -371,6 +512,7 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
     class ImageViewHolder extends RecyclerView.ViewHolder {
         public ImageView image;
         public String url;
+        private Target<BitmapFactory.Options> bounds;
 
         private ImageViewHolder(View itemView) {
             super(itemView);
@@ -423,23 +565,4 @@ final class ArticleAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
             text.setTextSize(textSize + 3);
         }
     }
-
-    private class BitmapSizeDecoder implements ResourceDecoder<File, BitmapFactory.Options> {
-
-        @Override
-        public boolean handles(File source, Options options) throws IOException {
-            return true;
-        }
-
-        @Nullable
-        @Override
-        public Resource<BitmapFactory.Options> decode(File source, int width, int height, Options options) throws IOException {
-            BitmapFactory.Options bfOptions = new BitmapFactory.Options();
-            bfOptions.inJustDecodeBounds = true;
-            BitmapFactory.decodeFile(source.getAbsolutePath(), bfOptions);
-
-            return new SimpleResource<>(bfOptions);
-        }
-    }
-
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.LruCache;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Collection;
+import java.util.Map;
+
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+
+/**
+ * In memory cache of articles and their parsed blocks, so that re-opening an article does not need
+ * to touch the database or parse the html again. The cache is bounded by an estimate of the number
+ * of bytes that each article holds on to, rather than the number of entries, since articles vary
+ * wildly in size. Entries are dropped when the system asks us to trim memory.
+ */
+final class ArticleCache {
+
+    private static final int BLOCK_OVERHEAD_BYTES = 64;
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+    private static final int MAX_CACHE_BYTES = 16 * 1024 * 1024;
+
+    private static ArticleCache instance;
+
+    private final LruCache<String, Entry> cache;
+    private boolean registeredCallbacks = false;
+
+    /**
+     * Gets the process wide article cache.
+     */
+    static synchronized ArticleCache get() {
+        if (instance == null) {
+            long maxMemory = Runtime.getRuntime().maxMemory();
+            instance = new ArticleCache((int) Math.min(maxMemory / 16, MAX_CACHE_BYTES));
+        }
+
+        return instance;
+    }
+
+    @VisibleForTesting
+    ArticleCache(int maxBytes) {
+        this.cache = new LruCache<String, Entry>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return entry.sizeInBytes;
+            }
+        };
+    }
+
+    /**
+     * Registers for memory trim callbacks, so that the cache can be emptied when the system is
+     * running low on memory. Safe to call multiple times.
+     *
+     * @param context the current context.
+     */
+    synchronized void registerMemoryCallbacks(Context context) {
+        if (registeredCallbacks) {
+            return;
+        }
+
+        registeredCallbacks = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    /**
+     * Gets an article from the cache.
+     *
+     * @param url the url of the article.
+     * @return the cached article, or null if the article is not in memory.
+     */
+    @Nullable
+    Article getArticle(String url) {
+        if (url == null) {
+            return null;
+        }
+
+        Entry entry = cache.get(ArticleUtils.removeUrlParameters(url));
+        return entry == null ? null : entry.article;
+    }
+
+    /**
+     * Adds an article to the cache. This should be called again after the article has been
+     * parsed, so that the size of its blocks is accounted for.
+     *
+     * @param article the article to cache.
+     */
+    void putArticle(Article article) {
+        if (article == null || article.url == null) {
+            return;
+        }
+
+        cache.put(ArticleUtils.removeUrlParameters(article.url), new Entry(article));
+    }
+
+    /**
+     * Removes articles from the cache, so that they are read from the database or downloaded
+     * again the next time that they are opened, instead of coming back from memory after their
+     * content has been deleted.
+     *
+     * @param articleIds the ids of the articles to remove.
+     */
+    void removeArticles(Collection<Long> articleIds) {
+        for (Map.Entry<String, Entry> entry : cache.snapshot().entrySet()) {
+            if (articleIds.contains(entry.getValue().article.id)) {
+                cache.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drops entries from the cache in response to a memory trim callback.
+     *
+     * @param level the level provided to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ||
+                level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Gets the estimated number of bytes held by the cache.
+     */
+    @VisibleForTesting
+    int size() {
+        return cache.size();
+    }
+
+    private static final class Entry {
+
+        private final Article article;
+        private final int sizeInBytes;
+
+        private Entry(Article article) {
+            this.article = article;
+            this.sizeInBytes = estimateSize(article);
+        }
+
+        private static int estimateSize(Article article) {
+            long size = ENTRY_OVERHEAD_BYTES;
+
+            if (article.content != null) {
+                size += article.content.length() * 2;
+            }
+
+            if (article.blocks != null) {
+                for (ArticleBlock block : article.blocks) {
+                    size += BLOCK_OVERHEAD_BYTES;
+
+                    if (block.text != null) {
+                        size += block.text.length() * 2;
+                    }
+
+                    if (block.src != null) {
+                        size += block.src.length() * 2;
+                    }
+                }
+            }
+
+            return (int) Math.min(size, Integer.MAX_VALUE);
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.os.Process;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns all of the background threads used by the library. Work is split between two bounded
+ * pools, so that a large batch of preloads can never spawn an unbounded number of threads:
+ *
+ * 1. IO - network calls to the article api and reads/writes on the local database.
+ * 2. Parse - CPU bound work, such as parsing article html.
+ *
+ * Images are precached on Glide's own threads, see {@link ImagePrefetcher}.
+ *
+ * Each pool orders its queue by priority, so an article that the user is waiting on will jump
+ * ahead of any speculative preloads. Host apps can route all of this work through their own pool
+ * instead, with {@link ArticleUtils#setExecutor(Executor)}.
+ */
+final class ArticleExecutors {
+
+    /**
+     * Priority for speculative work, such as preloading articles the user may never open.
+     */
+    static final int PRIORITY_PRELOAD = 0;
+
+    /**
+     * Priority for work that the user is actively waiting on.
+     */
+    static final int PRIORITY_IMMEDIATE = 10;
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int IO_POOL_SIZE = 4;
+    private static final int PARSE_POOL_SIZE = Math.max(1, Math.min(CPU_COUNT - 1, 3));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private static volatile Executor hostExecutor;
+    private static ThreadPoolExecutor ioExecutor;
+    private static ThreadPoolExecutor parseExecutor;
+
+    private ArticleExecutors() {
+
+    }
+
+    /**
+     * Routes all of the library's background work through the provided executor, instead of the
+     * pools that are owned by the library.
+     *
+     * @param executor the executor to use, or null to go back to the library's own pools.
+     */
+    static void setHostExecutor(@Nullable Executor executor) {
+        hostExecutor = executor;
+    }
+
+    /**
+     * Runs network or database work in the background.
+     *
+     * @param runnable the work to run.
+     * @param priority the priority of the work, one of the PRIORITY constants.
+     */
+    static void executeIo(Runnable runnable, int priority) {
+        execute(runnable, priority, getIoExecutor());
+    }
+
+    /**
+     * Runs CPU bound work, such as parsing, in the background.
+     *
+     * @param runnable the work to run.
+     * @param priority the priority of the work, one of the PRIORITY constants.
+     */
+    static void executeParse(Runnable runnable, int priority) {
+        execute(runnable, priority, getParseExecutor());
+    }
+
+    private static void execute(Runnable runnable, int priority, Executor libraryExecutor) {
+        PrioritizedRunnable prioritized = new PrioritizedRunnable(runnable, priority);
+        Executor host = hostExecutor;
+
+        if (host != null) {
+            host.execute(prioritized);
+        } else {
+            libraryExecutor.execute(prioritized);
+        }
+    }
+
+    private static synchronized Executor getIoExecutor() {
+        if (ioExecutor == null) {
+            ioExecutor = newPriorityExecutor("article-io", IO_POOL_SIZE);
+        }
+
+        return ioExecutor;
+    }
+
+    private static synchronized Executor getParseExecutor() {
+        if (parseExecutor == null) {
+            parseExecutor = newPriorityExecutor("article-parse", PARSE_POOL_SIZE);
+        }
+
+        return parseExecutor;
+    }
+
+    /**
+     * Creates a fixed size pool that runs {@link PrioritizedRunnable}s from highest to lowest
+     * priority. Idle threads will time out, so the pool costs nothing when the library is not used.
+     *
+     * @param name the prefix for thread names in the pool.
+     * @param size the maximum number of threads in the pool.
+     * @return the executor.
+     */
+    @VisibleForTesting
+    static ThreadPoolExecutor newPriorityExecutor(final String name, int size) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                size,
+                size,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, name + "-" + count.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Wraps a runnable so that it can be ordered in a priority queue. Higher priorities run first,
+     * and work with the same priority runs in the order that it was submitted.
+     *
+     * Only use {@link Executor#execute(Runnable)} with these, {@code submit()} will wrap them in a
+     * FutureTask that can no longer be compared.
+     */
+    @VisibleForTesting
+    static final class PrioritizedRunnable implements Runnable, Comparable<PrioritizedRunnable> {
+
+        private final Runnable runnable;
+        private final int priority;
+        private final long sequence;
+
+        PrioritizedRunnable(Runnable runnable, int priority) {
+            this.runnable = runnable;
+            this.priority = priority;
+            this.sequence = SEQUENCE.getAndIncrement();
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull PrioritizedRunnable other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            } else if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            } else {
+                return 0;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import xyz.klinker.android.article.data.ArticlePage;
+import xyz.klinker.android.article.data.DataSource;
+
+/**
+ * Loads stored articles one page at a time, so that a long history can be shown in a list without
+ * querying or holding on to every article up front.
+ *
+ * To use it, create a pager for the articles that you want to show, attach its scroll listener to
+ * your list and load the first page. The next page will be loaded in the background as the user
+ * gets close to the end of the list:
+ *
+ * ArticlePager pager = ArticlePager.forAllArticles(source, 50, listener);
+ * recyclerView.addOnScrollListener(pager.getScrollListener());
+ * pager.loadNextPage();
+ */
+public final class ArticlePager {
+
+    /**
+     * Listener for pages that have finished loading. This is invoked on the main thread.
+     */
+    public interface PageLoadedListener {
+        void onPageLoaded(ArticlePage page);
+    }
+
+    private interface PageQuery {
+        ArticlePage load(DataSource source, @Nullable ArticlePage.Key after, int pageSize);
+    }
+
+    private final DataSource source;
+    private final PageQuery query;
+    private final int pageSize;
+    private final PageLoadedListener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private ArticlePage.Key nextKey = null;
+    private int prefetchDistance;
+    private boolean loading = false;
+    private boolean finished = false;
+    private boolean canceled = false;
+
+    private final RecyclerView.OnScrollListener scrollListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                    super.onScrolled(recyclerView, dx, dy);
+
+                    RecyclerView.LayoutManager manager = recyclerView.getLayoutManager();
+                    if (dy >= 0 && manager instanceof LinearLayoutManager) {
+                        LinearLayoutManager linearManager = (LinearLayoutManager) manager;
+                        int lastItem = linearManager.findLastVisibleItemPosition();
+                        if (lastItem >= manager.getItemCount() - 1 - prefetchDistance) {
+                            loadNextPage();
+                        }
+                    }
+                }
+            };
+
+    /**
+     * Creates a pager over every stored article, newest first.
+     */
+    public static ArticlePager forAllArticles(DataSource source, int pageSize,
+                                              PageLoadedListener listener) {
+        return new ArticlePager(source, new PageQuery() {
+            @Override
+            public ArticlePage load(DataSource source, ArticlePage.Key after, int pageSize) {
+                return source.getAllArticles(after, pageSize);
+            }
+        }, pageSize, listener);
+    }
+
+    /**
+     * Creates a pager over the saved articles, newest first.
+     */
+    public static ArticlePager forSavedArticles(DataSource source, int pageSize,
+                                                PageLoadedListener listener) {
+        return new ArticlePager(source, new PageQuery() {
+            @Override
+            public ArticlePage load(DataSource source, ArticlePage.Key after, int pageSize) {
+                return source.getSavedArticles(after, pageSize);
+            }
+        }, pageSize, listener);
+    }
+
+    /**
+     * Creates a pager over the articles for a particular source, newest first.
+     */
+    public static ArticlePager forSource(DataSource source, final long remoteSourceId,
+                                         int pageSize, PageLoadedListener listener) {
+        return new ArticlePager(source, new PageQuery() {
+            @Override
+            public ArticlePage load(DataSource source, ArticlePage.Key after, int pageSize) {
+                return source.getArticlesForSource(remoteSourceId, after, pageSize);
+            }
+        }, pageSize, listener);
+    }
+
+    private ArticlePager(DataSource source, PageQuery query, int pageSize,
+                         PageLoadedListener listener) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("page size must be at least 1");
+        }
+
+        this.source = source;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.listener = listener;
+        this.prefetchDistance = pageSize / 2;
+    }
+
+    /**
+     * Sets how many items from the end of the list the user can be before the next page is
+     * loaded. Defaults to half of a page.
+     */
+    public void setPrefetchDistance(int prefetchDistance) {
+        this.prefetchDistance = prefetchDistance;
+    }
+
+    /**
+     * Gets a scroll listener that loads the next page when the list gets close to its end. This
+     * only works with a {@link LinearLayoutManager}, or one that extends it.
+     */
+    public RecyclerView.OnScrollListener getScrollListener() {
+        return scrollListener;
+    }
+
+    /**
+     * Checks whether there could be more pages to load.
+     */
+    public boolean hasMore() {
+        return !finished;
+    }
+
+    /**
+     * Loads the next page in the background. Nothing happens if a page is already loading or if
+     * the last page has already been loaded. Must be called from the main thread.
+     */
+    public void loadNextPage() {
+        if (loading || finished || canceled) {
+            return;
+        }
+
+        loading = true;
+        final ArticlePage.Key after = nextKey;
+
+        ArticleExecutors.executeIo(new Runnable() {
+            @Override
+            public void run() {
+                ArticlePage page = null;
+                try {
+                    source.open();
+                    page = query.load(source, after, pageSize);
+                    source.close();
+                } catch (RuntimeException e) {
+                    Log.e("ArticlePager", "failed to load page", e);
+                }
+
+                final ArticlePage loaded = page;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(loaded);
+                    }
+                });
+            }
+        }, ArticleExecutors.PRIORITY_IMMEDIATE);
+    }
+
+    /**
+     * Stops delivering pages, such as when the screen showing them is destroyed.
+     */
+    public void cancel() {
+        canceled = true;
+    }
+
+    private void onPageLoaded(@Nullable ArticlePage page) {
+        loading = false;
+        if (page == null || canceled) {
+            return;
+        }
+
+        nextKey = page.getNextKey();
+        finished = !page.hasMore();
+        listener.onPageLoaded(page);
+    }
+
+}
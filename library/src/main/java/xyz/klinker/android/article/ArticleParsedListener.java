@@ -16,8 +16,25 @@
 
 package xyz.klinker.android.article;
 
-import org.jsoup.select.Elements;
+import java.util.List;
+
+import xyz.klinker.android.article.data.ArticleBlock;
 
 interface ArticleParsedListener {
-    void onArticleParsed(Elements elements);
+
+    /**
+     * Called with the next chunk of blocks while the article is still being parsed. Chunks are
+     * provided in order, and each one only contains blocks that were not in an earlier chunk.
+     *
+     * @param blocks the newly parsed blocks.
+     */
+    void onBlocksParsed(List<ArticleBlock> blocks);
+
+    /**
+     * Called once the article has been fully parsed.
+     *
+     * @param blocks every block in the article, including any that were already provided to
+     *               {@link #onBlocksParsed(List)}.
+     */
+    void onArticleParsed(List<ArticleBlock> blocks);
 }
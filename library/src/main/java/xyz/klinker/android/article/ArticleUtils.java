@@ -17,25 +17,32 @@
 package xyz.klinker.android.article;
 
 import android.content.Context;
-import android.content.res.Resources;
-import android.graphics.Point;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
-import android.view.Display;
-import android.view.WindowManager;
 
-import com.bumptech.glide.Glide;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import xyz.klinker.android.article.api.ApiCall;
+import xyz.klinker.android.article.api.ApiCallback;
 import xyz.klinker.android.article.api.ArticleApi;
+import xyz.klinker.android.article.api.ArticleApiException;
 import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
 import xyz.klinker.android.article.data.DataSource;
 
 /**
@@ -44,6 +51,14 @@ import xyz.klinker.android.article.data.DataSource;
 public final class ArticleUtils {
 
     private static final String SELECTOR = "p, h1, h2, h3, h4, h5, h6, img, blockquote, pre, li";
+    private static final int CHUNK_SIZE = 20;
+
+    private static final RequestCoalescer<Article> ARTICLE_REQUESTS = new RequestCoalescer<>();
+    private static final Map<String, PreloadBatcher> PRELOAD_BATCHERS = new HashMap<>();
+
+    private final Map<RequestCoalescer.Callback<Article>, String> pendingLoads = new HashMap<>();
+    private final List<ApiCall<?>> pendingCalls = new ArrayList<>();
+    private volatile boolean canceled = false;
 
     private ArticleApi api;
 
@@ -52,7 +67,61 @@ public final class ArticleUtils {
     }
 
     /**
-     * Loads an article from the server.
+     * Creates utils whose network responses are kept in an HTTP cache in the app's cache
+     * directory, so repeated requests can be revalidated with the server instead of downloaded
+     * again.
+     */
+    public ArticleUtils(Context context, String apiToken) {
+        this.api = new ArticleApi(context, apiToken);
+    }
+
+    ArticleUtils(ArticleApi api) {
+        this.api = api;
+    }
+
+    /**
+     * Routes all of the library's background work (network calls and parsing) through the
+     * provided executor instead of the bounded pools that the library manages itself. Use this if
+     * your app already has thread pools that you would like the library to share. Images are still
+     * precached on Glide's own threads.
+     *
+     * Work submitted by the library implements {@link Comparable}, so an executor backed by a
+     * {@link java.util.concurrent.PriorityBlockingQueue} will still run the article that the user
+     * is waiting on ahead of any preloads.
+     *
+     * @param executor the executor to use, or null to go back to the library's own pools.
+     */
+    public static void setExecutor(@Nullable Executor executor) {
+        ArticleExecutors.setHostExecutor(executor);
+    }
+
+    /**
+     * Limits how much article content is kept in the database. Once either limit is passed, the
+     * content of the articles that were read the longest time ago is removed in the background.
+     * Saved articles are never removed and their content still counts toward the budget.
+     *
+     * By default, up to 50MB of content is kept, with no limit on the number of articles.
+     *
+     * @param maxBytes the approximate number of bytes that content can use, or 0 for no limit.
+     * @param maxArticles the number of articles that can have content stored, or 0 for no limit.
+     */
+    public static void setStorageBudget(long maxBytes, int maxArticles) {
+        ContentEvictor.setBudget(maxBytes, maxArticles);
+    }
+
+    /**
+     * Removes articles from the in memory cache. The data source calls this when it deletes an
+     * article, so that it isn't shown again after it is gone from the database.
+     *
+     * @param articleIds the ids of the articles to remove.
+     */
+    public static void removeCachedArticles(Collection<Long> articleIds) {
+        ArticleCache.get().removeArticles(articleIds);
+    }
+
+    /**
+     * Loads an article from the server. If the article is already in memory, the callback will be
+     * invoked immediately, before this method returns.
      *
      * @param url the url to load the article from.
      * @param source the data source.
@@ -60,19 +129,213 @@ public final class ArticleUtils {
      */
     void loadArticle(final String url, final DataSource source,
                      final ArticleLoadedListener callback) {
+        loadArticle(url, source, callback, ArticleExecutors.PRIORITY_IMMEDIATE);
+    }
+
+    /**
+     * Loads an article from the server.
+     *
+     * @param url the url to load the article from.
+     * @param source the data source.
+     * @param callback the callback to receive after loading completes.
+     * @param priority the priority to load the article with.
+     */
+    private void loadArticle(final String url, final DataSource source,
+                             final ArticleLoadedListener callback, final int priority) {
+        Article cached = ArticleCache.get().getArticle(url);
+        if (cached != null) {
+            if (callback != null) {
+                callback.onArticleLoaded(cached);
+            }
+
+            return;
+        }
+
         final Handler handler = new Handler();
-        new Thread(new Runnable() {
+        ArticleExecutors.executeIo(new Runnable() {
+            @Override
+            public void run() {
+                source.open();
+                Article stored = source.getArticle(url);
+                source.close();
+
+                if (stored != null && stored.content != null) {
+                    cacheArticle(stored);
+                    deliverArticle(stored, callback, handler);
+                } else {
+                    parseArticle(url, source, stored, callback, handler, priority);
+                }
+            }
+        }, priority);
+    }
+
+    /**
+     * Parses an article on the server without holding on to a thread while the request is in
+     * flight, then saves it to the database. If the url is already being parsed, this will attach
+     * to the pending request instead. If that request is a preload still waiting to be batched,
+     * it is sent right away, unless this is a preload as well.
+     *
+     * @param url the url to load the article from.
+     * @param source the data source.
+     * @param stored the article that is already stored in the database without its content, if
+     *               any.
+     * @param callback the callback to receive after loading completes.
+     * @param handler UI thread handler to use when performing the callback.
+     * @param priority the priority to save the article with.
+     */
+    private void parseArticle(final String url, final DataSource source,
+                              @Nullable final Article stored,
+                              final ArticleLoadedListener callback, final Handler handler,
+                              final int priority) {
+        final String key = removeUrlParameters(url);
+        final RequestCoalescer.Callback<Article> loaded = new RequestCoalescer.Callback<Article>() {
+            @Override
+            public void onLoaded(Article article) {
+                synchronized (pendingLoads) {
+                    pendingLoads.remove(this);
+                }
+
+                deliverArticle(article, callback, handler);
+            }
+        };
+
+        synchronized (pendingLoads) {
+            pendingLoads.put(loaded, key);
+        }
+
+        ARTICLE_REQUESTS.load(key, new RequestCoalescer.AsyncLoader<Article>() {
+            @Override
+            public RequestCoalescer.Cancelable start(final RequestCoalescer.Callback<Article> done) {
+                if (priority == ArticleExecutors.PRIORITY_PRELOAD) {
+                    // nobody is waiting on a preload, so it can wait a moment to share a request
+                    return getPreloadBatcher(api).add(url, source, stored, done);
+                }
+
+                final ApiCall<Article> call = api.article().parseAsync(url);
+                call.enqueue(new ApiCallback<Article>() {
+                    @Override
+                    public void onSuccess(final Article article) {
+                        // saving touches the database, so get off of OkHttp's threads first
+                        ArticleExecutors.executeIo(new Runnable() {
+                            @Override
+                            public void run() {
+                                source.open();
+                                persistArticle(url, source, stored, article);
+                                source.close();
+
+                                cacheArticle(article);
+                                done.onLoaded(article);
+                            }
+                        }, priority);
+                    }
+
+                    @Override
+                    public void onFailure(ArticleApiException error) {
+                        logApiError(url, error);
+                        done.onLoaded(null);
+                    }
+                });
+
+                return new RequestCoalescer.Cancelable() {
+                    @Override
+                    public void cancel() {
+                        call.cancel();
+                    }
+                };
+            }
+        }, loaded);
+
+        if (priority != ArticleExecutors.PRIORITY_PRELOAD) {
+            // attached to a preload, which would otherwise wait for the window and the rest of
+            // its batch before the user sees anything
+            getPreloadBatcher(api).promote(key);
+        }
+    }
+
+    /**
+     * Cancels everything that was started through this instance: article loads, trending loads,
+     * article parsing and image precaching. None of their callbacks will be invoked afterwards.
+     * Network requests and images that another caller is still waiting on will keep loading for
+     * that caller.
+     *
+     * This is meant to be called when the screen that started the work is going away, the
+     * instance should not be reused afterwards.
+     */
+    public void cancel() {
+        canceled = true;
+
+        Map<RequestCoalescer.Callback<Article>, String> loads;
+        synchronized (pendingLoads) {
+            loads = new HashMap<>(pendingLoads);
+            pendingLoads.clear();
+        }
+
+        for (Map.Entry<RequestCoalescer.Callback<Article>, String> load : loads.entrySet()) {
+            ARTICLE_REQUESTS.detach(load.getValue(), load.getKey());
+        }
+
+        List<ApiCall<?>> calls;
+        synchronized (pendingCalls) {
+            calls = new ArrayList<>(pendingCalls);
+            pendingCalls.clear();
+        }
+
+        for (ApiCall<?> call : calls) {
+            call.cancel();
+        }
+
+        ImagePrefetcher.cancelIfCreated(this);
+    }
+
+    private void deliverArticle(final Article article, final ArticleLoadedListener callback,
+                                Handler handler) {
+        if (callback == null) {
+            return;
+        }
+
+        handler.post(new Runnable() {
             @Override
             public void run() {
-                loadArticleSync(url, source, callback, handler);
+                if (!canceled) {
+                    callback.onArticleLoaded(article);
+                }
             }
-        }).start();
+        });
+    }
+
+    static void cacheArticle(Article article) {
+        if (article != null && article.isArticle && article.content != null) {
+            ArticleCache.get().putArticle(article);
+        }
+    }
+
+    /**
+     * Gets the batcher that sends preloads to an api's server. Apis with the same base url share
+     * a batcher, since they send the same requests: the api token is attached by the http client
+     * that every api shares.
+     */
+    @VisibleForTesting
+    static synchronized PreloadBatcher getPreloadBatcher(ArticleApi api) {
+        PreloadBatcher batcher = PRELOAD_BATCHERS.get(api.baseUrl());
+        if (batcher == null) {
+            batcher = new PreloadBatcher(api.article(), new Handler(Looper.getMainLooper()));
+            PRELOAD_BATCHERS.put(api.baseUrl(), batcher);
+        }
+
+        return batcher;
+    }
+
+    private static void logApiError(String url, ArticleApiException error) {
+        if (error.getReason() != ArticleApiException.Reason.CANCELED) {
+            Log.e("ArticleUtils", "failed to load " + url + ": " + error.getReason(), error);
+        }
     }
 
     /**
      * Preloads an article from the server so that it is cached on the device and immediately
      * available when a user tries to view it without making any network calls. This includes
-     * downloading the article body along with precaching any images with Glide.
+     * downloading the article body along with precaching its images with Glide, unless the
+     * device is on a metered network or low on battery or storage.
      *
      * @param context the current application context.
      * @param url the url to try and preload.
@@ -86,7 +349,11 @@ public final class ArticleUtils {
     /**
      * Preloads an article from the server so that it is cached on the device and immediately
      * available when a user tries to view it without making any network calls. This includes
-     * downloading the article body along with precaching any images with Glide.
+     * downloading the article body along with precaching its images with Glide, unless the
+     * device is on a metered network or low on battery or storage.
+     *
+     * Preloads that are started within a short window of each other are sent to the server in a
+     * single batch request.
      *
      * @param context the current application context.
      * @param url the url to try and preload.
@@ -98,6 +365,7 @@ public final class ArticleUtils {
             final String url,
             final DataSource source,
             final ArticleLoadedListener callback) {
+        ArticleCache.get().registerMemoryCallbacks(context);
         loadArticle(url, source, new ArticleLoadedListener() {
             @Override
             public void onArticleLoaded(final Article article) {
@@ -106,21 +374,72 @@ public final class ArticleUtils {
                 }
 
                 if (article != null && article.isArticle && article.content != null) {
-                    parseArticleContent(article, new ArticleParsedListener() {
+                    parseArticleContent(article, source, null, new ArticleParsedListener() {
                         @Override
-                        public void onArticleParsed(final Elements elements) {
-                            cacheImages(context, article, elements);
+                        public void onBlocksParsed(List<ArticleBlock> blocks) {
+
                         }
-                    });
+
+                        @Override
+                        public void onArticleParsed(final List<ArticleBlock> blocks) {
+                            cacheImages(context, source, article, blocks);
+                        }
+                    }, ArticleExecutors.PRIORITY_PRELOAD);
                 }
             }
-        });
+        }, ArticleExecutors.PRIORITY_PRELOAD);
+    }
+
+    /**
+     * Adds urls to a queue that preloads them in the background, a batch at a time. The queue is
+     * stored in the database, so a feed can queue hundreds of links at once and they will still
+     * be preloaded if the process is killed, after the queue is resumed with
+     * {@link #resumePreloads(Context)}. Urls that fail are tried again later.
+     *
+     * By default, urls are only preloaded on an unmetered network, see
+     * {@link #setPreloadConstraints(Context, boolean, boolean)}. The status of each url can be
+     * read with {@link DataSource#getPreloadStatus(String)}, and the progress of the whole queue
+     * with {@link DataSource#getPreloadProgress()}.
+     *
+     * This API is safe to use on the UI thread.
+     *
+     * @param context the current application context.
+     * @param urls the urls to preload.
+     */
+    public void enqueuePreloads(Context context, Collection<String> urls) {
+        PreloadQueue.get(context, api).enqueue(new ArrayList<>(urls));
+    }
+
+    /**
+     * Continues preloading the urls that were queued with
+     * {@link #enqueuePreloads(Context, Collection)} before the process was killed. Call this when
+     * the app starts, such as from {@link android.app.Application#onCreate()}.
+     *
+     * @param context the current application context.
+     */
+    public void resumePreloads(Context context) {
+        PreloadQueue.get(context, api).start();
+    }
+
+    /**
+     * Sets the conditions that the device has to be in for queued urls to be preloaded. These are
+     * not stored, so set them again when the app starts, before resuming the queue.
+     *
+     * @param context the current application context.
+     * @param requireUnmetered true to only preload on an unmetered network, such as wifi. This
+     *                         is the default.
+     * @param requireCharging true to only preload while the device is charging.
+     */
+    public void setPreloadConstraints(Context context, boolean requireUnmetered,
+                                      boolean requireCharging) {
+        PreloadQueue.get(context, api).setConstraints(requireUnmetered, requireCharging);
     }
 
     /**
      * Fetch an article from the server so that it is cached on the device and immediately
      * available when a user tries to view it without making any network calls. This includes
-     * downloading the article body along with precaching any images with Glide.
+     * downloading the article body along with precaching its images with Glide, unless the
+     * device is on a metered network or low on battery or storage.
      *
      * This api will return the article result without a callback. It will run syncronously on
      * whatever thread it is called from.
@@ -135,7 +454,8 @@ public final class ArticleUtils {
     /**
      * Fetch an article from the server so that it is cached on the device and immediately
      * available when a user tries to view it without making any network calls. This includes
-     * downloading the article body along with precaching any images with Glide.
+     * downloading the article body along with precaching its images with Glide, unless the
+     * device is on a metered network or low on battery or storage.
      *
      * This api will return the article result without a callback. It will run syncronously on
      * whatever thread it is called from.
@@ -144,14 +464,19 @@ public final class ArticleUtils {
      * @param url the url to try and preload.
      */
     public Article fetchArticle(final Context context, final String url, final DataSource source) {
-        final Article article = loadArticleSync(url, source, null, null);
+        final Article article = loadArticleSync(url, source);
         if (article != null && article.isArticle && article.content != null) {
-            parseArticleContent(article, null, new ArticleParsedListener() {
+            parseArticleContent(article, source, null, new ArticleParsedListener() {
                 @Override
-                public void onArticleParsed(final Elements elements) {
-                    cacheImages(context, article, elements);
+                public void onBlocksParsed(List<ArticleBlock> blocks) {
+
                 }
-            });
+
+                @Override
+                public void onArticleParsed(final List<ArticleBlock> blocks) {
+                    cacheImages(context, source, article, blocks);
+                }
+            }, ArticleExecutors.PRIORITY_PRELOAD);
         }
 
         return article;
@@ -164,218 +489,412 @@ public final class ArticleUtils {
      */
     public void loadTrending(final TrendingLoadedListener listener) {
         final Handler handler = new Handler();
-        new Thread(new Runnable() {
+        final ApiCall<Article[]> call = api.article().trendingAsync();
+        synchronized (pendingCalls) {
+            pendingCalls.add(call);
+        }
+
+        call.enqueue(new ApiCallback<Article[]>() {
             @Override
-            public void run() {
-                final Article[] articles = api.article().trending();
+            public void onSuccess(Article[] articles) {
+                deliverTrending(articles);
+            }
+
+            @Override
+            public void onFailure(ArticleApiException error) {
+                logApiError("trending", error);
+                deliverTrending(null);
+            }
+
+            private void deliverTrending(final Article[] articles) {
+                synchronized (pendingCalls) {
+                    pendingCalls.remove(call);
+                }
+
                 handler.post(new Runnable() {
                     @Override
                     public void run() {
-                        if (listener != null) {
+                        if (listener != null && !canceled) {
                             listener.onArticlesLoaded(articles);
                         }
                     }
                 });
             }
-        }).start();
+        });
     }
 
     /**
      * Gets all trending articles. Do not call from main UI thread.
      *
-     * @return the trending articles.
+     * @return the trending articles, or null if they could not be loaded.
      */
     public Article[] fetchTrending() {
-        return api.article().trending();
+        try {
+            return api.article().trendingAsync().execute();
+        } catch (ArticleApiException e) {
+            logApiError("trending", e);
+            return null;
+        }
     }
 
     /**
-     * Loads an article from the server.
+     * Gets all trending articles. Do not call from main UI thread.
+     *
+     * @param allowStale true to return the last trending articles from the HTTP cache right away,
+     *                   no matter how old they are, and refresh them in the background for the
+     *                   next call. This requires the utils to be created with a context.
+     * @return the trending articles, or null if they could not be loaded.
+     */
+    public Article[] fetchTrending(boolean allowStale) {
+        if (allowStale) {
+            try {
+                Article[] articles = api.article().trendingCached().execute();
+                refreshTrending();
+                return articles;
+            } catch (ArticleApiException e) {
+                // nothing has been cached yet, wait on the network instead
+            }
+        }
+
+        return fetchTrending();
+    }
+
+    private void refreshTrending() {
+        // the response only needs to make it into the HTTP cache for the next call to pick up
+        api.article().trendingAsync().enqueue(new ApiCallback<Article[]>() {
+            @Override
+            public void onSuccess(Article[] articles) {
+
+            }
+
+            @Override
+            public void onFailure(ArticleApiException error) {
+                logApiError("trending", error);
+            }
+        });
+    }
+
+    /**
+     * Loads an article from the server, blocking the calling thread.
      *
      * @param url the url to load the article from.
      * @param source the data source.
-     * @param callback the callback to receive after loading completes.
-     * @param handler UI thread handler to use when performing the callback.
      */
-    private Article loadArticleSync(final String url, final DataSource source,
-                                    final ArticleLoadedListener callback, final Handler handler) {
+    private Article loadArticleSync(final String url, final DataSource source) {
+        // if another caller is already loading this url, attach to that load instead of
+        // hitting the database and the api a second time.
+        return ARTICLE_REQUESTS.load(removeUrlParameters(url),
+                new RequestCoalescer.Loader<Article>() {
+                    @Override
+                    public Article load() {
+                        Article article = loadAndPersistArticle(url, source);
+                        cacheArticle(article);
+                        return article;
+                    }
+                });
+    }
+
+    /**
+     * Gets an article from the database, or parses it on the server and saves it to the
+     * database if it has not been cached yet.
+     *
+     * @param url the url to load the article from.
+     * @param source the data source.
+     * @return the article, or null if it could not be loaded.
+     */
+    private Article loadAndPersistArticle(String url, DataSource source) {
         source.open();
         Article loadedArticle = source.getArticle(url);
 
-        final Article article;
+        Article article;
         if (loadedArticle != null && loadedArticle.content != null) {
             article = loadedArticle;
         } else {
-            article = api.article().parse(url);
-
-            if (article != null) {
-                // the server will resolve the url when it is shortened or something like
-                // that so we want to instead save the original so that it is findable by
-                // that url again later.
-                article.url = url;
-
-                if (loadedArticle != null && loadedArticle.content == null) {
-                    loadedArticle.content = article.content;
-                    source.updateArticleContent(loadedArticle);
-                    article.id = loadedArticle.id;
-                } else {
-                    article.id = source.insertArticle(article);
-                }
+            try {
+                article = api.article().parseAsync(url).execute();
+                persistArticle(url, source, loadedArticle, article);
+            } catch (ArticleApiException e) {
+                logApiError(url, e);
+                article = null;
             }
         }
 
         source.close();
+        return article;
+    }
 
-        if (callback != null && handler != null) {
-            handler.post(new Runnable() {
-                @Override
-                public void run() {
-                    callback.onArticleLoaded(article);
-                }
-            });
+    /**
+     * Saves an article that was just parsed on the server. The data source must be open.
+     *
+     * @param url the url that the article was loaded from.
+     * @param source the data source.
+     * @param stored the article that is already stored in the database without its content, if
+     *               any.
+     * @param article the article from the server.
+     */
+    static void persistArticle(String url, DataSource source, @Nullable Article stored,
+                               Article article) {
+        // the server will resolve the url when it is shortened or something like
+        // that so we want to instead save the original so that it is findable by
+        // that url again later.
+        article.url = url;
+
+        if (stored != null && stored.content == null) {
+            stored.content = article.content;
+            source.updateArticleContent(stored);
+            article.id = stored.id;
+        } else {
+            article.id = source.insertArticle(article);
         }
 
-        return article;
+        ContentEvictor.schedule(source);
     }
 
-    private void cacheImages(final Context context, final Article article,
-                             final Elements elements) {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                int[] dimens = getCacheWidthAndHeight(context);
-
-                if (article.image != null) {
-                    try {
-                        Glide.with(context)
-                                .load(article.image)
-                                .downloadOnly(dimens[0], dimens[1])
-                                .get();
-                        Log.v("ArticleUtils", "cached header image");
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-
-                if (elements != null) {
-                    for (Element element : elements) {
-                        if (element.tagName().equals("img")) {
-                            String src = element.attr("src");
-
-                            try {
-                                Glide.with(context)
-                                        .load(src)
-                                        .downloadOnly(dimens[0], dimens[1])
-                                        .get();
-                                Log.v("ArticleUtils", "cached image");
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                }
-            }
-        }).start();
-    }
-
-    private int[] getCacheWidthAndHeight(Context context) {
-        Resources resources = context.getResources();
-        int imageWidth = resources.getDimensionPixelSize(R.dimen.article_articleWidth);
-        if (imageWidth <= 0) {
-            WindowManager window = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
-            Display display = window.getDefaultDisplay();
-            Point size = new Point();
-            display.getSize(size);
-            imageWidth = size.x;
+    private void cacheImages(Context context, DataSource source, Article article,
+                             List<ArticleBlock> blocks) {
+        if (canceled) {
+            return;
         }
 
-        int imageHeight = resources.getDimensionPixelSize(R.dimen.article_imageParallax) +
-                resources.getDimensionPixelSize(R.dimen.article_imageHeight);
+        PrefetchPolicy.Decision decision = PrefetchPolicy.get(context).decide(source);
+        if (decision == PrefetchPolicy.Decision.TEXT_ONLY) {
+            return;
+        }
 
-        return new int[] {imageWidth, imageHeight};
+        ImagePrefetcher.get(context).prefetch(this, article,
+                decision == PrefetchPolicy.Decision.EVERYTHING ? blocks : null);
+        if (canceled) {
+            // cancelled while the images were being queued
+            ImagePrefetcher.cancelIfCreated(this);
+        }
     }
 
     /**
-     * Parses the article content into a elements object using jsoup and the @link{SELECTOR}.
+     * Parses the article content into a list of blocks, with {@link #extractBlocks(String)}. If
+     * the article has already been parsed, then the stored blocks are provided back immediately,
+     * before this method returns.
      *
      * @param article the article to parse content from.
+     * @param source the data source to store the parsed blocks in.
      * @param callback the callback to receive after parsing completes.
      */
-    void parseArticleContent(final Article article, final ArticleParsedListener callback) {
+    void parseArticleContent(final Article article, final DataSource source,
+                             final ArticleParsedListener callback) {
+        if (article.blocks != null) {
+            callback.onArticleParsed(article.blocks);
+            return;
+        }
+
         final Handler handler = new Handler();
-        parseArticleContent(article, handler, callback);
+        parseArticleContent(article, source, handler, callback,
+                ArticleExecutors.PRIORITY_IMMEDIATE);
     }
 
     /**
-     * Parses the article content into a elements object using jsoup and the @link{SELECTOR}.
+     * Parses the article content into a list of blocks, with {@link #extractBlocks(String)}. The
+     * blocks are stored with the article, so that it does not need to be parsed again.
      *
      * @param article the article to parse content from.
-     * @param handler the handler to use to provide the article back to the callback.
+     * @param source the data source to store the parsed blocks in.
+     * @param handler the handler to use to provide the article back to the callback. If null, the
+     *                callback will be invoked on the background thread that did the parsing.
      * @param callback the callback to receive after parsing completes.
+     * @param priority the priority to parse the article with.
      */
-    void parseArticleContent(final Article article, final Handler handler, final ArticleParsedListener callback) {
+    private void parseArticleContent(final Article article, final DataSource source,
+                                     final Handler handler, final ArticleParsedListener callback,
+                                     int priority) {
         if (article.content == null) {
             return;
         }
 
-        new Thread(new Runnable() {
+        ArticleExecutors.executeParse(new Runnable() {
             @Override
             public void run() {
-                Document doc = Jsoup.parse(article.content);
-                final Elements elements = removeUnnecessaryElements(doc.select(SELECTOR), article);
+                List<ArticleBlock> parsed = article.blocks;
 
-                if (callback != null && handler != null) {
+                if (parsed == null) {
+                    // chunks are only worth handing out when they can be displayed right away
+                    ArticleParsedListener chunkListener = handler == null || callback == null ?
+                            null : new ArticleParsedListener() {
+                        @Override
+                        public void onBlocksParsed(final List<ArticleBlock> blocks) {
+                            handler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (!canceled) {
+                                        callback.onBlocksParsed(blocks);
+                                    }
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onArticleParsed(List<ArticleBlock> blocks) {
+
+                        }
+                    };
+
+                    parsed = parseBlocks(article, chunkListener);
+                    article.blocks = parsed;
+                    ArticleCache.get().putArticle(article);
+
+                    source.open();
+                    source.updateArticleBlocks(article);
+                    source.close();
+                }
+
+                if (callback == null || canceled) {
+                    return;
+                }
+
+                final List<ArticleBlock> blocks = parsed;
+                if (handler != null) {
                     handler.post(new Runnable() {
                         @Override
                         public void run() {
-                            callback.onArticleParsed(elements);
+                            if (!canceled) {
+                                callback.onArticleParsed(blocks);
+                            }
                         }
                     });
+                } else {
+                    callback.onArticleParsed(blocks);
                 }
             }
-        }).start();
+        }, priority);
     }
 
-    @Nullable
-    private Elements removeUnnecessaryElements(Elements elements, Article article) {
-        for (int i = 0; i < elements.size(); i++) {
-            Element element = elements.get(i);
+    /**
+     * Extracts the blocks from the article content and cleans them up. While parsing, blocks that
+     * are ready to display are handed to {@link ArticleParsedListener#onBlocksParsed(List)} in
+     * chunks: the first chunk as soon as there is enough content to fill the screen, then the
+     * rest in batches of {@link #CHUNK_SIZE}, so that the first paragraph does not need to wait
+     * for the whole article to be parsed.
+     *
+     * @param article the article to parse.
+     * @param listener the listener to receive chunks of blocks, or null if they are not needed.
+     * @return every block to display, including the ones that were already handed out in chunks.
+     */
+    @VisibleForTesting
+    static List<ArticleBlock> parseBlocks(Article article,
+                                          @Nullable final ArticleParsedListener listener) {
+        final BlockCleaner cleaner = new BlockCleaner(article);
 
-            if (i == 0 && (!element.tagName().equals("p") || element.text() == null || article.title == null || element.text().contains(article.title))) {
-                elements.remove(i--);
-                continue;
-            }
+        try {
+            StreamingBlockExtractor.extract(article.content,
+                    new StreamingBlockExtractor.BlockListener() {
+                @Override
+                public void onBlock(ArticleBlock block) {
+                    cleaner.add(block);
 
-            if (element.tagName().equals("img")) {
-                String src = element.attr("src");
-                if (src == null || src.length() == 0 || !isImageUrl(src) ||
-                        src.equals(article.image)) {
-                    elements.remove(i--);
+                    int minimum = cleaner.getTakenCount() == 0 ? 1 : CHUNK_SIZE;
+                    if (listener != null && cleaner.getReadyCount() >= minimum) {
+                        listener.onBlocksParsed(cleaner.takeReadyBlocks());
+                    }
                 }
+            });
+        } catch (RuntimeException e) {
+            Log.e("ArticleUtils", "failed to stream article content, falling back to jsoup", e);
+            List<ArticleBlock> blocks =
+                    removeUnnecessaryBlocks(extractBlocksWithJsoup(article.content), article);
+
+            // chunks that were already handed out can't be taken back, so the jsoup blocks can
+            // only be used if they start the same way. Otherwise, the article stops where the
+            // streaming extractor failed.
+            int taken = cleaner.getTakenCount();
+            List<ArticleBlock> streamed = cleaner.finish();
+            if (taken == 0 || startsWith(blocks, streamed.subList(0, taken))) {
+                return blocks;
             } else {
-                String text = element.text().trim();
-                if (text.length() == 0 || text.equals("Advertisement") || text.equals("Sponsored") ) {
-                    elements.remove(i--);
-                } else if (i > 0 && text.equals(elements.get(i-1).text().trim())) {
-                    elements.remove(i--);
-                }
+                return streamed;
             }
         }
 
-        if (elements.size() > 0) {
-            String lastTag = elements.last().tagName();
-            while (!lastTag.equals("p") && !lastTag.equals("img")) {
-                elements.remove(elements.size() - 1);
-                lastTag = elements.last().tagName();
+        return cleaner.finish();
+    }
+
+    private static boolean startsWith(List<ArticleBlock> blocks, List<ArticleBlock> prefix) {
+        if (blocks.size() < prefix.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.size(); i++) {
+            ArticleBlock block = blocks.get(i);
+            ArticleBlock other = prefix.get(i);
+            if (!TextUtils.equals(block.tag, other.tag) ||
+                    !TextUtils.equals(block.parentTag, other.parentTag) ||
+                    !TextUtils.equals(block.text, other.text) ||
+                    !TextUtils.equals(block.src, other.src)) {
+                return false;
             }
+        }
+
+        return true;
+    }
 
-            // if not many paragraphs and text is small, then don't show anything
-            if (elements.size() < 7 && elements.text().trim().length() < 100) {
-                elements = null;
+    /**
+     * Extracts all of the elements that we know how to display from the article html. This uses
+     * the {@link StreamingBlockExtractor}, which avoids building a DOM for the whole article, and
+     * falls back to jsoup if the html could not be handled.
+     *
+     * @param html the article content.
+     * @return the blocks, in the order that they appear in the html.
+     */
+    @VisibleForTesting
+    static List<ArticleBlock> extractBlocks(String html) {
+        try {
+            return StreamingBlockExtractor.extract(html);
+        } catch (RuntimeException e) {
+            Log.e("ArticleUtils", "failed to stream article content, falling back to jsoup", e);
+            return extractBlocksWithJsoup(html);
+        }
+    }
+
+    /**
+     * Extracts all of the elements that we know how to display from the article html, using jsoup
+     * and the @link{SELECTOR}.
+     *
+     * @param html the article content.
+     * @return the blocks, in the order that they appear in the html.
+     */
+    @VisibleForTesting
+    static List<ArticleBlock> extractBlocksWithJsoup(String html) {
+        Document doc = Jsoup.parse(html);
+        Elements elements = doc.select(SELECTOR);
+
+        List<ArticleBlock> blocks = new ArrayList<>(elements.size());
+        for (Element element : elements) {
+            String tag = element.tagName();
+            String parentTag = tag.equals("li") && element.parent() != null ?
+                    element.parent().tagName() : null;
+
+            if (tag.equals("img")) {
+                blocks.add(new ArticleBlock(tag, null, null, element.attr("src")));
+            } else {
+                blocks.add(new ArticleBlock(tag, parentTag, element.text(), null));
             }
         }
 
-        return elements;
+        return blocks;
+    }
+
+    /**
+     * Removes blocks that should not be displayed, such as the article title, advertisements and
+     * duplicated text.
+     *
+     * @param blocks the blocks extracted from the article.
+     * @param article the article that the blocks belong to.
+     * @return the blocks to display, or an empty list if there isn't enough content to display.
+     */
+    @VisibleForTesting
+    static List<ArticleBlock> removeUnnecessaryBlocks(List<ArticleBlock> blocks, Article article) {
+        BlockCleaner cleaner = new BlockCleaner(article);
+        for (ArticleBlock block : blocks) {
+            cleaner.add(block);
+        }
+
+        return cleaner.finish();
     }
 
     @VisibleForTesting
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.resource.SimpleResource;
+
+import java.io.File;
+
+/**
+ * Reads the dimensions of an image out of Glide's disk cache without decoding its pixels. Load
+ * an image with {@code as(BitmapFactory.Options.class)} and
+ * {@link com.bumptech.glide.load.engine.DiskCacheStrategy#DATA}, so the source data is cached as a
+ * file before this reads it. If the image can't be read, the width and height of the options are
+ * -1.
+ */
+final class BitmapSizeDecoder implements ResourceDecoder<File, BitmapFactory.Options> {
+
+    private static boolean registered = false;
+
+    /**
+     * Adds the decoder to Glide, if it hasn't been added already. This is done at runtime instead
+     * of from a Glide module, since library modules are only loaded by apps that have their own
+     * generated Glide module.
+     */
+    static synchronized void register(Context context) {
+        if (!registered) {
+            Glide.get(context).getRegistry()
+                    .append(File.class, BitmapFactory.Options.class, new BitmapSizeDecoder());
+            registered = true;
+        }
+    }
+
+    @Override
+    public boolean handles(File source, Options options) {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Resource<BitmapFactory.Options> decode(File source, int width, int height,
+                                                  Options options) {
+        return new SimpleResource<>(readBounds(source));
+    }
+
+    /**
+     * Reads the dimensions of an image file without decoding its pixels.
+     *
+     * @param file the image file.
+     * @return the options holding the width, height and mime type of the image. The width and
+     *         height are -1 if the image can't be read.
+     */
+    static BitmapFactory.Options readBounds(File file) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+
+        return bounds;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+
+/**
+ * Removes blocks that should not be displayed, such as the article title, advertisements and
+ * duplicated text, one block at a time as they are extracted from the article.
+ *
+ * Most blocks can be kept or thrown out as soon as they are seen. The exceptions are trailing
+ * blocks that are not paragraphs or images (which are removed from the end of the article) and
+ * the check for articles that are too short to display, so blocks are only handed out with
+ * {@link #takeReadyBlocks()} once they can no longer be affected by either of those.
+ */
+final class BlockCleaner {
+
+    private static final int MIN_BLOCKS = 7;
+    private static final int MIN_TEXT_LENGTH = 100;
+
+    private final Article article;
+    private final List<ArticleBlock> blocks = new ArrayList<>();
+
+    // blocks before this index end in a paragraph or image, so they won't be removed from the end
+    private int settledCount = 0;
+    private int takenCount = 0;
+    private boolean enoughContent = false;
+
+    BlockCleaner(Article article) {
+        this.article = article;
+    }
+
+    /**
+     * Adds the next block from the article, if it should be displayed.
+     *
+     * @param block the next block from the article.
+     */
+    void add(ArticleBlock block) {
+        if (blocks.isEmpty() && (!block.tag.equals("p") || block.text == null ||
+                article.title == null || block.text.contains(article.title))) {
+            return;
+        }
+
+        if (block.tag.equals("img")) {
+            String src = block.src;
+            if (src == null || src.length() == 0 || !ArticleUtils.isImageUrl(src) ||
+                    src.equals(article.image)) {
+                return;
+            }
+        } else {
+            String text = block.text.trim();
+            if (text.length() == 0 || text.equals("Advertisement") || text.equals("Sponsored")) {
+                return;
+            } else if (!blocks.isEmpty() &&
+                    text.equals(getText(blocks.get(blocks.size() - 1)).trim())) {
+                return;
+            }
+        }
+
+        blocks.add(block);
+
+        if (block.tag.equals("p") || block.tag.equals("img")) {
+            settledCount = blocks.size();
+
+            if (!enoughContent) {
+                enoughContent = isEnoughContent(blocks.subList(0, settledCount));
+            }
+        }
+    }
+
+    /**
+     * Gets the blocks that are certain to be displayed and have not been taken yet. Nothing is
+     * returned until there is enough content that the article will not be thrown out as too
+     * short.
+     *
+     * @return the blocks that are ready to display, in order. This may be empty.
+     */
+    List<ArticleBlock> takeReadyBlocks() {
+        if (!enoughContent || takenCount >= settledCount) {
+            return new ArrayList<>();
+        }
+
+        List<ArticleBlock> ready = new ArrayList<>(blocks.subList(takenCount, settledCount));
+        takenCount = settledCount;
+        return ready;
+    }
+
+    /**
+     * Gets the number of blocks that are ready to display and have not been taken yet.
+     */
+    int getReadyCount() {
+        return enoughContent ? settledCount - takenCount : 0;
+    }
+
+    /**
+     * Gets the number of blocks that have been taken so far.
+     */
+    int getTakenCount() {
+        return takenCount;
+    }
+
+    /**
+     * Finishes cleaning up the article, after every block has been added.
+     *
+     * @return every block to display, including any that were already taken, or an empty list if
+     *         there isn't enough content to display.
+     */
+    List<ArticleBlock> finish() {
+        while (blocks.size() > settledCount) {
+            blocks.remove(blocks.size() - 1);
+        }
+
+        if (!isEnoughContent(blocks)) {
+            blocks.clear();
+        }
+
+        return blocks;
+    }
+
+    // if not many paragraphs and text is small, then don't show anything
+    private static boolean isEnoughContent(List<ArticleBlock> blocks) {
+        return blocks.size() >= MIN_BLOCKS || getText(blocks).trim().length() >= MIN_TEXT_LENGTH;
+    }
+
+    private static String getText(ArticleBlock block) {
+        return block.text == null ? "" : block.text;
+    }
+
+    private static String getText(List<ArticleBlock> blocks) {
+        StringBuilder text = new StringBuilder();
+        for (ArticleBlock block : blocks) {
+            if (text.length() != 0) {
+                text.append(" ");
+            }
+
+            text.append(getText(block));
+        }
+
+        return text.toString();
+    }
+
+}
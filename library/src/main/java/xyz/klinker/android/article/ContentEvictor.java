@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import xyz.klinker.android.article.data.DataSource;
+
+/**
+ * Keeps the article content stored in the database under a storage budget, by removing the
+ * content of the articles that were read the longest time ago. Saved articles are never evicted,
+ * and the articles themselves are kept so that they can still be listed and their content
+ * downloaded again when they are opened.
+ *
+ * Eviction runs a small batch at a time at preload priority, so that it never holds the database
+ * for long or gets in the way of an article that the user is waiting on.
+ */
+final class ContentEvictor {
+
+    @VisibleForTesting static final long DEFAULT_MAX_BYTES = 50 * 1024 * 1024;
+    @VisibleForTesting static final int BATCH_SIZE = 20;
+
+    private static final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private static volatile long maxBytes = DEFAULT_MAX_BYTES;
+    private static volatile int maxArticles = 0;
+
+    private ContentEvictor() {
+
+    }
+
+    /**
+     * Sets the storage budget for article content.
+     *
+     * @param maxBytes the approximate number of bytes that content can use, or 0 for no limit.
+     * @param maxArticles the number of articles that can have content stored, or 0 for no limit.
+     */
+    static void setBudget(long maxBytes, int maxArticles) {
+        if (maxBytes < 0 || maxArticles < 0) {
+            throw new IllegalArgumentException("the budget cannot be negative");
+        }
+
+        ContentEvictor.maxBytes = maxBytes;
+        ContentEvictor.maxArticles = maxArticles;
+    }
+
+    /**
+     * Gets the number of bytes that content can use, or 0 if there is no limit.
+     */
+    static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Evicts content in the background until the database is back under the budget. Calling this
+     * while eviction is already scheduled does nothing.
+     *
+     * @param source the data source.
+     */
+    static void schedule(final DataSource source) {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        ArticleExecutors.executeIo(new Runnable() {
+            @Override
+            public void run() {
+                boolean more;
+                source.open();
+                try {
+                    more = evictBatch(source, maxBytes, maxArticles);
+                } finally {
+                    source.close();
+                    scheduled.set(false);
+                }
+
+                if (more) {
+                    schedule(source);
+                }
+            }
+        }, ArticleExecutors.PRIORITY_PRELOAD);
+    }
+
+    /**
+     * Removes the content from one batch of the least recently read articles, if the stored
+     * content is over the budget. The data source must be open.
+     *
+     * @return true if the content is still over the budget after this batch.
+     */
+    @VisibleForTesting
+    static boolean evictBatch(DataSource source, long maxBytes, int maxArticles) {
+        int count = source.getContentCount();
+        long size = maxBytes > 0 ? source.getContentSize() : 0;
+
+        long limit = 0;
+        if (maxArticles > 0 && count > maxArticles) {
+            limit = count - maxArticles;
+        }
+
+        if (maxBytes > 0 && size > maxBytes && count > 0) {
+            // assume that the oldest articles are about the average size. If they are smaller,
+            // the next batch will pick up the rest.
+            long averageSize = Math.max(size / count, 1);
+            long excess = size - maxBytes;
+            limit = Math.max(limit, (excess + averageSize - 1) / averageSize);
+        }
+
+        if (limit == 0) {
+            return false;
+        }
+
+        int batchSize = (int) Math.min(limit, BATCH_SIZE);
+        List<Long> ids = source.getLeastRecentlyAccessedArticleIds(batchSize);
+        if (ids.isEmpty()) {
+            // everything that is left is saved
+            return false;
+        }
+
+        source.clearArticleContent(ids);
+        ArticleCache.get().removeArticles(ids);
+        ImagePrefetcher.cancelArticlesIfCreated(ids);
+
+        return (maxArticles > 0 && source.getContentCount() > maxArticles) ||
+                (maxBytes > 0 && source.getContentSize() > maxBytes);
+    }
+}
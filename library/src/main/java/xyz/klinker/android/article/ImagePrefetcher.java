@@ -0,0 +1,600 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.net.Uri;
+import android.util.Log;
+import android.view.Display;
+import android.view.WindowManager;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+
+/**
+ * Downloads the images of preloaded articles into Glide's cache, so that they show up right away
+ * when the article is opened.
+ *
+ * Only a few images are downloaded at once, and only a couple from the same host, so that a feed
+ * full of preloads can't take over the network. An image that more than one article uses is only
+ * downloaded once. The images at the top of an article (the header image and the first image in
+ * the content) are downloaded before any of the images further down.
+ *
+ * Once an inline image is downloaded, its size is handed to a {@link SizeListener} so that it can
+ * be saved with the article's blocks.
+ *
+ * Each prefetch belongs to the caller that requested it. Once every caller that wanted an image
+ * has cancelled, or the content of its article has been evicted, it is removed from the queue, or
+ * its download is stopped if it had already started.
+ */
+final class ImagePrefetcher {
+
+    @VisibleForTesting static final int MAX_CONCURRENT = 4;
+    @VisibleForTesting static final int MAX_PER_HOST = 2;
+    @VisibleForTesting static final int MAX_REMEMBERED = 200;
+
+    @VisibleForTesting static final int PRIORITY_BELOW_FOLD = 0;
+    @VisibleForTesting static final int PRIORITY_ABOVE_FOLD = 1;
+
+    /**
+     * Downloads a single image into the cache.
+     */
+    interface Downloader {
+
+        /**
+         * Starts downloading an image in the background.
+         *
+         * @param url the url of the image.
+         * @param callback receives the width and height of the image once it is cached (-1 if
+         *                 they can't be read), or null if it could not be downloaded. This may be
+         *                 invoked on any thread, even before this returns.
+         * @return a handle to stop the download.
+         */
+        RequestCoalescer.Cancelable download(String url,
+                                             RequestCoalescer.Callback<int[]> callback);
+    }
+
+    /**
+     * Receives the sizes of inline images as they are downloaded.
+     */
+    interface SizeListener {
+
+        /**
+         * Called once the size of an image block is known. This may be invoked on any thread.
+         */
+        void onSizeLoaded(Article article, ArticleBlock block, int width, int height);
+    }
+
+    private static ImagePrefetcher instance;
+
+    private final Downloader downloader;
+    private final SizeListener sizeListener;
+    private final int maxConcurrent;
+    private final int maxPerHost;
+
+    private final Map<String, Task> tasks = new HashMap<>();
+    private final TreeSet<Task> queue = new TreeSet<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<String, int[]> cached = new LinkedHashMap<String, int[]>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    };
+
+    private int running = 0;
+    private long sequence = 0;
+
+    @VisibleForTesting
+    ImagePrefetcher(Downloader downloader, SizeListener sizeListener, int maxConcurrent,
+                    int maxPerHost) {
+        this.downloader = downloader;
+        this.sizeListener = sizeListener;
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * Gets the prefetcher that downloads images with Glide.
+     */
+    static synchronized ImagePrefetcher get(Context context) {
+        if (instance == null) {
+            final Context app = context.getApplicationContext();
+            instance = new ImagePrefetcher(new GlideDownloader(app), new SizeListener() {
+                @Override
+                public void onSizeLoaded(Article article, ArticleBlock block, int width,
+                                         int height) {
+                    ImageSizeRecorder.get(app).record(article, block, width, height);
+                }
+            }, MAX_CONCURRENT, MAX_PER_HOST);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Cancels all of the images that a caller asked for, see {@link #cancel(Object)}. Nothing
+     * happens if no images have been prefetched yet.
+     */
+    static void cancelIfCreated(Object owner) {
+        ImagePrefetcher prefetcher = getIfCreated();
+        if (prefetcher != null) {
+            prefetcher.cancel(owner);
+        }
+    }
+
+    /**
+     * Cancels the images of articles whose content has been removed from the device, see
+     * {@link #cancelArticles(Collection)}. Nothing happens if no images have been prefetched yet.
+     */
+    static void cancelArticlesIfCreated(Collection<Long> articleIds) {
+        ImagePrefetcher prefetcher = getIfCreated();
+        if (prefetcher != null) {
+            prefetcher.cancelArticles(articleIds);
+        }
+    }
+
+    private static synchronized ImagePrefetcher getIfCreated() {
+        return instance;
+    }
+
+    /**
+     * Queues the header image and every inline image of an article. Images that are already
+     * queued, downloading or were recently downloaded are not downloaded again. Inline images
+     * whose size is not stored yet have it filled in once they are downloaded.
+     *
+     * @param owner the caller that wants the images, to cancel them with later.
+     * @param article the article.
+     * @param blocks the parsed content of the article, or null if it has not been parsed.
+     */
+    void prefetch(Object owner, Article article, @Nullable List<ArticleBlock> blocks) {
+        Owner key = new Owner(owner, article.id);
+
+        List<Task> started;
+        List<Image> known = new ArrayList<>();
+        synchronized (this) {
+            enqueue(key, article.image, PRIORITY_ABOVE_FOLD, null, known);
+
+            if (blocks != null) {
+                boolean first = true;
+                for (ArticleBlock block : blocks) {
+                    if ("img".equals(block.tag)) {
+                        Image image = block.width > 0 ? null : new Image(article, block);
+                        enqueue(key, block.src, first ? PRIORITY_ABOVE_FOLD : PRIORITY_BELOW_FOLD,
+                                image, known);
+                        first = false;
+                    }
+                }
+            }
+
+            started = takeStartable();
+        }
+
+        notifySizes(known);
+        start(started);
+    }
+
+    /**
+     * Cancels all of the images that a caller asked for. Images that another caller still wants
+     * keep downloading.
+     *
+     * @param owner the caller that was provided to {@link #prefetch(Object, Article, List)}.
+     */
+    void cancel(final Object owner) {
+        cancelMatching(new OwnerFilter() {
+            @Override
+            public boolean matches(Owner key) {
+                return key.owner == owner;
+            }
+        });
+    }
+
+    /**
+     * Cancels the images of the given articles, no matter who asked for them.
+     *
+     * @param articleIds the ids of the articles.
+     */
+    void cancelArticles(Collection<Long> articleIds) {
+        final Set<Long> ids = new HashSet<>(articleIds);
+        cancelMatching(new OwnerFilter() {
+            @Override
+            public boolean matches(Owner key) {
+                return ids.contains(key.articleId);
+            }
+        });
+    }
+
+    /**
+     * Gets the number of images that are queued or downloading.
+     */
+    @VisibleForTesting
+    synchronized int getPendingCount() {
+        return tasks.size();
+    }
+
+    /**
+     * Queues an image, if it isn't already queued or cached.
+     *
+     * @param key the caller and article that want the image.
+     * @param url the url of the image, as it is stored.
+     * @param priority the priority to download the image with.
+     * @param image the block that should receive the size of the image, if any.
+     * @param known receives the block if the size of the image is already known.
+     */
+    private void enqueue(Owner key, @Nullable String url, int priority, @Nullable Image image,
+                         List<Image> known) {
+        // load the same url that the adapter does, so that it finds the image in the cache
+        url = url == null ? null : ArticleUtils.decodeImageUrl(url);
+        if (url == null || url.isEmpty() || url.startsWith("data:")) {
+            return;
+        }
+
+        int[] size = cached.get(url);
+        if (size != null) {
+            if (image != null) {
+                image.size = size;
+                known.add(image);
+            }
+
+            return;
+        }
+
+        Task task = tasks.get(url);
+        if (task == null) {
+            task = new Task(url, getHost(url), priority, sequence++);
+            tasks.put(url, task);
+            queue.add(task);
+        } else if (priority > task.priority) {
+            // the queue is sorted by priority, so the task has to be taken out to change it
+            boolean queued = queue.remove(task);
+            task.priority = priority;
+            if (queued) {
+                queue.add(task);
+            }
+        }
+
+        task.owners.add(key);
+        if (image != null) {
+            task.images.add(image);
+        }
+    }
+
+    private void cancelMatching(OwnerFilter filter) {
+        List<RequestCoalescer.Cancelable> downloads = new ArrayList<>();
+        List<Task> started;
+
+        synchronized (this) {
+            Iterator<Task> iterator = tasks.values().iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+
+                Iterator<Owner> owners = task.owners.iterator();
+                while (owners.hasNext()) {
+                    if (filter.matches(owners.next())) {
+                        owners.remove();
+                    }
+                }
+
+                if (!task.owners.isEmpty()) {
+                    continue;
+                }
+
+                iterator.remove();
+                task.canceled = true;
+
+                if (task.running) {
+                    release(task);
+                    if (task.download != null) {
+                        downloads.add(task.download);
+                    }
+                } else {
+                    queue.remove(task);
+                }
+            }
+
+            started = takeStartable();
+        }
+
+        for (RequestCoalescer.Cancelable download : downloads) {
+            download.cancel();
+        }
+
+        start(started);
+    }
+
+    /**
+     * Takes as many tasks off of the queue as the limits allow, highest priority first. A task
+     * whose host is already at its limit is skipped for now, so it doesn't hold up other hosts.
+     */
+    private List<Task> takeStartable() {
+        List<Task> started = new ArrayList<>();
+
+        Iterator<Task> iterator = queue.iterator();
+        while (running < maxConcurrent && iterator.hasNext()) {
+            Task task = iterator.next();
+            Integer hostCount = runningPerHost.get(task.host);
+            if (hostCount != null && hostCount >= maxPerHost) {
+                continue;
+            }
+
+            iterator.remove();
+            task.running = true;
+            running++;
+            runningPerHost.put(task.host, hostCount == null ? 1 : hostCount + 1);
+            started.add(task);
+        }
+
+        return started;
+    }
+
+    private void start(List<Task> started) {
+        for (final Task task : started) {
+            RequestCoalescer.Cancelable download = downloader.download(task.url,
+                    new RequestCoalescer.Callback<int[]>() {
+                        @Override
+                        public void onLoaded(int[] size) {
+                            finish(task, size);
+                        }
+                    });
+
+            boolean canceled;
+            synchronized (this) {
+                canceled = task.canceled;
+                task.download = download;
+            }
+
+            // cancelled before the download was handed back, so nobody else could stop it
+            if (canceled) {
+                download.cancel();
+            }
+        }
+    }
+
+    /**
+     * Finishes a download.
+     *
+     * @param task the image that was downloaded.
+     * @param size the size of the image, or null if the download failed.
+     */
+    private void finish(Task task, @Nullable int[] size) {
+        List<Task> started;
+        List<Image> known = new ArrayList<>();
+        synchronized (this) {
+            if (task.canceled || !task.running) {
+                return;
+            }
+
+            release(task);
+            tasks.remove(task.url);
+            if (size != null) {
+                cached.put(task.url, size);
+
+                for (Image image : task.images) {
+                    image.size = size;
+                    known.add(image);
+                }
+            }
+
+            started = takeStartable();
+        }
+
+        notifySizes(known);
+        start(started);
+    }
+
+    private void notifySizes(List<Image> images) {
+        for (Image image : images) {
+            if (image.size[0] > 0 && image.size[1] > 0) {
+                sizeListener.onSizeLoaded(image.article, image.block, image.size[0],
+                        image.size[1]);
+            }
+        }
+    }
+
+    private void release(Task task) {
+        task.running = false;
+        running--;
+
+        Integer hostCount = runningPerHost.get(task.host);
+        if (hostCount == null || hostCount <= 1) {
+            runningPerHost.remove(task.host);
+        } else {
+            runningPerHost.put(task.host, hostCount - 1);
+        }
+    }
+
+    private static String getHost(String url) {
+        String host = Uri.parse(url).getHost();
+        return host == null ? "" : host.toLowerCase();
+    }
+
+    private interface OwnerFilter {
+        boolean matches(Owner key);
+    }
+
+    /**
+     * A caller's interest in the images of one article.
+     */
+    private static final class Owner {
+        private final Object owner;
+        private final long articleId;
+
+        private Owner(Object owner, long articleId) {
+            this.owner = owner;
+            this.articleId = articleId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Owner)) {
+                return false;
+            }
+
+            Owner other = (Owner) o;
+            return owner == other.owner && articleId == other.articleId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(owner) + (int) (articleId ^ (articleId >>> 32));
+        }
+    }
+
+    /**
+     * An inline image block that is waiting for the size of its image.
+     */
+    private static final class Image {
+        private final Article article;
+        private final ArticleBlock block;
+        private int[] size;
+
+        private Image(Article article, ArticleBlock block) {
+            this.article = article;
+            this.block = block;
+        }
+    }
+
+    private static final class Task implements Comparable<Task> {
+        private final String url;
+        private final String host;
+        private final long sequence;
+        private final Set<Owner> owners = new HashSet<>();
+        private final List<Image> images = new ArrayList<>();
+
+        private int priority;
+        private boolean running = false;
+        private boolean canceled = false;
+        private RequestCoalescer.Cancelable download;
+
+        private Task(String url, String host, int priority, long sequence) {
+            this.url = url;
+            this.host = host;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Downloads images with Glide, at the size that the article screen displays them at. Glide
+     * runs the download on its own threads and calls back when it is done, so no thread is held
+     * while waiting on the network.
+     */
+    private static final class GlideDownloader implements Downloader {
+        private final Context context;
+        private int[] dimens;
+
+        private GlideDownloader(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public RequestCoalescer.Cancelable download(
+                final String url, final RequestCoalescer.Callback<int[]> callback) {
+            int[] size = getCacheWidthAndHeight();
+            final FutureTarget<File> target = Glide.with(context)
+                    .downloadOnly()
+                    .load(url)
+                    .listener(new RequestListener<File>() {
+                        @Override
+                        public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                                    Target<File> target,
+                                                    boolean isFirstResource) {
+                            Log.v("ImagePrefetcher", "failed to cache " + url, e);
+                            callback.onLoaded(null);
+                            return false;
+                        }
+
+                        @Override
+                        public boolean onResourceReady(File resource, Object model,
+                                                       Target<File> target,
+                                                       DataSource dataSource,
+                                                       boolean isFirstResource) {
+                            // submitted requests call back on Glide's own threads, so reading
+                            // the file here doesn't hold up the UI
+                            BitmapFactory.Options bounds = BitmapSizeDecoder.readBounds(resource);
+                            callback.onLoaded(new int[] {bounds.outWidth, bounds.outHeight});
+                            return false;
+                        }
+                    })
+                    .submit(size[0], size[1]);
+
+            return new RequestCoalescer.Cancelable() {
+                @Override
+                public void cancel() {
+                    // clears the request on the main thread
+                    target.cancel(true);
+                }
+            };
+        }
+
+        private synchronized int[] getCacheWidthAndHeight() {
+            if (dimens != null) {
+                return dimens;
+            }
+
+            Resources resources = context.getResources();
+            int imageWidth = resources.getDimensionPixelSize(R.dimen.article_articleWidth);
+            if (imageWidth <= 0) {
+                WindowManager window =
+                        (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+                Display display = window.getDefaultDisplay();
+                Point size = new Point();
+                display.getSize(size);
+                imageWidth = size.x;
+            }
+
+            int imageHeight = resources.getDimensionPixelSize(R.dimen.article_imageParallax) +
+                    resources.getDimensionPixelSize(R.dimen.article_imageHeight);
+
+            dimens = new int[] {imageWidth, imageHeight};
+            return dimens;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+import xyz.klinker.android.article.data.DataSource;
+
+/**
+ * Fills in the size of an article's images on its blocks, once they are known, and saves them
+ * with the rest of the blocks. The adapter uses the saved sizes to reserve the space for each
+ * image before it loads, so the article doesn't jump around as the images come in, and to leave
+ * out images that are too small to show without loading them at all.
+ *
+ * An article's images usually finish loading around the same time, so the sizes are collected
+ * over a short window and each article's blocks are saved once for all of them.
+ */
+final class ImageSizeRecorder {
+
+    @VisibleForTesting static final long WINDOW_MILLIS = 1000;
+
+    private static ImageSizeRecorder instance;
+
+    private final DataSource source;
+    private final Executor executor;
+    private final Handler handler;
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private Set<Article> pending = createPendingSet();
+
+    @VisibleForTesting
+    ImageSizeRecorder(DataSource source, Executor executor, Handler handler) {
+        this.source = source;
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    /**
+     * Gets the recorder that saves sizes to the app's database.
+     */
+    static synchronized ImageSizeRecorder get(Context context) {
+        if (instance == null) {
+            instance = new ImageSizeRecorder(DataSource.get(context.getApplicationContext()),
+                    new Executor() {
+                        @Override
+                        public void execute(Runnable runnable) {
+                            ArticleExecutors.executeIo(runnable,
+                                    ArticleExecutors.PRIORITY_PRELOAD);
+                        }
+                    }, new Handler(Looper.getMainLooper()));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Sets the size of an image block and queues its article to be saved. Nothing is saved if the
+     * size is unknown or the block already has it.
+     *
+     * @param article the article that the block belongs to.
+     * @param block the image block.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     */
+    void record(Article article, ArticleBlock block, int width, int height) {
+        if (width <= 0 || height <= 0 || (block.width == width && block.height == height)) {
+            return;
+        }
+
+        block.width = width;
+        block.height = height;
+
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                handler.postDelayed(flushRunnable, WINDOW_MILLIS);
+            }
+
+            pending.add(article);
+        }
+    }
+
+    /**
+     * Saves the blocks of every article that is waiting for the window to pass.
+     */
+    @VisibleForTesting
+    void flush() {
+        final List<Article> articles;
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+            articles = new ArrayList<>(pending);
+            pending = createPendingSet();
+        }
+
+        if (articles.isEmpty()) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.open();
+                source.beginTransaction();
+                try {
+                    for (Article article : articles) {
+                        // articles that haven't been saved or parsed yet will save their blocks,
+                        // sizes included, once they are
+                        if (article.id > 0) {
+                            source.updateImageSizes(article);
+                        }
+                    }
+
+                    source.setTransactionSuccessful();
+                } finally {
+                    source.endTransaction();
+                    source.close();
+                }
+            }
+        });
+    }
+
+    private static Set<Article> createPendingSet() {
+        // separate copies of the same article each hold their own blocks, so both are saved
+        return Collections.newSetFromMap(new IdentityHashMap<Article, Boolean>());
+    }
+}
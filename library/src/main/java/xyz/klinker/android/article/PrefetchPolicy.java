@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.net.ConnectivityManagerCompat;
+
+import java.io.File;
+import java.util.Locale;
+
+import xyz.klinker.android.article.data.DataSource;
+
+/**
+ * Decides how much of a preloaded article is worth downloading right now. The article text is
+ * always downloaded, since it is small and is what makes the article open instantly. Images are
+ * skipped when the device is low on battery or storage, and only the header image is downloaded
+ * on a metered network or when the content budget is almost used up.
+ *
+ * Every decision is logged with the state that it was based on, so the thresholds can be tuned:
+ * {@code adb shell setprop log.tag.PrefetchPolicy DEBUG}.
+ */
+final class PrefetchPolicy {
+
+    private static final String TAG = "PrefetchPolicy";
+
+    @VisibleForTesting static final float LOW_BATTERY = 0.15f;
+    @VisibleForTesting static final long MIN_USABLE_SPACE = 100 * 1024 * 1024;
+    @VisibleForTesting static final float CONTENT_BUDGET_NEARLY_FULL = 0.9f;
+
+    /**
+     * How much of an article to download.
+     */
+    enum Decision {
+        TEXT_ONLY, HEADER_IMAGE, EVERYTHING
+    }
+
+    /**
+     * Provides the state of the network.
+     */
+    interface Connectivity {
+        boolean isConnected();
+        boolean isMetered();
+    }
+
+    /**
+     * Provides the state of the battery.
+     */
+    interface Battery {
+        boolean isPowerSaveMode();
+        boolean isCharging();
+
+        /**
+         * Gets the battery level, from 0 to 1.
+         */
+        float getLevel();
+    }
+
+    /**
+     * Provides the space left on the device.
+     */
+    interface Storage {
+
+        /**
+         * Gets the number of bytes that can still be written to the cache directory.
+         */
+        long getUsableSpace();
+    }
+
+    private static PrefetchPolicy instance;
+
+    private final Connectivity connectivity;
+    private final Battery battery;
+    private final Storage storage;
+
+    @VisibleForTesting
+    PrefetchPolicy(Connectivity connectivity, Battery battery, Storage storage) {
+        this.connectivity = connectivity;
+        this.battery = battery;
+        this.storage = storage;
+    }
+
+    /**
+     * Gets the policy that reads the state of this device.
+     */
+    static synchronized PrefetchPolicy get(Context context) {
+        if (instance == null) {
+            DeviceState state = new DeviceState(context.getApplicationContext());
+            instance = new PrefetchPolicy(state, state, state);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Decides how much of an article to download. This reads the size of the stored content, so
+     * it should not be called from the UI thread.
+     *
+     * @param source the data source that the article is stored in.
+     * @return the decision.
+     */
+    Decision decide(DataSource source) {
+        boolean connected = connectivity.isConnected();
+        boolean metered = connectivity.isMetered();
+        boolean powerSave = battery.isPowerSaveMode();
+        boolean charging = battery.isCharging();
+        float level = battery.getLevel();
+        long usableSpace = storage.getUsableSpace();
+        long maxBytes = ContentEvictor.getMaxBytes();
+
+        long contentSize = 0;
+        if (maxBytes > 0) {
+            source.open();
+            contentSize = source.getContentSize();
+            source.close();
+        }
+
+        Decision decision;
+        String reason;
+        if (!connected) {
+            decision = Decision.TEXT_ONLY;
+            reason = "offline";
+        } else if (powerSave) {
+            decision = Decision.TEXT_ONLY;
+            reason = "battery saver";
+        } else if (!charging && level < LOW_BATTERY) {
+            decision = Decision.TEXT_ONLY;
+            reason = "low battery";
+        } else if (usableSpace < MIN_USABLE_SPACE) {
+            decision = Decision.TEXT_ONLY;
+            reason = "low storage";
+        } else if (metered) {
+            decision = Decision.HEADER_IMAGE;
+            reason = "metered network";
+        } else if (maxBytes > 0 && contentSize >= maxBytes * CONTENT_BUDGET_NEARLY_FULL) {
+            decision = Decision.HEADER_IMAGE;
+            reason = "content budget nearly full";
+        } else {
+            decision = Decision.EVERYTHING;
+            reason = "no restrictions";
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, String.format(Locale.US, "%s (%s): connected=%b, metered=%b, " +
+                            "powerSave=%b, charging=%b, battery=%.0f%%, usableSpace=%dMB, " +
+                            "content=%dKB of %dKB",
+                    decision, reason, connected, metered, powerSave, charging, level * 100,
+                    usableSpace / (1024 * 1024), contentSize / 1024, maxBytes / 1024));
+        }
+
+        return decision;
+    }
+
+    /**
+     * Reads the network, battery and storage state from the system services.
+     */
+    static final class DeviceState implements Connectivity, Battery, Storage {
+        private final Context context;
+
+        DeviceState(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public boolean isConnected() {
+            NetworkInfo info = getConnectivityManager().getActiveNetworkInfo();
+            return info != null && info.isConnected();
+        }
+
+        @Override
+        public boolean isMetered() {
+            return ConnectivityManagerCompat.isActiveNetworkMetered(getConnectivityManager());
+        }
+
+        @Override
+        public boolean isPowerSaveMode() {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                return false;
+            }
+
+            PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            return power != null && power.isPowerSaveMode();
+        }
+
+        @Override
+        public boolean isCharging() {
+            Intent status = getBatteryStatus();
+            return status != null && status.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+
+        @Override
+        public float getLevel() {
+            Intent status = getBatteryStatus();
+            int level = status == null ? -1 : status.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = status == null ? -1 : status.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+
+            // without a reading, don't hold anything back
+            return level < 0 || scale <= 0 ? 1f : level / (float) scale;
+        }
+
+        @Override
+        public long getUsableSpace() {
+            File cache = context.getCacheDir();
+            return cache == null ? 0 : cache.getUsableSpace();
+        }
+
+        private ConnectivityManager getConnectivityManager() {
+            return (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        }
+
+        private Intent getBatteryStatus() {
+            // the battery broadcast is sticky, so this reads the last one without registering
+            return context.registerReceiver(null,
+                    new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.os.Handler;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import xyz.klinker.android.article.api.ApiCallback;
+import xyz.klinker.android.article.api.ArticleApiException;
+import xyz.klinker.android.article.api.ArticleService;
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.DataSource;
+
+/**
+ * Collects preload requests over a short window and sends them to the server together, instead of
+ * making one round trip per url. The results are saved to the database in a single transaction
+ * and then handed back to each request's callback.
+ *
+ * If the server rejects the batch request, each url in it is parsed individually instead.
+ */
+final class PreloadBatcher {
+
+    @VisibleForTesting static final long WINDOW_MILLIS = 250;
+    @VisibleForTesting static final int MAX_BATCH_SIZE = 20;
+
+    private final ArticleService service;
+    private final Handler handler;
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private List<Request> pending = new ArrayList<>();
+
+    PreloadBatcher(ArticleService service, Handler handler) {
+        this.service = service;
+        this.handler = handler;
+    }
+
+    /**
+     * Adds a url to the next batch. The batch is sent once it is full, or once the window since
+     * the first url was added has passed.
+     *
+     * @param url the url to parse.
+     * @param source the data source to save the article to.
+     * @param stored the article that is already stored in the database without its content, if
+     *               any.
+     * @param callback the callback to receive the article, or null if it could not be loaded. This
+     *                 is invoked on a background thread.
+     * @return a handle to remove the url from the batch, if it has not been sent yet.
+     */
+    RequestCoalescer.Cancelable add(String url, DataSource source, @Nullable Article stored,
+                                    RequestCoalescer.Callback<Article> callback) {
+        final Request request = new Request(url, source, stored, callback);
+
+        List<Request> batch = null;
+        synchronized (this) {
+            pending.add(request);
+
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                batch = takePending();
+            } else if (pending.size() == 1) {
+                handler.postDelayed(flushRunnable, WINDOW_MILLIS);
+            }
+        }
+
+        if (batch != null) {
+            send(batch);
+        }
+
+        return new RequestCoalescer.Cancelable() {
+            @Override
+            public void cancel() {
+                synchronized (PreloadBatcher.this) {
+                    pending.remove(request);
+                    if (pending.isEmpty()) {
+                        handler.removeCallbacks(flushRunnable);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends a url that is waiting for the window to pass on its own, right away. This is used
+     * once somebody is waiting on the url, so they don't have to wait on the rest of the batch as
+     * well.
+     *
+     * @param key the url, without its parameters.
+     * @return true if the url was waiting and has been sent, or false if it was not in the batch.
+     */
+    boolean promote(String key) {
+        Request promoted = null;
+        synchronized (this) {
+            for (Request request : pending) {
+                if (key.equals(ArticleUtils.removeUrlParameters(request.url))) {
+                    promoted = request;
+                    break;
+                }
+            }
+
+            if (promoted == null) {
+                return false;
+            }
+
+            pending.remove(promoted);
+            if (pending.isEmpty()) {
+                handler.removeCallbacks(flushRunnable);
+            }
+        }
+
+        sendSingle(promoted);
+        return true;
+    }
+
+    /**
+     * Sends everything that is waiting for the window to pass.
+     */
+    @VisibleForTesting
+    void flush() {
+        List<Request> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private List<Request> takePending() {
+        handler.removeCallbacks(flushRunnable);
+
+        List<Request> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void send(final List<Request> batch) {
+        if (batch.size() == 1) {
+            sendSingle(batch.get(0));
+            return;
+        }
+
+        List<String> urls = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            urls.add(request.url);
+        }
+
+        service.parseBatch(urls).enqueue(new ApiCallback<Article[]>() {
+            @Override
+            public void onSuccess(final Article[] articles) {
+                persist(batch, articles);
+            }
+
+            @Override
+            public void onFailure(ArticleApiException error) {
+                if (error.getReason() == ArticleApiException.Reason.HTTP) {
+                    // the server doesn't support batches, fall back to one request per url
+                    for (Request request : batch) {
+                        sendSingle(request);
+                    }
+                } else {
+                    Log.e("PreloadBatcher", "failed to load batch: " + error.getReason(), error);
+                    persist(batch, new Article[0]);
+                }
+            }
+        });
+    }
+
+    private void sendSingle(final Request request) {
+        final List<Request> batch = new ArrayList<>(1);
+        batch.add(request);
+
+        service.parseAsync(request.url).enqueue(new ApiCallback<Article>() {
+            @Override
+            public void onSuccess(Article article) {
+                persist(batch, new Article[] { article });
+            }
+
+            @Override
+            public void onFailure(ArticleApiException error) {
+                Log.e("PreloadBatcher", "failed to load " + request.url + ": " +
+                        error.getReason(), error);
+                persist(batch, new Article[0]);
+            }
+        });
+    }
+
+    /**
+     * Saves the articles from the server and hands them back to their callbacks. Articles are
+     * matched to requests by position, and requests without an article receive null.
+     */
+    private void persist(final List<Request> batch, final Article[] articles) {
+        // saving touches the database, so get off of OkHttp's threads first
+        ArticleExecutors.executeIo(new Runnable() {
+            @Override
+            public void run() {
+                Article[] results = new Article[batch.size()];
+                for (int i = 0; i < results.length && i < articles.length; i++) {
+                    results[i] = articles[i];
+                }
+
+                saveInTransactions(batch, results);
+
+                for (int i = 0; i < batch.size(); i++) {
+                    ArticleUtils.cacheArticle(results[i]);
+                    batch.get(i).callback.onLoaded(results[i]);
+                }
+            }
+        }, ArticleExecutors.PRIORITY_PRELOAD);
+    }
+
+    /**
+     * Saves the articles, with one transaction for each data source. If a transaction fails, the
+     * articles from it are replaced with null, the same as if they had failed to load, since the
+     * ids that they were given were rolled back.
+     */
+    private static void saveInTransactions(List<Request> batch, Article[] results) {
+        // requests could come from different data sources, each one gets its own transaction
+        Map<DataSource, List<Integer>> bySource = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (results[i] == null) {
+                continue;
+            }
+
+            DataSource source = batch.get(i).source;
+            if (!bySource.containsKey(source)) {
+                bySource.put(source, new ArrayList<Integer>());
+            }
+
+            bySource.get(source).add(i);
+        }
+
+        for (Map.Entry<DataSource, List<Integer>> entry : bySource.entrySet()) {
+            DataSource source = entry.getKey();
+            source.open();
+            source.beginTransaction();
+
+            boolean saved = false;
+            try {
+                for (int i : entry.getValue()) {
+                    Request request = batch.get(i);
+                    ArticleUtils.persistArticle(request.url, source, request.stored, results[i]);
+                }
+
+                source.setTransactionSuccessful();
+                saved = true;
+            } catch (RuntimeException e) {
+                Log.e("PreloadBatcher", "failed to save batch", e);
+            } finally {
+                source.endTransaction();
+                source.close();
+            }
+
+            if (!saved) {
+                for (int i : entry.getValue()) {
+                    results[i] = null;
+                }
+            }
+        }
+    }
+
+    private static final class Request {
+
+        private final String url;
+        private final DataSource source;
+        private final Article stored;
+        private final RequestCoalescer.Callback<Article> callback;
+
+        private Request(String url, DataSource source, Article stored,
+                        RequestCoalescer.Callback<Article> callback) {
+            this.url = url;
+            this.source = source;
+            this.stored = stored;
+            this.callback = callback;
+        }
+    }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import xyz.klinker.android.article.api.ArticleApi;
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.DataSource;
+import xyz.klinker.android.article.data.QueuedPreload;
+import xyz.klinker.android.article.data.model.PreloadModel;
+
+/**
+ * Preloads a queue of urls in the background. The queue is stored in the database, so urls that
+ * have not been preloaded yet are picked up again after the process is killed, once the queue is
+ * started again.
+ *
+ * Urls are taken off of the queue a batch at a time and preloaded together, so they share a
+ * single batch request to the server. Urls that fail are tried again later, waiting twice as long
+ * after each failure, until they have failed {@link #MAX_ATTEMPTS} times. While the device does
+ * not meet the queue's constraints (an unmetered network and/or charging), nothing is preloaded
+ * and the constraints are checked again every few minutes.
+ */
+final class PreloadQueue {
+
+    private static final String TAG = "PreloadQueue";
+
+    @VisibleForTesting static final int BATCH_SIZE = PreloadBatcher.MAX_BATCH_SIZE;
+    @VisibleForTesting static final int MAX_ATTEMPTS = 5;
+    @VisibleForTesting static final long INITIAL_BACKOFF_MILLIS = 30 * 1000;
+    @VisibleForTesting static final long MAX_BACKOFF_MILLIS = 60 * 60 * 1000;
+    @VisibleForTesting static final long CONSTRAINT_CHECK_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Preloads a single url.
+     */
+    interface Preloader {
+
+        /**
+         * Starts preloading a url. This is called on the main thread.
+         *
+         * @param url the url to preload.
+         * @param callback receives true once the url is preloaded, or false if it failed.
+         */
+        void preload(String url, RequestCoalescer.Callback<Boolean> callback);
+    }
+
+    private static PreloadQueue instance;
+
+    private final DataSource source;
+    private final Preloader preloader;
+    private final PrefetchPolicy.Connectivity connectivity;
+    private final PrefetchPolicy.Battery battery;
+    private final Executor executor;
+    private final Handler handler;
+    private final Runnable startRunnable = new Runnable() {
+        @Override
+        public void run() {
+            start();
+        }
+    };
+    private final Runnable processRunnable = new Runnable() {
+        @Override
+        public void run() {
+            processNextBatch();
+        }
+    };
+
+    private volatile boolean requireUnmetered = true;
+    private volatile boolean requireCharging = false;
+
+    private boolean processing = false;
+    private boolean restart = false;
+    private boolean recovered = false;
+
+    @VisibleForTesting
+    PreloadQueue(DataSource source, Preloader preloader,
+                 PrefetchPolicy.Connectivity connectivity, PrefetchPolicy.Battery battery,
+                 Executor executor, Handler handler) {
+        this.source = source;
+        this.preloader = preloader;
+        this.connectivity = connectivity;
+        this.battery = battery;
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    /**
+     * Gets the queue that preloads urls with the given api. The queue keeps using the api that it
+     * was first created with.
+     */
+    static synchronized PreloadQueue get(Context context, ArticleApi api) {
+        if (instance == null) {
+            // the queue's own utils, so the caller cancelling theirs doesn't stop the queue
+            final ArticleUtils utils = new ArticleUtils(api);
+            final Context app = context.getApplicationContext();
+            final DataSource source = DataSource.get(app);
+            PrefetchPolicy.DeviceState state = new PrefetchPolicy.DeviceState(app);
+
+            instance = new PreloadQueue(source, new Preloader() {
+                @Override
+                public void preload(String url,
+                                    final RequestCoalescer.Callback<Boolean> callback) {
+                    utils.preloadArticle(app, url, source, new ArticleLoadedListener() {
+                        @Override
+                        public void onArticleLoaded(Article article) {
+                            callback.onLoaded(article != null);
+                        }
+                    });
+                }
+            }, state, state, new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    ArticleExecutors.executeIo(runnable, ArticleExecutors.PRIORITY_PRELOAD);
+                }
+            }, new Handler(Looper.getMainLooper()));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Sets the conditions that the device has to be in for urls to be preloaded.
+     *
+     * @param requireUnmetered true to only preload on an unmetered network, such as wifi.
+     * @param requireCharging true to only preload while the device is charging.
+     */
+    void setConstraints(boolean requireUnmetered, boolean requireCharging) {
+        this.requireUnmetered = requireUnmetered;
+        this.requireCharging = requireCharging;
+        start();
+    }
+
+    /**
+     * Adds urls to the queue and starts preloading them.
+     *
+     * @param urls the urls to preload.
+     */
+    void enqueue(final Collection<String> urls) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.open();
+                source.enqueuePreloads(urls);
+                source.close();
+
+                start();
+            }
+        });
+    }
+
+    /**
+     * Starts preloading the urls in the queue. If the queue is already being processed, it checks
+     * for new urls again before it stops, since it may have looked before they were added.
+     */
+    void start() {
+        synchronized (this) {
+            if (processing) {
+                restart = true;
+                return;
+            }
+
+            processing = true;
+        }
+
+        handler.removeCallbacks(startRunnable);
+        executor.execute(processRunnable);
+    }
+
+    @VisibleForTesting
+    synchronized boolean isProcessing() {
+        return processing;
+    }
+
+    private void processNextBatch() {
+        try {
+            preloadNextBatch();
+        } catch (RuntimeException e) {
+            // left marked as processing, the queue would never be started again
+            synchronized (this) {
+                processing = false;
+                restart = false;
+            }
+
+            throw e;
+        }
+    }
+
+    private void preloadNextBatch() {
+        List<QueuedPreload> batch;
+
+        source.open();
+        try {
+            if (!recovered) {
+                // anything that was running belonged to a process that is gone now
+                source.resetRunningPreloads();
+                recovered = true;
+            }
+
+            long next = source.getNextPreloadAttemptAt();
+            if (next == -1) {
+                stop(-1);
+                return;
+            }
+
+            String unmet = getUnmetConstraint();
+            if (unmet != null) {
+                Log.v(TAG, "waiting to preload: " + unmet);
+                stop(CONSTRAINT_CHECK_MILLIS);
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            if (next > now) {
+                stop(next - now);
+                return;
+            }
+
+            batch = source.takeDuePreloads(now, BATCH_SIZE);
+        } finally {
+            source.close();
+        }
+
+        if (batch.isEmpty()) {
+            stop(-1);
+        } else {
+            preloadBatch(batch);
+        }
+    }
+
+    private void preloadBatch(final List<QueuedPreload> batch) {
+        final AtomicInteger remaining = new AtomicInteger(batch.size());
+
+        // the preloader creates its handlers on the calling thread, so start it from the main one
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (final QueuedPreload preload : batch) {
+                    preloader.preload(preload.url, new RequestCoalescer.Callback<Boolean>() {
+                        @Override
+                        public void onLoaded(final Boolean success) {
+                            executor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        record(preload, success != null && success);
+                                    } finally {
+                                        if (remaining.decrementAndGet() == 0) {
+                                            processNextBatch();
+                                        }
+                                    }
+                                }
+                            });
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void record(QueuedPreload preload, boolean success) {
+        int status;
+        int attempts = preload.attempts;
+        long nextAttemptAt = 0;
+
+        if (success) {
+            status = PreloadModel.STATUS_DONE;
+        } else {
+            attempts++;
+            if (attempts >= MAX_ATTEMPTS) {
+                status = PreloadModel.STATUS_FAILED;
+                Log.w(TAG, "giving up on preloading " + preload.url);
+            } else {
+                status = PreloadModel.STATUS_PENDING;
+                nextAttemptAt = System.currentTimeMillis() + getBackoff(attempts);
+            }
+        }
+
+        source.open();
+        source.updatePreload(preload.id, status, attempts, nextAttemptAt);
+        source.close();
+    }
+
+    /**
+     * Stops processing the queue, unless it was started again after this batch looked for urls.
+     *
+     * @param delay the time to start again after, or -1 to wait until more urls are queued.
+     */
+    private void stop(long delay) {
+        boolean again;
+        synchronized (this) {
+            again = restart;
+            restart = false;
+            processing = again;
+        }
+
+        if (again) {
+            // started again after this batch looked at the queue, so look again
+            executor.execute(processRunnable);
+            return;
+        }
+
+        if (delay >= 0) {
+            handler.postDelayed(startRunnable, delay);
+        }
+    }
+
+    @Nullable
+    private String getUnmetConstraint() {
+        if (!connectivity.isConnected()) {
+            return "offline";
+        } else if (requireUnmetered && connectivity.isMetered()) {
+            return "metered network";
+        } else if (requireCharging && !battery.isCharging()) {
+            return "not charging";
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Gets how long to wait before trying a url again.
+     *
+     * @param attempts the number of times that the url has failed.
+     */
+    @VisibleForTesting
+    static long getBackoff(int attempts) {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int i = 1; i < attempts && backoff < MAX_BACKOFF_MILLIS; i++) {
+            backoff *= 2;
+        }
+
+        return Math.min(backoff, MAX_BACKOFF_MILLIS);
+    }
+}
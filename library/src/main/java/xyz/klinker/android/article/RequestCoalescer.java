@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Table of in-flight requests, keyed by a normalized url. When a second caller asks for a key that
+ * is already being loaded, it will receive the result of the pending load instead of kicking off
+ * a duplicate load of its own.
+ *
+ * Loads can either block the calling thread with {@link #load(String, Loader)}, or run in the
+ * background with {@link #load(String, AsyncLoader, Callback)}. Both kinds share the same table,
+ * so a blocking caller can attach to a background load and the other way around. A background
+ * load is cancelled once every caller waiting on it has detached.
+ *
+ * @param <T> the type of result that is loaded.
+ */
+final class RequestCoalescer<T> {
+
+    /**
+     * The work that should only run once for all concurrent callers of a key.
+     */
+    interface Loader<T> {
+        T load();
+    }
+
+    /**
+     * Work that should only run once for all concurrent callers of a key, which loads in the
+     * background and provides its result to the callback when it is done.
+     */
+    interface AsyncLoader<T> {
+        Cancelable start(Callback<T> callback);
+    }
+
+    /**
+     * Receives the result of a load.
+     */
+    interface Callback<T> {
+        void onLoaded(T result);
+    }
+
+    /**
+     * Handle to stop a background load once nobody is waiting on it anymore.
+     */
+    interface Cancelable {
+        void cancel();
+    }
+
+    private final ConcurrentHashMap<String, PendingRequest<T>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the loader on the calling thread, or waits for the result of a loader that is already
+     * running for the same key.
+     *
+     * @param key the normalized key for the request.
+     * @param loader the work to run if there is no request in flight for the key.
+     * @return the result of the loader, shared between all concurrent callers.
+     */
+    T load(String key, Loader<T> loader) {
+        while (true) {
+            PendingRequest<T> pending = new PendingRequest<>();
+            PendingRequest<T> existing = inFlight.putIfAbsent(key, pending);
+
+            if (existing == null) {
+                T result = null;
+                try {
+                    result = loader.load();
+                    return result;
+                } finally {
+                    finish(key, pending, result);
+                }
+            }
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            final List<T> result = new ArrayList<>(1);
+            if (existing.attach(new Callback<T>() {
+                @Override
+                public void onLoaded(T loaded) {
+                    result.add(loaded);
+                    latch.countDown();
+                }
+            }, false)) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+
+                return result.get(0);
+            }
+
+            // the existing request finished or was cancelled while we were attaching to it
+            inFlight.remove(key, existing);
+        }
+    }
+
+    /**
+     * Starts the loader, or attaches to a loader that is already running for the same key. The
+     * callback may be invoked on any thread.
+     *
+     * @param key the normalized key for the request.
+     * @param loader the work to start if there is no request in flight for the key.
+     * @param callback the callback to receive the result, shared between all concurrent callers.
+     */
+    void load(final String key, AsyncLoader<T> loader, Callback<T> callback) {
+        while (true) {
+            final PendingRequest<T> pending = new PendingRequest<>();
+            pending.attach(callback, true);
+            PendingRequest<T> existing = inFlight.putIfAbsent(key, pending);
+
+            if (existing == null) {
+                pending.setCancelable(loader.start(new Callback<T>() {
+                    @Override
+                    public void onLoaded(T result) {
+                        finish(key, pending, result);
+                    }
+                }));
+                return;
+            } else if (existing.attach(callback, true)) {
+                return;
+            }
+
+            // the existing request finished or was cancelled while we were attaching to it
+            inFlight.remove(key, existing);
+        }
+    }
+
+    /**
+     * Stops waiting for a background load. If no other callers are waiting for the same key, the
+     * load is cancelled. The callback will not be invoked after this returns, unless the result
+     * was already being delivered.
+     *
+     * @param key the normalized key for the request.
+     * @param callback the callback that was provided to {@link #load(String, AsyncLoader, Callback)}.
+     */
+    void detach(String key, Callback<T> callback) {
+        PendingRequest<T> pending = inFlight.get(key);
+        if (pending != null && pending.detach(callback)) {
+            inFlight.remove(key, pending);
+            pending.cancel();
+        }
+    }
+
+    /**
+     * Gets the number of requests that are currently in flight.
+     */
+    @VisibleForTesting
+    int size() {
+        return inFlight.size();
+    }
+
+    private void finish(String key, PendingRequest<T> pending, T result) {
+        inFlight.remove(key, pending);
+        pending.complete(result);
+    }
+
+    private static final class PendingRequest<T> {
+
+        private final List<Callback<T>> callbacks = new ArrayList<>();
+        private int blockingWaiters = 0;
+        private boolean done = false;
+        private Cancelable cancelable;
+        private boolean cancelRequested = false;
+
+        synchronized boolean attach(Callback<T> callback, boolean detachable) {
+            if (done) {
+                return false;
+            }
+
+            callbacks.add(callback);
+            if (!detachable) {
+                blockingWaiters++;
+            }
+
+            return true;
+        }
+
+        /**
+         * @return true if nobody is waiting on the request anymore, and it should be cancelled.
+         */
+        synchronized boolean detach(Callback<T> callback) {
+            if (done || !callbacks.remove(callback)) {
+                return false;
+            }
+
+            return callbacks.isEmpty() && blockingWaiters == 0;
+        }
+
+        void setCancelable(Cancelable cancelable) {
+            boolean cancelNow;
+            synchronized (this) {
+                this.cancelable = cancelable;
+                cancelNow = cancelRequested;
+            }
+
+            if (cancelNow && cancelable != null) {
+                cancelable.cancel();
+            }
+        }
+
+        void cancel() {
+            Cancelable toCancel;
+            synchronized (this) {
+                done = true;
+                cancelRequested = true;
+                toCancel = cancelable;
+            }
+
+            if (toCancel != null) {
+                toCancel.cancel();
+            }
+        }
+
+        void complete(T result) {
+            List<Callback<T>> toNotify;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+
+                done = true;
+                toNotify = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+
+            for (Callback<T> callback : toNotify) {
+                callback.onLoaded(result);
+            }
+        }
+    }
+
+}
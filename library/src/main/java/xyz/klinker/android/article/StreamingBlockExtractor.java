@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import xyz.klinker.android.article.data.ArticleBlock;
+
+/**
+ * Extracts article blocks by tokenizing the html in a single pass, instead of building a full DOM
+ * and running a selector over it. Only the stack of open tag names and the blocks that are still
+ * open are held in memory, which keeps the peak allocation for long articles far lower than a
+ * jsoup document.
+ *
+ * The output matches {@link ArticleUtils#extractBlocksWithJsoup(String)}: the same tags are
+ * selected, blocks are emitted in document order and their text is normalized the same way as
+ * {@link org.jsoup.nodes.Element#text()}. The implicit tag closing rules from the html spec are
+ * followed for the tags that matter to the layout of an article (paragraphs, headers and list
+ * items), but things like table fostering are not, so callers should fall back to jsoup if this
+ * throws.
+ */
+final class StreamingBlockExtractor {
+
+    /**
+     * Receives blocks as soon as they are complete.
+     */
+    interface BlockListener {
+        void onBlock(ArticleBlock block);
+    }
+
+    private static final Set<String> SELECTED = newSet(
+            "p", "h1", "h2", "h3", "h4", "h5", "h6", "img", "blockquote", "pre", "li");
+    private static final Set<String> HEADINGS = newSet("h1", "h2", "h3", "h4", "h5", "h6");
+    private static final Set<String> IGNORED = newSet("html", "head", "body");
+    private static final Set<String> VOID = newSet(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta",
+            "param", "source", "track", "wbr");
+    private static final Set<String> RAW_TEXT = newSet(
+            "script", "style", "xmp", "iframe", "noembed", "noframes");
+    private static final Set<String> ESCAPABLE_RAW_TEXT = newSet("title", "textarea");
+    private static final Set<String> PRESERVE_WHITESPACE = newSet(
+            "pre", "plaintext", "title", "textarea");
+
+    // tags that jsoup considers block level, a space is added to the text before each of these
+    private static final Set<String> BLOCK = newSet(
+            "html", "head", "body", "frameset", "script", "noscript", "style", "meta", "link",
+            "title", "frame", "noframes", "section", "nav", "aside", "hgroup", "header", "footer",
+            "p", "h1", "h2", "h3", "h4", "h5", "h6", "ul", "ol", "pre", "div", "blockquote", "hr",
+            "address", "figure", "figcaption", "form", "fieldset", "ins", "del", "s", "dl", "dt",
+            "dd", "li", "table", "caption", "thead", "tfoot", "tbody", "colgroup", "col", "tr",
+            "th", "td", "video", "audio", "canvas", "details", "menu", "plaintext", "template",
+            "article", "main", "svg", "math", "br");
+
+    // start tags that close an open paragraph
+    private static final Set<String> CLOSES_PARAGRAPH = newSet(
+            "address", "article", "aside", "blockquote", "center", "details", "dir", "div", "dl",
+            "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol",
+            "p", "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6", "pre", "listing",
+            "form", "li", "dd", "dt", "plaintext", "hr", "xmp");
+
+    // the "special" elements from the html spec, which stray end tags cannot close through
+    private static final Set<String> SPECIAL = newSet(
+            "address", "applet", "area", "article", "aside", "base", "basefont", "bgsound",
+            "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup", "dd",
+            "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure",
+            "footer", "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head",
+            "header", "hgroup", "hr", "html", "iframe", "img", "input", "li", "link", "listing",
+            "main", "marquee", "menu", "meta", "nav", "noembed", "noframes", "noscript", "object",
+            "ol", "p", "param", "plaintext", "pre", "script", "section", "select", "source",
+            "style", "summary", "table", "tbody", "td", "template", "textarea", "tfoot", "th",
+            "thead", "title", "tr", "track", "ul", "wbr", "xmp");
+
+    private static final Set<String> SCOPE_BOUNDARIES = newSet(
+            "applet", "caption", "html", "table", "td", "th", "marquee", "object");
+    private static final Set<String> BUTTON_SCOPE_BOUNDARIES = newSet(
+            "applet", "caption", "html", "table", "td", "th", "marquee", "object", "button");
+    private static final Set<String> LIST_SCOPE_BOUNDARIES = newSet(
+            "applet", "caption", "html", "table", "td", "th", "marquee", "object", "ol", "ul");
+
+    private final String html;
+    private final BlockListener listener;
+
+    private final List<String> stack = new ArrayList<>();
+    private final List<OpenBlock> openBlocks = new ArrayList<>();
+    private final List<ArticleBlock> pendingBlocks = new ArrayList<>();
+    private int pos = 0;
+    private boolean quirksMode = true;
+
+    /**
+     * Extracts all of the blocks from the html.
+     *
+     * @param html the article content.
+     * @return the blocks, in the order that they appear in the html.
+     */
+    static List<ArticleBlock> extract(String html) {
+        final List<ArticleBlock> blocks = new ArrayList<>();
+        extract(html, new BlockListener() {
+            @Override
+            public void onBlock(ArticleBlock block) {
+                blocks.add(block);
+            }
+        });
+
+        return blocks;
+    }
+
+    /**
+     * Extracts all of the blocks from the html, handing each one to the listener as soon as it,
+     * and any block that it is nested inside of, has been closed.
+     *
+     * @param html the article content.
+     * @param listener the listener to receive blocks, in the order that they appear in the html.
+     */
+    static void extract(String html, BlockListener listener) {
+        new StreamingBlockExtractor(html, listener).run();
+    }
+
+    private StreamingBlockExtractor(String html, BlockListener listener) {
+        this.html = html == null ? "" : html;
+        this.listener = listener;
+    }
+
+    private void run() {
+        int length = html.length();
+        int textStart = 0;
+        int search = 0;
+
+        while (search < length) {
+            int tagStart = html.indexOf('<', search);
+            if (tagStart == -1) {
+                break;
+            } else if (!isMarkup(tagStart)) {
+                // a stray '<' is just text, keep it with the text around it
+                search = tagStart + 1;
+                continue;
+            }
+
+            text(textStart, tagStart);
+
+            pos = tagStart;
+            readMarkup();
+            textStart = search = pos;
+        }
+
+        text(textStart, length);
+        popTo(0);
+    }
+
+    private boolean isMarkup(int index) {
+        if (index + 1 >= html.length()) {
+            return false;
+        }
+
+        char next = html.charAt(index + 1);
+        return next == '!' || next == '?' || next == '/' || isLetter(next);
+    }
+
+    /**
+     * Reads the markup starting at {@link #pos}, which points at a '<', and moves past it.
+     */
+    private void readMarkup() {
+        int length = html.length();
+        char next = html.charAt(pos + 1);
+
+        if (next == '!') {
+            if (html.startsWith("<!--", pos)) {
+                int end = html.indexOf("-->", pos + 4);
+                pos = end == -1 ? length : end + 3;
+            } else {
+                if (html.regionMatches(true, pos + 2, "doctype html", 0, 12)) {
+                    quirksMode = false;
+                }
+
+                skipPast('>');
+            }
+        } else if (next == '/') {
+            if (pos + 2 < length && isLetter(html.charAt(pos + 2))) {
+                pos += 2;
+                String name = readTagName();
+                skipPast('>');
+                endTag(name);
+            } else {
+                skipPast('>');
+            }
+        } else if (next == '?') {
+            skipPast('>');
+        } else {
+            pos += 1;
+            readStartTag();
+        }
+    }
+
+    private void readStartTag() {
+        String name = readTagName();
+        String src = null;
+        boolean selfClosing = false;
+        int length = html.length();
+
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (c == '>') {
+                pos++;
+                break;
+            } else if (c == '/') {
+                selfClosing = pos + 1 < length && html.charAt(pos + 1) == '>';
+                pos++;
+                continue;
+            } else if (isWhitespace(c)) {
+                pos++;
+                continue;
+            }
+
+            selfClosing = false;
+
+            int nameStart = pos;
+            while (pos < length) {
+                c = html.charAt(pos);
+                if (isWhitespace(c) || c == '/' || c == '>' || (c == '=' && pos > nameStart)) {
+                    break;
+                }
+                pos++;
+            }
+            String attribute = html.substring(nameStart, pos);
+
+            skipWhitespace();
+            if (pos >= length || html.charAt(pos) != '=') {
+                continue;
+            }
+
+            pos++;
+            skipWhitespace();
+
+            int valueStart;
+            int valueEnd;
+            if (pos < length && (html.charAt(pos) == '"' || html.charAt(pos) == '\'')) {
+                char quote = html.charAt(pos);
+                valueStart = pos + 1;
+                valueEnd = html.indexOf(quote, valueStart);
+                if (valueEnd == -1) {
+                    valueEnd = length;
+                }
+                pos = Math.min(valueEnd + 1, length);
+            } else {
+                valueStart = pos;
+                while (pos < length && !isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') {
+                    pos++;
+                }
+                valueEnd = pos;
+            }
+
+            if (src == null && name.equals("img") && attribute.equalsIgnoreCase("src")) {
+                src = Parser.unescapeEntities(html.substring(valueStart, valueEnd), true);
+            }
+        }
+
+        startTag(name, src);
+
+        if (RAW_TEXT.contains(name) || ESCAPABLE_RAW_TEXT.contains(name)) {
+            int contentStart = pos;
+            int contentEnd = findRawTextEnd(name);
+
+            if (ESCAPABLE_RAW_TEXT.contains(name)) {
+                text(contentStart, contentEnd);
+            }
+
+            endTag(name);
+        } else if (selfClosing && !VOID.contains(name)) {
+            endTag(name);
+        }
+    }
+
+    /**
+     * Finds the end tag for an element whose content is not parsed as html, and moves past it.
+     *
+     * @return the index that the content of the element ends at.
+     */
+    private int findRawTextEnd(String name) {
+        int length = html.length();
+        int search = pos;
+
+        while (true) {
+            int end = html.indexOf("</", search);
+            if (end == -1) {
+                pos = length;
+                return length;
+            }
+
+            int nameEnd = end + 2 + name.length();
+            if (html.regionMatches(true, end + 2, name, 0, name.length()) &&
+                    (nameEnd >= length || isWhitespace(html.charAt(nameEnd)) ||
+                            html.charAt(nameEnd) == '>' || html.charAt(nameEnd) == '/')) {
+                pos = nameEnd;
+                skipPast('>');
+                return end;
+            }
+
+            search = end + 2;
+        }
+    }
+
+    private String readTagName() {
+        int start = pos;
+        int length = html.length();
+        while (pos < length) {
+            char c = html.charAt(pos);
+            if (isWhitespace(c) || c == '/' || c == '>') {
+                break;
+            }
+            pos++;
+        }
+
+        return html.substring(start, pos).toLowerCase(Locale.US);
+    }
+
+    private void startTag(String name, String src) {
+        if (IGNORED.contains(name)) {
+            return;
+        }
+
+        if (name.equals("li")) {
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                String open = stack.get(i);
+                if (open.equals("li")) {
+                    popTo(i);
+                    break;
+                } else if (SPECIAL.contains(open) &&
+                        !open.equals("address") && !open.equals("div") && !open.equals("p")) {
+                    break;
+                }
+            }
+        }
+
+        // without a doctype, jsoup parses in quirks mode, where tables can be nested in paragraphs
+        if (CLOSES_PARAGRAPH.contains(name) || (name.equals("table") && !quirksMode)) {
+            int paragraph = findInScope("p", BUTTON_SCOPE_BOUNDARIES);
+            if (paragraph != -1) {
+                popTo(paragraph);
+            }
+        }
+
+        if (HEADINGS.contains(name) && !stack.isEmpty() &&
+                HEADINGS.contains(stack.get(stack.size() - 1))) {
+            popTo(stack.size() - 1);
+        }
+
+        if (BLOCK.contains(name)) {
+            for (OpenBlock open : openBlocks) {
+                if (open.text.length() > 0 && !lastCharIsWhitespace(open.text)) {
+                    open.text.append(' ');
+                }
+            }
+        }
+
+        if (SELECTED.contains(name)) {
+            ArticleBlock block = new ArticleBlock();
+            block.tag = name;
+
+            if (name.equals("img")) {
+                block.src = src == null ? "" : src;
+            } else if (name.equals("li")) {
+                block.parentTag = stack.isEmpty() ? "body" : stack.get(stack.size() - 1);
+            }
+
+            pendingBlocks.add(block);
+            if (!VOID.contains(name)) {
+                openBlocks.add(new OpenBlock(block, stack.size()));
+            }
+        }
+
+        if (!VOID.contains(name)) {
+            stack.add(name);
+        }
+
+        flushIfComplete();
+    }
+
+    private void endTag(String name) {
+        if (IGNORED.contains(name)) {
+            return;
+        }
+
+        int index;
+        if (name.equals("p")) {
+            index = findInScope("p", BUTTON_SCOPE_BOUNDARIES);
+            if (index == -1) {
+                // a stray closing paragraph tag creates an empty paragraph
+                startTag("p", null);
+                index = stack.size() - 1;
+            }
+        } else if (name.equals("li")) {
+            index = findInScope("li", LIST_SCOPE_BOUNDARIES);
+        } else if (HEADINGS.contains(name)) {
+            index = -1;
+            for (int i = stack.size() - 1; i >= 0 && !SCOPE_BOUNDARIES.contains(stack.get(i)); i--) {
+                if (HEADINGS.contains(stack.get(i))) {
+                    index = i;
+                    break;
+                }
+            }
+        } else if (SPECIAL.contains(name)) {
+            index = findInScope(name, SCOPE_BOUNDARIES);
+        } else {
+            index = -1;
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                String open = stack.get(i);
+                if (open.equals(name)) {
+                    index = i;
+                    break;
+                } else if (SPECIAL.contains(open)) {
+                    break;
+                }
+            }
+        }
+
+        if (index != -1) {
+            popTo(index);
+        }
+    }
+
+    private int findInScope(String name, Set<String> boundaries) {
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            String open = stack.get(i);
+            if (open.equals(name)) {
+                return i;
+            } else if (boundaries.contains(open)) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Closes every open element at or above the given depth in the stack.
+     */
+    private void popTo(int depth) {
+        while (stack.size() > depth) {
+            stack.remove(stack.size() - 1);
+
+            int last = openBlocks.size() - 1;
+            if (last >= 0 && openBlocks.get(last).depth == stack.size()) {
+                OpenBlock open = openBlocks.remove(last);
+                open.block.text = open.text.toString().trim();
+            }
+        }
+
+        flushIfComplete();
+    }
+
+    private void flushIfComplete() {
+        if (!openBlocks.isEmpty() || pendingBlocks.isEmpty()) {
+            return;
+        }
+
+        for (ArticleBlock block : pendingBlocks) {
+            listener.onBlock(block);
+        }
+
+        pendingBlocks.clear();
+    }
+
+    private void text(int start, int end) {
+        if (openBlocks.isEmpty() || start >= end) {
+            // text outside of any block is never displayed, don't bother decoding it
+            return;
+        }
+
+        String text = html.substring(start, end);
+        if (text.indexOf('&') != -1) {
+            text = Parser.unescapeEntities(text, false);
+        }
+
+        int size = stack.size();
+        boolean preserveWhitespace = size > 0 && (PRESERVE_WHITESPACE.contains(stack.get(size - 1)) ||
+                size > 1 && PRESERVE_WHITESPACE.contains(stack.get(size - 2)));
+
+        for (OpenBlock open : openBlocks) {
+            if (preserveWhitespace) {
+                open.text.append(text);
+            } else {
+                appendNormalizedWhitespace(open.text, text);
+            }
+        }
+    }
+
+    private static void appendNormalizedWhitespace(StringBuilder builder, String text) {
+        boolean stripLeading = lastCharIsWhitespace(builder);
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isWhitespace(c) || c == 160) {
+                if ((stripLeading && !reachedNonWhite) || lastWasWhite) {
+                    continue;
+                }
+
+                builder.append(' ');
+                lastWasWhite = true;
+            } else if (c != 0) {
+                builder.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+    }
+
+    private static boolean lastCharIsWhitespace(StringBuilder builder) {
+        return builder.length() != 0 && builder.charAt(builder.length() - 1) == ' ';
+    }
+
+    private void skipPast(char c) {
+        int index = html.indexOf(c, pos);
+        pos = index == -1 ? html.length() : index + 1;
+    }
+
+    private void skipWhitespace() {
+        while (pos < html.length() && isWhitespace(html.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static Set<String> newSet(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static final class OpenBlock {
+
+        private final ArticleBlock block;
+        private final StringBuilder text = new StringBuilder();
+        private final int depth;
+
+        private OpenBlock(ArticleBlock block, int depth) {
+            this.block = block;
+            this.depth = depth;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.api;
+
+/**
+ * An asynchronous, cancellable request to the article api. Requests are run on OkHttp's
+ * dispatcher, so many of them can be in flight at once without each one holding on to a thread.
+ *
+ * @param <T> the type of the response body.
+ */
+public interface ApiCall<T> {
+
+    /**
+     * Sends the request in the background. The callback will be invoked on one of OkHttp's
+     * background threads, not the main thread.
+     *
+     * @param callback the callback to receive the result.
+     */
+    void enqueue(ApiCallback<T> callback);
+
+    /**
+     * Sends the request on the current thread. Do not call from the main UI thread.
+     *
+     * @return the response body, never null.
+     * @throws ArticleApiException if the request failed or was canceled.
+     */
+    T execute() throws ArticleApiException;
+
+    /**
+     * Cancels the request. If it has been enqueued, the callback will receive an
+     * {@link ArticleApiException} with the {@link ArticleApiException.Reason#CANCELED} reason.
+     */
+    void cancel();
+
+    /**
+     * Whether or not {@link #cancel()} has been called.
+     */
+    boolean isCanceled();
+
+}
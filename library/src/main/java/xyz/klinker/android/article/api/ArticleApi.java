@@ -16,17 +16,24 @@
 
 package xyz.klinker.android.article.api;
 
+import android.content.Context;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.FieldNamingStrategy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Locale;
 
+import okhttp3.Cache;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
@@ -47,18 +54,67 @@ import retrofit2.converter.gson.GsonConverterFactory;
  *
  * ArticleApi api = new ArticleApi(myApiToken);
  * Article article = api.article().parse(myUrl);
+ *
+ * The plain methods on {@link ArticleService} block the calling thread until the request finishes.
+ * Methods returning an {@link ApiCall} can instead be enqueued and cancelled, and report typed
+ * errors instead of returning null.
+ *
+ * When created with a {@link Context}, responses are kept in a disk cache. Cached responses are
+ * revalidated with the server (using their ETag or Last-Modified date) before they are used, unless
+ * the request asks for a stale response, as {@link ArticleService#trendingCached()} does.
  */
 public class ArticleApi {
 
     private static final String API_DEBUG_URL = "http://192.168.86.146:3000/v1/";
     private static final String API_RELEASE_URL = "https://article.klinkerapps.com/v1/";
 
+    private static final String CACHE_DIRECTORY = "article_http_cache";
+    private static final long CACHE_SIZE = 10 * 1024 * 1024;
+
     private static OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
+    private static Cache cache;
+
+    private static Interceptor revalidateInterceptor = new Interceptor() {
+        @Override
+        public okhttp3.Response intercept(Chain chain) throws IOException {
+            okhttp3.Response response = chain.proceed(chain.request());
+
+            // the server doesn't say how long its responses are good for. Store them anyways, but
+            // treat them as already expired so that they get revalidated before they are used.
+            if (response.header("Cache-Control") == null && response.header("Expires") == null) {
+                response = response.newBuilder()
+                        .header("Cache-Control", "max-age=0")
+                        .build();
+            }
+
+            return response;
+        }
+    };
 
     private static CallAdapter.Factory callAdapterFactory = new CallAdapter.Factory() {
         @Override
-        public CallAdapter<Object, Object> get(final Type returnType, Annotation[] annotations,
+        public CallAdapter<?, ?> get(final Type returnType, Annotation[] annotations,
                                        Retrofit retrofit) {
+            if (getRawType(returnType) == ApiCall.class) {
+                if (!(returnType instanceof ParameterizedType)) {
+                    throw new IllegalStateException("ApiCall must be parameterized as ApiCall<T>");
+                }
+
+                final Type responseType =
+                        getParameterUpperBound(0, (ParameterizedType) returnType);
+                return new CallAdapter<Object, ApiCall<Object>>() {
+                    @Override
+                    public Type responseType() {
+                        return responseType;
+                    }
+
+                    @Override
+                    public ApiCall<Object> adapt(Call<Object> call) {
+                        return new RetrofitApiCall<>(call);
+                    }
+                };
+            }
+
             // if returnType is retrofit2.Call, do nothing
             if (returnType.getClass().getPackage().getName().contains("retrofit2.Call")) {
                 return null;
@@ -120,6 +176,14 @@ public class ArticleApi {
         this(Environment.RELEASE, apiToken);
     }
 
+    /**
+     * Creates a new API access object with the release environment, which caches responses in
+     * the app's cache directory.
+     */
+    public ArticleApi(Context context, String apiToken) {
+        this(API_RELEASE_URL, apiToken, new File(context.getCacheDir(), CACHE_DIRECTORY));
+    }
+
     /**
      * Creates a new API access object that will connect to the correct environment.
      *
@@ -133,7 +197,17 @@ public class ArticleApi {
      * Creates a new API access object that will automatically attach your API key to all
      * requests.
      */
-    private ArticleApi(String baseUrl, final String apiToken) {
+    @VisibleForTesting
+    ArticleApi(String baseUrl, final String apiToken) {
+        this(baseUrl, apiToken, null);
+    }
+
+    /**
+     * Creates a new API access object that will automatically attach your API key to all
+     * requests, and cache the responses in the given directory.
+     */
+    @VisibleForTesting
+    ArticleApi(String baseUrl, final String apiToken, @Nullable File cacheDirectory) {
         if (apiToken == null) {
             throw new RuntimeException("Api token cannot be null.");
         }
@@ -149,6 +223,11 @@ public class ArticleApi {
                     return chain.proceed(request);
                 }
             });
+            httpClient.addNetworkInterceptor(revalidateInterceptor);
+        }
+
+        if (cacheDirectory != null) {
+            installCache(cacheDirectory);
         }
 
         Retrofit.Builder builder =
@@ -161,6 +240,44 @@ public class ArticleApi {
         this.baseUrl = baseUrl;
     }
 
+    private static synchronized void installCache(File directory) {
+        // the client builder is shared, so once a cache is installed every instance will use it
+        if (cache != null && cache.directory().equals(directory)) {
+            return;
+        }
+
+        // only one cache is kept open, so its journal and files aren't leaked when the
+        // directory changes
+        closeCache();
+        cache = new Cache(directory, CACHE_SIZE);
+        httpClient.cache(cache);
+    }
+
+    @VisibleForTesting
+    static synchronized Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * Closes the response cache and removes it from the shared client. Instances created after
+     * this with a cache directory will open a new one.
+     */
+    @VisibleForTesting
+    static synchronized void closeCache() {
+        if (cache == null) {
+            return;
+        }
+
+        try {
+            cache.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        cache = null;
+        httpClient.cache(null);
+    }
+
     /**
      * Gets a service that can be used for account requests such as signup and login.
      */
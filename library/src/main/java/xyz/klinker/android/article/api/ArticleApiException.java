@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.api;
+
+/**
+ * Error returned by an {@link ApiCall}, so that callers can tell the difference between a request
+ * that failed and a url that just isn't an article.
+ */
+public class ArticleApiException extends Exception {
+
+    public enum Reason {
+        /**
+         * The server could not be reached, or the connection failed part way through.
+         */
+        NETWORK,
+
+        /**
+         * The server responded with an unsuccessful http status code.
+         */
+        HTTP,
+
+        /**
+         * The server responded successfully, but without a body.
+         */
+        EMPTY_RESPONSE,
+
+        /**
+         * The server responded successfully, but the body could not be read.
+         */
+        INVALID_RESPONSE,
+
+        /**
+         * The request was canceled.
+         */
+        CANCELED
+    }
+
+    private final Reason reason;
+    private final int code;
+
+    public ArticleApiException(Reason reason, String message, Throwable cause) {
+        this(reason, -1, message, cause);
+    }
+
+    public ArticleApiException(Reason reason, int code, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+        this.code = code;
+    }
+
+    /**
+     * Gets the reason that the request failed.
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the http status code returned by the server, or -1 if the request never got a
+     * response.
+     */
+    public int getCode() {
+        return code;
+    }
+
+}
@@ -16,7 +16,13 @@
 
 package xyz.klinker.android.article.api;
 
+import java.util.List;
+
+import retrofit2.http.Field;
+import retrofit2.http.FormUrlEncoded;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
+import retrofit2.http.POST;
 import retrofit2.http.Query;
 import xyz.klinker.android.article.data.Article;
 
@@ -48,4 +54,44 @@ public interface ArticleService {
     @GET("trending")
     Article[] trending();
 
+    /**
+     * Gets an article from the provided url and caches it, without blocking the calling thread.
+     *
+     * @param url the url to get an article from.
+     * @return a call that can be enqueued or cancelled.
+     */
+    @GET("parse")
+    ApiCall<Article> parseAsync(@Query("url") String url);
+
+    /**
+     * Gets the trending articles that are currently popular on our server, without blocking the
+     * calling thread.
+     *
+     * @return a call that can be enqueued or cancelled.
+     */
+    @GET("trending")
+    ApiCall<Article[]> trendingAsync();
+
+    /**
+     * Gets the last trending articles that were loaded from the server out of the HTTP cache,
+     * no matter how old they are, without going to the network. This only works when the
+     * {@link ArticleApi} was created with a context.
+     *
+     * @return a call for the cached articles. It fails with a 504 error if nothing is cached.
+     */
+    @GET("trending")
+    @Headers("Cache-Control: only-if-cached, max-stale=" + Integer.MAX_VALUE)
+    ApiCall<Article[]> trendingCached();
+
+    /**
+     * Gets articles for many urls in a single request, and caches them.
+     *
+     * @param urls the urls to get articles from.
+     * @return a call for the parsed articles. The server responds with one entry per url, in the
+     *         same order that they were requested, with null for urls that could not be parsed.
+     */
+    @FormUrlEncoded
+    @POST("parse/batch")
+    ApiCall<Article[]> parseBatch(@Field("urls[]") List<String> urls);
+
 }
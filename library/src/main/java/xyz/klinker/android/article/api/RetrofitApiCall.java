@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.api;
+
+import java.io.IOException;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link ApiCall} backed by a retrofit call, which uses OkHttp's dispatcher for async requests.
+ */
+final class RetrofitApiCall<T> implements ApiCall<T> {
+
+    private final Call<T> call;
+
+    RetrofitApiCall(Call<T> call) {
+        this.call = call;
+    }
+
+    @Override
+    public void enqueue(final ApiCallback<T> callback) {
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                T body;
+                try {
+                    body = getBody(response);
+                } catch (ArticleApiException e) {
+                    callback.onFailure(e);
+                    return;
+                }
+
+                callback.onSuccess(body);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                callback.onFailure(getError(t));
+            }
+        });
+    }
+
+    @Override
+    public T execute() throws ArticleApiException {
+        Response<T> response;
+        try {
+            response = call.execute();
+        } catch (IOException | RuntimeException e) {
+            throw getError(e);
+        }
+
+        return getBody(response);
+    }
+
+    @Override
+    public void cancel() {
+        call.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return call.isCanceled();
+    }
+
+    private T getBody(Response<T> response) throws ArticleApiException {
+        if (call.isCanceled()) {
+            throw new ArticleApiException(ArticleApiException.Reason.CANCELED,
+                    "request was canceled", null);
+        } else if (!response.isSuccessful()) {
+            throw new ArticleApiException(ArticleApiException.Reason.HTTP, response.code(),
+                    "server responded with " + response.code(), null);
+        } else if (response.body() == null) {
+            throw new ArticleApiException(ArticleApiException.Reason.EMPTY_RESPONSE,
+                    response.code(), "server responded without a body", null);
+        }
+
+        return response.body();
+    }
+
+    private ArticleApiException getError(Throwable t) {
+        if (call.isCanceled()) {
+            return new ArticleApiException(ArticleApiException.Reason.CANCELED,
+                    "request was canceled", t);
+        } else if (t instanceof IOException) {
+            return new ArticleApiException(ArticleApiException.Reason.NETWORK,
+                    "request failed: " + t.getMessage(), t);
+        } else {
+            // retrofit hands back converter errors as runtime exceptions
+            return new ArticleApiException(ArticleApiException.Reason.INVALID_RESPONSE,
+                    "could not read response: " + t.getMessage(), t);
+        }
+    }
+
+}
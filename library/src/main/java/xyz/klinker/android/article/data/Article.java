@@ -20,10 +20,11 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.os.Bundle;
 
+import java.util.List;
+
 import xyz.klinker.android.article.data.model.ArticleModel;
 import xyz.klinker.android.article.data.model.ContentModel;
 import xyz.klinker.android.article.data.model.DatabaseModel;
-import xyz.klinker.android.article.data.model.SourceModel;
 
 /**
  * Model holding all possible elements in a response from the server.
@@ -48,6 +49,12 @@ public final class Article implements DatabaseModel {
     public String sourceModelName;
     public String sourceModelImageUrl;
 
+    /**
+     * The content of the article after it has been parsed and cleaned up. This is null when the
+     * article has not been parsed yet, or was parsed by an older version of the library.
+     */
+    public transient List<ArticleBlock> blocks;
+
     /**
      * Creates a blank article that can be filled manually.
      */
@@ -74,47 +81,25 @@ public final class Article implements DatabaseModel {
         fillFromIntent(intent);
     }
 
+    /**
+     * Fills the article from the cursor's current position. When reading every row of a cursor,
+     * use one {@link ArticleCursorMapper} for all of them instead, so that the columns are only
+     * looked up once.
+     */
     @Override
     public void fillFromCursor(Cursor cursor) {
-        for (int i = 0; i < cursor.getColumnCount(); i++) {
-            String column = cursor.getColumnName(i);
-
-            if (column.equals(ArticleModel.COLUMN_ID)) {
-                this.id = cursor.getLong(i);
-            } else if (column.equals(ArticleModel.COLUMN_ALIAS)) {
-                this.alias = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_URL)) {
-                this.url = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_TITLE)) {
-                this.title = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_DESCRIPTION)) {
-                this.description = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_IMAGE)) {
-                this.image = cursor.getString(i);
-            } else if (column.equals(ContentModel.COLUMN_CONTENT)) {
-                this.content = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_AUTHOR)) {
-                this.author = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_SOURCE)) {
-                this.source = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_DOMAIN)) {
-                this.domain = cursor.getString(i);
-            } else if (column.equals(ArticleModel.COLUMN_DURATION)) {
-                this.duration = cursor.getInt(i);
-            } else if (column.equals(ArticleModel.COLUMN_INSERTED_AT)) {
-                this.insertedAt = cursor.getLong(i);
-            } else if (column.equals(ArticleModel.COLUMN_IS_ARTICLE)) {
-                this.isArticle = cursor.getInt(i) == 1;
-            } else if (column.equals(ArticleModel.COLUMN_SAVED)) {
-                this.saved = cursor.getInt(i) == 1;
-            } else if (column.equals(ArticleModel.COLUMN_SOURCE_ID)) {
-                this.sourceId = cursor.getLong(i);
-            } else if (column.equals(SourceModel.COLUMN_NAME)) {
-                this.sourceModelName = cursor.getString(i);
-            } else if (column.equals(SourceModel.COLUMN_IMAGE_URL)) {
-                this.sourceModelImageUrl = cursor.getString(i);
-            }
-        }
+        new ArticleCursorMapper(cursor).fill(cursor, this);
+    }
+
+    /**
+     * Loads the content and parsed blocks for an article that was queried without them. This
+     * reads from the database, so don't call it on the main thread.
+     *
+     * @param source the data source, which must be open.
+     * @return true if the article has content, false if it still has to be downloaded.
+     */
+    public boolean loadContent(DataSource source) {
+        return source.loadArticleContent(this);
     }
 
     /**
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Model holding a single block of an article's content (a paragraph, header, image, etc), after it
+ * has been extracted from the article html and cleaned up. A list of these is everything that is
+ * needed to display an article, so they are stored alongside the raw content in a compact binary
+ * format and the html does not need to be parsed again the next time the article is opened.
+ */
+public final class ArticleBlock {
+
+    /**
+     * Version of the stored block format. This should be bumped whenever the format changes, or
+     * whenever the rules for extracting and cleaning up blocks change, so that blocks stored by an
+     * older version are ignored and the article is parsed again.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int UNKNOWN_TAG = 0xFF;
+    private static final String[] TAGS = {
+            "p", "h1", "h2", "h3", "h4", "h5", "h6", "img", "blockquote", "pre", "li"
+    };
+
+    public String tag;
+    public String parentTag;
+    public String text;
+    public String src;
+
+    /**
+     * The size of the image in pixels, only stored for images. Both are 0 until the image has been
+     * downloaded or displayed for the first time, then the size is saved with the block so the
+     * space for the image can be reserved before it loads.
+     */
+    public int width;
+    public int height;
+
+    /**
+     * Creates a blank block that can be filled manually.
+     */
+    public ArticleBlock() {
+
+    }
+
+    /**
+     * Creates a block.
+     *
+     * @param tag the html tag that the block was extracted from, ie. p, h1 or img.
+     * @param parentTag the tag of the parent element, only stored for list items.
+     * @param text the text of the block.
+     * @param src the image url for the block, only stored for images.
+     */
+    public ArticleBlock(String tag, String parentTag, String text, String src) {
+        this.tag = tag;
+        this.parentTag = parentTag;
+        this.text = text;
+        this.src = src;
+    }
+
+    /**
+     * Serializes blocks into the compact format stored in the database.
+     *
+     * @param blocks the blocks to serialize.
+     * @return the serialized blocks.
+     */
+    public static byte[] encode(List<ArticleBlock> blocks) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(blocks.size());
+
+            for (ArticleBlock block : blocks) {
+                writeTag(out, block.tag);
+                if ("li".equals(block.tag)) {
+                    writeTag(out, block.parentTag);
+                }
+
+                if ("img".equals(block.tag)) {
+                    writeString(out, block.src);
+                    out.writeInt(block.width);
+                    out.writeInt(block.height);
+                } else {
+                    writeString(out, block.text);
+                }
+            }
+
+            out.flush();
+        } catch (IOException e) {
+            // writing to a byte array will not throw
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes blocks that were stored with {@link #encode(List)}.
+     *
+     * @param data the stored blocks.
+     * @return the blocks, or null if they are missing, corrupt or stored in an older format.
+     */
+    @Nullable
+    public static List<ArticleBlock> decode(@Nullable byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        try {
+            if (in.readUnsignedByte() != FORMAT_VERSION) {
+                return null;
+            }
+
+            int count = in.readInt();
+            if (count < 0 || count > data.length) {
+                return null;
+            }
+
+            List<ArticleBlock> blocks = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                ArticleBlock block = new ArticleBlock();
+                block.tag = readTag(in);
+                if ("li".equals(block.tag)) {
+                    block.parentTag = readTag(in);
+                }
+
+                if ("img".equals(block.tag)) {
+                    block.src = readString(in);
+                    block.width = in.readInt();
+                    block.height = in.readInt();
+                } else {
+                    block.text = readString(in);
+                }
+
+                blocks.add(block);
+            }
+
+            return blocks;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeTag(DataOutputStream out, String tag) throws IOException {
+        for (int i = 0; i < TAGS.length; i++) {
+            if (TAGS[i].equals(tag)) {
+                out.writeByte(i);
+                return;
+            }
+        }
+
+        out.writeByte(UNKNOWN_TAG);
+        writeString(out, tag);
+    }
+
+    private static String readTag(DataInputStream in) throws IOException {
+        int index = in.readUnsignedByte();
+        if (index == UNKNOWN_TAG) {
+            return readString(in);
+        } else if (index < TAGS.length) {
+            return TAGS[index];
+        } else {
+            throw new IOException("unknown tag index: " + index);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            // writeUTF() is limited to 64KB, which a long pre block could go over
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        } else if (length > in.available()) {
+            throw new IOException("string length is past the end of the data: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.Cursor;
+
+import xyz.klinker.android.article.data.model.ArticleModel;
+import xyz.klinker.android.article.data.model.ContentModel;
+import xyz.klinker.android.article.data.model.SourceModel;
+
+/**
+ * Reads articles out of a cursor. The position of each column is looked up once, when the mapper
+ * is created, so reading each row after that only costs the reads from the cursor itself. Use one
+ * mapper for every row of a cursor instead of {@link Article#Article(Cursor)} when reading more
+ * than a few rows.
+ *
+ * As with {@link Article#fillFromCursor(Cursor)}, when the cursor has more than one column with
+ * the same name, the last one is used.
+ */
+public final class ArticleCursorMapper {
+
+    private int id = -1;
+    private int alias = -1;
+    private int url = -1;
+    private int title = -1;
+    private int description = -1;
+    private int image = -1;
+    private int content = -1;
+    private int blocks = -1;
+    private int author = -1;
+    private int source = -1;
+    private int domain = -1;
+    private int duration = -1;
+    private int insertedAt = -1;
+    private int isArticle = -1;
+    private int saved = -1;
+    private int sourceId = -1;
+    private int sourceModelName = -1;
+    private int sourceModelImageUrl = -1;
+
+    /**
+     * Creates a mapper for the columns of a cursor.
+     *
+     * @param cursor the cursor that articles will be read from.
+     */
+    public ArticleCursorMapper(Cursor cursor) {
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            String column = cursor.getColumnName(i);
+
+            if (column.equals(ArticleModel.COLUMN_ID)) {
+                id = i;
+            } else if (column.equals(ArticleModel.COLUMN_ALIAS)) {
+                alias = i;
+            } else if (column.equals(ArticleModel.COLUMN_URL)) {
+                url = i;
+            } else if (column.equals(ArticleModel.COLUMN_TITLE)) {
+                title = i;
+            } else if (column.equals(ArticleModel.COLUMN_DESCRIPTION)) {
+                description = i;
+            } else if (column.equals(ArticleModel.COLUMN_IMAGE)) {
+                image = i;
+            } else if (column.equals(ContentModel.COLUMN_CONTENT)) {
+                content = i;
+            } else if (column.equals(ContentModel.COLUMN_BLOCKS)) {
+                blocks = i;
+            } else if (column.equals(ArticleModel.COLUMN_AUTHOR)) {
+                author = i;
+            } else if (column.equals(ArticleModel.COLUMN_SOURCE)) {
+                source = i;
+            } else if (column.equals(ArticleModel.COLUMN_DOMAIN)) {
+                domain = i;
+            } else if (column.equals(ArticleModel.COLUMN_DURATION)) {
+                duration = i;
+            } else if (column.equals(ArticleModel.COLUMN_INSERTED_AT)) {
+                insertedAt = i;
+            } else if (column.equals(ArticleModel.COLUMN_IS_ARTICLE)) {
+                isArticle = i;
+            } else if (column.equals(ArticleModel.COLUMN_SAVED)) {
+                saved = i;
+            } else if (column.equals(ArticleModel.COLUMN_SOURCE_ID)) {
+                sourceId = i;
+            } else if (column.equals(SourceModel.COLUMN_NAME)) {
+                sourceModelName = i;
+            } else if (column.equals(SourceModel.COLUMN_IMAGE_URL)) {
+                sourceModelImageUrl = i;
+            }
+        }
+    }
+
+    /**
+     * Reads the article at the cursor's current position.
+     *
+     * @param cursor the cursor that this mapper was created for.
+     * @return a new article.
+     */
+    public Article map(Cursor cursor) {
+        return fill(cursor, new Article());
+    }
+
+    /**
+     * Reads the article at the cursor's current position into an existing article, so that list
+     * views can reuse their articles instead of creating a new one for every row. Only the fields
+     * that the cursor has columns for are changed.
+     *
+     * @param cursor the cursor that this mapper was created for.
+     * @param article the article to fill.
+     * @return the same article.
+     */
+    public Article fill(Cursor cursor, Article article) {
+        if (id != -1) {
+            article.id = cursor.getLong(id);
+        }
+
+        if (alias != -1) {
+            article.alias = cursor.getString(alias);
+        }
+
+        if (url != -1) {
+            article.url = cursor.getString(url);
+        }
+
+        if (title != -1) {
+            article.title = cursor.getString(title);
+        }
+
+        if (description != -1) {
+            article.description = cursor.getString(description);
+        }
+
+        if (image != -1) {
+            article.image = cursor.getString(image);
+        }
+
+        if (content != -1) {
+            // content is stored compressed, unless it was saved before compression was added or
+            // was too short to be worth compressing
+            if (cursor.getType(content) == Cursor.FIELD_TYPE_BLOB) {
+                article.content = ContentCodec.decompress(cursor.getBlob(content));
+            } else {
+                article.content = cursor.getString(content);
+            }
+        }
+
+        if (blocks != -1) {
+            article.blocks = ArticleBlock.decode(cursor.getBlob(blocks));
+        }
+
+        if (author != -1) {
+            article.author = cursor.getString(author);
+        }
+
+        if (source != -1) {
+            article.source = cursor.getString(source);
+        }
+
+        if (domain != -1) {
+            article.domain = cursor.getString(domain);
+        }
+
+        if (duration != -1) {
+            article.duration = cursor.getInt(duration);
+        }
+
+        if (insertedAt != -1) {
+            article.insertedAt = cursor.getLong(insertedAt);
+        }
+
+        if (isArticle != -1) {
+            article.isArticle = cursor.getInt(isArticle) == 1;
+        }
+
+        if (saved != -1) {
+            article.saved = cursor.getInt(saved) == 1;
+        }
+
+        if (sourceId != -1) {
+            article.sourceId = cursor.getLong(sourceId);
+        }
+
+        if (sourceModelName != -1) {
+            article.sourceModelName = cursor.getString(sourceModelName);
+        }
+
+        if (sourceModelImageUrl != -1) {
+            article.sourceModelImageUrl = cursor.getString(sourceModelImageUrl);
+        }
+
+        return article;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Model containing a single page of articles, ordered from newest to oldest, plus the key needed
+ * to load the page that comes after it.
+ */
+public class ArticlePage {
+
+    private List<Article> articles;
+    private Key nextKey;
+
+    public ArticlePage(List<Article> articles, @Nullable Key nextKey) {
+        this.articles = articles;
+        this.nextKey = nextKey;
+    }
+
+    public List<Article> getArticles() {
+        return articles;
+    }
+
+    /**
+     * Gets the key to pass back to the data source to load the next page, or null if this is the
+     * last page.
+     */
+    @Nullable
+    public Key getNextKey() {
+        return nextKey;
+    }
+
+    public boolean hasMore() {
+        return nextKey != null;
+    }
+
+    /**
+     * Position of the last article on a page. The next page starts with the article right after
+     * it, so pages stay consistent even when new articles are inserted while paging.
+     */
+    public static class Key {
+
+        private long insertedAt;
+        private long id;
+
+        public Key(long insertedAt, long id) {
+            this.insertedAt = insertedAt;
+            this.id = id;
+        }
+
+        public long getInsertedAt() {
+            return insertedAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+}
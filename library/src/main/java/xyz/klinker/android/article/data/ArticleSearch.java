@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for the full text search index: building the text that is indexed for an article,
+ * turning what the user typed into a query for the index and ranking the matches.
+ *
+ * Android's SQLite doesn't have a ranking function for full text tables, so matches are ranked
+ * with Okapi BM25, computed from the statistics that SQLite gives back for each match through
+ * {@code matchinfo(table, 'pcnalx')}.
+ */
+final class ArticleSearch {
+
+    /**
+     * The matchinfo format that {@link #score(byte[])} expects.
+     */
+    static final String MATCHINFO_FORMAT = "pcnalx";
+
+    // relative importance of a match in the title, description, author and text columns
+    private static final double[] WEIGHTS = { 4.0, 2.0, 1.0, 1.0 };
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_TERMS = 10;
+
+    // the default tokenizer splits words on anything other than ascii letters and numbers, and
+    // everything else that the full text syntax treats specially is in these ranges
+    private static final Pattern SEPARATORS =
+            Pattern.compile("[\\x00-\\x2F\\x3A-\\x40\\x5B-\\x60\\x7B-\\x7F]+");
+
+    private static final List<String> OPERATORS = Arrays.asList("AND", "OR", "NOT", "NEAR");
+
+    private ArticleSearch() {
+
+    }
+
+    /**
+     * Gets the plain text to index for an article's blocks.
+     */
+    @Nullable
+    static String getText(@Nullable List<ArticleBlock> blocks) {
+        if (blocks == null) {
+            return null;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (ArticleBlock block : blocks) {
+            if (block.text != null && !"img".equals(block.tag)) {
+                if (text.length() != 0) {
+                    text.append('\n');
+                }
+
+                text.append(block.text);
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Turns a search from the user into a full text query. Each word is matched as a prefix, so
+     * that results show up while the user is still typing, and every word has to match. Anything
+     * that the full text syntax would treat as an operator is dropped.
+     *
+     * @return the query, or null if there is nothing to search for.
+     */
+    @Nullable
+    static String toMatchQuery(@Nullable String search) {
+        if (search == null) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        int terms = 0;
+
+        for (String term : SEPARATORS.split(search)) {
+            if (term.isEmpty()) {
+                continue;
+            }
+
+            // the tokenizer ignores the case of ascii letters, so these can be lower cased to
+            // keep them from being read as operators
+            if (OPERATORS.contains(term)) {
+                term = term.toLowerCase(Locale.US);
+            }
+
+            if (query.length() != 0) {
+                query.append(' ');
+            }
+
+            query.append(term).append('*');
+
+            if (++terms == MAX_TERMS) {
+                break;
+            }
+        }
+
+        return query.length() == 0 ? null : query.toString();
+    }
+
+    /**
+     * Scores a match, from the matchinfo blob for it.
+     *
+     * @param matchinfo the result of {@code matchinfo(table, 'pcnalx')}.
+     * @return the score for the match. Higher scores are better matches.
+     */
+    @VisibleForTesting
+    static double score(byte[] matchinfo) {
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        long rows = info.get(2);
+        int averageLengths = 3;
+        int lengths = averageLengths + columns;
+        int hits = lengths + columns;
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns && column < WEIGHTS.length; column++) {
+                int index = hits + 3 * (phrase * columns + column);
+                int rowHits = info.get(index);
+                if (rowHits == 0) {
+                    continue;
+                }
+
+                int documents = info.get(index + 2);
+                double idf = Math.log((rows - documents + 0.5) / (documents + 0.5));
+
+                // very common terms would otherwise count against the match
+                idf = Math.max(idf, 0.000001);
+
+                double averageLength = Math.max(info.get(averageLengths + column), 1);
+                double length = info.get(lengths + column);
+                double tf = rowHits * (K1 + 1) /
+                        (rowHits + K1 * (1 - B + B * length / averageLength));
+
+                score += WEIGHTS[column] * idf * tf;
+            }
+        }
+
+        return score;
+    }
+}
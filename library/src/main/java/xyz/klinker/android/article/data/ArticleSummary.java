@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.Cursor;
+
+import xyz.klinker.android.article.data.model.ArticleModel;
+import xyz.klinker.android.article.data.model.ContentModel;
+import xyz.klinker.android.article.data.model.SourceModel;
+
+/**
+ * Model holding just what a list of articles needs to show them. Summaries are read without
+ * touching the article's content, which can be very large, so they stay cheap to query even for
+ * long lists. Use {@link #toArticle()} and {@link Article#loadContent(DataSource)} to open one.
+ */
+public final class ArticleSummary {
+
+    static final String COLUMN_HAS_CONTENT = "has_content";
+
+    // the summary queries always select these columns in this order, so they can be read by
+    // position without looking up any column names
+    static final String[] PROJECTION = new String[] {
+            "a." + ArticleModel.COLUMN_ID,
+            "a." + ArticleModel.COLUMN_URL,
+            "a." + ArticleModel.COLUMN_TITLE,
+            "a." + ArticleModel.COLUMN_DESCRIPTION,
+            "a." + ArticleModel.COLUMN_IMAGE,
+            "a." + ArticleModel.COLUMN_AUTHOR,
+            "a." + ArticleModel.COLUMN_DOMAIN,
+            "a." + ArticleModel.COLUMN_DURATION,
+            "a." + ArticleModel.COLUMN_INSERTED_AT,
+            "a." + ArticleModel.COLUMN_IS_ARTICLE,
+            "a." + ArticleModel.COLUMN_SAVED,
+            "a." + ArticleModel.COLUMN_SOURCE_ID,
+            "s." + SourceModel.COLUMN_NAME,
+            "s." + SourceModel.COLUMN_IMAGE_URL,
+            "(c." + ContentModel.COLUMN_CONTENT + " is not null or c." +
+                    ContentModel.COLUMN_CONTENT_CHUNKS + " > 0) as " + COLUMN_HAS_CONTENT
+    };
+
+    public long id;
+    public String url;
+    public String title;
+    public String description;
+    public String image;
+    public String author;
+    public String domain;
+    public int duration;
+    public long insertedAt;
+    public boolean isArticle;
+    public boolean saved;
+    public Long sourceId;
+    public String sourceModelName;
+    public String sourceModelImageUrl;
+
+    /**
+     * Whether the article's content has been downloaded, so that it can be opened without a
+     * network call.
+     */
+    public boolean hasContent;
+
+    /**
+     * Creates a blank summary that can be filled manually.
+     */
+    public ArticleSummary() {
+
+    }
+
+    /**
+     * Creates a summary from a cursor returned by one of the summary queries in
+     * {@link DataSource}.
+     *
+     * @param cursor the cursor to fill the summary from.
+     */
+    public ArticleSummary(Cursor cursor) {
+        fillFromCursor(cursor);
+    }
+
+    /**
+     * Fills the summary from the cursor's current position. The cursor has to come from one of
+     * the summary queries in {@link DataSource}.
+     */
+    public void fillFromCursor(Cursor cursor) {
+        this.id = cursor.getLong(0);
+        this.url = cursor.getString(1);
+        this.title = cursor.getString(2);
+        this.description = cursor.getString(3);
+        this.image = cursor.getString(4);
+        this.author = cursor.getString(5);
+        this.domain = cursor.getString(6);
+        this.duration = cursor.getInt(7);
+        this.insertedAt = cursor.getLong(8);
+        this.isArticle = cursor.getInt(9) == 1;
+        this.saved = cursor.getInt(10) == 1;
+        this.sourceId = cursor.isNull(11) ? null : cursor.getLong(11);
+        this.sourceModelName = cursor.getString(12);
+        this.sourceModelImageUrl = cursor.getString(13);
+        this.hasContent = cursor.getInt(14) == 1;
+    }
+
+    /**
+     * Creates an article with the fields from this summary. The article does not have its content
+     * yet, load it with {@link Article#loadContent(DataSource)}.
+     */
+    public Article toArticle() {
+        Article article = new Article();
+        article.id = id;
+        article.url = url;
+        article.title = title;
+        article.description = description;
+        article.image = image;
+        article.author = author;
+        article.domain = domain;
+        article.duration = duration;
+        article.insertedAt = insertedAt;
+        article.isArticle = isArticle;
+        article.saved = saved;
+        article.sourceId = sourceId;
+        article.sourceModelName = sourceModelName;
+        article.sourceModelImageUrl = sourceModelImageUrl;
+        return article;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import xyz.klinker.android.article.data.model.ContentChunkModel;
+
+/**
+ * Splits content and blocks that are too large to be read back through a single cursor window
+ * into chunks, and reads them back one chunk at a time.
+ */
+final class ContentChunks {
+
+    /**
+     * Largest value that is stored in a single row. Android's cursor windows hold about 2 MB, so
+     * this leaves plenty of room for the rest of the row and for text, which takes more space in
+     * the window than it does on disk.
+     */
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final String SELECT_CHUNK = "select " + ContentChunkModel.COLUMN_DATA +
+            " from " + ContentChunkModel.TABLE + " where " +
+            ContentChunkModel.COLUMN_ARTICLE_ID + "=? and " +
+            ContentChunkModel.COLUMN_KIND + "=? and " +
+            ContentChunkModel.COLUMN_CHUNK + "=?";
+
+    private static final String SELECT_KIND = "select 1 from " + ContentChunkModel.TABLE +
+            " where " + ContentChunkModel.COLUMN_ARTICLE_ID + "=? and " +
+            ContentChunkModel.COLUMN_KIND + "=? limit 1";
+
+    private ContentChunks() {
+
+    }
+
+    /**
+     * Gets the number of chunks that a value has to be split into.
+     *
+     * @return the number of chunks, or 0 if the value is small enough to store in a single row.
+     */
+    static int count(@Nullable byte[] data) {
+        if (data == null || data.length <= CHUNK_SIZE) {
+            return 0;
+        }
+
+        return (data.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Stores a value in chunks. This should be called inside of a transaction, so that a value is
+     * never left partly written.
+     */
+    static void write(SQLiteDatabase db, long articleId, int kind, byte[] data) {
+        ContentValues values = new ContentValues(4);
+        values.put(ContentChunkModel.COLUMN_ARTICLE_ID, articleId);
+        values.put(ContentChunkModel.COLUMN_KIND, kind);
+
+        for (int chunk = 0; chunk * CHUNK_SIZE < data.length; chunk++) {
+            int start = chunk * CHUNK_SIZE;
+            values.put(ContentChunkModel.COLUMN_CHUNK, chunk);
+            values.put(ContentChunkModel.COLUMN_DATA, Arrays.copyOfRange(
+                    data, start, Math.min(data.length, start + CHUNK_SIZE)));
+            db.insert(ContentChunkModel.TABLE, null, values);
+        }
+    }
+
+    /**
+     * Opens a stream over a value that was stored in chunks. Each chunk is queried as the stream
+     * reaches it.
+     */
+    static InputStream open(SQLiteDatabase db, long articleId, int kind, int chunks) {
+        return new ChunkInputStream(db, articleId, kind, chunks);
+    }
+
+    /**
+     * Opens a reader over article content that was stored in chunks. Content is normally
+     * compressed before it is chunked, but content that was split up when the database was
+     * upgraded is plain text.
+     */
+    static Reader openContent(SQLiteDatabase db, long articleId, int chunks) {
+        Cursor cursor = db.rawQuery(SELECT_KIND, new String[] {
+                Long.toString(articleId), Integer.toString(ContentChunkModel.KIND_TEXT) });
+        boolean text = cursor != null && cursor.moveToFirst();
+        if (cursor != null) {
+            cursor.close();
+        }
+
+        if (text) {
+            return new InputStreamReader(open(db, articleId, ContentChunkModel.KIND_TEXT, chunks),
+                    Charset.forName("UTF-8"));
+        } else {
+            return ContentCodec.newReader(
+                    open(db, articleId, ContentChunkModel.KIND_CONTENT, chunks));
+        }
+    }
+
+    /**
+     * Reads a value that was stored in chunks.
+     *
+     * @return the value, or null if any of its chunks are missing.
+     */
+    @Nullable
+    static byte[] read(SQLiteDatabase db, long articleId, int kind, int chunks) {
+        InputStream in = open(db, articleId, kind, chunks);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(chunks * CHUNK_SIZE);
+        byte[] buffer = new byte[8192];
+
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class ChunkInputStream extends InputStream {
+
+        private final SQLiteDatabase db;
+        private final String[] args;
+        private final int chunks;
+
+        private int nextChunk = 0;
+        private byte[] current = null;
+        private int position = 0;
+
+        private ChunkInputStream(SQLiteDatabase db, long articleId, int kind, int chunks) {
+            this.db = db;
+            this.args = new String[] { Long.toString(articleId), Integer.toString(kind), null };
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureChunk()) {
+                return -1;
+            }
+
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            } else if (!ensureChunk()) {
+                return -1;
+            }
+
+            int read = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+
+        /**
+         * Makes sure that there is something left to read in the current chunk, querying the next
+         * one if needed.
+         *
+         * @return false if every chunk has been read.
+         */
+        private boolean ensureChunk() throws IOException {
+            while (current == null || position == current.length) {
+                if (nextChunk == chunks) {
+                    return false;
+                }
+
+                args[2] = Integer.toString(nextChunk);
+                Cursor cursor = db.rawQuery(SELECT_CHUNK, args);
+                if (cursor == null || !cursor.moveToFirst()) {
+                    if (cursor != null) {
+                        cursor.close();
+                    }
+
+                    throw new IOException("missing chunk " + nextChunk + " of " + chunks);
+                }
+
+                current = cursor.getBlob(0);
+                position = 0;
+                nextChunk++;
+                cursor.close();
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses article html before it is stored in the database. Article html is very repetitive
+ * and usually shrinks to a fifth of its size or less.
+ *
+ * Compressed content is stored as a blob in the same column as uncompressed content, which is
+ * stored as text, so content saved before compression was added (or content that was too short to
+ * be worth compressing) can still be read.
+ *
+ * The format is a single version byte followed by a zlib stream. The stream is primed with a
+ * dictionary of markup that is common in news articles, which helps most with shorter articles,
+ * where deflate has not seen enough of the article to find those repetitions on its own.
+ */
+final class ContentCodec {
+
+    /**
+     * Version of the compressed format. Any change to the dictionary needs a new version, since
+     * content compressed with one dictionary can't be read with another.
+     */
+    @VisibleForTesting static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
+    // zlib works best when the most common strings are at the end of the dictionary
+    private static final byte[] DICTIONARY = (
+            "<figcaption></figcaption><figure></figure><blockquote></blockquote><h2></h2><h3>" +
+            "</h3><ul></ul><ol></ol><li></li><br><strong></strong><em></em><span></span>" +
+            "<div class=\"\"></div> srcset=\"\" alt=\"\" width=\"\" height=\"\" data-src=\"\" " +
+            "<img src=\"https://\"> rel=\"noopener\" target=\"_blank\" " +
+            "<a href=\"https://www.\"></a>, and the of to in that for with on is was " +
+            "said it as by from at has he his they their have be this are which who " +
+            "an will but not more been its would about after also one &quot; &amp; " +
+            "&#8217;s &#8220; &#8221; . The ").getBytes(UTF_8);
+
+    private ContentCodec() {
+
+    }
+
+    /**
+     * Compresses article content.
+     *
+     * @param content the content to compress.
+     * @return the compressed content, or null if it would not be any smaller than the original.
+     */
+    @Nullable
+    static byte[] compress(@Nullable String content) {
+        return compress(content, true);
+    }
+
+    /**
+     * Compresses article content.
+     *
+     * @param content the content to compress.
+     * @param onlyIfSmaller whether to give up when the compressed content would not be any smaller
+     *                      than the original.
+     * @return the compressed content, or null if there is no content, or if it would not be any
+     *         smaller and onlyIfSmaller is set.
+     */
+    @Nullable
+    static byte[] compress(@Nullable String content, boolean onlyIfSmaller) {
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+
+        return compress(content.getBytes(UTF_8), onlyIfSmaller);
+    }
+
+    /**
+     * Compresses article content that has already been encoded as UTF-8.
+     *
+     * @param input the UTF-8 bytes of the content.
+     * @param onlyIfSmaller whether to give up when the compressed content would not be any smaller
+     *                      than the original.
+     * @return the compressed content, or null if there is no content, or if it would not be any
+     *         smaller and onlyIfSmaller is set.
+     */
+    @Nullable
+    static byte[] compress(byte[] input, boolean onlyIfSmaller) {
+        if (input.length == 0) {
+            return null;
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 16);
+            out.write(FORMAT_VERSION);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+
+                // text is stored as UTF-8, so that is the size to beat
+                if (onlyIfSmaller && out.size() >= input.length) {
+                    return null;
+                }
+            }
+
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses content that was compressed with {@link #compress(String)}.
+     *
+     * @param data the compressed content.
+     * @return the original content, or null if the data is empty, corrupt or from a different
+     *         version of the format.
+     */
+    @Nullable
+    static String decompress(@Nullable byte[] data) {
+        if (data == null || data.length < 2 || (data[0] & 0xFF) != FORMAT_VERSION) {
+            return null;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 5);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        // the stream was cut off
+                        return null;
+                    }
+                }
+
+                out.write(buffer, 0, length);
+            }
+
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException | IllegalArgumentException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Creates a reader that decompresses content as it is read, so that content stored in chunks
+     * never has to be put back together in memory while still compressed.
+     *
+     * @param compressed the content compressed with {@link #compress(String)}.
+     * @return a reader for the original content. Reading it throws an IOException if the data is
+     *         corrupt or from a different version of the format.
+     */
+    static Reader newReader(InputStream compressed) {
+        return new InputStreamReader(new DecompressingInputStream(compressed), UTF_8);
+    }
+
+    private static final class DecompressingInputStream extends InputStream {
+
+        private final InputStream in;
+        private final Inflater inflater = new Inflater();
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private boolean started = false;
+
+        private DecompressingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (!started) {
+                int version = in.read();
+                if (version != FORMAT_VERSION) {
+                    throw new IOException("unknown content format: " + version);
+                }
+
+                started = true;
+            }
+
+            if (length == 0) {
+                return 0;
+            }
+
+            try {
+                while (true) {
+                    int inflated = inflater.inflate(buffer, offset, length);
+                    if (inflated > 0) {
+                        return inflated;
+                    } else if (inflater.finished()) {
+                        return -1;
+                    } else if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        int read = in.read(input);
+                        if (read == -1) {
+                            throw new EOFException("content was cut off");
+                        }
+
+                        inflater.setInput(input, 0, read);
+                    }
+                }
+            } catch (DataFormatException | IllegalArgumentException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+}
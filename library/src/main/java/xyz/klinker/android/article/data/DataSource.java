@@ -19,37 +19,113 @@ package xyz.klinker.android.article.data;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import xyz.klinker.android.article.ArticleUtils;
 import xyz.klinker.android.article.data.model.ArticleModel;
 import xyz.klinker.android.article.data.model.CategoryModel;
+import xyz.klinker.android.article.data.model.ContentChunkModel;
 import xyz.klinker.android.article.data.model.ContentModel;
+import xyz.klinker.android.article.data.model.PreloadModel;
+import xyz.klinker.android.article.data.model.SearchModel;
 import xyz.klinker.android.article.data.model.SourceModel;
 
 /**
  * Handles interactions with database models.
+ *
+ * The instance from {@link #get(Context)} is shared by the whole process. It keeps a single
+ * connection to the database open once it has been opened, which SQLite lets any number of
+ * threads use at the same time, so {@link #open()} and {@link #close()} are cheap and one caller
+ * closing the data source will never take the database away from another.
  */
 public class DataSource {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String INSERT_ARTICLE = "insert into " + ArticleModel.TABLE + " (" +
+            ArticleModel.COLUMN_ALIAS + ", " +
+            ArticleModel.COLUMN_URL + ", " +
+            ArticleModel.COLUMN_TITLE + ", " +
+            ArticleModel.COLUMN_DESCRIPTION + ", " +
+            ArticleModel.COLUMN_IMAGE + ", " +
+            ArticleModel.COLUMN_AUTHOR + ", " +
+            ArticleModel.COLUMN_SOURCE + ", " +
+            ArticleModel.COLUMN_DOMAIN + ", " +
+            ArticleModel.COLUMN_DURATION + ", " +
+            ArticleModel.COLUMN_IS_ARTICLE + ", " +
+            ArticleModel.COLUMN_SAVED + ", " +
+            ArticleModel.COLUMN_SOURCE_ID + ", " +
+            ArticleModel.COLUMN_INSERTED_AT + ", " +
+            ArticleModel.COLUMN_LAST_ACCESSED_AT +
+            ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_CONTENT = "insert into " + ContentModel.TABLE + " (" +
+            ContentModel.COLUMN_ARTICLE_ID + ", " +
+            ContentModel.COLUMN_CONTENT + ", " +
+            ContentModel.COLUMN_BLOCKS + ", " +
+            ContentModel.COLUMN_SIZE + ", " +
+            ContentModel.COLUMN_CONTENT_CHUNKS + ", " +
+            ContentModel.COLUMN_BLOCKS_CHUNKS +
+            ") values (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_CATEGORY = "insert into " + CategoryModel.TABLE + " (" +
+            CategoryModel.COLUMN_NAME +
+            ") values (?)";
+    private static final String INSERT_SOURCE = "insert into " + SourceModel.TABLE + " (" +
+            SourceModel.COLUMN_NAME + ", " +
+            SourceModel.COLUMN_IMAGE_URL + ", " +
+            SourceModel.COLUMN_REMOTE_ID + ", " +
+            SourceModel.COLUMN_CATEGORY_ID +
+            ") values (?, ?, ?, ?)";
+    private static final String INSERT_SEARCH = "insert into " + SearchModel.TABLE + " (" +
+            SearchModel.COLUMN_ID + ", " +
+            SearchModel.COLUMN_TITLE + ", " +
+            SearchModel.COLUMN_DESCRIPTION + ", " +
+            SearchModel.COLUMN_AUTHOR + ", " +
+            SearchModel.COLUMN_TEXT +
+            ") values (?, ?, ?, ?, ?)";
+
+    private static volatile DataSource instance;
+
     protected Context context;
-    private SQLiteDatabase database;
+    private volatile SQLiteDatabase database;
     private DatabaseSQLiteHelper dbHelper;
     private AtomicInteger openCounter = new AtomicInteger();
+    private final boolean keepOpen;
 
     /**
-     * Gets a new instance of the DataSource.
+     * Gets the process-wide instance of the DataSource.
      *
      * @param context the current application instance.
      * @return the data source.
      */
     public static DataSource get(Context context) {
-        return new DataSource(context);
+        if (instance == null) {
+            synchronized (DataSource.class) {
+                if (instance == null) {
+                    instance = new DataSource(context.getApplicationContext());
+                }
+            }
+        }
+
+        return instance;
     }
 
     /**
@@ -60,6 +136,7 @@ public class DataSource {
     private DataSource(Context context) {
         this.context = context;
         this.dbHelper = new DatabaseSQLiteHelper(context);
+        this.keepOpen = true;
     }
 
     /**
@@ -70,24 +147,56 @@ public class DataSource {
     @VisibleForTesting
     DataSource(DatabaseSQLiteHelper helper) {
         this.dbHelper = helper;
+        this.keepOpen = false;
     }
 
     /**
-     * Constructor to help with testing.
+     * Constructor to help with testing. The database is expected to be open already, so
+     * {@link #open()} and {@link #close()} will leave it alone.
      *
      * @param database Mock of the sqlite database
      */
     @VisibleForTesting
     public DataSource(SQLiteDatabase database) {
         this.database = database;
+        this.keepOpen = true;
     }
 
     /**
-     * Opens the database.
+     * Closes the shared instance's connection and discards it, so that the next call to
+     * {@link #get(Context)} creates a new one.
      */
-    public synchronized void open() {
-        if (openCounter.incrementAndGet() == 1) {
-            database = dbHelper.getWritableDatabase();
+    @VisibleForTesting
+    static void resetInstance() {
+        synchronized (DataSource.class) {
+            if (instance != null) {
+                instance.dbHelper.close();
+                instance = null;
+            }
+        }
+    }
+
+    /**
+     * Opens the database. For the shared instance, this only opens the connection the first time
+     * that it is called.
+     */
+    public void open() {
+        if (keepOpen) {
+            if (database == null) {
+                synchronized (this) {
+                    if (database == null) {
+                        database = dbHelper.getWritableDatabase();
+                    }
+                }
+            }
+
+            return;
+        }
+
+        synchronized (this) {
+            if (openCounter.incrementAndGet() == 1) {
+                database = dbHelper.getWritableDatabase();
+            }
         }
     }
 
@@ -99,11 +208,18 @@ public class DataSource {
     }
 
     /**
-     * Closes the database.
+     * Closes the database. The shared instance keeps its connection open for the life of the
+     * process, since other threads may still be using it.
      */
-    public synchronized void close() {
-        if (openCounter.decrementAndGet() == 0) {
-            dbHelper.close();
+    public void close() {
+        if (keepOpen) {
+            return;
+        }
+
+        synchronized (this) {
+            if (openCounter.decrementAndGet() == 0) {
+                dbHelper.close();
+            }
         }
     }
 
@@ -125,6 +241,9 @@ public class DataSource {
         database.delete(ArticleModel.TABLE, null, null);
         database.delete(CategoryModel.TABLE, null, null);
         database.delete(SourceModel.TABLE, null, null);
+        database.delete(SearchModel.TABLE, null, null);
+        database.delete(ContentChunkModel.TABLE, null, null);
+        database.delete(PreloadModel.TABLE, null, null);
     }
 
     /**
@@ -178,7 +297,9 @@ public class DataSource {
         // remove any extra query parameters from the url
         article.url = ArticleUtils.removeUrlParameters(article.url);
 
-        ContentValues values = new ContentValues(11);
+        long insertedAt = article.insertedAt == 0 ? System.currentTimeMillis() : article.insertedAt;
+
+        ContentValues values = new ContentValues(14);
         values.put(ArticleModel.COLUMN_ALIAS, article.alias);
         values.put(ArticleModel.COLUMN_URL, article.url);
         values.put(ArticleModel.COLUMN_TITLE, article.title);
@@ -191,22 +312,125 @@ public class DataSource {
         values.put(ArticleModel.COLUMN_IS_ARTICLE, article.isArticle);
         values.put(ArticleModel.COLUMN_SAVED, article.saved);
         values.put(ArticleModel.COLUMN_SOURCE_ID, article.sourceId);
-        if (article.insertedAt == 0) {
-            values.put(ArticleModel.COLUMN_INSERTED_AT, System.currentTimeMillis());
-        } else {
-            values.put(ArticleModel.COLUMN_INSERTED_AT, article.insertedAt);
-        }
+        values.put(ArticleModel.COLUMN_INSERTED_AT, insertedAt);
+        values.put(ArticleModel.COLUMN_LAST_ACCESSED_AT, insertedAt);
 
         long id = database.insert(ArticleModel.TABLE, null, values);
 
-        values = new ContentValues(2);
+        EncodedContent encoded = new EncodedContent(article.content, article.blocks);
+        values = new ContentValues(6);
         values.put(ContentModel.COLUMN_ARTICLE_ID, id);
-        values.put(ContentModel.COLUMN_CONTENT, article.content);
+        encoded.put(values);
+
+        if (id != -1 && encoded.isChunked()) {
+            // the row is written with its chunks, so that it is never read without them
+            database.beginTransaction();
+            try {
+                database.insert(ContentModel.TABLE, null, values);
+                encoded.writeChunks(database, id);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } else {
+            database.insert(ContentModel.TABLE, null, values);
+        }
+
+        if (id != -1) {
+            values = new ContentValues(5);
+            values.put(SearchModel.COLUMN_ID, id);
+            values.put(SearchModel.COLUMN_TITLE, article.title);
+            values.put(SearchModel.COLUMN_DESCRIPTION, article.description);
+            values.put(SearchModel.COLUMN_AUTHOR, article.author);
+            values.put(SearchModel.COLUMN_TEXT, ArticleSearch.getText(article.blocks));
+            database.insert(SearchModel.TABLE, null, values);
+        }
 
-        database.insert(ContentModel.TABLE, null, values);
         return id;
     }
 
+    /**
+     * Inserts many articles in a single transaction. This is much faster than inserting them one
+     * at a time with {@link #insertArticle(Article)} when importing a large number of articles.
+     *
+     * Each article's id will be set to the id that it was inserted with. Articles that can not be
+     * inserted, such as ones whose url is already stored, are skipped and get an id of -1.
+     *
+     * @param articles the articles to insert.
+     * @return the number of articles that were inserted.
+     */
+    public int insertArticles(Collection<Article> articles) {
+        SQLiteStatement insertArticle = database.compileStatement(INSERT_ARTICLE);
+        SQLiteStatement insertContent = database.compileStatement(INSERT_CONTENT);
+        SQLiteStatement insertSearch = database.compileStatement(INSERT_SEARCH);
+        long now = System.currentTimeMillis();
+        int inserted = 0;
+
+        database.beginTransaction();
+        try {
+            for (Article article : articles) {
+                // remove any extra query parameters from the url
+                article.url = ArticleUtils.removeUrlParameters(article.url);
+
+                insertArticle.clearBindings();
+                bindString(insertArticle, 1, article.alias);
+                bindString(insertArticle, 2, article.url);
+                bindString(insertArticle, 3, article.title);
+                bindString(insertArticle, 4, article.description);
+                bindString(insertArticle, 5, article.image);
+                bindString(insertArticle, 6, article.author);
+                bindString(insertArticle, 7, article.source);
+                bindString(insertArticle, 8, article.domain);
+                insertArticle.bindLong(9, article.duration);
+                insertArticle.bindLong(10, article.isArticle ? 1 : 0);
+                insertArticle.bindLong(11, article.saved ? 1 : 0);
+                if (article.sourceId != null) {
+                    insertArticle.bindLong(12, article.sourceId);
+                }
+                long insertedAt = article.insertedAt == 0 ? now : article.insertedAt;
+                insertArticle.bindLong(13, insertedAt);
+                insertArticle.bindLong(14, insertedAt);
+
+                try {
+                    article.id = insertArticle.executeInsert();
+                } catch (SQLiteConstraintException e) {
+                    article.id = -1;
+                    continue;
+                }
+
+                EncodedContent encoded = new EncodedContent(article.content, article.blocks);
+                insertContent.clearBindings();
+                insertContent.bindLong(1, article.id);
+                encoded.bind(insertContent, 2, 3);
+                insertContent.bindLong(4, encoded.size);
+                insertContent.bindLong(5, encoded.contentChunks);
+                insertContent.bindLong(6, encoded.blocksChunks);
+
+                insertContent.executeInsert();
+                encoded.writeChunks(database, article.id);
+
+                insertSearch.clearBindings();
+                insertSearch.bindLong(1, article.id);
+                bindString(insertSearch, 2, article.title);
+                bindString(insertSearch, 3, article.description);
+                bindString(insertSearch, 4, article.author);
+                bindString(insertSearch, 5, ArticleSearch.getText(article.blocks));
+                insertSearch.executeInsert();
+
+                inserted++;
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insertArticle.close();
+            insertContent.close();
+            insertSearch.close();
+        }
+
+        return inserted;
+    }
+
     /**
      * Updates an article's saved state.
      */
@@ -230,17 +454,131 @@ public class DataSource {
     }
 
     /**
-     * Updates an article's content.
+     * Updates an article's content. Any blocks that were parsed from the old content are replaced
+     * by the article's current blocks.
      */
     public void updateArticleContent(Article article) {
+        EncodedContent encoded = new EncodedContent(article.content, article.blocks);
+        ContentValues values = new ContentValues(5);
+        encoded.put(values);
+
+        String[] args = new String[] {Long.toString(article.id)};
+        database.beginTransaction();
+        try {
+            database.update(ContentModel.TABLE, values, "article_id=?", args);
+            database.delete(
+                    ContentChunkModel.TABLE, ContentChunkModel.COLUMN_ARTICLE_ID + "=?", args);
+            encoded.writeChunks(database, article.id);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        updateSearchText(article.id, ArticleSearch.getText(article.blocks));
+    }
+
+    /**
+     * Stores the parsed blocks for an article, so that its content does not need to be parsed
+     * again the next time that it is opened.
+     */
+    public void updateArticleBlocks(Article article) {
+        byte[] blocks = article.blocks == null ? null : ArticleBlock.encode(article.blocks);
+        writeBlocks(article.id, blocks, false);
+        updateSearchText(article.id, ArticleSearch.getText(article.blocks));
+    }
+
+    /**
+     * Stores the image sizes that have been filled in on an article's blocks since they were
+     * parsed. Unlike {@link #updateArticleBlocks(Article)}, this leaves the search index alone,
+     * since the text of the blocks has not changed. Nothing is stored if the article's content has
+     * been cleared since it was loaded.
+     */
+    public void updateImageSizes(Article article) {
+        if (article.blocks == null) {
+            return;
+        }
+
+        writeBlocks(article.id, ArticleBlock.encode(article.blocks), true);
+    }
+
+    /**
+     * Replaces the blocks in an article's content row, along with any chunks that they were split
+     * into, and swaps the size of the old blocks for the new ones in the stored size.
+     *
+     * @param articleId the id of the article.
+     * @param blocks the encoded blocks, or null to remove them.
+     * @param requireContent true to leave the row alone if its content has been cleared.
+     */
+    private void writeBlocks(long articleId, @Nullable byte[] blocks, boolean requireContent) {
+        ContentValues values = new ContentValues(2);
+        int blocksChunks = ContentChunks.count(blocks);
+        if (blocks != null && blocksChunks == 0) {
+            values.put(ContentModel.COLUMN_BLOCKS, blocks);
+        } else {
+            values.putNull(ContentModel.COLUMN_BLOCKS);
+        }
+        values.put(ContentModel.COLUMN_BLOCKS_CHUNKS, blocksChunks);
+
+        String where = "article_id=?";
+        if (requireContent) {
+            where += " and (" + ContentModel.COLUMN_CONTENT + " is not null or " +
+                    ContentModel.COLUMN_CONTENT_CHUNKS + " > 0)";
+        }
+
+        database.beginTransaction();
+        try {
+            // done in place, so the content doesn't have to be read and compressed again to work
+            // out its size. Cleared content keeps a size of 0.
+            database.execSQL("update " + ContentModel.TABLE + " set " +
+                    ContentModel.COLUMN_SIZE + " = " + ContentModel.COLUMN_SIZE +
+                    " - ifnull(length(" + ContentModel.COLUMN_BLOCKS + "), 0) - " +
+                    "(select ifnull(sum(length(" + ContentChunkModel.COLUMN_DATA + ")), 0) from " +
+                    ContentChunkModel.TABLE + " where " + ContentChunkModel.COLUMN_ARTICLE_ID +
+                    "=? and " + ContentChunkModel.COLUMN_KIND + "=" +
+                    ContentChunkModel.KIND_BLOCKS + ") + ? where " +
+                    ContentModel.COLUMN_ARTICLE_ID + "=? and " + ContentModel.COLUMN_SIZE + " > 0",
+                    new Object[] {articleId, blocks == null ? 0 : blocks.length, articleId});
+
+            int updated = database.update(
+                    ContentModel.TABLE,
+                    values,
+                    where,
+                    new String[] {Long.toString(articleId)});
+            if (requireContent && updated == 0) {
+                database.setTransactionSuccessful();
+                return;
+            }
+
+            database.delete(
+                    ContentChunkModel.TABLE,
+                    ContentChunkModel.COLUMN_ARTICLE_ID + "=? and " +
+                            ContentChunkModel.COLUMN_KIND + "=?",
+                    new String[] {
+                            Long.toString(articleId),
+                            Integer.toString(ContentChunkModel.KIND_BLOCKS)
+                    });
+            if (blocksChunks > 0) {
+                ContentChunks.write(database, articleId, ContentChunkModel.KIND_BLOCKS, blocks);
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Replaces the article text in the search index, keeping its title, description and author.
+     */
+    private void updateSearchText(long articleId, @Nullable String text) {
         ContentValues values = new ContentValues(1);
-        values.put(ContentModel.COLUMN_CONTENT, article.content);
+        values.put(SearchModel.COLUMN_TEXT, text);
 
         database.update(
-                ContentModel.TABLE,
+                SearchModel.TABLE,
                 values,
-                "article_id=?",
-                new String[] {Long.toString(article.id)});
+                SearchModel.COLUMN_ID + "=?",
+                new String[] {Long.toString(articleId)});
     }
 
     /**
@@ -269,6 +607,11 @@ public class DataSource {
                         "a." + ArticleModel.COLUMN_IS_ARTICLE + " as " + ArticleModel.COLUMN_IS_ARTICLE,
                         "a." + ArticleModel.COLUMN_SAVED + " as " + ArticleModel.COLUMN_SAVED,
                         "c." + ContentModel.COLUMN_CONTENT + " as " + ContentModel.COLUMN_CONTENT,
+                        "c." + ContentModel.COLUMN_BLOCKS + " as " + ContentModel.COLUMN_BLOCKS,
+                        "c." + ContentModel.COLUMN_CONTENT_CHUNKS + " as " +
+                                ContentModel.COLUMN_CONTENT_CHUNKS,
+                        "c." + ContentModel.COLUMN_BLOCKS_CHUNKS + " as " +
+                                ContentModel.COLUMN_BLOCKS_CHUNKS,
                 },
                 ArticleModel.COLUMN_URL + "=?",
                 new String[] { url },
@@ -278,13 +621,320 @@ public class DataSource {
 
         if (cursor != null && cursor.moveToFirst()) {
             Article article = new Article(cursor);
+            readChunks(cursor, article);
             cursor.close();
+            updateLastAccessedAt(article.id);
             return article;
         } else {
             return null;
         }
     }
 
+    /**
+     * Gets the summary of a single article from the database, without its content. This is much
+     * cheaper than {@link #getArticle(String)} when all that is needed is whether the article has
+     * been stored, or whether it has been downloaded.
+     *
+     * @param url the url of the article.
+     * @return the summary, or null if the article is not stored.
+     */
+    @Nullable
+    public ArticleSummary getArticleSummary(String url) {
+        Cursor cursor = querySummaries("a." + ArticleModel.COLUMN_URL + "=?",
+                new String[] { ArticleUtils.removeUrlParameters(url) }, null, "1");
+
+        ArticleSummary summary = null;
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                summary = new ArticleSummary(cursor);
+            }
+
+            cursor.close();
+        }
+
+        return summary;
+    }
+
+    /**
+     * Gets summaries of all articles in the database, newest first. Read each row with
+     * {@link ArticleSummary#ArticleSummary(Cursor)}.
+     *
+     * @return a cursor of article summaries.
+     */
+    public Cursor getArticleSummaries() {
+        return querySummaries(null, null,
+                "a." + ArticleModel.COLUMN_INSERTED_AT + " desc", null);
+    }
+
+    /**
+     * Gets summaries of the saved articles in the database, newest first. Read each row with
+     * {@link ArticleSummary#ArticleSummary(Cursor)}.
+     *
+     * @return a cursor of article summaries.
+     */
+    public Cursor getSavedArticleSummaries() {
+        return querySummaries("a." + ArticleModel.COLUMN_SAVED + "=1", null,
+                "a." + ArticleModel.COLUMN_INSERTED_AT + " desc", null);
+    }
+
+    private Cursor querySummaries(@Nullable String selection, @Nullable String[] selectionArgs,
+                                  @Nullable String orderBy, @Nullable String limit) {
+        return database.query(
+                ArticleModel.TABLE + " a left outer join " + SourceModel.TABLE + " s " +
+                    "on a." + ArticleModel.COLUMN_SOURCE_ID + " = s." + SourceModel.COLUMN_REMOTE_ID +
+                    " left outer join " + ContentModel.TABLE + " c " +
+                    "on a." + ArticleModel.COLUMN_ID + " = c." + ContentModel.COLUMN_ARTICLE_ID,
+                ArticleSummary.PROJECTION,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                orderBy,
+                limit);
+    }
+
+    /**
+     * Loads the content and parsed blocks for an article that was queried without them, like the
+     * ones from the article pages, searches or summaries.
+     *
+     * @param article the article to load the content for. Its id has to be set.
+     * @return true if the article has content, false if it still has to be downloaded.
+     */
+    public boolean loadArticleContent(Article article) {
+        Cursor cursor = database.query(
+                ContentModel.TABLE,
+                new String[] {
+                        ContentModel.COLUMN_CONTENT,
+                        ContentModel.COLUMN_BLOCKS,
+                        ContentModel.COLUMN_CONTENT_CHUNKS,
+                        ContentModel.COLUMN_BLOCKS_CHUNKS
+                },
+                ContentModel.COLUMN_ARTICLE_ID + "=?",
+                new String[] { Long.toString(article.id) },
+                null,
+                null,
+                null,
+                "1");
+
+        if (cursor == null) {
+            return false;
+        }
+
+        if (cursor.moveToFirst()) {
+            new ArticleCursorMapper(cursor).fill(cursor, article);
+            readChunks(cursor, article);
+        }
+
+        cursor.close();
+
+        if (article.content != null) {
+            updateLastAccessedAt(article.id);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a reader over an article's content. Unlike {@link #getArticle(String)}, this never
+     * holds the whole content in memory at once, compressed or not, so it works for articles of
+     * any size. The data source has to stay open until the reader is closed.
+     *
+     * @param articleId the id of the article.
+     * @return a reader for the content, or null if the article has no content. Reading it throws
+     *         an IOException if the stored content is corrupt.
+     */
+    @Nullable
+    public Reader openArticleContent(long articleId) {
+        Cursor cursor = database.query(
+                ContentModel.TABLE,
+                new String[] { ContentModel.COLUMN_CONTENT, ContentModel.COLUMN_CONTENT_CHUNKS },
+                ContentModel.COLUMN_ARTICLE_ID + "=?",
+                new String[] { Long.toString(articleId) },
+                null,
+                null,
+                null,
+                "1");
+
+        if (cursor == null) {
+            return null;
+        }
+
+        Reader reader = null;
+        if (cursor.moveToFirst()) {
+            int chunks = cursor.getInt(1);
+            if (chunks > 0) {
+                reader = ContentChunks.openContent(database, articleId, chunks);
+            } else if (cursor.getType(0) == Cursor.FIELD_TYPE_BLOB) {
+                reader = ContentCodec.newReader(new ByteArrayInputStream(cursor.getBlob(0)));
+            } else if (!cursor.isNull(0)) {
+                reader = new StringReader(cursor.getString(0));
+            }
+        }
+
+        cursor.close();
+        return reader;
+    }
+
+    /**
+     * Fills in the content and blocks of an article that were too large to be stored in its
+     * content row, when the cursor has the chunk counts for the row.
+     */
+    private void readChunks(Cursor cursor, Article article) {
+        int contentChunks = cursor.getColumnIndex(ContentModel.COLUMN_CONTENT_CHUNKS);
+        if (contentChunks != -1 && cursor.getInt(contentChunks) > 0) {
+            Reader reader = ContentChunks.openContent(
+                    database, article.id, cursor.getInt(contentChunks));
+            article.content = readFully(reader);
+        }
+
+        int blocksChunks = cursor.getColumnIndex(ContentModel.COLUMN_BLOCKS_CHUNKS);
+        if (blocksChunks != -1 && cursor.getInt(blocksChunks) > 0) {
+            article.blocks = ArticleBlock.decode(ContentChunks.read(database, article.id,
+                    ContentChunkModel.KIND_BLOCKS, cursor.getInt(blocksChunks)));
+        }
+    }
+
+    /**
+     * Reads the rest of a reader and closes it.
+     *
+     * @return the text, or null if it could not be read.
+     */
+    @Nullable
+    private static String readFully(Reader reader) {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
+
+            return text.toString();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) { }
+        }
+    }
+
+    /**
+     * Records that an article was just read, so that its content will be one of the last to be
+     * evicted when the cache is over its budget.
+     */
+    private void updateLastAccessedAt(long articleId) {
+        ContentValues values = new ContentValues(1);
+        values.put(ArticleModel.COLUMN_LAST_ACCESSED_AT, System.currentTimeMillis());
+
+        database.update(
+                ArticleModel.TABLE, values, "_id=?", new String[] {Long.toString(articleId)});
+    }
+
+    /**
+     * Gets the approximate number of bytes used by the stored article content and blocks.
+     */
+    public long getContentSize() {
+        Cursor cursor = database.rawQuery("select sum(" + ContentModel.COLUMN_SIZE + ") from " +
+                ContentModel.TABLE + " where " + ContentModel.COLUMN_SIZE + " > 0", null);
+
+        long size = 0;
+        if (cursor != null && cursor.moveToFirst()) {
+            size = cursor.getLong(0);
+            cursor.close();
+        }
+
+        return size;
+    }
+
+    /**
+     * Gets the number of articles that have content stored.
+     */
+    public int getContentCount() {
+        Cursor cursor = database.rawQuery("select count(*) from " + ContentModel.TABLE +
+                " where " + ContentModel.COLUMN_SIZE + " > 0", null);
+
+        int count = 0;
+        if (cursor != null && cursor.moveToFirst()) {
+            count = cursor.getInt(0);
+            cursor.close();
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the unsaved articles with stored content that were read the longest time ago.
+     *
+     * @param limit the maximum number of articles to return.
+     * @return the ids of the articles, least recently read first.
+     */
+    public List<Long> getLeastRecentlyAccessedArticleIds(int limit) {
+        Cursor cursor = database.query(
+                ArticleModel.TABLE + " a join " + ContentModel.TABLE + " c " +
+                        "on a." + ArticleModel.COLUMN_ID + " = c." + ContentModel.COLUMN_ARTICLE_ID,
+                new String[] { "a." + ArticleModel.COLUMN_ID },
+                "a." + ArticleModel.COLUMN_SAVED + "=0 and c." + ContentModel.COLUMN_SIZE + " > 0",
+                null,
+                null,
+                null,
+                "a." + ArticleModel.COLUMN_LAST_ACCESSED_AT + " asc",
+                Integer.toString(limit));
+
+        List<Long> ids = new ArrayList<>();
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Removes the stored content for the given articles, while keeping the articles themselves.
+     * The content will be downloaded again the next time that one of them is opened.
+     *
+     * @param articleIds the ids of the articles to remove the content from.
+     */
+    public void clearArticleContent(Collection<Long> articleIds) {
+        ContentValues values = new ContentValues(5);
+        values.putNull(ContentModel.COLUMN_CONTENT);
+        values.putNull(ContentModel.COLUMN_BLOCKS);
+        values.put(ContentModel.COLUMN_SIZE, 0);
+        values.put(ContentModel.COLUMN_CONTENT_CHUNKS, 0);
+        values.put(ContentModel.COLUMN_BLOCKS_CHUNKS, 0);
+
+        database.beginTransaction();
+        try {
+            for (long id : articleIds) {
+                String[] args = new String[] {Long.toString(id)};
+                database.update(
+                        ContentModel.TABLE,
+                        values,
+                        ContentModel.COLUMN_ARTICLE_ID + "=?",
+                        args);
+                database.delete(
+                        ContentChunkModel.TABLE,
+                        ContentChunkModel.COLUMN_ARTICLE_ID + "=?",
+                        args);
+
+                // the article can still be found by its title, description and author
+                updateSearchText(id, null);
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
     /**
      * Gets all articles in the database.
      *
@@ -342,6 +992,208 @@ public class DataSource {
                 ArticleModel.COLUMN_INSERTED_AT + " desc");
     }
 
+    /**
+     * Gets a page of articles in the database, newest first.
+     *
+     * NOTE: this method does not return the content associated with the article, that would be
+     *       slow as some articles can get very large.
+     *
+     * @param after the next key from the previous page, or null to get the first page.
+     * @param pageSize the maximum number of articles to return.
+     * @return the page of articles.
+     */
+    public ArticlePage getAllArticles(@Nullable ArticlePage.Key after, int pageSize) {
+        return getArticlePage(null, new String[0], after, pageSize);
+    }
+
+    /**
+     * Gets a page of saved articles in the database, newest first.
+     *
+     * NOTE: this method does not return the content associated with the article, that would be
+     *       slow as some articles can get very large.
+     *
+     * @param after the next key from the previous page, or null to get the first page.
+     * @param pageSize the maximum number of articles to return.
+     * @return the page of articles.
+     */
+    public ArticlePage getSavedArticles(@Nullable ArticlePage.Key after, int pageSize) {
+        return getArticlePage("a." + ArticleModel.COLUMN_SAVED + "=1", new String[0],
+                after, pageSize);
+    }
+
+    /**
+     * Gets a page of articles for a particular source, newest first.
+     *
+     * NOTE: this method does not return the content associated with the article, that would be
+     *       slow as some articles can get very large.
+     *
+     * @param remoteSourceId the source to get articles for.
+     * @param after the next key from the previous page, or null to get the first page.
+     * @param pageSize the maximum number of articles to return.
+     * @return the page of articles.
+     */
+    public ArticlePage getArticlesForSource(long remoteSourceId, @Nullable ArticlePage.Key after,
+                                            int pageSize) {
+        return getArticlePage("a." + ArticleModel.COLUMN_SOURCE_ID + "=?",
+                new String[] {Long.toString(remoteSourceId)}, after, pageSize);
+    }
+
+    /**
+     * Searches the titles, descriptions, authors and text of the stored articles. Every word in
+     * the query has to match the start of a word in the article, and the best matches come first.
+     *
+     * NOTE: the articles are returned without their content.
+     *
+     * @param query what the user is searching for.
+     * @param limit the maximum number of articles to return.
+     * @return the matching articles, best match first.
+     */
+    public List<Article> searchArticles(String query, int limit) {
+        String match = ArticleSearch.toMatchQuery(query);
+        if (match == null || limit < 1) {
+            return new ArrayList<>();
+        }
+
+        Cursor cursor = database.rawQuery("select " + SearchModel.COLUMN_ID + ", matchinfo(" +
+                SearchModel.TABLE + ", '" + ArticleSearch.MATCHINFO_FORMAT + "') from " +
+                SearchModel.TABLE + " where " + SearchModel.TABLE + " match ?",
+                new String[] { match });
+
+        // only the best matches are kept, in a heap with the worst of them on top
+        PriorityQueue<ScoredId> best = new PriorityQueue<>(limit);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                ScoredId scored = new ScoredId(
+                        cursor.getLong(0), ArticleSearch.score(cursor.getBlob(1)));
+
+                if (best.size() < limit) {
+                    best.add(scored);
+                } else if (scored.compareTo(best.peek()) > 0) {
+                    best.poll();
+                    best.add(scored);
+                }
+            }
+
+            cursor.close();
+        }
+
+        if (best.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        StringBuilder ids = new StringBuilder();
+        for (ScoredId scored : best) {
+            if (ids.length() != 0) {
+                ids.append(", ");
+            }
+
+            ids.append(scored.id);
+        }
+
+        cursor = database.query(
+                ArticleModel.TABLE + " a left outer join " + SourceModel.TABLE + " s " +
+                    "on a." + ArticleModel.COLUMN_SOURCE_ID + " = s." + SourceModel.COLUMN_REMOTE_ID,
+                new String[] {
+                        "a.*",
+                        "s." + SourceModel.COLUMN_NAME + " as " + SourceModel.COLUMN_NAME,
+                        "s." + SourceModel.COLUMN_IMAGE_URL + " as " + SourceModel.COLUMN_IMAGE_URL
+                },
+                "a." + ArticleModel.COLUMN_ID + " in (" + ids + ")",
+                null,
+                null,
+                null,
+                null);
+
+        Map<Long, Article> articles = new HashMap<>();
+        if (cursor != null) {
+            ArticleCursorMapper mapper = new ArticleCursorMapper(cursor);
+            while (cursor.moveToNext()) {
+                Article article = mapper.map(cursor);
+                articles.put(article.id, article);
+            }
+
+            cursor.close();
+        }
+
+        // the heap gives back the worst match first
+        List<Article> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            Article article = articles.get(best.poll().id);
+            if (article != null) {
+                results.add(0, article);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Queries a single page of articles. Instead of using an offset, which would make SQLite step
+     * over every article on the earlier pages, the page starts right after the key from the
+     * previous one, so loading any page only costs as much as the page itself.
+     */
+    private ArticlePage getArticlePage(@Nullable String selection, String[] selectionArgs,
+                                       @Nullable ArticlePage.Key after, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("page size must be at least 1");
+        }
+
+        List<String> args = new ArrayList<>(Arrays.asList(selectionArgs));
+        if (after != null) {
+            // the same as (inserted_at < ? or (inserted_at = ? and _id < ?)), but written so that
+            // SQLite can use the range on inserted_at to seek into the index
+            String keyset = "a." + ArticleModel.COLUMN_INSERTED_AT + " <= ? and (a." +
+                    ArticleModel.COLUMN_INSERTED_AT + " < ? or a." + ArticleModel.COLUMN_ID +
+                    " < ?)";
+            selection = selection == null ? keyset : selection + " and " + keyset;
+            args.add(Long.toString(after.getInsertedAt()));
+            args.add(Long.toString(after.getInsertedAt()));
+            args.add(Long.toString(after.getId()));
+        }
+
+        // the source's _id would overwrite the article's if both tables were fully selected
+        Cursor cursor = database.query(
+                ArticleModel.TABLE + " a left outer join " + SourceModel.TABLE + " s " +
+                    "on a." + ArticleModel.COLUMN_SOURCE_ID + " = s." + SourceModel.COLUMN_REMOTE_ID,
+                new String[] {
+                        "a.*",
+                        "s." + SourceModel.COLUMN_NAME + " as " + SourceModel.COLUMN_NAME,
+                        "s." + SourceModel.COLUMN_IMAGE_URL + " as " + SourceModel.COLUMN_IMAGE_URL
+                },
+                selection,
+                args.toArray(new String[args.size()]),
+                null,
+                null,
+                "a." + ArticleModel.COLUMN_INSERTED_AT + " desc, a." + ArticleModel.COLUMN_ID +
+                        " desc",
+                Integer.toString(pageSize + 1));
+
+        // one extra article is queried to find out whether there is another page after this one
+        List<Article> articles = new ArrayList<>(pageSize);
+        boolean hasMore = false;
+        if (cursor != null) {
+            ArticleCursorMapper mapper = new ArticleCursorMapper(cursor);
+            while (cursor.moveToNext()) {
+                if (articles.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+
+                articles.add(mapper.map(cursor));
+            }
+
+            cursor.close();
+        }
+
+        ArticlePage.Key nextKey = null;
+        if (hasMore) {
+            Article last = articles.get(articles.size() - 1);
+            nextKey = new ArticlePage.Key(last.insertedAt, last.id);
+        }
+
+        return new ArticlePage(articles, nextKey);
+    }
+
     /**
      * Deletes an article and its content.
      *
@@ -365,6 +1217,16 @@ public class DataSource {
                 ContentModel.TABLE,
                 ContentModel.COLUMN_ARTICLE_ID + "=?",
                 new String[] {Long.toString(articleId)});
+        database.delete(
+                SearchModel.TABLE,
+                SearchModel.COLUMN_ID + "=?",
+                new String[] {Long.toString(articleId)});
+        database.delete(
+                ContentChunkModel.TABLE,
+                ContentChunkModel.COLUMN_ARTICLE_ID + "=?",
+                new String[] {Long.toString(articleId)});
+
+        ArticleUtils.removeCachedArticles(Collections.singletonList(articleId));
     }
 
     /**
@@ -434,6 +1296,93 @@ public class DataSource {
         database.insert(SourceModel.TABLE, null, values);
     }
 
+    /**
+     * Inserts many sources in a single transaction, along with any categories that they need
+     * which do not exist yet. This is much faster than inserting them one at a time with
+     * {@link #insertSource(Source)} when importing a large number of sources.
+     *
+     * Sources that can not be inserted, such as ones whose remote id is already stored, are
+     * skipped.
+     *
+     * @param sources the sources to insert.
+     */
+    public void insertSources(Collection<Source> sources) {
+        Map<String, Long> categoryIds = getCategoryIds();
+        SQLiteStatement insertCategory = database.compileStatement(INSERT_CATEGORY);
+        SQLiteStatement insertSource = database.compileStatement(INSERT_SOURCE);
+
+        database.beginTransaction();
+        try {
+            for (Source source : sources) {
+                try {
+                    Long categoryId = categoryIds.get(source.categoryName);
+                    if (categoryId == null) {
+                        insertCategory.clearBindings();
+                        bindString(insertCategory, 1, source.categoryName);
+                        categoryId = insertCategory.executeInsert();
+
+                        categoryIds.put(source.categoryName, categoryId);
+                        source.categoryId = categoryId;
+                    } else if (source.categoryId == null) {
+                        source.categoryId = categoryId;
+                    }
+
+                    insertSource.clearBindings();
+                    bindString(insertSource, 1, source.name);
+                    bindString(insertSource, 2, source.imageUrl);
+                    insertSource.bindLong(3, source.remoteId);
+                    insertSource.bindLong(4, source.categoryId);
+                    insertSource.executeInsert();
+                } catch (SQLiteConstraintException e) {
+                    // skip this source and keep importing the rest
+                }
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insertCategory.close();
+            insertSource.close();
+        }
+    }
+
+    /**
+     * Gets the id for every category name in the database.
+     */
+    private Map<String, Long> getCategoryIds() {
+        Cursor cursor = database.query(
+                CategoryModel.TABLE,
+                new String[] { CategoryModel.COLUMN_ID, CategoryModel.COLUMN_NAME },
+                null,
+                null,
+                null,
+                null,
+                null);
+
+        Map<String, Long> categoryIds = new HashMap<>();
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    categoryIds.put(cursor.getString(1), cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        return categoryIds;
+    }
+
+    /**
+     * Binds a string to a compiled statement. Null values are left unbound, so they will be
+     * inserted as null after the statement's bindings are cleared.
+     */
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        }
+    }
+
     /**
      * Deletes a source from the database depending on its name.
      */
@@ -467,8 +1416,9 @@ public class DataSource {
 
         List<Source> sources = new ArrayList<>();
         if (cursor != null && cursor.moveToFirst()) {
+            SourceCursorMapper mapper = new SourceCursorMapper(cursor);
             do {
-                sources.add(new Source(cursor));
+                sources.add(mapper.map(cursor));
             } while (cursor.moveToNext());
             cursor.close();
         }
@@ -548,4 +1498,321 @@ public class DataSource {
 
         return new CategoryCounts(categories, total);
     }
+
+    /**
+     * Adds urls to the preload queue. Urls that are already in the queue are left alone, unless
+     * they failed, in which case they are tried again.
+     *
+     * @param urls the urls to preload.
+     * @return the number of urls that were added or will be tried again.
+     */
+    public int enqueuePreloads(Collection<String> urls) {
+        long now = System.currentTimeMillis();
+        ContentValues retry = new ContentValues(3);
+        retry.put(PreloadModel.COLUMN_STATUS, PreloadModel.STATUS_PENDING);
+        retry.put(PreloadModel.COLUMN_ATTEMPTS, 0);
+        retry.put(PreloadModel.COLUMN_NEXT_ATTEMPT_AT, 0);
+
+        int queued = 0;
+        database.beginTransaction();
+        try {
+            for (String url : urls) {
+                ContentValues values = new ContentValues(2);
+                values.put(PreloadModel.COLUMN_URL, url);
+                values.put(PreloadModel.COLUMN_INSERTED_AT, now);
+
+                // urls are unique, so this only inserts the ones that aren't queued yet
+                if (database.insertWithOnConflict(PreloadModel.TABLE, null, values,
+                        SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    queued++;
+                } else {
+                    queued += database.update(PreloadModel.TABLE, retry,
+                            PreloadModel.COLUMN_URL + "=? and " + PreloadModel.COLUMN_STATUS +
+                                    "=" + PreloadModel.STATUS_FAILED,
+                            new String[] {url});
+                }
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        return queued;
+    }
+
+    /**
+     * Takes the urls that are ready to be preloaded off of the queue, and marks them as running.
+     *
+     * @param now the current time.
+     * @param limit the maximum number of urls to take.
+     * @return the urls, the ones that have waited the longest first.
+     */
+    public List<QueuedPreload> takeDuePreloads(long now, int limit) {
+        List<QueuedPreload> preloads = new ArrayList<>();
+
+        database.beginTransaction();
+        try {
+            Cursor cursor = database.query(
+                    PreloadModel.TABLE,
+                    new String[] {
+                            PreloadModel.COLUMN_ID,
+                            PreloadModel.COLUMN_URL,
+                            PreloadModel.COLUMN_ATTEMPTS
+                    },
+                    PreloadModel.COLUMN_STATUS + "=" + PreloadModel.STATUS_PENDING + " and " +
+                            PreloadModel.COLUMN_NEXT_ATTEMPT_AT + " <= ?",
+                    new String[] {Long.toString(now)},
+                    null,
+                    null,
+                    PreloadModel.COLUMN_NEXT_ATTEMPT_AT + " asc, " +
+                            PreloadModel.COLUMN_ID + " asc",
+                    Integer.toString(limit));
+
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        preloads.add(new QueuedPreload(
+                                cursor.getLong(0), cursor.getString(1), cursor.getInt(2)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            ContentValues values = new ContentValues(1);
+            values.put(PreloadModel.COLUMN_STATUS, PreloadModel.STATUS_RUNNING);
+            for (QueuedPreload preload : preloads) {
+                database.update(PreloadModel.TABLE, values, PreloadModel.COLUMN_ID + "=?",
+                        new String[] {Long.toString(preload.id)});
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        return preloads;
+    }
+
+    /**
+     * Records the result of preloading a url from the queue.
+     *
+     * @param id the id of the url in the queue.
+     * @param status the new status, one of the STATUS constants in {@link PreloadModel}.
+     * @param attempts the number of times that preloading the url has failed.
+     * @param nextAttemptAt the time to try a pending url again at.
+     */
+    public void updatePreload(long id, int status, int attempts, long nextAttemptAt) {
+        ContentValues values = new ContentValues(3);
+        values.put(PreloadModel.COLUMN_STATUS, status);
+        values.put(PreloadModel.COLUMN_ATTEMPTS, attempts);
+        values.put(PreloadModel.COLUMN_NEXT_ATTEMPT_AT, nextAttemptAt);
+
+        database.update(PreloadModel.TABLE, values, PreloadModel.COLUMN_ID + "=?",
+                new String[] {Long.toString(id)});
+    }
+
+    /**
+     * Puts urls that were still running when the process was killed back into the queue.
+     *
+     * @return the number of urls that were put back.
+     */
+    public int resetRunningPreloads() {
+        ContentValues values = new ContentValues(1);
+        values.put(PreloadModel.COLUMN_STATUS, PreloadModel.STATUS_PENDING);
+
+        return database.update(PreloadModel.TABLE, values,
+                PreloadModel.COLUMN_STATUS + "=" + PreloadModel.STATUS_RUNNING, null);
+    }
+
+    /**
+     * Gets the time that the next pending url in the preload queue is ready to be tried at.
+     *
+     * @return the time, or -1 if there are no pending urls.
+     */
+    public long getNextPreloadAttemptAt() {
+        Cursor cursor = database.rawQuery("select min(" + PreloadModel.COLUMN_NEXT_ATTEMPT_AT +
+                ") from " + PreloadModel.TABLE + " where " + PreloadModel.COLUMN_STATUS + "=" +
+                PreloadModel.STATUS_PENDING, null);
+
+        if (cursor == null) {
+            return -1;
+        }
+
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets the status of a url in the preload queue.
+     *
+     * @param url the url.
+     * @return one of the STATUS constants in {@link PreloadModel}, or -1 if the url has not been
+     *         queued.
+     */
+    public int getPreloadStatus(String url) {
+        Cursor cursor = database.query(
+                PreloadModel.TABLE,
+                new String[] {PreloadModel.COLUMN_STATUS},
+                PreloadModel.COLUMN_URL + "=?",
+                new String[] {url},
+                null,
+                null,
+                null);
+
+        if (cursor == null) {
+            return -1;
+        }
+
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets the number of urls in each state of the preload queue.
+     */
+    public PreloadProgress getPreloadProgress() {
+        Cursor cursor = database.rawQuery("select " + PreloadModel.COLUMN_STATUS + ", count(*) " +
+                "from " + PreloadModel.TABLE + " group by " + PreloadModel.COLUMN_STATUS, null);
+
+        int[] counts = new int[PreloadModel.STATUS_FAILED + 1];
+        if (cursor != null && cursor.moveToFirst()) {
+            do {
+                int status = cursor.getInt(0);
+                if (status >= 0 && status < counts.length) {
+                    counts[status] = cursor.getInt(1);
+                }
+            } while (cursor.moveToNext());
+            cursor.close();
+        }
+
+        return new PreloadProgress(counts[PreloadModel.STATUS_PENDING],
+                counts[PreloadModel.STATUS_RUNNING], counts[PreloadModel.STATUS_DONE],
+                counts[PreloadModel.STATUS_FAILED]);
+    }
+
+    /**
+     * Removes the urls that have been preloaded or have failed from the preload queue.
+     *
+     * @return the number of urls that were removed.
+     */
+    public int clearFinishedPreloads() {
+        return database.delete(PreloadModel.TABLE, PreloadModel.COLUMN_STATUS + " in (" +
+                PreloadModel.STATUS_DONE + ", " + PreloadModel.STATUS_FAILED + ")", null);
+    }
+
+    /**
+     * A search match, ordered from the worst match to the best.
+     */
+    private static final class ScoredId implements Comparable<ScoredId> {
+        private final long id;
+        private final double score;
+
+        private ScoredId(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredId other) {
+            int result = Double.compare(score, other.score);
+
+            // newer articles win ties
+            return result != 0 ? result : (id < other.id ? -1 : (id == other.id ? 0 : 1));
+        }
+    }
+
+    /**
+     * An article's content and blocks, encoded the way that they are stored.
+     */
+    private static final class EncodedContent {
+
+        private final String text;
+        private final byte[] compressed;
+        private final byte[] blocks;
+        private final int contentChunks;
+        private final int blocksChunks;
+        private final long size;
+
+        private EncodedContent(@Nullable String content, @Nullable List<ArticleBlock> blocks) {
+            // text is stored as UTF-8, so sizes are measured in those bytes, like everything else
+            byte[] utf8 = content == null ? null : content.getBytes(UTF_8);
+            byte[] compressed = utf8 == null ? null : ContentCodec.compress(utf8, true);
+            if (compressed == null && utf8 != null && utf8.length > ContentChunks.CHUNK_SIZE) {
+                // content this long has to be split into chunks, which are always compressed
+                compressed = ContentCodec.compress(utf8, false);
+            }
+
+            this.text = content;
+            this.compressed = compressed;
+            this.blocks = blocks == null ? null : ArticleBlock.encode(blocks);
+            this.contentChunks = ContentChunks.count(this.compressed);
+            this.blocksChunks = ContentChunks.count(this.blocks);
+            this.size = (compressed != null ? compressed.length : utf8 == null ? 0 : utf8.length) +
+                    (this.blocks == null ? 0 : this.blocks.length);
+        }
+
+        private boolean isChunked() {
+            return contentChunks > 0 || blocksChunks > 0;
+        }
+
+        /**
+         * Puts the content, blocks, size and chunk counts into the values for a content row.
+         */
+        private void put(ContentValues values) {
+            if (contentChunks > 0) {
+                values.putNull(ContentModel.COLUMN_CONTENT);
+            } else if (compressed != null) {
+                values.put(ContentModel.COLUMN_CONTENT, compressed);
+            } else {
+                values.put(ContentModel.COLUMN_CONTENT, text);
+            }
+
+            if (blocks != null && blocksChunks == 0) {
+                values.put(ContentModel.COLUMN_BLOCKS, blocks);
+            } else {
+                values.putNull(ContentModel.COLUMN_BLOCKS);
+            }
+
+            values.put(ContentModel.COLUMN_SIZE, size);
+            values.put(ContentModel.COLUMN_CONTENT_CHUNKS, contentChunks);
+            values.put(ContentModel.COLUMN_BLOCKS_CHUNKS, blocksChunks);
+        }
+
+        /**
+         * Binds the content and blocks to a compiled insert. Values that are stored in chunks are
+         * left unbound.
+         */
+        private void bind(SQLiteStatement statement, int contentIndex, int blocksIndex) {
+            if (contentChunks == 0) {
+                if (compressed != null) {
+                    statement.bindBlob(contentIndex, compressed);
+                } else {
+                    bindString(statement, contentIndex, text);
+                }
+            }
+
+            if (blocks != null && blocksChunks == 0) {
+                statement.bindBlob(blocksIndex, blocks);
+            }
+        }
+
+        private void writeChunks(SQLiteDatabase database, long articleId) {
+            if (contentChunks > 0) {
+                ContentChunks.write(
+                        database, articleId, ContentChunkModel.KIND_CONTENT, compressed);
+            }
+
+            if (blocksChunks > 0) {
+                ContentChunks.write(database, articleId, ContentChunkModel.KIND_BLOCKS, blocks);
+            }
+        }
+    }
 }
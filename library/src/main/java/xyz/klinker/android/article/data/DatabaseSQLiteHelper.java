@@ -16,29 +16,53 @@
 
 package xyz.klinker.android.article.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import androidx.annotation.VisibleForTesting;
 
 import xyz.klinker.android.article.data.model.ArticleModel;
 import xyz.klinker.android.article.data.model.CategoryModel;
+import xyz.klinker.android.article.data.model.ContentChunkModel;
 import xyz.klinker.android.article.data.model.ContentModel;
 import xyz.klinker.android.article.data.model.DatabaseTable;
+import xyz.klinker.android.article.data.model.PreloadModel;
+import xyz.klinker.android.article.data.model.SearchModel;
 import xyz.klinker.android.article.data.model.SourceModel;
 
 /**
  * Handles creating and updating a database.
+ *
+ * The database uses write-ahead logging, so a long write (such as inserting an article with a lot
+ * of content) does not block the queries that drive the UI. While the log is enabled, SQLite hands
+ * queries made outside of a transaction to a pool of read-only connections, and they read the last
+ * committed state of the database instead of waiting on the writer.
  */
 public class DatabaseSQLiteHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "articles.db";
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 10;
+
+    // article content is large, so give the primary connection (which does all of the writing) a
+    // 4 MB page cache, about twice SQLite's default, to keep more of the content table in memory.
+    // Android already creates databases with 4 KB pages, and the page size can't be changed once
+    // the database is in WAL mode, so it is left alone.
+    private static final int CACHE_SIZE_PAGES = 1024;
+
+    // number of rows read at once while migrating existing content, to keep memory use down
+    private static final int MIGRATION_BATCH_SIZE = 50;
 
     private DatabaseTable[] tables = {
             new ArticleModel(),
             new ContentModel(),
             new SourceModel(),
-            new CategoryModel()
+            new CategoryModel(),
+            new SearchModel(),
+            new ContentChunkModel(),
+            new PreloadModel()
     };
 
     /**
@@ -48,6 +72,31 @@ public class DatabaseSQLiteHelper extends SQLiteOpenHelper {
      */
     public DatabaseSQLiteHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        configure(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // onConfigure and setWriteAheadLoggingEnabled are only available on Jelly Bean and up
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            configure(db);
+
+            if (!db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+            }
+        }
+    }
+
+    private static void configure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA cache_size = " + CACHE_SIZE_PAGES);
     }
 
     @Override
@@ -80,6 +129,200 @@ public class DatabaseSQLiteHelper extends SQLiteOpenHelper {
                 db.execSQL(tables[0].getIndexStatements()[1]);
             } catch(Exception e) { }
         }
+
+        if (oldVersion < 4) {
+            try {
+                db.execSQL("ALTER TABLE content ADD COLUMN blocks blob");
+            } catch(Exception e) { }
+        }
+
+        if (oldVersion < 5) {
+            try {
+                db.execSQL(tables[0].getIndexStatements()[2]);
+                db.execSQL(tables[0].getIndexStatements()[3]);
+                db.execSQL(tables[0].getIndexStatements()[4]);
+                db.execSQL(tables[2].getIndexStatements()[2]);
+            } catch(Exception e) { }
+        }
+
+        if (oldVersion < 6) {
+            try {
+                db.execSQL("ALTER TABLE article ADD COLUMN last_accessed_at integer not null " +
+                        "DEFAULT 0");
+                db.execSQL("UPDATE article SET last_accessed_at = inserted_at");
+                db.execSQL("ALTER TABLE content ADD COLUMN size integer not null DEFAULT 0");
+                db.execSQL("UPDATE content SET size = " +
+                        "ifnull(length(CAST(content AS BLOB)), 0) + ifnull(length(blocks), 0)");
+                db.execSQL(tables[0].getIndexStatements()[5]);
+                db.execSQL(tables[1].getIndexStatements()[1]);
+            } catch(Exception e) { }
+        }
+
+        if (oldVersion < 7) {
+            try {
+                compressContent(db);
+            } catch(Exception e) { }
+        }
+
+        if (oldVersion < 8) {
+            try {
+                db.execSQL(tables[4].getCreateStatement());
+                db.execSQL("INSERT INTO article_search (docid, title, description, author) " +
+                        "SELECT _id, title, description, author FROM article");
+                indexBlocks(db);
+            } catch(Exception e) { }
+        }
+
+        if (oldVersion < 9) {
+            try {
+                db.execSQL("ALTER TABLE content ADD COLUMN content_chunks integer not null " +
+                        "DEFAULT 0");
+                db.execSQL("ALTER TABLE content ADD COLUMN blocks_chunks integer not null " +
+                        "DEFAULT 0");
+                db.execSQL(tables[5].getCreateStatement());
+                db.execSQL(tables[5].getIndexStatements()[0]);
+                splitLargeValues(db, "content", "content_chunks", ContentChunkModel.KIND_CONTENT);
+                splitLargeValues(db, "blocks", "blocks_chunks", ContentChunkModel.KIND_BLOCKS);
+                splitLargeText(db);
+            } catch(Exception e) { }
+        }
+
+        if (oldVersion < 10) {
+            try {
+                db.execSQL(tables[6].getCreateStatement());
+                db.execSQL(tables[6].getIndexStatements()[0]);
+                db.execSQL(tables[6].getIndexStatements()[1]);
+            } catch(Exception e) { }
+        }
+    }
+
+    /**
+     * Moves the blobs in a column of the content table that are too large to be read through a
+     * cursor into the chunk table. This is all done in SQL, since those rows can't be read.
+     */
+    @VisibleForTesting
+    static void splitLargeValues(SQLiteDatabase db, String column, String chunksColumn, int kind) {
+        splitLargeValues(db, column, chunksColumn, "blob", kind);
+    }
+
+    /**
+     * Moves content that is stored as text and too large to be read through a cursor into the
+     * chunk table. Content from before compression was added is stored as text no matter how
+     * long it is. It can't be compressed without reading it, so its UTF-8 bytes are chunked as
+     * they are, under {@link ContentChunkModel#KIND_TEXT}.
+     */
+    @VisibleForTesting
+    static void splitLargeText(SQLiteDatabase db) {
+        splitLargeValues(db, "content", "content_chunks", "text", ContentChunkModel.KIND_TEXT);
+    }
+
+    private static void splitLargeValues(SQLiteDatabase db, String column, String chunksColumn,
+                                         String type, int kind) {
+        // length() and substr() count text in characters, but blobs in bytes
+        String bytes = "CAST(" + column + " AS BLOB)";
+        String large = "typeof(" + column + ") = '" + type + "' AND length(" + bytes + ") > " +
+                ContentChunks.CHUNK_SIZE;
+
+        Cursor cursor = db.rawQuery("SELECT max(length(" + bytes + ")) FROM content WHERE " +
+                large, null);
+        if (cursor == null) {
+            return;
+        }
+
+        long longest = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+
+        // substr() starts counting from 1
+        for (int chunk = 0; (long) chunk * ContentChunks.CHUNK_SIZE < longest; chunk++) {
+            long start = (long) chunk * ContentChunks.CHUNK_SIZE;
+            db.execSQL("INSERT INTO content_chunk (article_id, kind, chunk, data) " +
+                    "SELECT article_id, ?, ?, substr(" + bytes + ", ?, ?) FROM content " +
+                    "WHERE " + large + " AND length(" + bytes + ") > ?",
+                    new Object[] { kind, chunk, start + 1, ContentChunks.CHUNK_SIZE, start });
+        }
+
+        if (longest > 0) {
+            db.execSQL("UPDATE content SET " + chunksColumn + " = (length(" + bytes + ") + " +
+                    (ContentChunks.CHUNK_SIZE - 1) + ") / " + ContentChunks.CHUNK_SIZE + ", " +
+                    column + " = NULL WHERE " + large);
+        }
+    }
+
+    /**
+     * Adds the text of every article that has already been parsed to the search index. Blocks that
+     * are too large to be read through a cursor are skipped, they are moved into chunks by a later
+     * upgrade and indexed the next time the article is parsed.
+     */
+    private static void indexBlocks(SQLiteDatabase db) {
+        long lastId = -1;
+
+        while (true) {
+            Cursor cursor = db.rawQuery("SELECT _id, article_id, blocks FROM content " +
+                    "WHERE _id > ? AND blocks IS NOT NULL AND length(blocks) <= " +
+                    ContentChunks.CHUNK_SIZE + " ORDER BY _id LIMIT " +
+                    MIGRATION_BATCH_SIZE, new String[] {Long.toString(lastId)});
+
+            if (cursor == null) {
+                return;
+            } else if (!cursor.moveToFirst()) {
+                cursor.close();
+                return;
+            }
+
+            do {
+                lastId = cursor.getLong(0);
+                String text = ArticleSearch.getText(ArticleBlock.decode(cursor.getBlob(2)));
+
+                if (text != null) {
+                    ContentValues values = new ContentValues(1);
+                    values.put(SearchModel.COLUMN_TEXT, text);
+                    db.update(SearchModel.TABLE, values, "docid=?",
+                            new String[] {Long.toString(cursor.getLong(1))});
+                }
+            } while (cursor.moveToNext());
+
+            cursor.close();
+        }
+    }
+
+    /**
+     * Compresses all of the content that is stored as text and updates its size. Rows are read a
+     * batch at a time, in order of their ids, since some content may be too short to compress and
+     * will stay as text. Content that is too large to be read through a cursor is left for a
+     * later upgrade to split into chunks, since reading it would fail the rest of the batch.
+     */
+    private static void compressContent(SQLiteDatabase db) {
+        long lastId = -1;
+
+        while (true) {
+            Cursor cursor = db.rawQuery("SELECT _id, content, length(blocks) FROM content " +
+                    "WHERE _id > ? AND typeof(content) = 'text' AND " +
+                    "length(CAST(content AS BLOB)) <= " + ContentChunks.CHUNK_SIZE +
+                    " ORDER BY _id LIMIT " +
+                    MIGRATION_BATCH_SIZE, new String[] {Long.toString(lastId)});
+
+            if (cursor == null) {
+                return;
+            } else if (!cursor.moveToFirst()) {
+                cursor.close();
+                return;
+            }
+
+            do {
+                lastId = cursor.getLong(0);
+                byte[] compressed = ContentCodec.compress(cursor.getString(1));
+
+                if (compressed != null) {
+                    ContentValues values = new ContentValues(2);
+                    values.put(ContentModel.COLUMN_CONTENT, compressed);
+                    values.put(ContentModel.COLUMN_SIZE, compressed.length + cursor.getLong(2));
+                    db.update(ContentModel.TABLE, values, "_id=?",
+                            new String[] {Long.toString(lastId)});
+                }
+            } while (cursor.moveToNext());
+
+            cursor.close();
+        }
     }
 
     public void onDrop(SQLiteDatabase db) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+/**
+ * The number of urls in each state of the preload queue.
+ */
+public class PreloadProgress {
+
+    private int pending;
+    private int running;
+    private int done;
+    private int failed;
+
+    public PreloadProgress(int pending, int running, int done, int failed) {
+        this.pending = pending;
+        this.running = running;
+        this.done = done;
+        this.failed = failed;
+    }
+
+    /**
+     * Gets the number of urls that are waiting to be preloaded, including the ones that failed
+     * and will be tried again.
+     */
+    public int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * Gets the number of urls that are being preloaded right now.
+     */
+    public int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * Gets the number of urls that have been preloaded.
+     */
+    public int getDoneCount() {
+        return done;
+    }
+
+    /**
+     * Gets the number of urls that could not be preloaded and won't be tried again.
+     */
+    public int getFailedCount() {
+        return failed;
+    }
+
+    /**
+     * Gets the number of urls in the queue.
+     */
+    public int getTotalCount() {
+        return pending + running + done + failed;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+/**
+ * A url that was taken off of the preload queue, see {@link DataSource#takeDuePreloads(long, int)}.
+ */
+public class QueuedPreload {
+
+    public long id;
+    public String url;
+    public int attempts;
+
+    public QueuedPreload(long id, String url, int attempts) {
+        this.id = id;
+        this.url = url;
+        this.attempts = attempts;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.Cursor;
+
+import xyz.klinker.android.article.data.model.CategoryModel;
+import xyz.klinker.android.article.data.model.SourceModel;
+
+/**
+ * Reads sources out of a cursor, looking up the position of each column once when the mapper is
+ * created. See {@link ArticleCursorMapper}.
+ */
+public final class SourceCursorMapper {
+
+    // the source queries alias their columns so that they don't clash with the category's
+    static final String COLUMN_ID = "s" + SourceModel.COLUMN_ID;
+    static final String COLUMN_NAME = "s" + SourceModel.COLUMN_NAME;
+    static final String COLUMN_IMAGE_URL = "s" + SourceModel.COLUMN_IMAGE_URL;
+    static final String COLUMN_REMOTE_ID = "s" + SourceModel.COLUMN_REMOTE_ID;
+    static final String COLUMN_CATEGORY_ID = "c" + CategoryModel.COLUMN_ID;
+    static final String COLUMN_CATEGORY_NAME = "c" + CategoryModel.COLUMN_NAME;
+
+    private int id = -1;
+    private int name = -1;
+    private int imageUrl = -1;
+    private int remoteId = -1;
+    private int categoryId = -1;
+    private int categoryName = -1;
+
+    /**
+     * Creates a mapper for the columns of a cursor.
+     *
+     * @param cursor the cursor that sources will be read from.
+     */
+    public SourceCursorMapper(Cursor cursor) {
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            String column = cursor.getColumnName(i);
+
+            if (column.equals(COLUMN_ID)) {
+                id = i;
+            } else if (column.equals(COLUMN_NAME)) {
+                name = i;
+            } else if (column.equals(COLUMN_IMAGE_URL)) {
+                imageUrl = i;
+            } else if (column.equals(COLUMN_REMOTE_ID)) {
+                remoteId = i;
+            } else if (column.equals(COLUMN_CATEGORY_ID)) {
+                categoryId = i;
+            } else if (column.equals(COLUMN_CATEGORY_NAME)) {
+                categoryName = i;
+            }
+        }
+    }
+
+    /**
+     * Reads the source at the cursor's current position.
+     *
+     * @param cursor the cursor that this mapper was created for.
+     * @return a new source.
+     */
+    public Source map(Cursor cursor) {
+        return fill(cursor, new Source());
+    }
+
+    /**
+     * Reads the source at the cursor's current position into an existing source. Only the fields
+     * that the cursor has columns for are changed.
+     *
+     * @param cursor the cursor that this mapper was created for.
+     * @param source the source to fill.
+     * @return the same source.
+     */
+    public Source fill(Cursor cursor, Source source) {
+        if (id != -1) {
+            source.id = cursor.getLong(id);
+        }
+
+        if (name != -1) {
+            source.name = cursor.getString(name);
+        }
+
+        if (imageUrl != -1) {
+            source.imageUrl = cursor.getString(imageUrl);
+        }
+
+        if (remoteId != -1) {
+            source.remoteId = cursor.getLong(remoteId);
+        }
+
+        if (categoryId != -1) {
+            source.categoryId = cursor.getLong(categoryId);
+        }
+
+        if (categoryName != -1) {
+            source.categoryName = cursor.getString(categoryName);
+        }
+
+        return source;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data.model;
+
+/**
+ * Pieces of article content and blocks that were too large to store in a single row of the
+ * content table. Android reads query results through a cursor window of about 2 MB, and a row
+ * that doesn't fit can't be read at all, so large values are split into chunks that are each
+ * read with their own query.
+ */
+public class ContentChunkModel implements DatabaseTable {
+
+    public static final String TABLE = "content_chunk";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_ARTICLE_ID = "article_id";
+    public static final String COLUMN_KIND = "kind";
+    public static final String COLUMN_CHUNK = "chunk";
+    public static final String COLUMN_DATA = "data";
+
+    // what a chunk is part of
+    public static final int KIND_CONTENT = 0;
+    public static final int KIND_BLOCKS = 1;
+
+    // content that was stored as text and already too large to read when chunks were added, it
+    // is split into chunks of its UTF-8 bytes instead of being compressed
+    public static final int KIND_TEXT = 2;
+
+    private static final String DATABASE_CREATE = "create table if not exists " +
+            TABLE + " (" +
+            COLUMN_ID + " integer primary key, " +
+            COLUMN_ARTICLE_ID + " integer not null, " +
+            COLUMN_KIND + " integer not null, " +
+            COLUMN_CHUNK + " integer not null, " +
+            COLUMN_DATA + " blob not null" +
+            ");";
+
+    private static final String[] INDEXES = {
+            "create unique index if not exists article_kind_chunk_content_chunk_index on " +
+                    TABLE + " (" + COLUMN_ARTICLE_ID + ", " + COLUMN_KIND + ", " +
+                    COLUMN_CHUNK + ");"
+    };
+
+    @Override
+    public String getCreateStatement() {
+        return DATABASE_CREATE;
+    }
+
+    @Override
+    public String getTableName() {
+        return TABLE;
+    }
+
+    @Override
+    public String[] getIndexStatements() {
+        return INDEXES;
+    }
+}
@@ -26,18 +26,39 @@ public final class ContentModel implements DatabaseTable {
     public static final String TABLE = "content";
     public static final String COLUMN_ID = "_id";
     public static final String COLUMN_ARTICLE_ID = "article_id";
+    public static final String COLUMN_BLOCKS = "blocks";
+
+    // html of the article. This is usually a compressed blob, but content that is too short to be
+    // worth compressing is stored as text.
     public static final String COLUMN_CONTENT = "content";
 
+    // approximate size of the content and blocks (bytes of compressed content or characters of
+    // text content, plus bytes of blocks), stored so that the total can be added up from an
+    // index instead of reading every row
+    public static final String COLUMN_SIZE = "size";
+
+    // number of chunks that the content and blocks were split into, when they were too large to
+    // be read back through a single cursor window. Chunked content and blocks are null in this
+    // table and stored in the content_chunk table instead.
+    public static final String COLUMN_CONTENT_CHUNKS = "content_chunks";
+    public static final String COLUMN_BLOCKS_CHUNKS = "blocks_chunks";
+
     private static final String DATABASE_CREATE = "create table if not exists " +
             TABLE + " (" +
             COLUMN_ID + " integer primary key, " +
             COLUMN_ARTICLE_ID + " integer not null, " +
-            COLUMN_CONTENT + " text" +
+            COLUMN_CONTENT + " text, " +
+            COLUMN_BLOCKS + " blob, " +
+            COLUMN_SIZE + " integer not null default 0, " +
+            COLUMN_CONTENT_CHUNKS + " integer not null default 0, " +
+            COLUMN_BLOCKS_CHUNKS + " integer not null default 0" +
             ");";
 
     private static final String[] INDEXES = {
             "create index if not exists article_content_index on " + TABLE +
-                    " (" + COLUMN_ARTICLE_ID + ");"
+                    " (" + COLUMN_ARTICLE_ID + ");",
+            "create index if not exists size_content_index on " + TABLE +
+                    " (" + COLUMN_SIZE + ");"
     };
 
     @Override
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data.model;
+
+/**
+ * Urls that are waiting to be preloaded in the background. The queue is kept in the database so
+ * that it survives the process being killed, and each url stays in it after it is preloaded so
+ * that its status can still be checked.
+ */
+public class PreloadModel implements DatabaseTable {
+
+    public static final String TABLE = "preload";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_URL = "url";
+    public static final String COLUMN_STATUS = "status";
+    public static final String COLUMN_ATTEMPTS = "attempts";
+    public static final String COLUMN_NEXT_ATTEMPT_AT = "next_attempt_at";
+    public static final String COLUMN_INSERTED_AT = "inserted_at";
+
+    // where a url is in the queue
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_RUNNING = 1;
+    public static final int STATUS_DONE = 2;
+    public static final int STATUS_FAILED = 3;
+
+    private static final String DATABASE_CREATE = "create table if not exists " +
+            TABLE + " (" +
+            COLUMN_ID + " integer primary key, " +
+            COLUMN_URL + " text not null, " +
+            COLUMN_STATUS + " integer not null default " + STATUS_PENDING + ", " +
+            COLUMN_ATTEMPTS + " integer not null default 0, " +
+            COLUMN_NEXT_ATTEMPT_AT + " integer not null default 0, " +
+            COLUMN_INSERTED_AT + " integer not null" +
+            ");";
+
+    private static final String[] INDEXES = {
+            "create unique index if not exists url_preload_index on " + TABLE +
+                    " (" + COLUMN_URL + ");",
+            "create index if not exists status_next_attempt_at_preload_index on " + TABLE +
+                    " (" + COLUMN_STATUS + ", " + COLUMN_NEXT_ATTEMPT_AT + ");"
+    };
+
+    @Override
+    public String getCreateStatement() {
+        return DATABASE_CREATE;
+    }
+
+    @Override
+    public String getTableName() {
+        return TABLE;
+    }
+
+    @Override
+    public String[] getIndexStatements() {
+        return INDEXES;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data.model;
+
+/**
+ * Full text search index over the articles. Each row's docid is the id of the article that it
+ * indexes. The text is the plain text of the article's parsed blocks, so it is only filled in once
+ * the article has been parsed.
+ */
+public class SearchModel implements DatabaseTable {
+
+    public static final String TABLE = "article_search";
+    public static final String COLUMN_ID = "docid";
+    public static final String COLUMN_TITLE = "title";
+    public static final String COLUMN_DESCRIPTION = "description";
+    public static final String COLUMN_AUTHOR = "author";
+    public static final String COLUMN_TEXT = "text";
+
+    private static final String DATABASE_CREATE = "create virtual table if not exists " +
+            TABLE + " using fts4(" +
+            COLUMN_TITLE + ", " +
+            COLUMN_DESCRIPTION + ", " +
+            COLUMN_AUTHOR + ", " +
+            COLUMN_TEXT +
+            ");";
+
+    // full text tables are indexed by the search module itself
+    private static final String[] INDEXES = { };
+
+    @Override
+    public String getCreateStatement() {
+        return DATABASE_CREATE;
+    }
+
+    @Override
+    public String getTableName() {
+        return TABLE;
+    }
+
+    @Override
+    public String[] getIndexStatements() {
+        return INDEXES;
+    }
+}
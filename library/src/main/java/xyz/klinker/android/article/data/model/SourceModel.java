@@ -41,7 +41,9 @@ public class SourceModel implements DatabaseTable {
             "create index if not exists category_id_source_index on " + TABLE +
                     " (" + COLUMN_CATEGORY_ID + ");",
             "create index if not exists remote_id_source_index on " + TABLE +
-                    " (" + COLUMN_REMOTE_ID + ");"
+                    " (" + COLUMN_REMOTE_ID + ");",
+            "create index if not exists name_source_index on " + TABLE +
+                    " (" + COLUMN_NAME + ");"
     };
 
     @Override
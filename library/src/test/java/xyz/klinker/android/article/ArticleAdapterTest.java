@@ -20,26 +20,26 @@ import android.app.Activity;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
 
-import org.jsoup.select.Elements;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Mock;
 import org.robolectric.Robolectric;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Mockito.when;
 
 public class ArticleAdapterTest extends ArticleRobolectricSuite {
 
     private Article article;
     private ArticleAdapter adapter;
 
-    @Mock
-    private Elements elements;
-
     @Before
     public void setUp() {
         article = new Article();
@@ -229,12 +229,47 @@ public class ArticleAdapterTest extends ArticleRobolectricSuite {
 
     @Test
     public void getItemCount_headerAndElements() {
-        when(elements.size()).thenReturn(12);
-        adapter.addElements(elements);
+        adapter.addBlocks(generateBlocks(12));
         article.title = "test title";
         assertEquals(14, adapter.getItemCount());
     }
 
+    @Test
+    public void addBlocks_appendsChunks() {
+        adapter.addBlocks(generateBlocks(8));
+        adapter.addBlocks(generateBlocks(20));
+        adapter.addBlocks(new ArrayList<ArticleBlock>());
+
+        assertEquals(28, adapter.getBlockCount());
+        assertEquals(29, adapter.getItemCount());
+    }
+
+    @Test
+    public void addBlocks_skipsKnownTinyImages() {
+        List<ArticleBlock> blocks = generateBlocks(2);
+        ArticleBlock pixel = new ArticleBlock("img", null, null, "http://test.com/pixel.gif");
+        pixel.width = 1;
+        pixel.height = 1;
+        blocks.add(pixel);
+        blocks.add(new ArticleBlock("img", null, null, "http://test.com/unknown.jpg"));
+
+        adapter.addBlocks(blocks);
+
+        assertEquals(4, adapter.getBlockCount());
+        assertEquals(4, adapter.getItemCount());
+    }
+
+    @Test
+    public void getDisplayHeight() {
+        assertEquals(540, ArticleAdapter.getDisplayHeight(2000, 1000, 1080, 500));
+        assertEquals(810, ArticleAdapter.getDisplayHeight(400, 300, 1080, 500));
+    }
+
+    @Test
+    public void getDisplayHeight_unknownSize() {
+        assertEquals(500, ArticleAdapter.getDisplayHeight(0, 0, 1080, 500));
+    }
+
     @Test
     public void onCreateViewHolder_headerImage() {
         assertTrue(
@@ -342,10 +377,57 @@ public class ArticleAdapterTest extends ArticleRobolectricSuite {
                         instanceof ArticleAdapter.TextViewHolder);
     }
 
+    @Test
+    public void isTooSmall() {
+        assertTrue(ArticleAdapter.isTooSmall(1, 1));
+        assertTrue(ArticleAdapter.isTooSmall(ArticleAdapter.MIN_IMAGE_WIDTH - 1, 1000));
+        assertTrue(ArticleAdapter.isTooSmall(1000, ArticleAdapter.MIN_IMAGE_HEIGHT - 1));
+        assertFalse(ArticleAdapter.isTooSmall(
+                ArticleAdapter.MIN_IMAGE_WIDTH, ArticleAdapter.MIN_IMAGE_HEIGHT));
+    }
+
+    @Test
+    public void isTooSmall_unknownSize() {
+        assertFalse(ArticleAdapter.isTooSmall(-1, -1));
+    }
+
+    @Test
+    public void getDecodeSize_scalesDownToColumn() {
+        assertArrayEquals(new int[] { 1080, 540 },
+                ArticleAdapter.getDecodeSize(4000, 2000, 1080, 500));
+    }
+
+    @Test
+    public void getDecodeSize_keepsAspectRatio() {
+        assertArrayEquals(new int[] { 1080, 1440 },
+                ArticleAdapter.getDecodeSize(1500, 2000, 1080, 500));
+    }
+
+    @Test
+    public void getDecodeSize_doesNotScaleUp() {
+        assertArrayEquals(new int[] { 400, 300 },
+                ArticleAdapter.getDecodeSize(400, 300, 1080, 500));
+    }
+
+    @Test
+    public void getDecodeSize_unknownSize() {
+        assertArrayEquals(new int[] { 1080, 500 },
+                ArticleAdapter.getDecodeSize(-1, -1, 1080, 500));
+    }
+
     private ViewGroup generateViewGroup() {
         Activity activity = Robolectric.setupActivity(Activity.class);
         LinearLayout linearLayout = new LinearLayout(activity);
         activity.setContentView(linearLayout);
         return linearLayout;
     }
+
+    private List<ArticleBlock> generateBlocks(int count) {
+        List<ArticleBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            blocks.add(new ArticleBlock("p", null, "paragraph " + i, null));
+        }
+
+        return blocks;
+    }
 }
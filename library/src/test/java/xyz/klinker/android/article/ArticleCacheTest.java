@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.content.ComponentCallbacks2;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+import xyz.klinker.android.article.data.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ArticleCacheTest extends ArticleRobolectricSuite {
+
+    private ArticleCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ArticleCache(64 * 1024);
+    }
+
+    @Test
+    public void getMissing() {
+        assertNull(cache.getArticle("http://test.com"));
+        assertNull(cache.getArticle(null));
+    }
+
+    @Test
+    public void putArticle() {
+        Article article = newArticle("http://test.com", 100);
+        cache.putArticle(article);
+
+        assertSame(article, cache.getArticle("http://test.com"));
+    }
+
+    @Test
+    public void lookupIgnoresUrlParameters() {
+        cache.putArticle(newArticle("http://test.com?utm_source=test", 100));
+        assertNotNull(cache.getArticle("http://test.com?ref=other"));
+    }
+
+    @Test
+    public void blocksAreCountedAfterParsing() {
+        Article article = newArticle("http://test.com", 100);
+        cache.putArticle(article);
+        int unparsedSize = cache.size();
+
+        article.blocks = new ArrayList<>();
+        article.blocks.add(new ArticleBlock("p", null, "some paragraph text", null));
+        cache.putArticle(article);
+
+        assertTrue(cache.size() > unparsedSize);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBySize() {
+        // each of these takes up about a third of the cache
+        cache.putArticle(newArticle("http://test.com/1", 10 * 1024));
+        cache.putArticle(newArticle("http://test.com/2", 10 * 1024));
+        cache.getArticle("http://test.com/1");
+        cache.putArticle(newArticle("http://test.com/3", 10 * 1024));
+        cache.putArticle(newArticle("http://test.com/4", 10 * 1024));
+
+        assertNotNull(cache.getArticle("http://test.com/1"));
+        assertNull(cache.getArticle("http://test.com/2"));
+        assertTrue(cache.size() <= 64 * 1024);
+    }
+
+    @Test
+    public void removeArticles() {
+        Article first = newArticle("http://test.com/1", 100);
+        first.id = 1;
+        Article second = newArticle("http://test.com/2", 100);
+        second.id = 2;
+        cache.putArticle(first);
+        cache.putArticle(second);
+
+        cache.removeArticles(Collections.singletonList(1L));
+
+        assertNull(cache.getArticle("http://test.com/1"));
+        assertSame(second, cache.getArticle("http://test.com/2"));
+    }
+
+    @Test
+    public void deletedArticlesAreRemoved() {
+        Article article = newArticle("http://test.com/deleted", 100);
+        article.id = 1;
+        ArticleCache.get().putArticle(article);
+
+        new DataSource(mock(SQLiteDatabase.class)).deleteArticle(article);
+
+        assertNull(ArticleCache.get().getArticle("http://test.com/deleted"));
+    }
+
+    @Test
+    public void trimMemory_complete() {
+        cache.putArticle(newArticle("http://test.com", 100));
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void trimMemory_uiHidden() {
+        cache.putArticle(newArticle("http://test.com", 100));
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertNotNull(cache.getArticle("http://test.com"));
+    }
+
+    private Article newArticle(String url, int contentLength) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < contentLength; i++) {
+            content.append('a');
+        }
+
+        Article article = new Article();
+        article.url = url;
+        article.content = content.toString();
+        article.isArticle = true;
+        return article;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleExecutorsTest extends ArticleRobolectricSuite {
+
+    @After
+    public void tearDown() {
+        ArticleExecutors.setHostExecutor(null);
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() throws Exception {
+        ThreadPoolExecutor executor = ArticleExecutors.newPriorityExecutor("test", 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(4);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        // occupy the only thread so that everything else has to wait in the queue
+        executor.execute(new ArticleExecutors.PrioritizedRunnable(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, ArticleExecutors.PRIORITY_IMMEDIATE));
+
+        executor.execute(record("preload 1", order, finished, ArticleExecutors.PRIORITY_PRELOAD));
+        executor.execute(record("immediate 1", order, finished, ArticleExecutors.PRIORITY_IMMEDIATE));
+        executor.execute(record("preload 2", order, finished, ArticleExecutors.PRIORITY_PRELOAD));
+        executor.execute(record("immediate 2", order, finished, ArticleExecutors.PRIORITY_IMMEDIATE));
+
+        blocker.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("immediate 1", "immediate 2", "preload 1", "preload 2"), order);
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void hostExecutorIsUsed() {
+        final List<Runnable> submitted = new ArrayList<>();
+        ArticleExecutors.setHostExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                submitted.add(runnable);
+                runnable.run();
+            }
+        });
+
+        final boolean[] ran = new boolean[1];
+        ArticleExecutors.executeIo(new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        }, ArticleExecutors.PRIORITY_IMMEDIATE);
+
+        assertEquals(1, submitted.size());
+        assertTrue(submitted.get(0) instanceof Comparable);
+        assertTrue(ran[0]);
+    }
+
+    private ArticleExecutors.PrioritizedRunnable record(final String name, final List<String> order,
+                                                       final CountDownLatch finished, int priority) {
+        return new ArticleExecutors.PrioritizedRunnable(new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                finished.countDown();
+            }
+        }, priority);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import xyz.klinker.android.article.data.ArticlePage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class ArticlePagerTest extends ArticleRealDataSuite {
+
+    @Mock
+    private RecyclerView recyclerView;
+    @Mock
+    private LinearLayoutManager layoutManager;
+
+    private final List<ArticlePage> pages = new ArrayList<>();
+    private final ArticlePager.PageLoadedListener listener = new ArticlePager.PageLoadedListener() {
+        @Override
+        public void onPageLoaded(ArticlePage page) {
+            pages.add(page);
+        }
+    };
+
+    @Before
+    public void setUpExecutor() {
+        ArticleExecutors.setHostExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+
+        when(recyclerView.getLayoutManager()).thenReturn(layoutManager);
+    }
+
+    @After
+    public void tearDownExecutor() {
+        ArticleExecutors.setHostExecutor(null);
+    }
+
+    @Test
+    public void loadsPagesUntilFinished() {
+        ArticlePager pager = ArticlePager.forAllArticles(source, 3, listener);
+
+        for (int i = 0; i < 4; i++) {
+            pager.loadNextPage();
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        }
+
+        assertEquals(3, pages.size());
+        assertEquals(3, pages.get(0).getArticles().size());
+        assertEquals(3, pages.get(1).getArticles().size());
+        assertEquals(2, pages.get(2).getArticles().size());
+        assertEquals(8L, pages.get(0).getArticles().get(0).id);
+        assertEquals(5L, pages.get(1).getArticles().get(0).id);
+        assertFalse(pager.hasMore());
+    }
+
+    @Test
+    public void forSource() {
+        ArticlePager pager = ArticlePager.forSource(source, 101L, 10, listener);
+        pager.loadNextPage();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertEquals(1, pages.size());
+        assertEquals(2, pages.get(0).getArticles().size());
+        assertFalse(pager.hasMore());
+    }
+
+    @Test
+    public void scrollingNearEndLoadsNextPage() {
+        ArticlePager pager = ArticlePager.forAllArticles(source, 3, listener);
+        pager.setPrefetchDistance(1);
+        pager.loadNextPage();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        when(layoutManager.getItemCount()).thenReturn(3);
+        when(layoutManager.findLastVisibleItemPosition()).thenReturn(0);
+        pager.getScrollListener().onScrolled(recyclerView, 0, 10);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(1, pages.size());
+
+        when(layoutManager.findLastVisibleItemPosition()).thenReturn(1);
+        pager.getScrollListener().onScrolled(recyclerView, 0, 10);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(2, pages.size());
+    }
+
+    @Test
+    public void canceledPagerDoesNotDeliver() {
+        ArticlePager pager = ArticlePager.forSavedArticles(source, 3, listener);
+        pager.cancel();
+        pager.loadNextPage();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertTrue(pages.isEmpty());
+    }
+}
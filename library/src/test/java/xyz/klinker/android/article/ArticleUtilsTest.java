@@ -18,10 +18,22 @@ package xyz.klinker.android.article;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import xyz.klinker.android.article.api.ArticleApi;
+import xyz.klinker.android.article.api.ArticleService;
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class ArticleUtilsTest extends ArticleRobolectricSuite {
 
@@ -67,4 +79,186 @@ public class ArticleUtilsTest extends ArticleRobolectricSuite {
     public void removeUrlParameters_null() {
         assertNull(ArticleUtils.removeUrlParameters(null));
     }
+
+    @Test
+    public void extractBlocks() {
+        List<ArticleBlock> blocks = ArticleUtils.extractBlocks(
+                "<h1>Title</h1><p>First <b>paragraph</b></p><img src=\"http://test.com/a.jpg\">" +
+                "<ul><li>one</li></ul><ol><li>two</li></ol><div>skipped</div>");
+
+        assertEquals(5, blocks.size());
+        assertEquals("h1", blocks.get(0).tag);
+        assertEquals("p", blocks.get(1).tag);
+        assertEquals("First paragraph", blocks.get(1).text);
+        assertEquals("img", blocks.get(2).tag);
+        assertEquals("http://test.com/a.jpg", blocks.get(2).src);
+        assertEquals("li", blocks.get(3).tag);
+        assertEquals("ul", blocks.get(3).parentTag);
+        assertEquals("ol", blocks.get(4).parentTag);
+    }
+
+    @Test
+    public void removeUnnecessaryBlocks_removesTitleAndAds() {
+        Article article = newArticle();
+        List<ArticleBlock> blocks = new ArrayList<>();
+        blocks.add(new ArticleBlock("h1", null, "Test title", null));
+        blocks.add(new ArticleBlock("p", null, "Test title", null));
+        blocks.add(new ArticleBlock("p", null, "Intro paragraph", null));
+        blocks.add(new ArticleBlock("p", null, "Advertisement", null));
+        blocks.add(new ArticleBlock("p", null, "Intro paragraph", null));
+        blocks.add(new ArticleBlock("img", null, null, "http://test.com/header.jpg"));
+        blocks.add(new ArticleBlock("img", null, null, "http://test.com/inline.jpg"));
+        blocks.add(new ArticleBlock("p", null, LONG_TEXT, null));
+        blocks.add(new ArticleBlock("h2", null, "Related articles", null));
+
+        blocks = ArticleUtils.removeUnnecessaryBlocks(blocks, article);
+
+        assertEquals(3, blocks.size());
+        assertEquals("Intro paragraph", blocks.get(0).text);
+        assertEquals("http://test.com/inline.jpg", blocks.get(1).src);
+        assertEquals(LONG_TEXT, blocks.get(2).text);
+    }
+
+    @Test
+    public void removeUnnecessaryBlocks_notEnoughContent() {
+        List<ArticleBlock> blocks = new ArrayList<>();
+        blocks.add(new ArticleBlock("p", null, "Short", null));
+        blocks.add(new ArticleBlock("p", null, "Also short", null));
+
+        assertEquals(0, ArticleUtils.removeUnnecessaryBlocks(blocks, newArticle()).size());
+    }
+
+    @Test
+    public void removeUnnecessaryBlocks_onlyTrailingHeaders() {
+        List<ArticleBlock> blocks = new ArrayList<>();
+        blocks.add(new ArticleBlock("p", null, "Intro paragraph", null));
+        blocks.add(new ArticleBlock("h2", null, "Header", null));
+
+        blocks = ArticleUtils.removeUnnecessaryBlocks(blocks, newArticle());
+        assertEquals(0, blocks.size());
+    }
+
+    @Test
+    public void parseBlocks_publishesChunksInOrder() {
+        StringBuilder html = new StringBuilder("<h1>Test title</h1>");
+        for (int i = 0; i < 50; i++) {
+            html.append("<p>Paragraph number ").append(i).append("</p>");
+        }
+        html.append("<h2>Related articles</h2>");
+
+        Article article = newArticle();
+        article.content = html.toString();
+
+        final List<List<ArticleBlock>> chunks = new ArrayList<>();
+        List<ArticleBlock> blocks = ArticleUtils.parseBlocks(article, new ArticleParsedListener() {
+            @Override
+            public void onBlocksParsed(List<ArticleBlock> blocks) {
+                chunks.add(blocks);
+            }
+
+            @Override
+            public void onArticleParsed(List<ArticleBlock> blocks) {
+
+            }
+        });
+
+        // six paragraphs is enough text to show, the rest come in batches and the remainder is
+        // only included in the final list
+        assertEquals(50, blocks.size());
+        assertEquals(3, chunks.size());
+        assertEquals(6, chunks.get(0).size());
+        assertEquals(20, chunks.get(1).size());
+        assertEquals(20, chunks.get(2).size());
+
+        List<ArticleBlock> published = new ArrayList<>();
+        for (List<ArticleBlock> chunk : chunks) {
+            published.addAll(chunk);
+        }
+
+        for (int i = 0; i < published.size(); i++) {
+            assertEquals(blocks.get(i).text, published.get(i).text);
+        }
+    }
+
+    @Test
+    public void parseBlocks_noChunksWhenTooShort() {
+        Article article = newArticle();
+        article.content = "<p>Short</p><p>Also short</p>";
+
+        final List<ArticleBlock> published = new ArrayList<>();
+        List<ArticleBlock> blocks = ArticleUtils.parseBlocks(article, new ArticleParsedListener() {
+            @Override
+            public void onBlocksParsed(List<ArticleBlock> blocks) {
+                published.addAll(blocks);
+            }
+
+            @Override
+            public void onArticleParsed(List<ArticleBlock> blocks) {
+
+            }
+        });
+
+        assertEquals(0, blocks.size());
+        assertEquals(0, published.size());
+    }
+
+    @Test
+    public void parseBlocks_fallbackKeepsPublishedChunks() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            html.append("<p>Paragraph number ").append(i).append("</p>");
+        }
+
+        Article article = newArticle();
+        article.content = html.toString();
+
+        // failing part way through parsing falls back to jsoup after the first chunk is out
+        final List<ArticleBlock> published = new ArrayList<>();
+        List<ArticleBlock> blocks = ArticleUtils.parseBlocks(article, new ArticleParsedListener() {
+            @Override
+            public void onBlocksParsed(List<ArticleBlock> blocks) {
+                published.addAll(blocks);
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public void onArticleParsed(List<ArticleBlock> blocks) {
+
+            }
+        });
+
+        assertEquals(6, published.size());
+        assertEquals(50, blocks.size());
+        for (int i = 0; i < published.size(); i++) {
+            assertEquals(published.get(i).text, blocks.get(i).text);
+        }
+    }
+
+    @Test
+    public void preloadBatcherPerServer() {
+        ArticleApi release = mockApi("https://article.klinkerapps.com/v1/");
+        ArticleApi other = mockApi("http://localhost:3000/v1/");
+
+        assertSame(ArticleUtils.getPreloadBatcher(release),
+                ArticleUtils.getPreloadBatcher(mockApi("https://article.klinkerapps.com/v1/")));
+        assertNotSame(ArticleUtils.getPreloadBatcher(release),
+                ArticleUtils.getPreloadBatcher(other));
+    }
+
+    private static ArticleApi mockApi(String baseUrl) {
+        ArticleApi api = mock(ArticleApi.class);
+        when(api.baseUrl()).thenReturn(baseUrl);
+        when(api.article()).thenReturn(mock(ArticleService.class));
+        return api;
+    }
+
+    private static final String LONG_TEXT = "This paragraph is long enough that the article will " +
+            "not be considered too short to display inside of the article viewer.";
+
+    private Article newArticle() {
+        Article article = new Article();
+        article.title = "Test title";
+        article.image = "http://test.com/header.jpg";
+        return article;
+    }
 }
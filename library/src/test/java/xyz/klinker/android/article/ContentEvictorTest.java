@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import org.junit.Test;
+
+import xyz.klinker.android.article.data.Article;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContentEvictorTest extends ArticleRealDataSuite {
+
+    private static final String CONTENT = "0123456789";
+
+    @Test
+    public void underBudget() {
+        insertArticles(3, false);
+
+        assertFalse(ContentEvictor.evictBatch(source, 100, 5));
+        assertEquals(3, source.getContentCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyAccessedForArticleLimit() {
+        insertArticles(5, false);
+
+        assertFalse(ContentEvictor.evictBatch(source, 0, 3));
+        assertEquals(3, source.getContentCount());
+
+        assertEvicted("http://test.com/evict/0");
+        assertEvicted("http://test.com/evict/1");
+        assertNotNull(source.getArticle("http://test.com/evict/2").content);
+        assertNotNull(source.getArticle("http://test.com/evict/4").content);
+    }
+
+    @Test
+    public void evictsLeastRecentlyAccessedForByteLimit() {
+        insertArticles(5, false);
+
+        assertFalse(ContentEvictor.evictBatch(source, 25, 0));
+        assertEquals(20, source.getContentSize());
+
+        assertEvicted("http://test.com/evict/0");
+        assertEvicted("http://test.com/evict/1");
+        assertEvicted("http://test.com/evict/2");
+        assertNotNull(source.getArticle("http://test.com/evict/3").content);
+    }
+
+    @Test
+    public void readArticlesAreKept() {
+        insertArticles(3, false);
+
+        // reading the oldest article moves it to the back of the line
+        source.getArticle("http://test.com/evict/0");
+
+        assertFalse(ContentEvictor.evictBatch(source, 0, 2));
+        assertNotNull(source.getArticle("http://test.com/evict/0").content);
+        assertEvicted("http://test.com/evict/1");
+    }
+
+    @Test
+    public void savedArticlesAreNeverEvicted() {
+        insertArticles(3, true);
+
+        assertFalse(ContentEvictor.evictBatch(source, 0, 1));
+        assertEquals(3, source.getContentCount());
+    }
+
+    @Test
+    public void evictsInBatches() {
+        int count = ContentEvictor.BATCH_SIZE + 5;
+        insertArticles(count, false);
+
+        assertTrue(ContentEvictor.evictBatch(source, 0, 1));
+        assertEquals(count - ContentEvictor.BATCH_SIZE, source.getContentCount());
+
+        assertFalse(ContentEvictor.evictBatch(source, 0, 1));
+        assertEquals(1, source.getContentCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeBudget() {
+        ContentEvictor.setBudget(-1, 0);
+    }
+
+    @Test
+    public void evictedArticlesAreRemovedFromMemory() {
+        insertArticles(3, false);
+
+        Article cached = new Article();
+        cached.id = source.getLeastRecentlyAccessedArticleIds(1).get(0);
+        cached.url = "http://test.com/evict/0";
+        cached.content = CONTENT;
+        ArticleCache.get().putArticle(cached);
+
+        assertFalse(ContentEvictor.evictBatch(source, 0, 2));
+        assertNull(ArticleCache.get().getArticle("http://test.com/evict/0"));
+    }
+
+    private void assertEvicted(String url) {
+        Article article = source.getArticle(url);
+        assertNotNull(article);
+        assertNull(article.content);
+    }
+
+    private void insertArticles(int count, boolean saved) {
+        for (int i = 0; i < count; i++) {
+            Article article = new Article();
+            article.url = "http://test.com/evict/" + i;
+            article.title = "article " + i;
+            article.content = CONTENT;
+            article.insertedAt = 1000 + i;
+            article.isArticle = true;
+            article.saved = saved;
+            source.insertArticle(article);
+        }
+    }
+}
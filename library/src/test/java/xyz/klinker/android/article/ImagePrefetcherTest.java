@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImagePrefetcherTest extends ArticleRobolectricSuite {
+
+    private static final int[] SIZE = new int[] {640, 480};
+
+    private final Object owner = new Object();
+    private FakeDownloader downloader;
+    private FakeSizeListener sizes;
+    private ImagePrefetcher prefetcher;
+
+    @Before
+    public void setUp() {
+        downloader = new FakeDownloader();
+        sizes = new FakeSizeListener();
+        prefetcher = new ImagePrefetcher(downloader, sizes, 2, 1);
+    }
+
+    @Test
+    public void limitsConcurrentDownloads() {
+        prefetcher.prefetch(owner, createArticle(1, null), createBlocks(
+                "http://a.com/1.jpg", "http://b.com/1.jpg", "http://c.com/1.jpg"));
+
+        assertEquals(Arrays.asList("http://a.com/1.jpg", "http://b.com/1.jpg"),
+                downloader.getStarted());
+
+        downloader.finish("http://a.com/1.jpg", true);
+        assertEquals(Arrays.asList("http://b.com/1.jpg", "http://c.com/1.jpg"),
+                downloader.getStarted());
+        assertEquals(2, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void limitsDownloadsPerHost() {
+        prefetcher.prefetch(owner, createArticle(1, null), createBlocks(
+                "http://a.com/1.jpg", "http://a.com/2.jpg", "http://b.com/1.jpg"));
+
+        // the second image from a.com waits, without holding up b.com
+        assertEquals(Arrays.asList("http://a.com/1.jpg", "http://b.com/1.jpg"),
+                downloader.getStarted());
+
+        downloader.finish("http://a.com/1.jpg", true);
+        assertEquals(Arrays.asList("http://b.com/1.jpg", "http://a.com/2.jpg"),
+                downloader.getStarted());
+    }
+
+    @Test
+    public void downloadsAboveTheFoldFirst() {
+        prefetcher = new ImagePrefetcher(downloader, sizes, 1, 1);
+        prefetcher.prefetch(owner, createArticle(1, null), createBlocks(
+                "http://a.com/0.jpg", "http://a.com/1.jpg"));
+        prefetcher.prefetch(owner, createArticle(2, "http://a.com/header.jpg"), createBlocks(
+                "http://a.com/inline1.jpg", "http://a.com/inline2.jpg"));
+
+        assertEquals(Collections.singletonList("http://a.com/0.jpg"), downloader.getStarted());
+
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            downloader.finish(downloader.getStarted().get(0), true);
+            order.add(downloader.getStarted().get(0));
+        }
+
+        assertEquals(Arrays.asList("http://a.com/header.jpg", "http://a.com/inline1.jpg",
+                "http://a.com/1.jpg", "http://a.com/inline2.jpg"), order);
+    }
+
+    @Test
+    public void repeatedRequestRaisesPriority() {
+        prefetcher = new ImagePrefetcher(downloader, sizes, 1, 1);
+        prefetcher.prefetch(owner, createArticle(1, null), createBlocks(
+                "http://a.com/0.jpg", "http://a.com/1.jpg", "http://a.com/shared.jpg"));
+        prefetcher.prefetch(owner, createArticle(2, "http://a.com/shared.jpg"), null);
+
+        downloader.finish("http://a.com/0.jpg", true);
+        assertEquals(Collections.singletonList("http://a.com/shared.jpg"),
+                downloader.getStarted());
+    }
+
+    @Test
+    public void downloadsSharedImagesOnce() {
+        prefetcher.prefetch(owner, createArticle(1, "http://a.com/logo.jpg"), null);
+        prefetcher.prefetch(new Object(), createArticle(2, "http://a.com/logo.jpg"),
+                createBlocks("http://a.com/logo.jpg"));
+
+        assertEquals(1, downloader.downloads.size());
+        assertEquals(1, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void doesNotDownloadCachedImagesAgain() {
+        prefetcher.prefetch(owner, createArticle(1, "http://a.com/logo.jpg"), null);
+        downloader.finish("http://a.com/logo.jpg", true);
+        prefetcher.prefetch(owner, createArticle(2, "http://a.com/logo.jpg"), null);
+
+        assertEquals(1, downloader.downloads.size());
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void retriesFailedImages() {
+        prefetcher.prefetch(owner, createArticle(1, "http://a.com/logo.jpg"), null);
+        downloader.finish("http://a.com/logo.jpg", false);
+        prefetcher.prefetch(owner, createArticle(2, "http://a.com/logo.jpg"), null);
+
+        assertEquals(2, downloader.downloads.size());
+    }
+
+    @Test
+    public void cancel() {
+        prefetcher.prefetch(owner, createArticle(1, null), createBlocks(
+                "http://a.com/1.jpg", "http://a.com/2.jpg"));
+        prefetcher.cancel(owner);
+
+        assertTrue(downloader.isCanceled("http://a.com/1.jpg"));
+        assertFalse(downloader.requests.containsKey("http://a.com/2.jpg"));
+        assertEquals(0, prefetcher.getPendingCount());
+
+        // a cancelled download finishing late is ignored
+        downloader.finish("http://a.com/1.jpg", true);
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void cancel_sharedImageKeepsDownloading() {
+        Object other = new Object();
+        prefetcher.prefetch(owner, createArticle(1, "http://a.com/logo.jpg"), null);
+        prefetcher.prefetch(other, createArticle(2, "http://a.com/logo.jpg"), null);
+        prefetcher.cancel(owner);
+
+        assertFalse(downloader.isCanceled("http://a.com/logo.jpg"));
+        assertEquals(1, prefetcher.getPendingCount());
+
+        prefetcher.cancel(other);
+        assertTrue(downloader.isCanceled("http://a.com/logo.jpg"));
+    }
+
+    @Test
+    public void cancel_startsNextDownload() {
+        Object other = new Object();
+        prefetcher.prefetch(owner, createArticle(1, null), createBlocks(
+                "http://a.com/1.jpg", "http://b.com/1.jpg"));
+        prefetcher.prefetch(other, createArticle(2, null), createBlocks("http://c.com/1.jpg"));
+        prefetcher.cancel(owner);
+
+        assertEquals(Collections.singletonList("http://c.com/1.jpg"), downloader.getStarted());
+    }
+
+    @Test
+    public void cancelArticles() {
+        Object other = new Object();
+        prefetcher.prefetch(owner, createArticle(1, "http://a.com/1.jpg"), null);
+        prefetcher.prefetch(other, createArticle(1, "http://a.com/1.jpg"), null);
+        prefetcher.prefetch(owner, createArticle(2, "http://b.com/1.jpg"), null);
+        prefetcher.cancelArticles(Collections.singletonList(1L));
+
+        assertTrue(downloader.isCanceled("http://a.com/1.jpg"));
+        assertFalse(downloader.isCanceled("http://b.com/1.jpg"));
+        assertEquals(1, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void finishedBeforeDownloadReturns() {
+        downloader.finishImmediately = true;
+        prefetcher.prefetch(owner, createArticle(1, null), createBlocks(
+                "http://a.com/1.jpg", "http://a.com/2.jpg", "http://a.com/3.jpg"));
+
+        assertEquals(3, downloader.downloads.size());
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void ignoresMissingUrls() {
+        prefetcher.prefetch(owner, createArticle(1, ""), createBlocks((String) null));
+
+        assertEquals(0, downloader.downloads.size());
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+    @Test
+    public void reportsImageSizes() {
+        List<ArticleBlock> blocks = createBlocks("http://a.com/1.jpg", "http://b.com/1.jpg");
+        prefetcher.prefetch(owner, createArticle(1, "http://c.com/header.jpg"), blocks);
+        downloader.finish("http://a.com/1.jpg", true);
+        downloader.finish("http://b.com/1.jpg", false);
+        downloader.finish("http://c.com/header.jpg", true);
+
+        // only inline images have a block to store the size on
+        assertEquals(Collections.singletonList(blocks.get(1)), sizes.blocks);
+        assertEquals(SIZE[0], blocks.get(1).width);
+        assertEquals(SIZE[1], blocks.get(1).height);
+    }
+
+    @Test
+    public void reportsSizesOfCachedImages() {
+        prefetcher.prefetch(owner, createArticle(1, "http://a.com/1.jpg"), null);
+        downloader.finish("http://a.com/1.jpg", true);
+
+        List<ArticleBlock> blocks = createBlocks("http://a.com/1.jpg");
+        prefetcher.prefetch(owner, createArticle(2, null), blocks);
+
+        assertEquals(1, downloader.downloads.size());
+        assertEquals(Collections.singletonList(blocks.get(1)), sizes.blocks);
+    }
+
+    @Test
+    public void skipsBlocksWithKnownSizes() {
+        List<ArticleBlock> blocks = createBlocks("http://a.com/1.jpg");
+        blocks.get(1).width = 100;
+        blocks.get(1).height = 100;
+        prefetcher.prefetch(owner, createArticle(1, null), blocks);
+        downloader.finish("http://a.com/1.jpg", true);
+
+        assertEquals(0, sizes.blocks.size());
+    }
+
+    @Test
+    public void ignoresDataUrls() {
+        prefetcher.prefetch(owner, createArticle(1, null),
+                createBlocks("data:image/gif;base64,R0lGODlhAQABAAAAACw="));
+
+        assertEquals(0, downloader.downloads.size());
+    }
+
+    private static Article createArticle(long id, String image) {
+        Article article = new Article();
+        article.id = id;
+        article.image = image;
+        return article;
+    }
+
+    private static List<ArticleBlock> createBlocks(String... images) {
+        List<ArticleBlock> blocks = new ArrayList<>();
+        for (String image : images) {
+            blocks.add(new ArticleBlock("p", null, "text", null));
+            blocks.add(new ArticleBlock("img", null, null, image));
+        }
+
+        return blocks;
+    }
+
+    private static class FakeDownloader implements ImagePrefetcher.Downloader {
+        private final List<String> downloads = new ArrayList<>();
+        private final Map<String, Request> requests = new LinkedHashMap<>();
+        private boolean finishImmediately = false;
+
+        @Override
+        public RequestCoalescer.Cancelable download(
+                String url, RequestCoalescer.Callback<int[]> callback) {
+            final Request request = new Request(callback);
+            downloads.add(url);
+            requests.put(url, request);
+
+            if (finishImmediately) {
+                request.finished = true;
+                callback.onLoaded(SIZE);
+            }
+
+            return new RequestCoalescer.Cancelable() {
+                @Override
+                public void cancel() {
+                    request.canceled = true;
+                }
+            };
+        }
+
+        private List<String> getStarted() {
+            List<String> started = new ArrayList<>();
+            for (Map.Entry<String, Request> entry : requests.entrySet()) {
+                if (!entry.getValue().finished && !entry.getValue().canceled) {
+                    started.add(entry.getKey());
+                }
+            }
+
+            return started;
+        }
+
+        private boolean isCanceled(String url) {
+            return requests.containsKey(url) && requests.get(url).canceled;
+        }
+
+        private void finish(String url, boolean success) {
+            Request request = requests.get(url);
+            request.finished = true;
+            request.callback.onLoaded(success ? SIZE : null);
+        }
+    }
+
+    private static class FakeSizeListener implements ImagePrefetcher.SizeListener {
+        private final List<ArticleBlock> blocks = new ArrayList<>();
+
+        @Override
+        public void onSizeLoaded(Article article, ArticleBlock block, int width, int height) {
+            block.width = width;
+            block.height = height;
+            blocks.add(block);
+        }
+    }
+
+    private static class Request {
+        private final RequestCoalescer.Callback<int[]> callback;
+        private boolean finished = false;
+        private boolean canceled = false;
+
+        private Request(RequestCoalescer.Callback<int[]> callback) {
+            this.callback = callback;
+        }
+    }
+}
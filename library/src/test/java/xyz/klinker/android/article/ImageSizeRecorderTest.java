@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.ArticleBlock;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageSizeRecorderTest extends ArticleRealDataSuite {
+
+    private ImageSizeRecorder recorder;
+    private Article article;
+
+    @Before
+    public void createRecorder() {
+        recorder = new ImageSizeRecorder(source, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        }, new Handler());
+
+        article = source.getArticle("http://test.com/");
+        article.blocks = new ArrayList<>();
+        article.blocks.add(new ArticleBlock("p", null, "text", null));
+        article.blocks.add(new ArticleBlock("img", null, null, "http://test.com/1.jpg"));
+        article.blocks.add(new ArticleBlock("img", null, null, "http://test.com/2.jpg"));
+        source.updateArticleBlocks(article);
+    }
+
+    @Test
+    public void savesAfterWindow() {
+        recorder.record(article, article.blocks.get(1), 640, 480);
+        recorder.record(article, article.blocks.get(2), 1200, 800);
+        assertEquals(640, article.blocks.get(1).width);
+        assertEquals(0, getStoredBlock(1).width);
+
+        ShadowLooper.idleMainLooper(ImageSizeRecorder.WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(640, getStoredBlock(1).width);
+        assertEquals(480, getStoredBlock(1).height);
+        assertEquals(1200, getStoredBlock(2).width);
+        assertEquals(800, getStoredBlock(2).height);
+    }
+
+    @Test
+    public void ignoresUnknownSizes() {
+        recorder.record(article, article.blocks.get(1), -1, -1);
+
+        assertEquals(0, article.blocks.get(1).width);
+    }
+
+    @Test
+    public void ignoresArticlesThatArentSaved() {
+        Article unsaved = new Article();
+        unsaved.blocks = new ArrayList<>();
+        unsaved.blocks.add(new ArticleBlock("img", null, null, "http://test.com/1.jpg"));
+
+        recorder.record(unsaved, unsaved.blocks.get(0), 640, 480);
+        recorder.flush();
+
+        assertEquals(640, unsaved.blocks.get(0).width);
+        assertEquals(0, getStoredBlock(1).width);
+    }
+
+    private ArticleBlock getStoredBlock(int index) {
+        return source.getArticle("http://test.com/").blocks.get(index);
+    }
+}
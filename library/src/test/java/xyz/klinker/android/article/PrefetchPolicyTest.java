@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import xyz.klinker.android.article.data.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PrefetchPolicyTest extends ArticleRobolectricSuite {
+
+    @Mock
+    private DataSource source;
+
+    private FakeDeviceState state;
+    private PrefetchPolicy policy;
+
+    @Before
+    public void setUp() {
+        state = new FakeDeviceState();
+        policy = new PrefetchPolicy(state, state, state);
+        ContentEvictor.setBudget(1000, 0);
+    }
+
+    @After
+    public void tearDown() {
+        ContentEvictor.setBudget(ContentEvictor.DEFAULT_MAX_BYTES, 0);
+    }
+
+    @Test
+    public void everything() {
+        assertEquals(PrefetchPolicy.Decision.EVERYTHING, policy.decide(source));
+    }
+
+    @Test
+    public void offline() {
+        state.connected = false;
+        assertEquals(PrefetchPolicy.Decision.TEXT_ONLY, policy.decide(source));
+    }
+
+    @Test
+    public void powerSaveMode() {
+        state.powerSave = true;
+        state.charging = true;
+        assertEquals(PrefetchPolicy.Decision.TEXT_ONLY, policy.decide(source));
+    }
+
+    @Test
+    public void lowBattery() {
+        state.level = 0.1f;
+        assertEquals(PrefetchPolicy.Decision.TEXT_ONLY, policy.decide(source));
+    }
+
+    @Test
+    public void lowBattery_charging() {
+        state.level = 0.1f;
+        state.charging = true;
+        assertEquals(PrefetchPolicy.Decision.EVERYTHING, policy.decide(source));
+    }
+
+    @Test
+    public void lowStorage() {
+        state.usableSpace = PrefetchPolicy.MIN_USABLE_SPACE - 1;
+        assertEquals(PrefetchPolicy.Decision.TEXT_ONLY, policy.decide(source));
+    }
+
+    @Test
+    public void metered() {
+        state.metered = true;
+        assertEquals(PrefetchPolicy.Decision.HEADER_IMAGE, policy.decide(source));
+    }
+
+    @Test
+    public void metered_lowBattery() {
+        state.metered = true;
+        state.level = 0.1f;
+        assertEquals(PrefetchPolicy.Decision.TEXT_ONLY, policy.decide(source));
+    }
+
+    @Test
+    public void contentBudgetNearlyFull() {
+        when(source.getContentSize()).thenReturn(900L);
+        assertEquals(PrefetchPolicy.Decision.HEADER_IMAGE, policy.decide(source));
+
+        when(source.getContentSize()).thenReturn(899L);
+        assertEquals(PrefetchPolicy.Decision.EVERYTHING, policy.decide(source));
+    }
+
+    @Test
+    public void noContentBudget() {
+        ContentEvictor.setBudget(0, 0);
+        assertEquals(PrefetchPolicy.Decision.EVERYTHING, policy.decide(source));
+        verify(source, never()).getContentSize();
+    }
+
+    private static class FakeDeviceState implements PrefetchPolicy.Connectivity,
+            PrefetchPolicy.Battery, PrefetchPolicy.Storage {
+        private boolean connected = true;
+        private boolean metered = false;
+        private boolean powerSave = false;
+        private boolean charging = false;
+        private float level = 0.8f;
+        private long usableSpace = 1024L * 1024 * 1024;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isMetered() {
+            return metered;
+        }
+
+        @Override
+        public boolean isPowerSaveMode() {
+            return powerSave;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return charging;
+        }
+
+        @Override
+        public float getLevel() {
+            return level;
+        }
+
+        @Override
+        public long getUsableSpace() {
+            return usableSpace;
+        }
+    }
+}
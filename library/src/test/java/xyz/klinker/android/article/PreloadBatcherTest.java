@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import xyz.klinker.android.article.api.ApiCall;
+import xyz.klinker.android.article.api.ApiCallback;
+import xyz.klinker.android.article.api.ArticleApiException;
+import xyz.klinker.android.article.api.ArticleService;
+import xyz.klinker.android.article.data.Article;
+import xyz.klinker.android.article.data.DataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PreloadBatcherTest extends ArticleRobolectricSuite {
+
+    @Mock
+    private DataSource source;
+    @Mock
+    private DataSource failingSource;
+
+    private FakeArticleService service;
+    private PreloadBatcher batcher;
+
+    @Before
+    public void setUp() {
+        service = new FakeArticleService();
+        batcher = new PreloadBatcher(service, new Handler());
+    }
+
+    @Test
+    public void sendsUrlsInOneRequest() throws Exception {
+        RecordingCallback callback = new RecordingCallback(3);
+        batcher.add("http://test.com/1", source, null, callback);
+        batcher.add("http://test.com/2", source, null, callback);
+        batcher.add("http://test.com/3", source, null, callback);
+        batcher.flush();
+
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, service.batches.size());
+        assertEquals(3, service.batches.get(0).size());
+        assertEquals(0, service.singles.size());
+
+        assertEquals(3, callback.articles.size());
+        assertEquals("http://test.com/1", callback.articles.get(0).url);
+        assertEquals("http://test.com/3", callback.articles.get(2).url);
+
+        InOrder order = inOrder(source);
+        order.verify(source).beginTransaction();
+        order.verify(source, times(3)).insertArticle(any(Article.class));
+        order.verify(source).setTransactionSuccessful();
+        order.verify(source).endTransaction();
+    }
+
+    @Test
+    public void fullBatchIsSentImmediately() throws Exception {
+        RecordingCallback callback = new RecordingCallback(PreloadBatcher.MAX_BATCH_SIZE);
+        for (int i = 0; i < PreloadBatcher.MAX_BATCH_SIZE; i++) {
+            batcher.add("http://test.com/" + i, source, null, callback);
+        }
+
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, service.batches.size());
+        assertEquals(PreloadBatcher.MAX_BATCH_SIZE, service.batches.get(0).size());
+    }
+
+    @Test
+    public void singleUrlSkipsBatchEndpoint() throws Exception {
+        RecordingCallback callback = new RecordingCallback(1);
+        batcher.add("http://test.com/1", source, null, callback);
+        batcher.flush();
+
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, service.batches.size());
+        assertEquals(1, service.singles.size());
+    }
+
+    @Test
+    public void fallsBackToSingleRequests() throws Exception {
+        service.batchError = new ArticleApiException(ArticleApiException.Reason.HTTP, 404,
+                "Not Found", null);
+
+        RecordingCallback callback = new RecordingCallback(2);
+        batcher.add("http://test.com/1", source, null, callback);
+        batcher.add("http://test.com/2", source, null, callback);
+        batcher.flush();
+
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, service.singles.size());
+        assertEquals(2, callback.articles.size());
+    }
+
+    @Test
+    public void missingResultsAreNull() throws Exception {
+        service.batchLimit = 1;
+
+        RecordingCallback callback = new RecordingCallback(2);
+        batcher.add("http://test.com/1", source, null, callback);
+        batcher.add("http://test.com/2", source, null, callback);
+        batcher.flush();
+
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        assertEquals("http://test.com/1", callback.articles.get(0).url);
+        assertNull(callback.articles.get(1));
+        verify(source, times(1)).insertArticle(any(Article.class));
+    }
+
+    @Test
+    public void promotedUrlIsSentRightAway() throws Exception {
+        RecordingCallback promoted = new RecordingCallback(1);
+        batcher.add("http://test.com/1?utm_source=test", source, null, promoted);
+        batcher.add("http://test.com/2", source, null, new RecordingCallback(1));
+
+        assertTrue(batcher.promote("http://test.com/1"));
+        assertTrue(promoted.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, service.singles.size());
+        assertEquals("http://test.com/1?utm_source=test", service.singles.get(0));
+
+        // the rest of the batch still waits for the window
+        batcher.flush();
+        assertEquals(2, service.singles.size());
+        assertEquals("http://test.com/2", service.singles.get(1));
+    }
+
+    @Test
+    public void promoteMissingUrl() {
+        batcher.add("http://test.com/1", source, null, new RecordingCallback(1));
+
+        assertFalse(batcher.promote("http://test.com/2"));
+        assertEquals(0, service.singles.size());
+    }
+
+    @Test
+    public void failedSaveIsNotDelivered() throws Exception {
+        when(failingSource.insertArticle(any(Article.class)))
+                .thenThrow(new IllegalStateException());
+
+        RecordingCallback callback = new RecordingCallback(2);
+        batcher.add("http://test.com/1", failingSource, null, callback);
+        batcher.add("http://test.com/2", source, null, callback);
+        batcher.flush();
+
+        // the article whose transaction rolled back is treated as if it failed to load
+        assertTrue(callback.latch.await(5, TimeUnit.SECONDS));
+        assertNull(callback.articles.get(0));
+        assertEquals("http://test.com/2", callback.articles.get(1).url);
+        verify(failingSource, never()).setTransactionSuccessful();
+        verify(failingSource).endTransaction();
+    }
+
+    @Test
+    public void cancelledUrlIsNotSent() {
+        batcher.add("http://test.com/1", source, null, new RecordingCallback(1));
+        batcher.add("http://test.com/2", source, null, new RecordingCallback(1)).cancel();
+        batcher.flush();
+
+        assertEquals(0, service.batches.size());
+        assertEquals(1, service.singles.size());
+        assertEquals("http://test.com/1", service.singles.get(0));
+    }
+
+    private static final class RecordingCallback implements RequestCoalescer.Callback<Article> {
+
+        private final CountDownLatch latch;
+        private final List<Article> articles = new ArrayList<>();
+
+        private RecordingCallback(int count) {
+            this.latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public synchronized void onLoaded(Article result) {
+            articles.add(result);
+            latch.countDown();
+        }
+    }
+
+    private static final class FakeArticleService implements ArticleService {
+
+        private final List<List<String>> batches = new ArrayList<>();
+        private final List<String> singles = new ArrayList<>();
+        private ArticleApiException batchError;
+        private int batchLimit = Integer.MAX_VALUE;
+
+        @Override
+        public Article parse(String url) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Article[] trending() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ApiCall<Article> parseAsync(String url) {
+            singles.add(url);
+            return new ImmediateCall<>(newArticle(url), null);
+        }
+
+        @Override
+        public ApiCall<Article[]> trendingAsync() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ApiCall<Article[]> trendingCached() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ApiCall<Article[]> parseBatch(List<String> urls) {
+            batches.add(urls);
+
+            Article[] articles = new Article[Math.min(urls.size(), batchLimit)];
+            for (int i = 0; i < articles.length; i++) {
+                articles[i] = newArticle(urls.get(i));
+            }
+
+            return new ImmediateCall<>(articles, batchError);
+        }
+
+        private static Article newArticle(String url) {
+            Article article = new Article();
+            article.url = url;
+            article.isArticle = true;
+            article.content = "<p>content</p>";
+            return article;
+        }
+    }
+
+    private static final class ImmediateCall<T> implements ApiCall<T> {
+
+        private final T result;
+        private final ArticleApiException error;
+
+        private ImmediateCall(T result, ArticleApiException error) {
+            this.result = result;
+            this.error = error;
+        }
+
+        @Override
+        public void enqueue(ApiCallback<T> callback) {
+            if (error != null) {
+                callback.onFailure(error);
+            } else {
+                callback.onSuccess(result);
+            }
+        }
+
+        @Override
+        public T execute() throws ArticleApiException {
+            if (error != null) {
+                throw error;
+            }
+
+            return result;
+        }
+
+        @Override
+        public void cancel() {
+
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import android.database.Cursor;
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import xyz.klinker.android.article.data.DataSource;
+import xyz.klinker.android.article.data.PreloadProgress;
+import xyz.klinker.android.article.data.QueuedPreload;
+import xyz.klinker.android.article.data.model.PreloadModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PreloadQueueTest extends ArticleRealDataSuite {
+
+    private FakePreloader preloader;
+    private FakeDeviceState state;
+    private PreloadQueue queue;
+
+    @Before
+    public void createQueue() {
+        preloader = new FakePreloader();
+        state = new FakeDeviceState();
+        queue = createQueue(source);
+    }
+
+    @Test
+    public void preloadsInBatches() {
+        queue.enqueue(createUrls(25));
+        assertEquals(PreloadQueue.BATCH_SIZE, preloader.pending.size());
+
+        preloader.finishAll(true);
+        assertEquals(5, preloader.pending.size());
+
+        preloader.finishAll(true);
+        assertEquals(0, preloader.pending.size());
+        assertEquals(25, preloader.started.size());
+        assertEquals(25, source.getPreloadProgress().getDoneCount());
+        assertFalse(queue.isProcessing());
+    }
+
+    @Test
+    public void enqueueWhileProcessing() {
+        queue.enqueue(createUrls(2));
+        queue.enqueue(Arrays.asList("http://test.com/preload/extra"));
+        assertEquals(2, preloader.pending.size());
+
+        preloader.finishAll(true);
+        assertEquals(Arrays.asList("http://test.com/preload/extra"),
+                new ArrayList<>(preloader.pending.keySet()));
+    }
+
+    @Test
+    public void enqueueWhileBatchIsFinishing() {
+        final List<String> late = Arrays.asList("http://test.com/preload/late");
+
+        // urls are added right after the finished batch sees that the queue is empty
+        queue = createQueue(new DataSource(source.getDatabase()) {
+            private boolean raced = false;
+
+            @Override
+            public long getNextPreloadAttemptAt() {
+                long next = super.getNextPreloadAttemptAt();
+                if (next == -1 && !raced) {
+                    raced = true;
+                    queue.enqueue(late);
+                }
+
+                return next;
+            }
+        });
+
+        queue.enqueue(createUrls(1));
+        preloader.finishAll(true);
+
+        assertEquals(late, new ArrayList<>(preloader.pending.keySet()));
+        assertTrue(queue.isProcessing());
+    }
+
+    @Test
+    public void restartsAfterFailure() {
+        queue = createQueue(new DataSource(source.getDatabase()) {
+            private boolean failed = false;
+
+            @Override
+            public List<QueuedPreload> takeDuePreloads(long now, int limit) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException();
+                }
+
+                return super.takeDuePreloads(now, limit);
+            }
+        });
+
+        try {
+            queue.enqueue(createUrls(2));
+            fail();
+        } catch (IllegalStateException e) {
+            assertFalse(queue.isProcessing());
+        }
+
+        queue.start();
+        assertEquals(2, preloader.pending.size());
+    }
+
+    @Test
+    public void retriesWithBackoff() {
+        long before = System.currentTimeMillis();
+        queue.enqueue(createUrls(1));
+        preloader.finishAll(false);
+
+        PreloadProgress progress = source.getPreloadProgress();
+        assertEquals(1, progress.getPendingCount());
+        assertEquals(0, preloader.pending.size());
+        assertFalse(queue.isProcessing());
+
+        Cursor cursor = source.getDatabase().rawQuery(
+                "select attempts, next_attempt_at from preload", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(0));
+        assertTrue(cursor.getLong(1) >= before + PreloadQueue.INITIAL_BACKOFF_MILLIS);
+        cursor.close();
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        source.enqueuePreloads(createUrls(1));
+        QueuedPreload preload = source.takeDuePreloads(System.currentTimeMillis(), 1).get(0);
+        source.updatePreload(preload.id, PreloadModel.STATUS_PENDING,
+                PreloadQueue.MAX_ATTEMPTS - 1, 0);
+
+        queue.start();
+        preloader.finishAll(false);
+
+        assertEquals(PreloadModel.STATUS_FAILED, source.getPreloadStatus(preload.url));
+        assertFalse(queue.isProcessing());
+    }
+
+    @Test
+    public void resumesAfterProcessDeath() {
+        source.enqueuePreloads(createUrls(3));
+
+        // taken off of the queue by a process that was killed before finishing them
+        source.takeDuePreloads(System.currentTimeMillis(), 2);
+
+        queue.start();
+        assertEquals(3, preloader.pending.size());
+    }
+
+    @Test
+    public void waitsForUnmeteredNetwork() {
+        state.metered = true;
+        queue.enqueue(createUrls(2));
+        assertEquals(0, preloader.pending.size());
+        assertFalse(queue.isProcessing());
+
+        state.metered = false;
+        ShadowLooper.idleMainLooper(PreloadQueue.CONSTRAINT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(2, preloader.pending.size());
+    }
+
+    @Test
+    public void meteredAllowed() {
+        state.metered = true;
+        queue.setConstraints(false, false);
+        queue.enqueue(createUrls(2));
+
+        assertEquals(2, preloader.pending.size());
+    }
+
+    @Test
+    public void waitsForCharging() {
+        queue.setConstraints(true, true);
+        queue.enqueue(createUrls(2));
+        assertEquals(0, preloader.pending.size());
+
+        state.charging = true;
+        queue.start();
+        assertEquals(2, preloader.pending.size());
+    }
+
+    @Test
+    public void emptyQueue() {
+        queue.start();
+
+        assertEquals(0, preloader.started.size());
+        assertFalse(queue.isProcessing());
+    }
+
+    @Test
+    public void getBackoff() {
+        assertEquals(PreloadQueue.INITIAL_BACKOFF_MILLIS, PreloadQueue.getBackoff(1));
+        assertEquals(PreloadQueue.INITIAL_BACKOFF_MILLIS * 2, PreloadQueue.getBackoff(2));
+        assertEquals(PreloadQueue.INITIAL_BACKOFF_MILLIS * 8, PreloadQueue.getBackoff(4));
+        assertEquals(PreloadQueue.MAX_BACKOFF_MILLIS, PreloadQueue.getBackoff(100));
+    }
+
+    private PreloadQueue createQueue(DataSource source) {
+        return new PreloadQueue(source, preloader, state, state, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        }, new Handler());
+    }
+
+    private static List<String> createUrls(int count) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            urls.add("http://test.com/preload/" + i);
+        }
+
+        return urls;
+    }
+
+    private static class FakePreloader implements PreloadQueue.Preloader {
+        private final List<String> started = new ArrayList<>();
+        private final Map<String, RequestCoalescer.Callback<Boolean>> pending =
+                new LinkedHashMap<>();
+
+        @Override
+        public void preload(String url, RequestCoalescer.Callback<Boolean> callback) {
+            started.add(url);
+            pending.put(url, callback);
+        }
+
+        private void finishAll(boolean success) {
+            List<RequestCoalescer.Callback<Boolean>> callbacks =
+                    new ArrayList<>(pending.values());
+            pending.clear();
+
+            for (RequestCoalescer.Callback<Boolean> callback : callbacks) {
+                callback.onLoaded(success);
+            }
+        }
+    }
+
+    private static class FakeDeviceState implements PrefetchPolicy.Connectivity,
+            PrefetchPolicy.Battery {
+        private boolean connected = true;
+        private boolean metered = false;
+        private boolean charging = false;
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isMetered() {
+            return metered;
+        }
+
+        @Override
+        public boolean isPowerSaveMode() {
+            return false;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return charging;
+        }
+
+        @Override
+        public float getLevel() {
+            return 1f;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest extends ArticleSuite {
+
+    private RequestCoalescer<Object> coalescer;
+
+    @Before
+    public void setUp() {
+        coalescer = new RequestCoalescer<>();
+    }
+
+    @Test
+    public void concurrentLoadsShareResult() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object[] results = new Object[2];
+
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[0] = coalescer.load("http://test.com", new RequestCoalescer.Loader<Object>() {
+                    @Override
+                    public Object load() {
+                        loads.incrementAndGet();
+                        started.countDown();
+                        await(release);
+                        return new Object();
+                    }
+                });
+            }
+        });
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread second = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[1] = coalescer.load("http://test.com", new RequestCoalescer.Loader<Object>() {
+                    @Override
+                    public Object load() {
+                        loads.incrementAndGet();
+                        return new Object();
+                    }
+                });
+            }
+        });
+        second.start();
+
+        // give the second thread time to attach to the pending request
+        Thread.sleep(100);
+        release.countDown();
+        first.join(5000);
+        second.join(5000);
+
+        assertEquals(1, loads.get());
+        assertSame(results[0], results[1]);
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void sequentialLoadsRunAgain() {
+        final AtomicInteger loads = new AtomicInteger();
+        RequestCoalescer.Loader<Object> loader = new RequestCoalescer.Loader<Object>() {
+            @Override
+            public Object load() {
+                loads.incrementAndGet();
+                return new Object();
+            }
+        };
+
+        coalescer.load("http://test.com", loader);
+        coalescer.load("http://test.com", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void differentKeysDoNotShare() {
+        Object first = coalescer.load("http://test.com/1", new RequestCoalescer.Loader<Object>() {
+            @Override
+            public Object load() {
+                return "first";
+            }
+        });
+        Object second = coalescer.load("http://test.com/2", new RequestCoalescer.Loader<Object>() {
+            @Override
+            public Object load() {
+                return "second";
+            }
+        });
+
+        assertEquals("first", first);
+        assertEquals("second", second);
+    }
+
+    @Test
+    public void failedLoadIsRemoved() {
+        try {
+            coalescer.load("http://test.com", new RequestCoalescer.Loader<Object>() {
+                @Override
+                public Object load() {
+                    throw new IllegalStateException();
+                }
+            });
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void asyncLoadsShareResult() {
+        final AtomicInteger starts = new AtomicInteger();
+        final List<RequestCoalescer.Callback<Object>> loaders = new ArrayList<>();
+        RequestCoalescer.AsyncLoader<Object> loader = new RequestCoalescer.AsyncLoader<Object>() {
+            @Override
+            public RequestCoalescer.Cancelable start(RequestCoalescer.Callback<Object> callback) {
+                starts.incrementAndGet();
+                loaders.add(callback);
+                return null;
+            }
+        };
+
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        coalescer.load("http://test.com", loader, first);
+        coalescer.load("http://test.com", loader, second);
+
+        assertEquals(1, starts.get());
+        assertEquals(1, coalescer.size());
+
+        Object result = new Object();
+        loaders.get(0).onLoaded(result);
+
+        assertSame(result, first.result);
+        assertSame(result, second.result);
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void detachingLastCallbackCancels() {
+        final AtomicInteger cancels = new AtomicInteger();
+        RequestCoalescer.AsyncLoader<Object> loader = new RequestCoalescer.AsyncLoader<Object>() {
+            @Override
+            public RequestCoalescer.Cancelable start(RequestCoalescer.Callback<Object> callback) {
+                return new RequestCoalescer.Cancelable() {
+                    @Override
+                    public void cancel() {
+                        cancels.incrementAndGet();
+                    }
+                };
+            }
+        };
+
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        coalescer.load("http://test.com", loader, first);
+        coalescer.load("http://test.com", loader, second);
+
+        coalescer.detach("http://test.com", first);
+        assertEquals(0, cancels.get());
+        assertEquals(1, coalescer.size());
+
+        coalescer.detach("http://test.com", second);
+        assertEquals(1, cancels.get());
+        assertEquals(0, coalescer.size());
+        assertEquals(0, first.calls);
+        assertEquals(0, second.calls);
+    }
+
+    @Test
+    public void blockingLoadAttachesToAsyncLoad() throws Exception {
+        final List<RequestCoalescer.Callback<Object>> loaders = new ArrayList<>();
+        coalescer.load("http://test.com", new RequestCoalescer.AsyncLoader<Object>() {
+            @Override
+            public RequestCoalescer.Cancelable start(RequestCoalescer.Callback<Object> callback) {
+                loaders.add(callback);
+                return null;
+            }
+        }, new RecordingCallback());
+
+        final Object[] results = new Object[1];
+        Thread blocking = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[0] = coalescer.load("http://test.com", new RequestCoalescer.Loader<Object>() {
+                    @Override
+                    public Object load() {
+                        return "duplicate";
+                    }
+                });
+            }
+        });
+        blocking.start();
+
+        // give the blocking thread time to attach to the pending request
+        Thread.sleep(100);
+        loaders.get(0).onLoaded("shared");
+        blocking.join(5000);
+
+        assertEquals("shared", results[0]);
+    }
+
+    private static final class RecordingCallback implements RequestCoalescer.Callback<Object> {
+
+        private Object result;
+        private int calls = 0;
+
+        @Override
+        public void onLoaded(Object result) {
+            this.result = result;
+            calls++;
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import xyz.klinker.android.article.data.ArticleBlock;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingBlockExtractorTest extends ArticleSuite {
+
+    private static final String[] HTML = {
+            "<h1>Title</h1><p>First <b>paragraph</b></p><img src=\"http://test.com/a.jpg\">" +
+                    "<ul><li>one</li></ul><ol><li>two</li></ol><div>skipped</div>",
+            "<p>one<p>two<div>three</div>four",
+            "<ul><li>a<li>b<ul><li>c</ul><li>d</ul>",
+            "<blockquote><p>quoted   text</p><p>more</p></blockquote>",
+            "<pre>  some\n   code  </pre><p>after &amp; &lt;tag&gt; &copy; &#169; &nbsp;x</p>",
+            "<p>a<br>b<script>var x = \"<p>no</p>\";</script>c</p>",
+            "<!-- <p>comment</p> --><p>x</p><img src='a.png?x=1&amp;y=2' alt=\"a > b\">" +
+                    "<IMG SRC=b.jpg>",
+            "<h2>one<h3>two</h3>three</h2><p>four</p>",
+            "<p>stray</b> end</p></p><p>after</p>",
+            "<div><p>a<span>b</div>c",
+            "<li>loose</li><p>a < b and c</p>",
+            "<p>x<img src=\"i.jpg\">y</p>",
+            "<ol><li><p>nested para</p><p>second</p></li></ol>",
+            "<p>unclosed<h4>header",
+            "<pre><code>  indented\n    more</code></pre>",
+            "<p>a<style>p{}</style>b<title>t</title></p>",
+            "<p>tab\tand\nnewline</p><p/>self<p>x</p>",
+            "<table><tr><td><p>cell</p></td></tr></table><p>after</p>",
+            "<p><a href=\"x\">link <b>bold</p> tail</b></a><p>next</p>",
+            "<!DOCTYPE html><html><body><p>a<table><tr><td>b</td></tr></table>c</p></body></html>"
+    };
+
+    @Test
+    public void matchesJsoup() {
+        for (String html : HTML) {
+            assertSameBlocks(html, ArticleUtils.extractBlocksWithJsoup(html),
+                    StreamingBlockExtractor.extract(html));
+        }
+    }
+
+    @Test
+    public void emptyContent() {
+        assertEquals(0, StreamingBlockExtractor.extract("").size());
+        assertEquals(0, StreamingBlockExtractor.extract(null).size());
+    }
+
+    @Test
+    public void nestedBlocksAreEmittedInDocumentOrder() {
+        final List<String> tags = new ArrayList<>();
+        StreamingBlockExtractor.extract("<ul><li><p>one</p><p>two</p></li></ul><h2>three</h2>",
+                new StreamingBlockExtractor.BlockListener() {
+                    @Override
+                    public void onBlock(ArticleBlock block) {
+                        tags.add(block.tag + ":" + block.text);
+                    }
+                });
+
+        assertEquals(4, tags.size());
+        assertEquals("li:one two", tags.get(0));
+        assertEquals("p:one", tags.get(1));
+        assertEquals("p:two", tags.get(2));
+        assertEquals("h2:three", tags.get(3));
+    }
+
+    private static void assertSameBlocks(String html, List<ArticleBlock> expected,
+                                         List<ArticleBlock> actual) {
+        assertEquals(html, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(html, expected.get(i).tag, actual.get(i).tag);
+            assertEquals(html, expected.get(i).parentTag, actual.get(i).parentTag);
+            assertEquals(html, expected.get(i).text, actual.get(i).text);
+            assertEquals(html, expected.get(i).src, actual.get(i).src);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import xyz.klinker.android.article.ArticleSuite;
+import xyz.klinker.android.article.data.Article;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ArticleApiTest extends ArticleSuite {
+
+    private static final String TRENDING =
+            "[{\"url\": \"http://test.com\", \"title\": \"Test\"}]";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private ArticleService service;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        service = new ArticleApi(server.url("/v1/").toString(), "test-token").article();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ArticleApi.closeCache();
+        server.shutdown();
+    }
+
+    @Test
+    public void parseAsync() throws Exception {
+        server.enqueue(new MockResponse().setBody(
+                "{\"url\": \"http://test.com\", \"title\": \"Test\", \"is_article\": true}"));
+
+        Result<Article> result = enqueue(service.parseAsync("http://test.com"));
+
+        assertNotNull(result.value);
+        assertEquals("Test", result.value.title);
+        assertTrue(result.value.isArticle);
+        assertTrue(server.takeRequest().getPath().contains("api_token="));
+    }
+
+    @Test
+    public void httpError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        Result<Article> result = enqueue(service.parseAsync("http://test.com"));
+
+        assertEquals(ArticleApiException.Reason.HTTP, result.error.getReason());
+        assertEquals(500, result.error.getCode());
+    }
+
+    @Test
+    public void emptyResponse() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(204));
+
+        Result<Article> result = enqueue(service.parseAsync("http://test.com"));
+
+        assertEquals(ArticleApiException.Reason.EMPTY_RESPONSE, result.error.getReason());
+    }
+
+    @Test
+    public void invalidResponse() throws Exception {
+        server.enqueue(new MockResponse().setBody("not json"));
+
+        Result<Article> result = enqueue(service.parseAsync("http://test.com"));
+
+        assertEquals(ArticleApiException.Reason.INVALID_RESPONSE, result.error.getReason());
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        ApiCall<Article> call = service.parseAsync("http://test.com");
+        Result<Article> result = new Result<>();
+        call.enqueue(result);
+        server.takeRequest(5, TimeUnit.SECONDS);
+        call.cancel();
+
+        assertTrue(result.latch.await(5, TimeUnit.SECONDS));
+        assertTrue(call.isCanceled());
+        assertEquals(ArticleApiException.Reason.CANCELED, result.error.getReason());
+    }
+
+    @Test
+    public void executeNetworkError() throws Exception {
+        server.shutdown();
+
+        try {
+            service.trendingAsync().execute();
+            fail("expected the request to fail");
+        } catch (ArticleApiException e) {
+            assertEquals(ArticleApiException.Reason.NETWORK, e.getReason());
+        }
+    }
+
+    @Test
+    public void revalidatesCachedResponse() throws Exception {
+        ArticleService service = createCachedService();
+        server.enqueue(new MockResponse().setBody(TRENDING).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        Article[] first = service.trendingAsync().execute();
+        Article[] second = service.trendingAsync().execute();
+
+        assertEquals(2, server.getRequestCount());
+        server.takeRequest();
+        RecordedRequest revalidation = server.takeRequest();
+        assertEquals("\"v1\"", revalidation.getHeader("If-None-Match"));
+
+        assertEquals(1, second.length);
+        assertEquals(first[0].title, second[0].title);
+    }
+
+    @Test
+    public void cachedTrendingSkipsNetwork() throws Exception {
+        ArticleService service = createCachedService();
+        server.enqueue(new MockResponse().setBody(TRENDING));
+
+        service.trendingAsync().execute();
+        Article[] cached = service.trendingCached().execute();
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, cached.length);
+        assertEquals("Test", cached[0].title);
+    }
+
+    @Test
+    public void cachedTrendingWithEmptyCache() throws Exception {
+        ArticleService service = createCachedService();
+
+        try {
+            service.trendingCached().execute();
+            fail("expected the request to fail");
+        } catch (ArticleApiException e) {
+            assertEquals(ArticleApiException.Reason.HTTP, e.getReason());
+            assertEquals(504, e.getCode());
+        }
+
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void changingCacheDirectoryClosesOldCache() throws Exception {
+        createCachedService();
+        Cache first = ArticleApi.getCache();
+        createCachedService();
+
+        assertTrue(first.isClosed());
+        assertFalse(ArticleApi.getCache().isClosed());
+        assertNotSame(first, ArticleApi.getCache());
+    }
+
+    @Test
+    public void sameCacheDirectoryKeepsCache() throws Exception {
+        File directory = folder.newFolder();
+        new ArticleApi(server.url("/v1/").toString(), "test-token", directory);
+        Cache first = ArticleApi.getCache();
+        new ArticleApi(server.url("/v1/").toString(), "test-token", directory);
+
+        assertSame(first, ArticleApi.getCache());
+        assertFalse(first.isClosed());
+    }
+
+    private ArticleService createCachedService() throws Exception {
+        return new ArticleApi(server.url("/v1/").toString(), "test-token", folder.newFolder())
+                .article();
+    }
+
+    private static <T> Result<T> enqueue(ApiCall<T> call) throws InterruptedException {
+        Result<T> result = new Result<>();
+        call.enqueue(result);
+        assertTrue(result.latch.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private static final class Result<T> implements ApiCallback<T> {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private T value;
+        private ArticleApiException error;
+
+        @Override
+        public void onSuccess(T result) {
+            this.value = result;
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(ArticleApiException error) {
+            this.error = error;
+            latch.countDown();
+        }
+    }
+}
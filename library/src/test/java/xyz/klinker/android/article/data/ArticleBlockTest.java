@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import xyz.klinker.android.article.ArticleSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ArticleBlockTest extends ArticleSuite {
+
+    @Test
+    public void encodeAndDecode() {
+        List<ArticleBlock> blocks = Arrays.asList(
+                new ArticleBlock("p", null, "paragraph text", null),
+                new ArticleBlock("h2", null, "header text", null),
+                new ArticleBlock("img", null, null, "http://test.com/image.jpg"),
+                new ArticleBlock("li", "ul", "unordered item", null),
+                new ArticleBlock("li", "div", "item in a div", null),
+                new ArticleBlock("pre", null, "  some code\n  more code", null));
+
+        List<ArticleBlock> decoded = ArticleBlock.decode(ArticleBlock.encode(blocks));
+
+        assertEquals(blocks.size(), decoded.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            assertEquals(blocks.get(i).tag, decoded.get(i).tag);
+            assertEquals(blocks.get(i).parentTag, decoded.get(i).parentTag);
+            assertEquals(blocks.get(i).text, decoded.get(i).text);
+            assertEquals(blocks.get(i).src, decoded.get(i).src);
+        }
+    }
+
+    @Test
+    public void encodeAndDecode_imageSize() {
+        ArticleBlock image = new ArticleBlock("img", null, null, "http://test.com/image.jpg");
+        image.width = 1200;
+        image.height = 800;
+
+        ArticleBlock decoded = ArticleBlock.decode(ArticleBlock.encode(Arrays.asList(
+                image, new ArticleBlock("p", null, "text", null)))).get(0);
+        assertEquals(1200, decoded.width);
+        assertEquals(800, decoded.height);
+    }
+
+    @Test
+    public void encodeAndDecode_empty() {
+        List<ArticleBlock> decoded =
+                ArticleBlock.decode(ArticleBlock.encode(new ArrayList<ArticleBlock>()));
+        assertEquals(0, decoded.size());
+    }
+
+    @Test
+    public void encodeAndDecode_unicode() {
+        List<ArticleBlock> blocks = Arrays.asList(
+                new ArticleBlock("p", null, "caf\u00e9 \u2014 \ud83d\ude00", null));
+        assertEquals(blocks.get(0).text,
+                ArticleBlock.decode(ArticleBlock.encode(blocks)).get(0).text);
+    }
+
+    @Test
+    public void decode_null() {
+        assertNull(ArticleBlock.decode(null));
+        assertNull(ArticleBlock.decode(new byte[0]));
+    }
+
+    @Test
+    public void decode_oldVersion() {
+        byte[] data = ArticleBlock.encode(Arrays.asList(new ArticleBlock("p", null, "text", null)));
+        data[0] = (byte) (ArticleBlock.FORMAT_VERSION - 1);
+        assertNull(ArticleBlock.decode(data));
+    }
+
+    @Test
+    public void decode_truncated() {
+        byte[] data = ArticleBlock.encode(Arrays.asList(new ArticleBlock("p", null, "text", null)));
+        assertNull(ArticleBlock.decode(Arrays.copyOf(data, data.length - 2)));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.MatrixCursor;
+
+import org.junit.Test;
+
+import xyz.klinker.android.article.ArticleRobolectricSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleCursorMapperTest extends ArticleRobolectricSuite {
+
+    @Test
+    public void map() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {
+                "_id", "url", "title", "content", "inserted_at", "is_article", "saved",
+                "source_id", "name", "image_url"
+        });
+        cursor.addRow(new Object[] {
+                1L, "http://test.com/1", "title 1", "content 1", 10L, 1, 0, 100L, "source 1",
+                "http://test.com/source.png"
+        });
+        cursor.addRow(new Object[] {
+                2L, "http://test.com/2", "title 2", null, 20L, 0, 1, 101L, "source 2", null
+        });
+
+        ArticleCursorMapper mapper = new ArticleCursorMapper(cursor);
+
+        cursor.moveToFirst();
+        Article first = mapper.map(cursor);
+        cursor.moveToNext();
+        Article second = mapper.map(cursor);
+
+        assertNotSame(first, second);
+        assertEquals(1L, first.id);
+        assertEquals("http://test.com/1", first.url);
+        assertEquals("title 1", first.title);
+        assertEquals("content 1", first.content);
+        assertEquals(10L, first.insertedAt);
+        assertTrue(first.isArticle);
+        assertFalse(first.saved);
+        assertEquals(100L, (long) first.sourceId);
+        assertEquals("source 1", first.sourceModelName);
+        assertEquals("http://test.com/source.png", first.sourceModelImageUrl);
+
+        assertEquals(2L, second.id);
+        assertEquals("title 2", second.title);
+        assertNull(second.content);
+        assertEquals(20L, second.insertedAt);
+        assertFalse(second.isArticle);
+        assertTrue(second.saved);
+        assertEquals("source 2", second.sourceModelName);
+        assertNull(second.sourceModelImageUrl);
+    }
+
+    @Test
+    public void map_compressedContent() {
+        String content = ContentCodecTest.createHtml(20);
+        MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "content" });
+        cursor.addRow(new Object[] { 1L, ContentCodec.compress(content) });
+        cursor.moveToFirst();
+
+        assertEquals(content, new ArticleCursorMapper(cursor).map(cursor).content);
+    }
+
+    @Test
+    public void fill_reusesArticle() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "title" });
+        cursor.addRow(new Object[] { 1L, "title 1" });
+        cursor.addRow(new Object[] { 2L, "title 2" });
+
+        ArticleCursorMapper mapper = new ArticleCursorMapper(cursor);
+        Article article = new Article();
+        article.author = "author";
+
+        cursor.moveToFirst();
+        assertSame(article, mapper.fill(cursor, article));
+        assertEquals("title 1", article.title);
+
+        cursor.moveToNext();
+        assertSame(article, mapper.fill(cursor, article));
+        assertEquals(2L, article.id);
+        assertEquals("title 2", article.title);
+
+        // there is no column for the author, so it is left alone
+        assertEquals("author", article.author);
+    }
+
+    @Test
+    public void map_lastDuplicateColumnWins() {
+        // a join of the article and source tables has both of their ids
+        MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "title", "_id" });
+        cursor.addRow(new Object[] { 1L, "title", 100L });
+        cursor.moveToFirst();
+
+        assertEquals(100L, new ArticleCursorMapper(cursor).map(cursor).id);
+        assertEquals(100L, new Article(cursor).id);
+    }
+
+    @Test
+    public void map_noKnownColumns() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { "count" });
+        cursor.addRow(new Object[] { 5 });
+        cursor.moveToFirst();
+
+        Article article = new ArticleCursorMapper(cursor).map(cursor);
+        assertEquals(0L, article.id);
+        assertNull(article.title);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import xyz.klinker.android.article.ArticleSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleSearchTest extends ArticleSuite {
+
+    @Test
+    public void toMatchQuery() {
+        assertEquals("election*", ArticleSearch.toMatchQuery("election"));
+        assertEquals("City* council*", ArticleSearch.toMatchQuery("  City council "));
+        assertEquals("don* t*", ArticleSearch.toMatchQuery("don't"));
+        assertEquals("a* b* c*", ArticleSearch.toMatchQuery("\"a\" -b (c*)"));
+        assertEquals("cats* and* dogs*", ArticleSearch.toMatchQuery("cats AND dogs"));
+        assertEquals("caf\u00e9*", ArticleSearch.toMatchQuery("caf\u00e9"));
+    }
+
+    @Test
+    public void toMatchQuery_nothingToSearch() {
+        assertNull(ArticleSearch.toMatchQuery(null));
+        assertNull(ArticleSearch.toMatchQuery(""));
+        assertNull(ArticleSearch.toMatchQuery(" \"*\" - "));
+    }
+
+    @Test
+    public void toMatchQuery_limitsTerms() {
+        String query = ArticleSearch.toMatchQuery("a b c d e f g h i j k l m");
+        assertEquals(10, query.split(" ").length);
+    }
+
+    @Test
+    public void getText() {
+        assertNull(ArticleSearch.getText(null));
+        assertEquals("", ArticleSearch.getText(new ArrayList<ArticleBlock>()));
+        assertEquals("header\nparagraph", ArticleSearch.getText(Arrays.asList(
+                new ArticleBlock("h2", null, "header", null),
+                new ArticleBlock("img", null, null, "http://test.com/image.jpg"),
+                new ArticleBlock("p", null, "paragraph", null))));
+    }
+
+    @Test
+    public void score_titleBeatsText() {
+        // one phrase, found once in a 10 word title vs once in 10 word text
+        byte[] title = matchinfo(1, 4, 100, new int[] {10, 20, 5, 500}, new int[] {10, 20, 5, 500},
+                new int[] {1, 10, 10, 0, 0, 0, 0, 0, 0, 0, 10, 10});
+        byte[] text = matchinfo(1, 4, 100, new int[] {10, 20, 5, 500}, new int[] {10, 20, 5, 10},
+                new int[] {0, 10, 10, 0, 0, 0, 0, 0, 0, 1, 10, 10});
+
+        assertTrue(ArticleSearch.score(title) > ArticleSearch.score(text));
+    }
+
+    @Test
+    public void score_rareTermsBeatCommonTerms() {
+        byte[] rare = matchinfo(1, 4, 100, new int[] {10, 20, 5, 500}, new int[] {10, 20, 5, 500},
+                new int[] {1, 2, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+        byte[] common = matchinfo(1, 4, 100, new int[] {10, 20, 5, 500},
+                new int[] {10, 20, 5, 500}, new int[] {1, 60, 60, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+
+        assertTrue(ArticleSearch.score(rare) > ArticleSearch.score(common));
+    }
+
+    @Test
+    public void score_moreHitsBeatFewerHits() {
+        byte[] more = matchinfo(1, 4, 100, new int[] {10, 20, 5, 500}, new int[] {10, 20, 5, 500},
+                new int[] {0, 0, 0, 0, 0, 0, 0, 0, 0, 5, 20, 10});
+        byte[] fewer = matchinfo(1, 4, 100, new int[] {10, 20, 5, 500},
+                new int[] {10, 20, 5, 500}, new int[] {0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 20, 10});
+
+        assertTrue(ArticleSearch.score(more) > ArticleSearch.score(fewer));
+    }
+
+    @Test
+    public void score_noHits() {
+        byte[] none = matchinfo(1, 4, 100, new int[] {10, 20, 5, 500}, new int[] {10, 20, 5, 500},
+                new int[] {0, 10, 10, 0, 0, 0, 0, 0, 0, 0, 10, 10});
+
+        assertEquals(0, ArticleSearch.score(none), 0);
+    }
+
+    private static byte[] matchinfo(int phrases, int columns, int rows, int[] averageLengths,
+                                    int[] lengths, int[] hits) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (3 + averageLengths.length + lengths.length +
+                hits.length)).order(ByteOrder.nativeOrder());
+        buffer.putInt(phrases).putInt(columns).putInt(rows);
+        for (int value : averageLengths) {
+            buffer.putInt(value);
+        }
+        for (int value : lengths) {
+            buffer.putInt(value);
+        }
+        for (int value : hits) {
+            buffer.putInt(value);
+        }
+
+        return buffer.array();
+    }
+}
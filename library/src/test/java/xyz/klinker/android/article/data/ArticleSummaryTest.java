@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.MatrixCursor;
+
+import org.junit.Test;
+
+import xyz.klinker.android.article.ArticleRobolectricSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleSummaryTest extends ArticleRobolectricSuite {
+
+    @Test
+    public void fillFromCursor() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {
+                "_id", "url", "title", "description", "image", "author", "domain", "duration",
+                "inserted_at", "is_article", "saved", "source_id", "name", "image_url",
+                "has_content"
+        });
+        cursor.addRow(new Object[] {
+                1L, "http://test", "test title", "test description", "image url", "jake klinker",
+                "google.com", 5, 2L, 1, 0, 3L, "test source name", "test source image url", 1
+        });
+
+        cursor.moveToFirst();
+        ArticleSummary summary = new ArticleSummary(cursor);
+
+        assertEquals(1L, summary.id);
+        assertEquals("http://test", summary.url);
+        assertEquals("test title", summary.title);
+        assertEquals("test description", summary.description);
+        assertEquals("image url", summary.image);
+        assertEquals("jake klinker", summary.author);
+        assertEquals("google.com", summary.domain);
+        assertEquals(5, summary.duration);
+        assertEquals(2L, summary.insertedAt);
+        assertTrue(summary.isArticle);
+        assertFalse(summary.saved);
+        assertEquals(3L, (long) summary.sourceId);
+        assertEquals("test source name", summary.sourceModelName);
+        assertEquals("test source image url", summary.sourceModelImageUrl);
+        assertTrue(summary.hasContent);
+    }
+
+    @Test
+    public void projectionMatchesCursorPositions() {
+        assertEquals(15, ArticleSummary.PROJECTION.length);
+        assertTrue(ArticleSummary.PROJECTION[14].endsWith(ArticleSummary.COLUMN_HAS_CONTENT));
+    }
+
+    @Test
+    public void toArticle() {
+        ArticleSummary summary = new ArticleSummary();
+        summary.id = 1L;
+        summary.url = "http://test";
+        summary.title = "test title";
+        summary.saved = true;
+        summary.sourceId = 3L;
+        summary.hasContent = true;
+
+        Article article = summary.toArticle();
+        assertEquals(1L, article.id);
+        assertEquals("http://test", article.url);
+        assertEquals("test title", article.title);
+        assertTrue(article.saved);
+        assertEquals(3L, (long) article.sourceId);
+        assertNull(article.content);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import xyz.klinker.android.article.ArticleRealDataSuite;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares inserting rows one at a time against the bulk insert methods. The rows per second for
+ * each are printed, the assertions only check that both approaches store the same data.
+ */
+public class BulkInsertBenchmarkTest extends ArticleRealDataSuite {
+
+    private static final int ROWS = 500;
+
+    @Test
+    public void insertArticles() {
+        List<Article> single = createArticles("single");
+        long start = System.nanoTime();
+        for (Article article : single) {
+            source.insertArticle(article);
+        }
+        long singleNanos = System.nanoTime() - start;
+
+        List<Article> bulk = createArticles("bulk");
+        start = System.nanoTime();
+        source.insertArticles(bulk);
+        long bulkNanos = System.nanoTime() - start;
+
+        report("articles", singleNanos, bulkNanos);
+        assertEquals(8 + ROWS * 2, source.getAllArticles().getCount());
+    }
+
+    @Test
+    public void insertSources() {
+        List<Source> single = createSources(1000);
+        long start = System.nanoTime();
+        for (Source s : single) {
+            source.insertSource(s);
+        }
+        long singleNanos = System.nanoTime() - start;
+
+        List<Source> bulk = createSources(1000 + ROWS);
+        start = System.nanoTime();
+        source.insertSources(bulk);
+        long bulkNanos = System.nanoTime() - start;
+
+        report("sources", singleNanos, bulkNanos);
+        assertEquals(3 + ROWS * 2, source.getSources().size());
+    }
+
+    private static List<Article> createArticles(String prefix) {
+        List<Article> articles = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Article article = new Article();
+            article.url = "http://" + prefix + ".com/" + i;
+            article.title = prefix + " title " + i;
+            article.description = prefix + " description " + i;
+            article.content = "<p>" + prefix + " paragraph " + i + "</p>";
+            article.isArticle = true;
+            articles.add(article);
+        }
+
+        return articles;
+    }
+
+    private static List<Source> createSources(long firstRemoteId) {
+        List<Source> sources = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Source s = new Source();
+            s.remoteId = firstRemoteId + i;
+            s.name = "source " + s.remoteId;
+            s.imageUrl = "http://test/" + s.remoteId;
+            s.categoryName = "category " + (i % 10);
+            sources.add(s);
+        }
+
+        return sources;
+    }
+
+    private static void report(String name, long singleNanos, long bulkNanos) {
+        System.out.println(String.format("inserting %d %s: %.0f rows/sec one at a time, " +
+                "%.0f rows/sec in bulk", ROWS, name, rowsPerSecond(singleNanos),
+                rowsPerSecond(bulkNanos)));
+    }
+
+    private static double rowsPerSecond(long nanos) {
+        return ROWS / (nanos / 1000000000.0);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import xyz.klinker.android.article.ArticleRealDataSuite;
+import xyz.klinker.android.article.data.model.ContentChunkModel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContentChunksTest extends ArticleRealDataSuite {
+
+    @Test
+    public void count() {
+        assertEquals(0, ContentChunks.count(null));
+        assertEquals(0, ContentChunks.count(new byte[ContentChunks.CHUNK_SIZE]));
+        assertEquals(2, ContentChunks.count(new byte[ContentChunks.CHUNK_SIZE + 1]));
+        assertEquals(3, ContentChunks.count(new byte[ContentChunks.CHUNK_SIZE * 3]));
+    }
+
+    @Test
+    public void writeAndRead() {
+        SQLiteDatabase database = source.getDatabase();
+        byte[] data = createData(ContentChunks.CHUNK_SIZE * 2 + 100);
+        int chunks = ContentChunks.count(data);
+
+        ContentChunks.write(database, 1, ContentChunkModel.KIND_CONTENT, data);
+
+        assertArrayEquals(data,
+                ContentChunks.read(database, 1, ContentChunkModel.KIND_CONTENT, chunks));
+
+        // chunks of other articles and other kinds are kept apart
+        assertNull(ContentChunks.read(database, 2, ContentChunkModel.KIND_CONTENT, chunks));
+        assertNull(ContentChunks.read(database, 1, ContentChunkModel.KIND_BLOCKS, chunks));
+    }
+
+    @Test
+    public void open_readsAcrossChunks() throws IOException {
+        SQLiteDatabase database = source.getDatabase();
+        byte[] data = createData(ContentChunks.CHUNK_SIZE + 10);
+        ContentChunks.write(database, 1, ContentChunkModel.KIND_BLOCKS, data);
+
+        InputStream in = ContentChunks.open(database, 1, ContentChunkModel.KIND_BLOCKS, 2);
+        byte[] read = new byte[data.length];
+        int offset = 0;
+        int length;
+        while ((length = in.read(read, offset, Math.min(1000, read.length - offset))) > 0) {
+            offset += length;
+        }
+
+        assertEquals(data.length, offset);
+        assertEquals(-1, in.read());
+        assertArrayEquals(data, read);
+    }
+
+    @Test
+    public void read_missingChunk() {
+        SQLiteDatabase database = source.getDatabase();
+        byte[] data = createData(ContentChunks.CHUNK_SIZE * 2);
+        ContentChunks.write(database, 1, ContentChunkModel.KIND_CONTENT, data);
+
+        assertNull(ContentChunks.read(database, 1, ContentChunkModel.KIND_CONTENT, 3));
+        assertArrayEquals(Arrays.copyOf(data, ContentChunks.CHUNK_SIZE),
+                ContentChunks.read(database, 1, ContentChunkModel.KIND_CONTENT, 1));
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
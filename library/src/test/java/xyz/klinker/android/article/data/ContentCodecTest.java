@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Random;
+
+import xyz.klinker.android.article.ArticleSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContentCodecTest extends ArticleSuite {
+
+    private static final String HTML = createHtml(20);
+
+    @Test
+    public void compressAndDecompress() {
+        byte[] compressed = ContentCodec.compress(HTML);
+
+        assertNotNull(compressed);
+        assertTrue(compressed.length < HTML.length() / 3);
+        assertEquals(HTML, ContentCodec.decompress(compressed));
+    }
+
+    @Test
+    public void compressAndDecompress_unicode() {
+        String html = HTML + "<p>caf\u00e9 \u2014 \ud83d\ude00</p>";
+        assertEquals(html, ContentCodec.decompress(ContentCodec.compress(html)));
+    }
+
+    @Test
+    public void compress_smallerThanUtf8() {
+        // random CJK text barely compresses, so it ends up with more bytes than it has characters,
+        // but still fewer than its UTF-8 encoding
+        Random random = new Random(1);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append((char) (0x4e00 + random.nextInt(0x5000)));
+        }
+
+        String text = builder.toString();
+        byte[] compressed = ContentCodec.compress(text);
+
+        assertNotNull(compressed);
+        assertTrue(compressed.length > text.length());
+        assertEquals(text, ContentCodec.decompress(compressed));
+    }
+
+    @Test
+    public void compress_tooShort() {
+        assertNull(ContentCodec.compress("<p>a</p>"));
+        assertNull(ContentCodec.compress(""));
+        assertNull(ContentCodec.compress(null));
+    }
+
+    @Test
+    public void decompress_null() {
+        assertNull(ContentCodec.decompress(null));
+        assertNull(ContentCodec.decompress(new byte[0]));
+    }
+
+    @Test
+    public void decompress_otherVersion() {
+        byte[] compressed = ContentCodec.compress(HTML);
+        compressed[0] = (byte) (ContentCodec.FORMAT_VERSION + 1);
+        assertNull(ContentCodec.decompress(compressed));
+    }
+
+    @Test
+    public void decompress_truncated() {
+        byte[] compressed = ContentCodec.compress(HTML);
+        assertNull(ContentCodec.decompress(Arrays.copyOf(compressed, compressed.length / 2)));
+    }
+
+    @Test
+    public void decompress_corrupt() {
+        byte[] compressed = ContentCodec.compress(HTML);
+        for (int i = 1; i < compressed.length; i++) {
+            compressed[i] = (byte) ~compressed[i];
+        }
+
+        assertNull(ContentCodec.decompress(compressed));
+    }
+
+    @Test
+    public void newReader() throws IOException {
+        Reader reader = ContentCodec.newReader(
+                new ByteArrayInputStream(ContentCodec.compress(HTML)));
+
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[100];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, read);
+        }
+        reader.close();
+
+        assertEquals(HTML, text.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void newReader_otherVersion() throws IOException {
+        byte[] compressed = ContentCodec.compress(HTML);
+        compressed[0] = (byte) (ContentCodec.FORMAT_VERSION + 1);
+        ContentCodec.newReader(new ByteArrayInputStream(compressed)).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void newReader_truncated() throws IOException {
+        byte[] compressed = ContentCodec.compress(HTML);
+        Reader reader = ContentCodec.newReader(
+                new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length / 2)));
+        while (reader.read() != -1) {
+            // read until it fails
+        }
+    }
+
+    @Test
+    public void compress_evenIfLarger() {
+        assertNull(ContentCodec.compress("a"));
+
+        byte[] compressed = ContentCodec.compress("a", false);
+        assertNotNull(compressed);
+        assertEquals("a", ContentCodec.decompress(compressed));
+    }
+
+    static String createHtml(int paragraphs) {
+        StringBuilder html = new StringBuilder("<div class=\"article-body\">");
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<p>Paragraph ").append(i).append(" of the article, which said that ")
+                    .append("the city council would vote on the proposal after the meeting on ")
+                    .append("day ").append(i * 7 % 31).append(".</p>");
+
+            if (i % 5 == 0) {
+                html.append("<figure><img src=\"https://www.test.com/images/").append(i)
+                        .append(".jpg\" alt=\"\"><figcaption>Image ").append(i)
+                        .append("</figcaption></figure>");
+            }
+        }
+
+        return html.append("</div>").toString();
+    }
+}
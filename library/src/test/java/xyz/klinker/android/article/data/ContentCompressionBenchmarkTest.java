@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import xyz.klinker.android.article.ArticleRobolectricSuite;
+import xyz.klinker.android.article.data.model.ArticleModel;
+import xyz.klinker.android.article.data.model.ContentModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares storing article content as plain text, the way it was stored before compression was
+ * added, against storing it compressed. The database size, insert throughput and the time to open
+ * an article for each are printed; the assertions only check that compressed content takes less
+ * space and is read back unchanged.
+ */
+public class ContentCompressionBenchmarkTest extends ArticleRobolectricSuite {
+
+    private static final int ROWS = 200;
+    private static final int PARAGRAPHS = 40;
+
+    private SQLiteDatabase plainDatabase;
+    private SQLiteDatabase compressedDatabase;
+
+    @Before
+    public void setUp() {
+        plainDatabase = createDatabase();
+        compressedDatabase = createDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        plainDatabase.close();
+        compressedDatabase.close();
+    }
+
+    @Test
+    public void compareStorage() {
+        DataSource plain = new DataSource(plainDatabase);
+        DataSource compressed = new DataSource(compressedDatabase);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            insertPlainArticle(createArticle(i, createHtml(i)));
+        }
+        long plainInsertNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++) {
+            compressed.insertArticle(createArticle(i, createHtml(i)));
+        }
+        long compressedInsertNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        readAll(plain);
+        long plainReadNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        readAll(compressed);
+        long compressedReadNanos = System.nanoTime() - start;
+
+        long plainSize = getDatabaseSize(plainDatabase);
+        long compressedSize = getDatabaseSize(compressedDatabase);
+
+        System.out.println(String.format("storing %d articles of %d characters: " +
+                        "plain text %d KB, %.0f inserts/sec, %.3f ms to open; " +
+                        "compressed %d KB, %.0f inserts/sec, %.3f ms to open",
+                ROWS, createHtml(0).length(),
+                plainSize / 1024, rowsPerSecond(plainInsertNanos), millisPerRow(plainReadNanos),
+                compressedSize / 1024, rowsPerSecond(compressedInsertNanos),
+                millisPerRow(compressedReadNanos)));
+
+        assertTrue(compressedSize < plainSize);
+    }
+
+    // inserts the same rows as DataSource.insertArticle, with the content stored as text like
+    // older versions of the library did
+    private void insertPlainArticle(Article article) {
+        ContentValues values = new ContentValues(6);
+        values.put(ArticleModel.COLUMN_URL, article.url);
+        values.put(ArticleModel.COLUMN_TITLE, article.title);
+        values.put(ArticleModel.COLUMN_IS_ARTICLE, article.isArticle);
+        values.put(ArticleModel.COLUMN_SAVED, article.saved);
+        values.put(ArticleModel.COLUMN_INSERTED_AT, System.currentTimeMillis());
+        values.put(ArticleModel.COLUMN_LAST_ACCESSED_AT, System.currentTimeMillis());
+        long id = plainDatabase.insert(ArticleModel.TABLE, null, values);
+
+        values = new ContentValues(3);
+        values.put(ContentModel.COLUMN_ARTICLE_ID, id);
+        values.put(ContentModel.COLUMN_CONTENT, article.content);
+        values.put(ContentModel.COLUMN_SIZE, article.content.length());
+        plainDatabase.insert(ContentModel.TABLE, null, values);
+    }
+
+    private static void readAll(DataSource source) {
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(createHtml(i), source.getArticle(getUrl(i)).content);
+        }
+    }
+
+    private static SQLiteDatabase createDatabase() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        new DatabaseSQLiteHelper(RuntimeEnvironment.application).onCreate(database);
+        return database;
+    }
+
+    private static long getDatabaseSize(SQLiteDatabase database) {
+        Cursor cursor = database.rawQuery("PRAGMA page_count", null);
+        cursor.moveToFirst();
+        long pages = cursor.getLong(0);
+        cursor.close();
+
+        return pages * database.getPageSize();
+    }
+
+    private static Article createArticle(int i, String content) {
+        Article article = new Article();
+        article.url = getUrl(i);
+        article.title = "title " + i;
+        article.content = content;
+        article.isArticle = true;
+        return article;
+    }
+
+    private static String getUrl(int i) {
+        return "http://test.com/compression/" + i;
+    }
+
+    private static String createHtml(int i) {
+        return ContentCodecTest.createHtml(PARAGRAPHS).replace("Paragraph", "Paragraph " + i);
+    }
+
+    private static double rowsPerSecond(long nanos) {
+        return ROWS / (nanos / 1000000000.0);
+    }
+
+    private static double millisPerRow(long nanos) {
+        return nanos / 1000000.0 / ROWS;
+    }
+}
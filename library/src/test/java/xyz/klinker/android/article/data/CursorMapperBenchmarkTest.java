@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.MatrixCursor;
+
+import org.junit.Test;
+
+import xyz.klinker.android.article.ArticleRobolectricSuite;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares reading a large cursor with a new {@link Article#Article(android.database.Cursor)}
+ * for each row, which looks up every column by name on every row, against reading it with a
+ * single {@link ArticleCursorMapper}, both creating new articles and reusing one. The time for
+ * each is printed; the assertions only check that every row was read.
+ */
+public class CursorMapperBenchmarkTest extends ArticleRobolectricSuite {
+
+    private static final int ROWS = 10000;
+    private static final int WARM_UP = 3;
+
+    @Test
+    public void readCursor() {
+        MatrixCursor cursor = createCursor();
+
+        for (int i = 0; i < WARM_UP; i++) {
+            readWithConstructor(cursor);
+            readWithMapper(cursor);
+            readWithReusedArticle(cursor);
+        }
+
+        long start = System.nanoTime();
+        long constructor = readWithConstructor(cursor);
+        print("new Article(cursor)", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        long mapper = readWithMapper(cursor);
+        print("mapper.map(cursor)", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        long reused = readWithReusedArticle(cursor);
+        print("mapper.fill(cursor, article)", System.nanoTime() - start);
+
+        long expected = (long) ROWS * (ROWS - 1) / 2;
+        assertEquals(expected, constructor);
+        assertEquals(expected, mapper);
+        assertEquals(expected, reused);
+    }
+
+    private static long readWithConstructor(MatrixCursor cursor) {
+        long total = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            total += new Article(cursor).id;
+        }
+
+        return total;
+    }
+
+    private static long readWithMapper(MatrixCursor cursor) {
+        long total = 0;
+        ArticleCursorMapper mapper = new ArticleCursorMapper(cursor);
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            total += mapper.map(cursor).id;
+        }
+
+        return total;
+    }
+
+    private static long readWithReusedArticle(MatrixCursor cursor) {
+        long total = 0;
+        ArticleCursorMapper mapper = new ArticleCursorMapper(cursor);
+        Article article = new Article();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            total += mapper.fill(cursor, article).id;
+        }
+
+        return total;
+    }
+
+    private static void print(String method, long nanos) {
+        System.out.println(String.format("reading %d rows with %s: %.1f ms",
+                ROWS, method, nanos / 1000000.0));
+    }
+
+    private static MatrixCursor createCursor() {
+        // the columns of a page of articles joined with their sources
+        MatrixCursor cursor = new MatrixCursor(new String[] {
+                "_id", "alias", "url", "title", "description", "image", "author", "source",
+                "domain", "duration", "inserted_at", "is_article", "saved", "source_id",
+                "last_accessed_at", "name", "image_url"
+        }, ROWS);
+
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[] {
+                    (long) i, null, "http://test.com/" + i, "Article " + i,
+                    "A description of article " + i, "http://test.com/" + i + ".jpg",
+                    "author", "test.com", "test.com", 5, (long) i, 1, 0, (long) (i % 10),
+                    (long) i, "source " + (i % 10), "http://test.com/source.png"
+            });
+        }
+
+        return cursor;
+    }
+}
@@ -26,6 +26,8 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
+
 import xyz.klinker.android.article.ArticleRobolectricSuite;
 
 import static org.junit.Assert.assertEquals;
@@ -37,6 +39,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -72,6 +75,28 @@ public class DataSourceTest extends ArticleRobolectricSuite {
         DataSource dataSource = DataSource.get(RuntimeEnvironment.application);
         dataSource.open();
         dataSource.close();
+        DataSource.resetInstance();
+    }
+
+    @Test
+    public void sharedInstance() {
+        DataSource first = DataSource.get(RuntimeEnvironment.application);
+        DataSource second = DataSource.get(RuntimeEnvironment.application);
+        assertTrue(first == second);
+
+        first.open();
+        second.open();
+        first.close();
+
+        // closing from one caller should not take the database away from the other
+        assertTrue(second.isOpen());
+        assertTrue(second.getDatabase() == first.getDatabase());
+        second.close();
+        assertTrue(first.isOpen());
+
+        DataSource.resetInstance();
+        assertFalse(first == DataSource.get(RuntimeEnvironment.application));
+        DataSource.resetInstance();
     }
 
     @Test
@@ -87,6 +112,9 @@ public class DataSourceTest extends ArticleRobolectricSuite {
         verify(database).delete("content", null, null);
         verify(database).delete("source", null, null);
         verify(database).delete("category", null, null);
+        verify(database).delete("article_search", null, null);
+        verify(database).delete("content_chunk", null, null);
+        verify(database).delete("preload", null, null);
         verifyNoMoreInteractions(database);
     }
 
@@ -126,6 +154,7 @@ public class DataSourceTest extends ArticleRobolectricSuite {
 
         verify(database).insert(eq("article"), eq((String) null), any(ContentValues.class));
         verify(database).insert(eq("content"), eq((String) null), any(ContentValues.class));
+        verify(database).insert(eq("article_search"), eq((String) null), any(ContentValues.class));
         verifyNoMoreInteractions(database);
     }
 
@@ -164,10 +193,49 @@ public class DataSourceTest extends ArticleRobolectricSuite {
         article.content = "blah";
         ContentValues values = new ContentValues();
         values.put("content", "blah");
+        values.putNull("blocks");
+        values.put("size", 4L);
+        values.put("content_chunks", 0);
+        values.put("blocks_chunks", 0);
 
         source.updateArticleContent(article);
 
+        ContentValues search = new ContentValues();
+        search.putNull("text");
+
+        verify(database).beginTransaction();
         verify(database).update("content", values, "article_id=?", new String[] {"2"});
+        verify(database).delete("content_chunk", "article_id=?", new String[] {"2"});
+        verify(database).setTransactionSuccessful();
+        verify(database).endTransaction();
+        verify(database).update("article_search", search, "docid=?", new String[] {"2"});
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void updateArticleBlocks() {
+        Article article = new Article();
+        article.id = 2L;
+        article.blocks = new ArrayList<>();
+        article.blocks.add(new ArticleBlock("p", null, "blah", null));
+        ContentValues values = new ContentValues();
+        values.put("blocks", ArticleBlock.encode(article.blocks));
+        values.put("blocks_chunks", 0);
+
+        source.updateArticleBlocks(article);
+
+        ContentValues search = new ContentValues();
+        search.put("text", "blah");
+
+        verify(database).beginTransaction();
+        verify(database).execSQL(startsWith("update content set size = size"),
+                eq(new Object[] {2L, ArticleBlock.encode(article.blocks).length, 2L}));
+        verify(database).update("content", values, "article_id=?", new String[] {"2"});
+        verify(database).delete("content_chunk", "article_id=? and kind=?",
+                new String[] {"2", "1"});
+        verify(database).setTransactionSuccessful();
+        verify(database).endTransaction();
+        verify(database).update("article_search", search, "docid=?", new String[] {"2"});
         verifyNoMoreInteractions(database);
     }
 
@@ -229,6 +297,38 @@ public class DataSourceTest extends ArticleRobolectricSuite {
         assertEquals(cursor, source.getSavedArticles());
     }
 
+    @Test
+    public void getArticleSummaries() {
+        when(database.query(
+                anyString(),
+                eq(ArticleSummary.PROJECTION),
+                eq((String) null),
+                eq((String[]) null),
+                eq((String) null),
+                eq((String) null),
+                eq("a.inserted_at desc"),
+                eq((String) null)))
+                    .thenReturn(cursor);
+        assertEquals(cursor, source.getArticleSummaries());
+    }
+
+    @Test
+    public void getArticleSummary_noMatchingUrls() {
+        when(database.query(
+                anyString(),
+                eq(ArticleSummary.PROJECTION),
+                eq("a.url=?"),
+                eq(new String[] {"http://google.com"}),
+                eq((String) null),
+                eq((String) null),
+                eq((String) null),
+                eq("1")))
+                .thenReturn(cursor);
+        when(cursor.moveToFirst()).thenReturn(false);
+        assertNull(source.getArticleSummary("http://google.com"));
+        verify(cursor).close();
+    }
+
     @Test
     public void insertCategory() {
         source.insertCategory("test");
@@ -361,5 +461,7 @@ public class DataSourceTest extends ArticleRobolectricSuite {
         source.deleteArticle(1L);
         verify(database).delete("article", "_id=?", new String[] {"1"});
         verify(database).delete("content", "article_id=?", new String[] {"1"});
+        verify(database).delete("article_search", "docid=?", new String[] {"1"});
+        verify(database).delete("content_chunk", "article_id=?", new String[] {"1"});
     }
 }
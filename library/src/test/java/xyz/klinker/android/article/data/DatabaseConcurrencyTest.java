@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import xyz.klinker.android.article.ArticleRobolectricSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseConcurrencyTest extends ArticleRobolectricSuite {
+
+    private DatabaseSQLiteHelper helper;
+    private DataSource source;
+
+    @Before
+    public void setUp() {
+        helper = new DatabaseSQLiteHelper(RuntimeEnvironment.application);
+        source = new DataSource(helper);
+        source.open();
+        source.insertArticles(createArticles("initial", 50, 1024));
+    }
+
+    @After
+    public void tearDown() {
+        source.clearTables();
+        source.close();
+    }
+
+    @Test
+    public void usesWriteAheadLog() {
+        Cursor cursor = source.rawQuery("PRAGMA journal_mode");
+        assertTrue(cursor.moveToFirst());
+        assertEquals("wal", cursor.getString(0).toLowerCase());
+        cursor.close();
+    }
+
+    @Test
+    public void readsAreNotBlockedByWrites() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch read = new CountDownLatch(1);
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        // holds a write transaction open until the test thread has read, or gives up after a while
+        // so that a blocked read fails the test instead of hanging it
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    source.beginTransaction();
+                    try {
+                        source.insertArticles(createArticles("pending", 1, 1024));
+                        writing.countDown();
+                        timedOut.set(!read.await(5, TimeUnit.SECONDS));
+                        source.setTransactionSuccessful();
+                    } finally {
+                        source.endTransaction();
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }
+        });
+
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        Cursor cursor = source.getAllArticles();
+        int count = cursor.getCount();
+        cursor.close();
+        read.countDown();
+
+        writer.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertFalse("the read waited for the write to commit", timedOut.get());
+
+        // the read sees the database as it was before the write started
+        assertEquals(50, count);
+        assertEquals(51, source.getAllArticles().getCount());
+    }
+
+    private static List<Article> createArticles(String prefix, int count, int contentLength) {
+        StringBuilder content = new StringBuilder("<p>");
+        while (content.length() < contentLength) {
+            content.append("some article content ");
+        }
+        content.append("</p>");
+
+        List<Article> articles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Article article = new Article();
+            article.url = "http://" + prefix + ".com/" + i;
+            article.title = prefix + " " + i;
+            article.content = content.toString();
+            article.isArticle = true;
+            articles.add(article);
+        }
+
+        return articles;
+    }
+}
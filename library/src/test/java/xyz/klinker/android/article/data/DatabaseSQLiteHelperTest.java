@@ -26,9 +26,15 @@ import org.robolectric.RuntimeEnvironment;
 import xyz.klinker.android.article.ArticleRobolectricSuite;
 import xyz.klinker.android.article.data.model.ArticleModel;
 import xyz.klinker.android.article.data.model.CategoryModel;
+import xyz.klinker.android.article.data.model.ContentChunkModel;
 import xyz.klinker.android.article.data.model.ContentModel;
+import xyz.klinker.android.article.data.model.PreloadModel;
+import xyz.klinker.android.article.data.model.SearchModel;
 import xyz.klinker.android.article.data.model.SourceModel;
 
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -90,6 +96,79 @@ public class DatabaseSQLiteHelperTest extends ArticleRobolectricSuite {
         verify4Upgrade();
     }
 
+    @Test
+    public void onUpgrade1to5() {
+        helper.onUpgrade(database, 1, 5);
+        verify2Upgrade();
+        verify3Upgrade();
+        verify4Upgrade();
+        verify5Upgrade();
+    }
+
+    @Test
+    public void onUpgrade4to10() {
+        helper.onUpgrade(database, 4, 10);
+        verify5Upgrade();
+        verify6Upgrade();
+        verify7Upgrade();
+        verify8Upgrade();
+        verify9Upgrade();
+        verify10Upgrade();
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void onUpgrade5to10() {
+        helper.onUpgrade(database, 5, 10);
+        verify6Upgrade();
+        verify7Upgrade();
+        verify8Upgrade();
+        verify9Upgrade();
+        verify10Upgrade();
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void onUpgrade6to10() {
+        helper.onUpgrade(database, 6, 10);
+        verify7Upgrade();
+        verify8Upgrade();
+        verify9Upgrade();
+        verify10Upgrade();
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void onUpgrade7to10() {
+        helper.onUpgrade(database, 7, 10);
+        verify8Upgrade();
+        verify9Upgrade();
+        verify10Upgrade();
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void onUpgrade8to10() {
+        helper.onUpgrade(database, 8, 10);
+        verify9Upgrade();
+        verify10Upgrade();
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void onUpgrade9to10() {
+        helper.onUpgrade(database, 9, 10);
+        verify10Upgrade();
+        verifyNoMoreInteractions(database);
+    }
+
+    @Test
+    public void onConfigure() {
+        helper.onConfigure(database);
+        verify(database).execSQL("PRAGMA cache_size = 1024");
+        verifyNoMoreInteractions(database);
+    }
+
     @Test
     public void onDrop() {
         helper.onDrop(database);
@@ -103,10 +182,22 @@ public class DatabaseSQLiteHelperTest extends ArticleRobolectricSuite {
         verify(database).execSQL(new CategoryModel().getCreateStatement());
         verify(database).execSQL(new ArticleModel().getIndexStatements()[0]);
         verify(database).execSQL(new ArticleModel().getIndexStatements()[1]);
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[2]);
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[3]);
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[4]);
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[5]);
         verify(database).execSQL(new ContentModel().getIndexStatements()[0]);
+        verify(database).execSQL(new ContentModel().getIndexStatements()[1]);
         verify(database).execSQL(new SourceModel().getIndexStatements()[0]);
         verify(database).execSQL(new SourceModel().getIndexStatements()[1]);
+        verify(database).execSQL(new SourceModel().getIndexStatements()[2]);
         verify(database).execSQL(new CategoryModel().getIndexStatements()[0]);
+        verify(database).execSQL(new SearchModel().getCreateStatement());
+        verify(database).execSQL(new ContentChunkModel().getCreateStatement());
+        verify(database).execSQL(new ContentChunkModel().getIndexStatements()[0]);
+        verify(database).execSQL(new PreloadModel().getCreateStatement());
+        verify(database).execSQL(new PreloadModel().getIndexStatements()[0]);
+        verify(database).execSQL(new PreloadModel().getIndexStatements()[1]);
         verifyNoMoreInteractions(database);
     }
 
@@ -125,7 +216,57 @@ public class DatabaseSQLiteHelperTest extends ArticleRobolectricSuite {
     }
 
     private void verify4Upgrade() {
-        // do nothing for now, fill with more database migrations.
+        verify(database).execSQL("ALTER TABLE content ADD COLUMN blocks blob");
+    }
+
+    private void verify5Upgrade() {
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[2]);
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[3]);
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[4]);
+        verify(database).execSQL(new SourceModel().getIndexStatements()[2]);
+    }
+
+    private void verify6Upgrade() {
+        verify(database).execSQL("ALTER TABLE article ADD COLUMN last_accessed_at integer not null " +
+                "DEFAULT 0");
+        verify(database).execSQL("UPDATE article SET last_accessed_at = inserted_at");
+        verify(database).execSQL("ALTER TABLE content ADD COLUMN size integer not null DEFAULT 0");
+        verify(database).execSQL("UPDATE content SET size = " +
+                "ifnull(length(CAST(content AS BLOB)), 0) + ifnull(length(blocks), 0)");
+        verify(database).execSQL(new ArticleModel().getIndexStatements()[5]);
+        verify(database).execSQL(new ContentModel().getIndexStatements()[1]);
+    }
+
+    private void verify7Upgrade() {
+        verify(database).rawQuery(startsWith("SELECT _id, content,"), eq(new String[] {"-1"}));
+    }
+
+    private void verify8Upgrade() {
+        verify(database).execSQL(new SearchModel().getCreateStatement());
+        verify(database).execSQL("INSERT INTO article_search (docid, title, description, author) " +
+                "SELECT _id, title, description, author FROM article");
+        verify(database).rawQuery(startsWith("SELECT _id, article_id, blocks"),
+                eq(new String[] {"-1"}));
+    }
+
+    private void verify9Upgrade() {
+        verify(database).execSQL("ALTER TABLE content ADD COLUMN content_chunks integer not null " +
+                "DEFAULT 0");
+        verify(database).execSQL("ALTER TABLE content ADD COLUMN blocks_chunks integer not null " +
+                "DEFAULT 0");
+        verify(database).execSQL(new ContentChunkModel().getCreateStatement());
+        verify(database).execSQL(new ContentChunkModel().getIndexStatements()[0]);
+        // once for compressed content and once for content that is still text
+        verify(database, times(2)).rawQuery(
+                startsWith("SELECT max(length(CAST(content AS BLOB)))"), eq((String[]) null));
+        verify(database).rawQuery(startsWith("SELECT max(length(CAST(blocks AS BLOB)))"),
+                eq((String[]) null));
+    }
+
+    private void verify10Upgrade() {
+        verify(database).execSQL(new PreloadModel().getCreateStatement());
+        verify(database).execSQL(new PreloadModel().getIndexStatements()[0]);
+        verify(database).execSQL(new PreloadModel().getIndexStatements()[1]);
     }
 
     private void verifyDropStatement() {
@@ -133,6 +274,9 @@ public class DatabaseSQLiteHelperTest extends ArticleRobolectricSuite {
         verify(database).execSQL("drop table if exists content");
         verify(database).execSQL("drop table if exists source");
         verify(database).execSQL("drop table if exists category");
+        verify(database).execSQL("drop table if exists article_search");
+        verify(database).execSQL("drop table if exists content_chunk");
+        verify(database).execSQL("drop table if exists preload");
         verifyNoMoreInteractions(database);
     }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import xyz.klinker.android.article.ArticleRealDataSuite;
+import xyz.klinker.android.article.ArticleRobolectricSuite;
+import xyz.klinker.android.article.data.model.ContentChunkModel;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs EXPLAIN QUERY PLAN for each of the queries that {@link DataSource} makes, to make sure
+ * that none of them fall back to scanning a whole table or sorting the results in a temporary
+ * b-tree when an index should be used instead.
+ */
+public class QueryPlanTest extends ArticleRobolectricSuite {
+
+    private static final String QUERY_PREFIX = "SQLiteQuery: ";
+    private static final String EXPLAIN = "EXPLAIN QUERY PLAN ";
+
+    // "SCAN TABLE article AS a" without "USING INDEX" after it
+    private static final Pattern FULL_SCAN = Pattern.compile("^SCAN (TABLE )?\\S+( AS \\S+)?$");
+    private static final String TEMP_B_TREE = "USE TEMP B-TREE";
+
+    private final List<String> queries = new ArrayList<>();
+    private SQLiteDatabase database;
+    private DataSource source;
+
+    @Before
+    public void setUp() throws Exception {
+        database = SQLiteDatabase.create(new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver driver,
+                                    String editTable, SQLiteQuery query) {
+                String sql = query.toString().substring(QUERY_PREFIX.length());
+                if (!sql.startsWith(EXPLAIN)) {
+                    queries.add(sql);
+                }
+
+                return new SQLiteCursor(driver, editTable, query);
+            }
+        });
+
+        new DatabaseSQLiteHelper(RuntimeEnvironment.application).onCreate(database);
+        new ArticleRealDataSuite.FixtureLoader().loadFixturesToDatabase(database);
+        source = new DataSource(database);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void getArticle() {
+        source.getArticle("http://test.com/");
+        assertIndexed();
+    }
+
+    @Test
+    public void getAllArticles() {
+        source.getAllArticles().close();
+        assertIndexed();
+    }
+
+    @Test
+    public void getAllArticles_paged() {
+        ArticlePage page = source.getAllArticles(null, 3);
+        source.getAllArticles(page.getNextKey(), 3);
+        assertIndexed();
+    }
+
+    @Test
+    public void getArticleSummaries() {
+        source.getArticleSummary("http://test.com/");
+        source.getArticleSummaries().close();
+        source.getSavedArticleSummaries().close();
+        assertIndexed();
+    }
+
+    @Test
+    public void loadArticleContent() {
+        Article article = new Article();
+        article.id = 1;
+        article.loadContent(source);
+        assertIndexed();
+    }
+
+    @Test
+    public void openArticleContent() {
+        source.openArticleContent(1);
+        ContentChunks.read(source.getDatabase(), 1, ContentChunkModel.KIND_CONTENT, 1);
+        assertIndexed();
+    }
+
+    @Test
+    public void getSavedArticles() {
+        source.getSavedArticles().close();
+        assertIndexed();
+    }
+
+    @Test
+    public void getSavedArticles_paged() {
+        source.getSavedArticles(null, 3);
+        source.getSavedArticles(new ArticlePage.Key(5, 5), 3);
+        assertIndexed();
+    }
+
+    @Test
+    public void getArticlesForSource() {
+        source.getArticlesForSource(100L).close();
+        assertIndexed();
+    }
+
+    @Test
+    public void getArticlesForSource_paged() {
+        ArticlePage page = source.getArticlesForSource(100L, null, 2);
+        source.getArticlesForSource(100L, page.getNextKey(), 2);
+        assertIndexed();
+    }
+
+    @Test
+    public void getCategoryId() {
+        source.getCategoryId("test");
+        assertIndexed();
+    }
+
+    @Test
+    public void getSources() {
+        source.getSources();
+        assertIndexed();
+    }
+
+    @Test
+    public void getSource() {
+        source.getSource(100L);
+        assertIndexed();
+    }
+
+    @Test
+    public void getCategoryCounts() {
+        source.getCategoryCounts(0);
+
+        // the categories are grouped and then sorted by their counts, which can never come
+        // straight out of an index, so only check that the articles aren't fully scanned.
+        assertIndexed(true);
+    }
+
+    @Test
+    public void getContentSize() {
+        source.getContentSize();
+        source.getContentCount();
+        assertIndexed();
+    }
+
+    @Test
+    public void getLeastRecentlyAccessedArticleIds() {
+        source.getLeastRecentlyAccessedArticleIds(20);
+        assertIndexed();
+    }
+
+    @Test
+    public void searchArticles() {
+        Article article = new Article();
+        article.url = "http://test.com/search";
+        article.title = "search title";
+        source.insertArticle(article);
+        queries.clear();
+
+        source.searchArticles("search", 10);
+        assertIndexed();
+    }
+
+    @Test
+    public void preloadQueue() {
+        source.enqueuePreloads(Arrays.asList("http://test.com/1", "http://test.com/2"));
+        queries.clear();
+
+        source.takeDuePreloads(System.currentTimeMillis(), 20);
+        source.getNextPreloadAttemptAt();
+        source.getPreloadStatus("http://test.com/1");
+        source.getPreloadProgress();
+        assertIndexed();
+    }
+
+    private void assertIndexed() {
+        assertIndexed(false);
+    }
+
+    private void assertIndexed(boolean allowTempBTree) {
+        assertFalse("no queries were made", queries.isEmpty());
+
+        for (String sql : queries) {
+            Cursor plan = database.rawQuery(EXPLAIN + sql, null);
+            int detailColumn = plan.getColumnIndex("detail");
+            assertTrue(plan.moveToFirst());
+
+            do {
+                String detail = plan.getString(detailColumn);
+                assertFalse("full table scan: " + detail + "\n" + sql,
+                        FULL_SCAN.matcher(detail).matches());
+                assertFalse("temporary b-tree: " + detail + "\n" + sql,
+                        !allowTempBTree && detail.startsWith(TEMP_B_TREE));
+            } while (plan.moveToNext());
+
+            plan.close();
+        }
+    }
+}
@@ -19,10 +19,20 @@ package xyz.klinker.android.article.data;
 import android.database.Cursor;
 
 import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import xyz.klinker.android.article.ArticleRealDataSuite;
+import xyz.klinker.android.article.data.model.ContentChunkModel;
+import xyz.klinker.android.article.data.model.PreloadModel;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -50,12 +60,392 @@ public class SQLiteQueryTest extends ArticleRealDataSuite {
         assertNotEquals(0, article.insertedAt);
     }
 
+    @Test
+    public void getArticle_updatesLastAccessedAt() {
+        long before = System.currentTimeMillis();
+        Article article = source.getArticle("http://test.com/2");
+
+        Cursor cursor = source.getDatabase().rawQuery(
+                "select last_accessed_at from article where _id = ?",
+                new String[] {Long.toString(article.id)});
+        assertTrue(cursor.moveToFirst());
+        assertTrue(cursor.getLong(0) >= before);
+        cursor.close();
+    }
+
+    @Test
+    public void getContentSizeAndCount() {
+        // the fixtures were loaded without a size, so they don't count toward the total
+        assertEquals(0, source.getContentSize());
+        assertEquals(0, source.getContentCount());
+
+        source.insertArticle(createArticle("http://test.com/size", 1000, "12345"));
+
+        assertEquals(5, source.getContentSize());
+        assertEquals(1, source.getContentCount());
+    }
+
+    @Test
+    public void getContentSize_countsUtf8Bytes() {
+        // too short to compress, so it is stored as text
+        source.insertArticle(createArticle("http://test.com/size", 1000, "caf\u00e9 \u2014"));
+
+        assertEquals(9, source.getContentSize());
+    }
+
+    @Test
+    public void getLeastRecentlyAccessedArticleIds() {
+        long newest = source.insertArticle(createArticle("http://test.com/newest", 3000, "a"));
+        long oldest = source.insertArticle(createArticle("http://test.com/oldest", 1000, "a"));
+        long middle = source.insertArticle(createArticle("http://test.com/middle", 2000, "a"));
+
+        Article saved = createArticle("http://test.com/saved", 500, "a");
+        saved.saved = true;
+        source.insertArticle(saved);
+
+        List<Long> ids = source.getLeastRecentlyAccessedArticleIds(2);
+        assertEquals(2, ids.size());
+        assertEquals(oldest, (long) ids.get(0));
+        assertEquals(middle, (long) ids.get(1));
+
+        ids = source.getLeastRecentlyAccessedArticleIds(10);
+        assertEquals(3, ids.size());
+        assertEquals(newest, (long) ids.get(2));
+    }
+
+    @Test
+    public void clearArticleContent() {
+        long id = source.insertArticle(createArticle("http://test.com/clear", 1000, "content"));
+        List<Long> ids = new ArrayList<>();
+        ids.add(id);
+
+        source.clearArticleContent(ids);
+
+        Article article = source.getArticle("http://test.com/clear");
+        assertNotNull(article);
+        assertNull(article.content);
+        assertEquals(0, source.getContentSize());
+        assertEquals(0, source.getContentCount());
+
+        // the content row is kept, so the content can be filled back in later
+        article.content = "new content";
+        source.updateArticleContent(article);
+        assertEquals("new content", source.getArticle("http://test.com/clear").content);
+        assertEquals(11, source.getContentSize());
+    }
+
+    @Test
+    public void insertArticle_compressesContent() {
+        String html = ContentCodecTest.createHtml(20);
+        source.insertArticle(createArticle("http://test.com/compressed", 1000, html));
+
+        Cursor cursor = source.getDatabase().rawQuery(
+                "select typeof(content), size from content where size > 0", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("blob", cursor.getString(0));
+        assertTrue(cursor.getLong(1) < html.length());
+        cursor.close();
+
+        assertEquals(html, source.getArticle("http://test.com/compressed").content);
+    }
+
+    @Test
+    public void upgradeCompressesContent() {
+        String large = createLargeContent();
+        source.getDatabase().execSQL("insert into content (article_id, content, size) " +
+                "values (4, ?, ?)", new Object[] {large, large.length()});
+
+        String html = ContentCodecTest.createHtml(20);
+        source.getDatabase().execSQL("insert into content (article_id, content, size) " +
+                "values (3, ?, ?)", new Object[] {html, html.length()});
+
+        new DatabaseSQLiteHelper(RuntimeEnvironment.application)
+                .onUpgrade(source.getDatabase(), 6, 7);
+
+        Cursor cursor = source.getDatabase().rawQuery(
+                "select typeof(content), size from content where article_id = 3", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("blob", cursor.getString(0));
+        assertTrue(cursor.getLong(1) < html.length());
+        cursor.close();
+
+        assertEquals(html, source.getArticle("http://test.com/3").content);
+
+        // content that is too short to compress is left alone
+        assertEquals("First test article content.", source.getArticle("http://test.com/").content);
+
+        // and content that is too large to read is left for the chunks to split
+        cursor = source.getDatabase().rawQuery(
+                "select typeof(content) from content where article_id = 4", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("text", cursor.getString(0));
+        cursor.close();
+    }
+
+    @Test
+    public void insertArticle_chunksLargeContent() {
+        String content = createLargeContent();
+        Article article = createArticle("http://test.com/large", 1000, content);
+        article.blocks = Arrays.asList(new ArticleBlock("p", null, content, null));
+        long id = source.insertArticle(article);
+
+        Cursor cursor = source.getDatabase().rawQuery("select content, blocks, content_chunks, " +
+                "blocks_chunks from content where article_id = ?",
+                new String[] {Long.toString(id)});
+        assertTrue(cursor.moveToFirst());
+        assertTrue(cursor.isNull(0));
+        assertTrue(cursor.isNull(1));
+        int contentChunks = cursor.getInt(2);
+        int blocksChunks = cursor.getInt(3);
+        assertTrue(contentChunks > 1);
+        assertTrue(blocksChunks > 1);
+        cursor.close();
+
+        assertEquals(contentChunks + blocksChunks, countChunks(id));
+
+        Article stored = source.getArticle("http://test.com/large");
+        assertEquals(content, stored.content);
+        assertEquals(1, stored.blocks.size());
+        assertEquals(content, stored.blocks.get(0).text);
+        assertTrue(source.getArticleSummary("http://test.com/large").hasContent);
+
+        Article loaded = source.getArticleSummary("http://test.com/large").toArticle();
+        assertTrue(loaded.loadContent(source));
+        assertEquals(content, loaded.content);
+    }
+
+    @Test
+    public void insertArticles_chunksLargeContent() {
+        String content = createLargeContent();
+        Article article = createArticle("http://test.com/large", 1000, content);
+        source.insertArticles(Arrays.asList(article));
+
+        assertTrue(countChunks(article.id) > 1);
+        assertEquals(content, source.getArticle("http://test.com/large").content);
+    }
+
+    @Test
+    public void updateArticleContent_replacesChunks() {
+        long id = source.insertArticle(
+                createArticle("http://test.com/large", 1000, createLargeContent()));
+        assertTrue(countChunks(id) > 1);
+
+        Article article = source.getArticle("http://test.com/large");
+        article.content = "short content";
+        article.blocks = null;
+        source.updateArticleContent(article);
+
+        assertEquals(0, countChunks(id));
+        assertEquals("short content", source.getArticle("http://test.com/large").content);
+    }
+
+    @Test
+    public void clearArticleContent_removesChunks() {
+        long id = source.insertArticle(
+                createArticle("http://test.com/large", 1000, createLargeContent()));
+        source.clearArticleContent(Arrays.asList(id));
+
+        assertEquals(0, countChunks(id));
+        assertNull(source.getArticle("http://test.com/large").content);
+        assertFalse(source.getArticleSummary("http://test.com/large").hasContent);
+    }
+
+    @Test
+    public void deleteArticle_removesChunks() {
+        long id = source.insertArticle(
+                createArticle("http://test.com/large", 1000, createLargeContent()));
+        source.deleteArticle(id);
+
+        assertEquals(0, countChunks(id));
+    }
+
+    @Test
+    public void openArticleContent() throws IOException {
+        String content = createLargeContent();
+        long id = source.insertArticle(createArticle("http://test.com/large", 1000, content));
+        assertEquals(content, read(source.openArticleContent(id)));
+
+        String html = ContentCodecTest.createHtml(20);
+        id = source.insertArticle(createArticle("http://test.com/compressed", 1000, html));
+        assertEquals(html, read(source.openArticleContent(id)));
+
+        // stored as text
+        assertEquals("First test article content.", read(source.openArticleContent(1)));
+
+        assertNull(source.openArticleContent(3));
+    }
+
+    @Test
+    public void splitLargeValues() {
+        byte[] compressed = ContentCodec.compress(createLargeContent(), false);
+        source.getDatabase().execSQL("insert into content (article_id, content, size) " +
+                "values (3, ?, ?)", new Object[] {compressed, compressed.length});
+
+        DatabaseSQLiteHelper.splitLargeValues(source.getDatabase(), "content", "content_chunks",
+                ContentChunkModel.KIND_CONTENT);
+
+        assertEquals(ContentChunks.count(compressed), countChunks(3));
+        assertEquals(ContentCodec.decompress(compressed),
+                source.getArticle("http://test.com/3").content);
+
+        // content that fits in a single row is left alone
+        assertEquals(0, countChunks(1));
+        assertEquals("First test article content.", source.getArticle("http://test.com/").content);
+    }
+
+    @Test
+    public void splitLargeText() {
+        // text from before content was compressed, too large for a cursor window, with multi-byte
+        // characters that chunk boundaries will fall inside of
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 3 * 1024 * 1024) {
+            builder.append("caf\u00e9 \u2014 ").append(builder.length()).append(' ');
+        }
+        String content = builder.toString();
+        int bytes = content.getBytes(Charset.forName("UTF-8")).length;
+
+        source.getDatabase().execSQL("insert into content (article_id, content, size) " +
+                "values (3, ?, ?)", new Object[] {content, bytes});
+
+        DatabaseSQLiteHelper.splitLargeText(source.getDatabase());
+
+        int chunks = (bytes + ContentChunks.CHUNK_SIZE - 1) / ContentChunks.CHUNK_SIZE;
+        assertEquals(chunks, countChunks(3));
+
+        Cursor cursor = source.getDatabase().rawQuery(
+                "select content, content_chunks from content where article_id = 3", null);
+        assertTrue(cursor.moveToFirst());
+        assertTrue(cursor.isNull(0));
+        assertEquals(chunks, cursor.getInt(1));
+        cursor.close();
+
+        assertEquals(content, source.getArticle("http://test.com/3").content);
+
+        // content that fits in a single row is left alone
+        assertEquals(0, countChunks(1));
+        assertEquals("First test article content.", source.getArticle("http://test.com/").content);
+    }
+
+    @Test
+    public void searchArticles() {
+        Article inText = createArticle("http://test.com/text", 1000, "<p>a</p>");
+        inText.blocks = Arrays.asList(
+                new ArticleBlock("p", null, "The council voted on the election results.", null));
+        source.insertArticle(inText);
+
+        Article inTitle = createArticle("http://test.com/title", 2000, "<p>a</p>");
+        inTitle.title = "Election results are in";
+        source.insertArticle(inTitle);
+
+        source.insertArticle(createArticle("http://test.com/other", 3000, "<p>a</p>"));
+
+        List<Article> results = source.searchArticles("elect", 10);
+        assertEquals(2, results.size());
+        assertEquals("http://test.com/title", results.get(0).url);
+        assertEquals("http://test.com/text", results.get(1).url);
+        assertNull(results.get(0).content);
+
+        results = source.searchArticles("election council", 10);
+        assertEquals(1, results.size());
+        assertEquals("http://test.com/text", results.get(0).url);
+
+        assertEquals(1, source.searchArticles("elect", 1).size());
+        assertEquals(0, source.searchArticles("nothing", 10).size());
+        assertEquals(0, source.searchArticles("  ", 10).size());
+        assertEquals(0, source.searchArticles("\"election\" OR -results*", 0).size());
+        assertEquals(1, source.searchArticles("\"council\" -results*", 10).size());
+    }
+
+    @Test
+    public void searchArticles_afterParsing() {
+        long id = source.insertArticle(createArticle("http://test.com/parsed", 1000, "<p>a</p>"));
+        assertEquals(0, source.searchArticles("parliament", 10).size());
+
+        Article article = source.getArticle("http://test.com/parsed");
+        article.blocks = Arrays.asList(
+                new ArticleBlock("p", null, "Parliament was dissolved.", null));
+        source.updateArticleBlocks(article);
+
+        List<Article> results = source.searchArticles("parliament", 10);
+        assertEquals(1, results.size());
+        assertEquals(id, results.get(0).id);
+
+        // evicted articles are found by their title, but no longer by their text
+        source.clearArticleContent(Arrays.asList(id));
+        assertEquals(0, source.searchArticles("parliament", 10).size());
+        assertEquals(1, source.searchArticles("test title", 10).size());
+
+        source.deleteArticle(id);
+        assertEquals(0, source.searchArticles("test title", 10).size());
+    }
+
     @Test
     public void getArticle_null() {
         Article article = source.getArticle("blah");
         assertNull(article);
     }
 
+    @Test
+    public void getArticleSummary() {
+        ArticleSummary summary = source.getArticleSummary("http://test.com/");
+
+        assertNotNull(summary);
+        assertEquals(1L, summary.id);
+        assertEquals("http://test.com/", summary.url);
+        assertNotNull(summary.title);
+        assertTrue(summary.saved);
+        assertTrue(summary.hasContent);
+
+        ArticleSummary withoutContent = source.getArticleSummary("http://test.com/3");
+        assertNotNull(withoutContent);
+        assertFalse(withoutContent.hasContent);
+        assertEquals("test 1", withoutContent.sourceModelName);
+    }
+
+    @Test
+    public void getArticleSummary_null() {
+        assertNull(source.getArticleSummary("blah"));
+    }
+
+    @Test
+    public void getArticleSummaries() {
+        Cursor cursor = source.getArticleSummaries();
+        assertEquals(8, cursor.getCount());
+
+        assertTrue(cursor.moveToFirst());
+        ArticleSummary newest = new ArticleSummary(cursor);
+        assertEquals(8L, newest.id);
+        assertEquals(102L, (long) newest.sourceId);
+        cursor.close();
+
+        cursor = source.getSavedArticleSummaries();
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    @Test
+    public void loadArticleContent() {
+        Article article = source.getArticleSummary("http://test.com/2").toArticle();
+        assertNull(article.content);
+
+        assertTrue(article.loadContent(source));
+        assertEquals("test content 2.", article.content);
+
+        Article withoutContent = source.getArticleSummary("http://test.com/3").toArticle();
+        assertFalse(withoutContent.loadContent(source));
+        assertNull(withoutContent.content);
+    }
+
+    @Test
+    public void loadArticleContent_afterEviction() {
+        long id = source.insertArticle(createArticle("http://test.com/evicted", 1000, "content"));
+        source.clearArticleContent(Arrays.asList(id));
+
+        ArticleSummary summary = source.getArticleSummary("http://test.com/evicted");
+        assertFalse(summary.hasContent);
+        assertFalse(summary.toArticle().loadContent(source));
+    }
+
     @Test
     public void getAllArticles() {
         Cursor articles = source.getAllArticles();
@@ -198,6 +588,90 @@ public class SQLiteQueryTest extends ArticleRealDataSuite {
         assertEquals("blah", article.content);
     }
 
+    @Test
+    public void updateArticleBlocks() {
+        Article article = source.getArticle("http://test.com/");
+        assertNull(article.blocks);
+
+        article.blocks = new ArrayList<>();
+        article.blocks.add(new ArticleBlock("p", null, "First test article content.", null));
+        source.updateArticleBlocks(article);
+
+        article = source.getArticle("http://test.com/");
+        assertEquals(1, article.blocks.size());
+        assertEquals("First test article content.", article.blocks.get(0).text);
+    }
+
+    @Test
+    public void updateArticleBlocks_updatesSize() {
+        Article article = createArticle("http://test.com/size", 1000, "test content");
+        article.id = source.insertArticle(article);
+        long contentSize = getStoredSize(article.id);
+
+        article.blocks = Arrays.asList(new ArticleBlock("p", null, "test content", null));
+        source.updateArticleBlocks(article);
+        assertEquals(contentSize + ArticleBlock.encode(article.blocks).length,
+                getStoredSize(article.id));
+
+        // blocks that are stored in chunks are counted as well
+        article.blocks = Arrays.asList(new ArticleBlock("p", null, createLargeContent(), null));
+        source.updateArticleBlocks(article);
+        assertEquals(contentSize + ArticleBlock.encode(article.blocks).length,
+                getStoredSize(article.id));
+
+        article.blocks = null;
+        source.updateArticleBlocks(article);
+        assertEquals(contentSize, getStoredSize(article.id));
+    }
+
+    @Test
+    public void updateImageSizes() {
+        Article article = source.getArticle("http://test.com/");
+        article.blocks = new ArrayList<>();
+        article.blocks.add(new ArticleBlock("img", null, null, "http://test.com/image.jpg"));
+        source.updateArticleBlocks(article);
+
+        article.blocks.get(0).width = 640;
+        article.blocks.get(0).height = 480;
+        source.updateImageSizes(article);
+
+        article = source.getArticle("http://test.com/");
+        assertEquals(640, article.blocks.get(0).width);
+        assertEquals(480, article.blocks.get(0).height);
+    }
+
+    @Test
+    public void updateImageSizes_contentCleared() {
+        Article article = source.getArticle("http://test.com/");
+        article.blocks = new ArrayList<>();
+        article.blocks.add(new ArticleBlock("img", null, null, "http://test.com/image.jpg"));
+        source.clearArticleContent(Collections.singletonList(article.id));
+
+        article.blocks.get(0).width = 640;
+        article.blocks.get(0).height = 480;
+        source.updateImageSizes(article);
+
+        Article cleared = new Article();
+        cleared.id = article.id;
+        assertFalse(source.loadArticleContent(cleared));
+        assertNull(cleared.blocks);
+    }
+
+    @Test
+    public void updateArticleContent_clearsBlocks() {
+        Article article = source.getArticle("http://test.com/");
+        article.blocks = new ArrayList<>();
+        article.blocks.add(new ArticleBlock("p", null, "First test article content.", null));
+        source.updateArticleBlocks(article);
+
+        article.content = "blah";
+        article.blocks = null;
+        source.updateArticleContent(article);
+
+        article = source.getArticle("http://test.com/");
+        assertNull(article.blocks);
+    }
+
     @Test
     public void insertCategory() {
         assertFalse(source.categoryExists("test category"));
@@ -334,4 +808,303 @@ public class SQLiteQueryTest extends ArticleRealDataSuite {
         source.deleteArticle(-1L);
         assertEquals(count, source.getAllArticles().getCount());
     }
+
+    @Test
+    public void insertArticles() {
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Article article = new Article();
+            article.url = "http://bulk.com/" + i;
+            article.title = "bulk " + i;
+            article.content = "<p>bulk paragraph " + i + "</p>";
+            article.isArticle = true;
+            article.sourceId = 101L;
+            articles.add(article);
+        }
+
+        assertEquals(3, source.insertArticles(articles));
+        assertEquals(11, source.getAllArticles().getCount());
+        assertEquals(5, source.getArticlesForSource(101L).getCount());
+
+        Article stored = source.getArticle("http://bulk.com/1");
+        assertEquals(articles.get(1).id, stored.id);
+        assertEquals("bulk 1", stored.title);
+        assertEquals("<p>bulk paragraph 1</p>", stored.content);
+        assertTrue(stored.isArticle);
+        assertNotEquals(0, stored.insertedAt);
+    }
+
+    @Test
+    public void insertArticles_skipsDuplicates() {
+        Article duplicate = new Article();
+        duplicate.url = "http://test.com/";
+        Article article = new Article();
+        article.url = "http://bulk.com/";
+
+        List<Article> articles = new ArrayList<>();
+        articles.add(duplicate);
+        articles.add(article);
+
+        assertEquals(1, source.insertArticles(articles));
+        assertEquals(-1L, duplicate.id);
+        assertNotEquals(-1L, article.id);
+        assertEquals(9, source.getAllArticles().getCount());
+    }
+
+    @Test
+    public void insertSources() {
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Source s = new Source();
+            s.remoteId = 200 + i;
+            s.name = "bulk source " + i;
+            s.imageUrl = "http://test";
+            s.categoryName = i == 0 ? "test" : "new category";
+            sources.add(s);
+        }
+
+        // already stored, should be skipped
+        Source duplicate = new Source();
+        duplicate.remoteId = 100;
+        duplicate.name = "duplicate";
+        duplicate.imageUrl = "http://test";
+        duplicate.categoryName = "test";
+        sources.add(duplicate);
+
+        source.insertSources(sources);
+
+        assertEquals(6, source.getSources().size());
+        assertEquals(1L, (long) source.getSource(200).categoryId);
+        assertEquals("new category", source.getSource(201).categoryName);
+        assertEquals(source.getSource(201).categoryId, source.getSource(202).categoryId);
+        assertEquals(source.getCategoryId("new category"), source.getSource(202).categoryId);
+        assertEquals("test 1", source.getSource(100).name);
+    }
+
+    @Test
+    public void getAllArticles_paged() {
+        ArticlePage first = source.getAllArticles(null, 3);
+        assertEquals(3, first.getArticles().size());
+        assertEquals(8L, first.getArticles().get(0).id);
+        assertEquals(6L, first.getArticles().get(2).id);
+        assertTrue(first.hasMore());
+
+        ArticlePage second = source.getAllArticles(first.getNextKey(), 3);
+        assertEquals(3, second.getArticles().size());
+        assertEquals(5L, second.getArticles().get(0).id);
+        assertTrue(second.hasMore());
+
+        ArticlePage third = source.getAllArticles(second.getNextKey(), 3);
+        assertEquals(2, third.getArticles().size());
+        assertEquals(1L, third.getArticles().get(1).id);
+        assertFalse(third.hasMore());
+        assertNull(third.getNextKey());
+    }
+
+    @Test
+    public void getAllArticles_pagedWithSameTimestamp() {
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Article article = new Article();
+            article.url = "http://same.com/" + i;
+            article.insertedAt = 100;
+            articles.add(article);
+        }
+        source.insertArticles(articles);
+
+        List<Long> ids = new ArrayList<>();
+        ArticlePage.Key key = null;
+        do {
+            ArticlePage page = source.getAllArticles(key, 2);
+            for (Article article : page.getArticles()) {
+                assertFalse(ids.contains(article.id));
+                ids.add(article.id);
+            }
+
+            key = page.getNextKey();
+        } while (key != null);
+
+        assertEquals(13, ids.size());
+        assertEquals(articles.get(4).id, (long) ids.get(0));
+        assertEquals(articles.get(0).id, (long) ids.get(4));
+    }
+
+    @Test
+    public void getArticlesForSource_paged() {
+        ArticlePage first = source.getArticlesForSource(100L, null, 2);
+        assertEquals(2, first.getArticles().size());
+        assertTrue(first.hasMore());
+        assertEquals("test 1", first.getArticles().get(0).sourceModelName);
+        assertEquals(100L, (long) first.getArticles().get(0).sourceId);
+
+        ArticlePage second = source.getArticlesForSource(100L, first.getNextKey(), 2);
+        assertEquals(1, second.getArticles().size());
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    public void getSavedArticles_paged() {
+        int saved = source.getSavedArticles().getCount();
+        ArticlePage page = source.getSavedArticles(null, 100);
+        assertEquals(saved, page.getArticles().size());
+        assertFalse(page.hasMore());
+
+        for (Article article : page.getArticles()) {
+            assertTrue(article.saved);
+        }
+    }
+
+    @Test
+    public void enqueuePreloads() {
+        assertEquals(2, source.enqueuePreloads(Arrays.asList("http://a.com/1", "http://a.com/2")));
+        assertEquals(1, source.enqueuePreloads(Arrays.asList("http://a.com/2", "http://a.com/3")));
+
+        assertEquals(PreloadModel.STATUS_PENDING, source.getPreloadStatus("http://a.com/1"));
+        assertEquals(-1, source.getPreloadStatus("http://a.com/4"));
+        assertEquals(3, source.getPreloadProgress().getPendingCount());
+    }
+
+    @Test
+    public void enqueuePreloads_retriesFailed() {
+        source.enqueuePreloads(Arrays.asList("http://a.com/1", "http://a.com/2"));
+        List<QueuedPreload> taken = source.takeDuePreloads(System.currentTimeMillis(), 2);
+        source.updatePreload(taken.get(0).id, PreloadModel.STATUS_FAILED, 5, 0);
+        source.updatePreload(taken.get(1).id, PreloadModel.STATUS_DONE, 0, 0);
+
+        assertEquals(1, source.enqueuePreloads(Arrays.asList("http://a.com/1", "http://a.com/2")));
+        assertEquals(PreloadModel.STATUS_PENDING, source.getPreloadStatus("http://a.com/1"));
+        assertEquals(PreloadModel.STATUS_DONE, source.getPreloadStatus("http://a.com/2"));
+        assertEquals(0, source.takeDuePreloads(System.currentTimeMillis(), 2).get(0).attempts);
+    }
+
+    @Test
+    public void takeDuePreloads() {
+        source.enqueuePreloads(Arrays.asList("http://a.com/1", "http://a.com/2", "http://a.com/3"));
+        List<QueuedPreload> first = source.takeDuePreloads(System.currentTimeMillis(), 2);
+
+        assertEquals(2, first.size());
+        assertEquals("http://a.com/1", first.get(0).url);
+        assertEquals("http://a.com/2", first.get(1).url);
+        assertEquals(PreloadModel.STATUS_RUNNING, source.getPreloadStatus("http://a.com/1"));
+
+        List<QueuedPreload> second = source.takeDuePreloads(System.currentTimeMillis(), 2);
+        assertEquals(1, second.size());
+        assertEquals("http://a.com/3", second.get(0).url);
+        assertTrue(source.takeDuePreloads(System.currentTimeMillis(), 2).isEmpty());
+    }
+
+    @Test
+    public void takeDuePreloads_waitsForNextAttempt() {
+        source.enqueuePreloads(Arrays.asList("http://a.com/1", "http://a.com/2"));
+        List<QueuedPreload> taken = source.takeDuePreloads(1000, 2);
+        source.updatePreload(taken.get(0).id, PreloadModel.STATUS_PENDING, 1, 5000);
+        source.updatePreload(taken.get(1).id, PreloadModel.STATUS_PENDING, 1, 3000);
+
+        assertEquals(3000, source.getNextPreloadAttemptAt());
+        assertTrue(source.takeDuePreloads(2000, 2).isEmpty());
+
+        List<QueuedPreload> due = source.takeDuePreloads(3000, 2);
+        assertEquals(1, due.size());
+        assertEquals("http://a.com/2", due.get(0).url);
+        assertEquals(1, due.get(0).attempts);
+        assertEquals(5000, source.getNextPreloadAttemptAt());
+    }
+
+    @Test
+    public void getNextPreloadAttemptAt_empty() {
+        assertEquals(-1, source.getNextPreloadAttemptAt());
+    }
+
+    @Test
+    public void resetRunningPreloads() {
+        source.enqueuePreloads(Arrays.asList("http://a.com/1", "http://a.com/2"));
+        source.takeDuePreloads(System.currentTimeMillis(), 1);
+
+        assertEquals(1, source.resetRunningPreloads());
+        assertEquals(2, source.getPreloadProgress().getPendingCount());
+    }
+
+    @Test
+    public void getPreloadProgress() {
+        source.enqueuePreloads(Arrays.asList(
+                "http://a.com/1", "http://a.com/2", "http://a.com/3", "http://a.com/4"));
+        List<QueuedPreload> taken = source.takeDuePreloads(System.currentTimeMillis(), 3);
+        source.updatePreload(taken.get(0).id, PreloadModel.STATUS_DONE, 0, 0);
+        source.updatePreload(taken.get(1).id, PreloadModel.STATUS_FAILED, 5, 0);
+
+        PreloadProgress progress = source.getPreloadProgress();
+        assertEquals(1, progress.getPendingCount());
+        assertEquals(1, progress.getRunningCount());
+        assertEquals(1, progress.getDoneCount());
+        assertEquals(1, progress.getFailedCount());
+        assertEquals(4, progress.getTotalCount());
+    }
+
+    @Test
+    public void clearFinishedPreloads() {
+        source.enqueuePreloads(Arrays.asList("http://a.com/1", "http://a.com/2", "http://a.com/3"));
+        List<QueuedPreload> taken = source.takeDuePreloads(System.currentTimeMillis(), 2);
+        source.updatePreload(taken.get(0).id, PreloadModel.STATUS_DONE, 0, 0);
+        source.updatePreload(taken.get(1).id, PreloadModel.STATUS_FAILED, 5, 0);
+
+        assertEquals(2, source.clearFinishedPreloads());
+        assertEquals(1, source.getPreloadProgress().getTotalCount());
+        assertEquals(PreloadModel.STATUS_PENDING, source.getPreloadStatus("http://a.com/3"));
+    }
+
+    private long getStoredSize(long articleId) {
+        Cursor cursor = source.getDatabase().rawQuery(
+                "select size from content where article_id = ?",
+                new String[] {Long.toString(articleId)});
+        assertTrue(cursor.moveToFirst());
+        long size = cursor.getLong(0);
+        cursor.close();
+        return size;
+    }
+
+    private int countChunks(long articleId) {
+        Cursor cursor = source.getDatabase().rawQuery(
+                "select count(*) from content_chunk where article_id = ?",
+                new String[] {Long.toString(articleId)});
+        assertTrue(cursor.moveToFirst());
+        int count = cursor.getInt(0);
+        cursor.close();
+        return count;
+    }
+
+    private static String read(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            text.append(buffer, 0, read);
+        }
+
+        reader.close();
+        return text.toString();
+    }
+
+    /**
+     * Creates content that doesn't compress well, so that it is still large enough to be split
+     * into chunks after it is compressed.
+     */
+    private static String createLargeContent() {
+        Random random = new Random(1);
+        StringBuilder content = new StringBuilder(ContentChunks.CHUNK_SIZE * 4);
+        while (content.length() < ContentChunks.CHUNK_SIZE * 4) {
+            content.append((char) ('a' + random.nextInt(26)));
+        }
+
+        return content.toString();
+    }
+
+    private static Article createArticle(String url, long insertedAt, String content) {
+        Article article = new Article();
+        article.url = url;
+        article.title = "test title";
+        article.content = content;
+        article.insertedAt = insertedAt;
+        article.isArticle = true;
+        return article;
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import xyz.klinker.android.article.ArticleRealDataSuite;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times searches over a large number of articles. The time for each search is printed, the
+ * assertions only check that the expected number of articles are found.
+ */
+public class SearchBenchmarkTest extends ArticleRealDataSuite {
+
+    private static final int ROWS = 10000;
+    private static final int LIMIT = 20;
+    private static final String[] WORDS = {
+            "election", "council", "weather", "market", "science", "football", "budget",
+            "hospital", "festival", "transit"
+    };
+
+    @Test
+    public void searchArticles() {
+        source.insertArticles(createArticles());
+
+        // a rare word, a word in a tenth of the articles, and two words that are in every article
+        time("zanzibar", 1);
+        time("election", LIMIT);
+        time("the article", LIMIT);
+    }
+
+    private void time(String query, int expected) {
+        long start = System.nanoTime();
+        List<Article> results = source.searchArticles(query, LIMIT);
+        long nanos = System.nanoTime() - start;
+
+        System.out.println(String.format("searching %d articles for \"%s\": %.1f ms",
+                ROWS, query, nanos / 1000000.0));
+        assertEquals(expected, results.size());
+    }
+
+    private static List<Article> createArticles() {
+        List<Article> articles = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            String word = WORDS[i % WORDS.length];
+
+            Article article = new Article();
+            article.url = "http://test.com/search/" + i;
+            article.title = "Article " + i + " about the " + word;
+            article.description = "A description of the article about the " + word;
+            article.author = "author " + (i % 50);
+            article.isArticle = true;
+            article.blocks = Arrays.asList(
+                    new ArticleBlock("p", null, "The first paragraph of article " + i + ", " +
+                            "which is about the " + word + (i == 1234 ? " in zanzibar" : "") + ".",
+                            null),
+                    new ArticleBlock("p", null, "A second paragraph, with more text about the " +
+                            word + " and everything else that happened today.", null));
+            articles.add(article);
+        }
+
+        return articles;
+    }
+}
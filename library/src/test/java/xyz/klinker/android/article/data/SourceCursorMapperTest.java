@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 Jake Klinker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.klinker.android.article.data;
+
+import android.database.MatrixCursor;
+
+import org.junit.Test;
+
+import xyz.klinker.android.article.ArticleRobolectricSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SourceCursorMapperTest extends ArticleRobolectricSuite {
+
+    @Test
+    public void map() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {
+                "s_id", "sremote_id", "sname", "simage_url", "cname", "c_id"
+        });
+        cursor.addRow(new Object[] { 1L, 2L, "source 1", "url 1", "category 1", 3L });
+        cursor.addRow(new Object[] { 4L, 5L, "source 2", "url 2", null, null });
+
+        SourceCursorMapper mapper = new SourceCursorMapper(cursor);
+
+        cursor.moveToFirst();
+        Source first = mapper.map(cursor);
+        cursor.moveToNext();
+        Source second = mapper.map(cursor);
+
+        assertEquals(1L, first.id);
+        assertEquals(2L, first.remoteId);
+        assertEquals("source 1", first.name);
+        assertEquals("url 1", first.imageUrl);
+        assertEquals("category 1", first.categoryName);
+        assertEquals(3L, (long) first.categoryId);
+
+        assertEquals(4L, second.id);
+        assertEquals(5L, second.remoteId);
+        assertEquals("source 2", second.name);
+        assertNull(second.categoryName);
+    }
+
+    @Test
+    public void fill_reusesSource() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { "s_id", "sname" });
+        cursor.addRow(new Object[] { 1L, "source 1" });
+
+        Source source = new Source();
+        source.imageUrl = "url";
+
+        cursor.moveToFirst();
+        assertSame(source, new SourceCursorMapper(cursor).fill(cursor, source));
+        assertEquals(1L, source.id);
+        assertEquals("source 1", source.name);
+        assertEquals("url", source.imageUrl);
+        assertNull(source.categoryId);
+    }
+
+    @Test
+    public void map_ignoresUnaliasedColumns() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "name" });
+        cursor.addRow(new Object[] { 1L, "source 1" });
+        cursor.moveToFirst();
+
+        Source source = new SourceCursorMapper(cursor).map(cursor);
+        assertEquals(0L, source.id);
+        assertNull(source.name);
+    }
+}
@@ -139,7 +139,7 @@ public class SampleActivity extends AppCompatActivity {
             public void onClick(View view) {
                 String text = url.getText().toString();
                 if (text.length() > 0) {
-                    new ArticleUtils(BuildConfig.API_KEY).preloadArticle(
+                    new ArticleUtils(SampleActivity.this, BuildConfig.API_KEY).preloadArticle(
                             getApplicationContext(), text,
                             new ArticleLoadedListener() {
                                 @Override